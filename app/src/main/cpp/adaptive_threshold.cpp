@@ -0,0 +1,75 @@
+#include "adaptive_threshold.h"
+
+#include <cmath>
+
+int otsuThreshold(const uint32_t *histogram, int bins) {
+    double total = 0, sum = 0;
+    for (int i = 0; i < bins; i++) {
+        total += histogram[i];
+        sum += (double) i * histogram[i];
+    }
+    // Between-class variance of {bins < t} and {bins >= t}, up to the constant 1 / total^2
+    double below = 0, belowSum = 0, best = -1;
+    int threshold = 0;
+    for (int t = 1; t < bins; t++) {
+        below += histogram[t - 1];
+        belowSum += (double) (t - 1) * histogram[t - 1];
+        double above = total - below;
+        if (below == 0 || above == 0) continue;
+        double diff = belowSum * above - (sum - belowSum) * below;
+        double variance = diff / below * diff / above;
+        if (variance > best) {
+            best = variance;
+            threshold = t;
+        }
+    }
+    return threshold;
+}
+
+int densityThreshold(const uint32_t *histogram, int bins, uint64_t pixels, int targetPerMille) {
+    uint64_t allowed = pixels * (uint64_t) targetPerMille / 1000;
+    uint64_t above = 0;
+    // Walk down from the top bin until one more would pass the target
+    for (int t = bins - 1; t >= 0; t--) {
+        above += histogram[t];
+        if (above > allowed) return t + 1;
+    }
+    return 0;
+}
+
+const char *AdaptiveThreshold::configure(int method, int targetPerMille, float smoothing, bool hysteresis) {
+    if (method < ADAPTIVE_OFF || method > ADAPTIVE_DENSITY) return "unknown adaptive threshold method";
+    if (method == ADAPTIVE_DENSITY && (targetPerMille < 1 || targetPerMille > 1000)) {
+        return "edge density target must be 1..1000 per mille";
+    }
+    if (!(smoothing > 0 && smoothing <= 1)) return "threshold smoothing must be in (0, 1]";
+    this->method = method;
+    this->targetPerMille = targetPerMille;
+    this->smoothing = smoothing;
+    this->hysteresis = hysteresis;
+    EdgeOptions defaults;
+    smoothed = (float) defaults.threshold;
+    current.store(defaults.threshold, std::memory_order_relaxed);
+    lastDensity.store(-1, std::memory_order_relaxed);
+    return nullptr;
+}
+
+EdgeOptions AdaptiveThreshold::options() const {
+    EdgeOptions options;
+    if (!enabled()) return options;
+    options.threshold = threshold();
+    if (hysteresis) options.weakThreshold = options.threshold / 2;
+    return options;
+}
+
+void AdaptiveThreshold::update(const EdgeStats &stats) {
+    if (!enabled() || stats.pixels == 0) return;
+    lastDensity.store((float) ((double) stats.edges / stats.pixels), std::memory_order_relaxed);
+    int estimate = method == ADAPTIVE_OTSU
+            ? otsuThreshold(stats.histogram, EDGE_HISTOGRAM_BINS)
+            : densityThreshold(stats.histogram, EDGE_HISTOGRAM_BINS, stats.pixels, targetPerMille);
+    if (estimate < MIN_ADAPTIVE_THRESHOLD) estimate = MIN_ADAPTIVE_THRESHOLD;
+    if (estimate > MAX_ADAPTIVE_THRESHOLD) estimate = MAX_ADAPTIVE_THRESHOLD;
+    smoothed += smoothing * ((float) estimate - smoothed);
+    current.store((int) lroundf(smoothed), std::memory_order_relaxed);
+}
@@ -0,0 +1,73 @@
+#pragma once
+
+#include <atomic>
+#include <cstdint>
+
+#include "edge_kernel.h"
+
+/*
+ MODE_EDGE threshold that follows the scene. Each frame's edge pass also fills an EdgeStats (edge_kernel.h);
+ update() derives a threshold from its gradient histogram and moves the one used for the next frame part
+ of the way towards it, so a single noisy frame cannot make the output flicker. Nothing is read twice:
+ the histogram comes out of the pass that writes the output, and the frame it describes keeps the
+ threshold it was computed with.
+
+   OTSU      the threshold that best splits the histogram into two classes (flat areas and edges)
+   DENSITY   the lowest threshold that keeps edge pixels at or under a target share of the frame
+
+ configure() and update() belong to the processing thread; threshold() and density() may be read from
+ any thread.
+*/
+
+enum {
+    ADAPTIVE_OFF = 0,
+    ADAPTIVE_OTSU = 1,
+    ADAPTIVE_DENSITY = 2,
+};
+
+static const int MIN_ADAPTIVE_THRESHOLD = 8;
+static const int MAX_ADAPTIVE_THRESHOLD = 250;
+
+class AdaptiveThreshold {
+public:
+    /*
+     targetPerMille is DENSITY's edge share in 1/1000 of the frame, 1..1000; smoothing the share of the
+     step towards each new estimate, (0, 1]; hysteresis adds a weak threshold of half the threshold.
+     Returns null on success or a description of the invalid argument. Restarts from MODE_EDGE's threshold.
+    */
+    const char *configure(int method, int targetPerMille, float smoothing, bool hysteresis);
+
+    bool enabled() const { return method != ADAPTIVE_OFF; }
+
+    // Thresholds for the next frame
+    EdgeOptions options() const;
+
+    // Folds in the stats of the frame just processed with options()
+    void update(const EdgeStats &stats);
+
+    // Threshold the next frame uses, MODE_EDGE's 50 while off
+    int threshold() const { return current.load(std::memory_order_relaxed); }
+
+    // Share of interior pixels set in the last frame, 0..1; -1 while off or before the first frame
+    float density() const { return lastDensity.load(std::memory_order_relaxed); }
+
+private:
+    int method = ADAPTIVE_OFF;
+    int targetPerMille = 0;
+    float smoothing = 1;
+    bool hysteresis = false;
+    float smoothed = 50;
+    std::atomic<int> current{50};
+    std::atomic<float> lastDensity{-1};
+};
+
+/*
+ A pixel in bin b is an edge at threshold t when b >= t (up to the bin boundaries of EdgeStats), so both
+ return the threshold as the first bin counted as edges.
+*/
+// Otsu's threshold over bins histogram bins: the split of bins < t and bins >= t with the largest
+// between-class variance
+int otsuThreshold(const uint32_t *histogram, int bins);
+
+// Lowest threshold leaving at most targetPerMille / 1000 of pixels in the bins from it up
+int densityThreshold(const uint32_t *histogram, int bins, uint64_t pixels, int targetPerMille);
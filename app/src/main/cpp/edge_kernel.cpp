@@ -0,0 +1,489 @@
+#include "edge_kernel.h"
+
+#include <cstring>
+#include <vector>
+
+#include "scratch_arena.h"
+#include "worker_pool.h"
+
+// Bands thinner than this are not worth a hand-off to another core
+static const int MIN_BAND_ROWS = 16;
+
+namespace {
+
+// |sobel(sum / 9)| > t  <=>  |sobel(sum)|^2 > (9t)^2
+inline int thresholdSq(int t) {
+    return (9 * t) * (9 * t);
+}
+
+// Integer square roots below 2^16, 64 KiB; the frequent small ones stay in L1
+struct BinTable {
+    uint8_t root[EDGE_HISTOGRAM_BINS * EDGE_HISTOGRAM_BINS];
+    BinTable() {
+        for (int r = 0; r < EDGE_HISTOGRAM_BINS; r++)
+            for (int q = r * r; q < (r + 1) * (r + 1) && q < EDGE_HISTOGRAM_BINS * EDGE_HISTOGRAM_BINS; q++) root[q] = (uint8_t) r;
+    }
+};
+const BinTable BIN_TABLE;
+
+// floor(|sobel(sum / 9)|) = floor(sqrt(m / 81)) = floor(sqrt(floor(m / 81))), clamped to the last bin
+inline int edgeBin(int magnitudeSq) {
+    unsigned q = (unsigned) magnitudeSq / 81;
+    return q < EDGE_HISTOGRAM_BINS * EDGE_HISTOGRAM_BINS ? BIN_TABLE.root[q] : EDGE_HISTOGRAM_BINS - 1;
+}
+
+static const int HISTOGRAM_CHUNK = 256;
+
+// Separate from the output loop, which then still vectorises
+inline void binChunk(const int *m, int n, uint32_t *histogram) {
+    for (int i = 0; i < n; i++) histogram[edgeBin(m[i])]++;
+}
+
+const EdgeOptions DEFAULT_EDGE;
+
+// Pixel layouts the kernels stream over; input and output always share one layout.
+struct Rgba {
+    static const int BPP = 4;
+    static inline uint8_t gray(const uint8_t *px) { return rgbaToGray(px); }
+    static inline void put(uint8_t *px, uint8_t v) { px[0] = v; px[1] = v; px[2] = v; px[3] = 255; }
+};
+
+struct Gray8 {
+    static const int BPP = 1;
+    static inline uint8_t gray(const uint8_t *px) { return *px; }
+    static inline void put(uint8_t *px, uint8_t v) { *px = v; }
+};
+
+template <class P>
+void copyRows(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int y0, int y1) {
+    if (src == dst) return;
+    for (int y = y0; y < y1; y++) memcpy(dst + (size_t) y * dstStride, src + (size_t) y * srcStride, (size_t) w * P::BPP);
+}
+
+// Border pixels are not touched by the 3x3 kernels; keep the source there.
+template <class P>
+void copyBorder(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int y0, int y1) {
+    if (src == dst) return;
+    for (int y = y0; y < y1; y++) {
+        const uint8_t *s = src + (size_t) y * srcStride;
+        uint8_t *d = dst + (size_t) y * dstStride;
+        if (y == 0 || y == h-1) { memcpy(d, s, (size_t) w * P::BPP); continue; }
+        memcpy(d, s, P::BPP);
+        if (w > 1) memcpy(d + (w-1) * P::BPP, s + (w-1) * P::BPP, P::BPP);
+    }
+}
+
+template <class P>
+inline void grayRow(const uint8_t *src, uint8_t *g, int w) {
+    for (int x = 0; x < w; x++) g[x] = P::gray(src + x * P::BPP);
+}
+
+}
+
+namespace {
+
+// Horizontal 3-tap sum; columns 0 and w-1 are never read.
+inline void hsumRow(const uint8_t *g, uint16_t *hs, int w) {
+    for (int x = 1; x < w-1; x++) hs[x] = (uint16_t) (g[x-1] + g[x] + g[x+1]);
+}
+
+// Vertical 3-tap sum of horizontal sums = 3x3 box sum; zero in the border columns.
+inline void vsumRow(const uint16_t *a, const uint16_t *b, const uint16_t *c, uint16_t *s, int w) {
+    s[0] = 0; s[w-1] = 0;
+    for (int x = 1; x < w-1; x++) s[x] = (uint16_t) (a[x] + b[x] + c[x]);
+}
+
+template <class P>
+inline void blurOutRow(const uint16_t *s, uint8_t *dst, int w) {
+    for (int x = 1; x < w-1; x++) P::put(dst + x * P::BPP, (uint8_t) (s[x] / 9));
+}
+
+inline int sobelSq(const uint16_t *a, const uint16_t *b, const uint16_t *c, int x) {
+    int gx = (a[x+1] - a[x-1]) + 2 * (b[x+1] - b[x-1]) + (c[x+1] - c[x-1]);
+    int gy = (c[x-1] + 2 * c[x] + c[x+1]) - (a[x-1] + 2 * a[x] + a[x+1]);
+    return gx * gx + gy * gy;
+}
+
+// 3x3 Sobel on box sums of rows y-1 (a), y (b), y+1 (c), compared on squared magnitude. With a histogram,
+// also bins every pixel and returns the edge count.
+template <class P>
+inline int sobelOutRow(const uint16_t *a, const uint16_t *b, const uint16_t *c, uint8_t *dst, int w, int threshSq,
+                       uint32_t *histogram) {
+    if (!histogram) {
+        for (int x = 1; x < w-1; x++) P::put(dst + x * P::BPP, sobelSq(a, b, c, x) > threshSq ? 255 : 0);
+        return 0;
+    }
+    // In chunks, so only the binning is scalar
+    int edges = 0;
+    int m[HISTOGRAM_CHUNK];
+    for (int x0 = 1; x0 < w-1; x0 += HISTOGRAM_CHUNK) {
+        int n = w-1 - x0 < HISTOGRAM_CHUNK ? w-1 - x0 : HISTOGRAM_CHUNK;
+        for (int i = 0; i < n; i++) {
+            m[i] = sobelSq(a, b, c, x0 + i);
+            edges += m[i] > threshSq;
+            P::put(dst + (x0 + i) * P::BPP, m[i] > threshSq ? 255 : 0);
+        }
+        binChunk(m, n, histogram);
+    }
+    return edges;
+}
+
+// Hysteresis classes of one gradient row: 2 above the threshold, 1 above the weak one, else 0
+inline void classRow(const uint16_t *a, const uint16_t *b, const uint16_t *c, uint8_t *cls, int w, int strongSq,
+                     int weakSq, uint32_t *histogram) {
+    cls[0] = 0; cls[w-1] = 0;
+    int m[HISTOGRAM_CHUNK];
+    for (int x0 = 1; x0 < w-1; x0 += HISTOGRAM_CHUNK) {
+        int n = w-1 - x0 < HISTOGRAM_CHUNK ? w-1 - x0 : HISTOGRAM_CHUNK;
+        for (int i = 0; i < n; i++) {
+            m[i] = sobelSq(a, b, c, x0 + i);
+            cls[x0 + i] = (uint8_t) (m[i] > strongSq ? 2 : m[i] > weakSq ? 1 : 0);
+        }
+        if (histogram) binChunk(m, n, histogram);
+    }
+}
+
+// Strong pixels, and weak ones with a strong 8-neighbour, of the middle of three class rows
+template <class P>
+inline int hysteresisOutRow(const uint8_t *up, const uint8_t *cls, const uint8_t *down, uint8_t *dst, int w) {
+    int edges = 0;
+    for (int x = 1; x < w-1; x++) {
+        int near = up[x-1] | up[x] | up[x+1] | cls[x-1] | cls[x+1] | down[x-1] | down[x] | down[x+1];
+        bool edge = cls[x] == 2 || (cls[x] == 1 && (near & 2));
+        edges += edge;
+        P::put(dst + x * P::BPP, edge ? 255 : 0);
+    }
+    return edges;
+}
+
+}
+
+namespace {
+
+// Gray copies of input rows taken before a parallel in-place pass, for rows owned by a neighbouring band
+struct HaloRows {
+    int first = 0;
+    int count = 0;
+    const uint8_t *gray = nullptr;
+};
+
+}
+
+// Input rows a band reads past each end of its output rows
+inline int bandReach(int mode, const EdgeOptions &options) {
+    return mode == MODE_EDGE ? edgeReach(options) : mode == MODE_BLUR ? 2 : 0;
+}
+
+/*
+ Produces output rows [y0, y1), reading input rows y0 - reach .. y1 + reach - 1 (clamped to the image).
+ stats, when given, gets the histogram of the gradient rows in [y0, y1) and their edge count added.
+*/
+template <class P>
+static void streamBand(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode,
+                       const EdgeOptions &options, EdgeStats *stats, int y0, int y1,
+                       const HaloRows &above, const HaloRows &below) {
+    if (mode == MODE_ORIGINAL) {
+        copyRows<P>(src, srcStride, dst, dstStride, w, y0, y1);
+        return;
+    }
+    if (mode == MODE_GRAYSCALE) {
+        for (int y = y0; y < y1; y++) {
+            const uint8_t *s = src + (size_t) y * srcStride;
+            uint8_t *d = dst + (size_t) y * dstStride;
+            for (int x = 0; x < w; x++) P::put(d + x * P::BPP, P::gray(s + x * P::BPP));
+        }
+        return;
+    }
+
+    copyBorder<P>(src, srcStride, dst, dstStride, w, h, y0, y1);
+    if (w < 3 || h < 3) return;
+
+    // Interior output rows of this band, and the box-sum rows they depend on
+    int o0 = y0 < 1 ? 1 : y0;
+    int o1 = y1 > h-1 ? h-1 : y1;
+    if (o0 >= o1) return;
+    // Box-sum rows past the output rows: one for the Sobel, one more for hysteresis neighbours
+    bool hysteresis = mode == MODE_EDGE && options.weakThreshold >= 0;
+    int reach = mode == MODE_EDGE ? (hysteresis ? 2 : 1) : 0;
+    int rStart = o0 - reach < 1 ? 1 : o0 - reach;
+    int rEnd = o1 - 1 + reach > h-2 ? h-2 : o1 - 1 + reach;
+    // Gradient rows, q0..q1
+    int q0 = hysteresis && o0 > 1 ? o0 - 1 : o0;
+    int q1 = hysteresis && o1 < h-1 ? o1 : o1 - 1;
+
+    // Rolling rows: gray and horizontal sums for input rows t-2..t, box sums for rows r-2..r, hysteresis
+    // classes for gradient rows q-2..q and a row of none.
+    ScratchArena &scratch = ScratchArena::current();
+    uint8_t *grayRows = scratch.get<uint8_t>(SCRATCH_KERNEL_GRAY, (size_t) w * (hysteresis ? 7 : 3));
+    uint16_t *sums = scratch.get<uint16_t>(SCRATCH_KERNEL_SUMS, (size_t) w * 7);
+    uint8_t *g[3] = { grayRows, grayRows + w, grayRows + 2 * w };
+    uint16_t *hs[3] = { sums, sums + w, sums + 2 * w };
+    uint16_t *bs[3] = { sums + 3 * w, sums + 4 * w, sums + 5 * w };
+    uint16_t *zero = sums + 6 * w;
+    memset(zero, 0, (size_t) w * sizeof(uint16_t));
+    uint8_t *cls[3] = { grayRows + 3 * w, grayRows + 4 * w, grayRows + 5 * w };
+    uint8_t *noClass = grayRows + 6 * w;
+    if (hysteresis) memset(noClass, 0, (size_t) w);
+    int strongSq = thresholdSq(options.threshold), weakSq = thresholdSq(options.weakThreshold);
+    uint32_t *histogram = stats ? stats->histogram : nullptr;
+    uint64_t edges = 0;
+
+    // Box-sum row r, or the zero row outside [1, h-2]
+    auto boxRow = [&](int r) -> const uint16_t * { return (r <= 0 || r >= h-1) ? zero : bs[r % 3]; };
+    auto classes = [&](int q) -> const uint8_t * { return (q <= 0 || q >= h-1) ? noClass : cls[q % 3]; };
+    // Gradient row q from box rows q-1..q+1; without hysteresis that is output row q
+    auto gradientRow = [&](int q) {
+        uint32_t *hist = q >= o0 && q < o1 ? histogram : nullptr;
+        if (!hysteresis) {
+            edges += sobelOutRow<P>(boxRow(q-1), boxRow(q), boxRow(q+1), dst + (size_t) q * dstStride, w, strongSq, hist);
+            return;
+        }
+        classRow(boxRow(q-1), boxRow(q), boxRow(q+1), cls[q % 3], w, strongSq, weakSq, hist);
+        if (q - 1 >= o0 && q - 1 < o1)
+            edges += hysteresisOutRow<P>(classes(q-2), classes(q-1), classes(q), dst + (size_t) (q-1) * dstStride, w);
+    };
+    auto loadGray = [&](int t, uint8_t *out) {
+        if (t < y0 && t >= above.first && t < above.first + above.count) {
+            memcpy(out, above.gray + (size_t) (t - above.first) * w, (size_t) w);
+        } else if (t >= y1 && t >= below.first && t < below.first + below.count) {
+            memcpy(out, below.gray + (size_t) (t - below.first) * w, (size_t) w);
+        } else {
+            grayRow<P>(src + (size_t) t * srcStride, out, w);
+        }
+    };
+
+    for (int t = rStart - 1; t <= rEnd + 1; t++) {
+        loadGray(t, g[t % 3]);
+        hsumRow(g[t % 3], hs[t % 3], w);
+        if (t < rStart + 1) continue;
+
+        // Input row t is consumed, so rows < t may be overwritten even when processing in place
+        int r = t - 1;
+        vsumRow(hs[(t-2) % 3], hs[(t-1) % 3], hs[t % 3], bs[r % 3], w);
+        if (mode == MODE_BLUR) {
+            blurOutRow<P>(bs[r % 3], dst + (size_t) r * dstStride, w);
+        } else if (r - 1 >= q0) {
+            gradientRow(r - 1);
+        }
+    }
+    if (mode == MODE_EDGE && q1 == h-2) {
+        // The last gradient row reads the zero box row below the frame
+        gradientRow(h-2);
+        if (hysteresis && o1 == h-1)
+            edges += hysteresisOutRow<P>(classes(h-3), classes(h-2), noClass, dst + (size_t) (h-2) * dstStride, w);
+    }
+    if (stats) stats->edges += edges;
+}
+
+namespace {
+
+struct BandJob {
+    const uint8_t *src;
+    int srcStride;
+    uint8_t *dst;
+    int dstStride;
+    int w, h, mode, bands;
+    const EdgeOptions *options;
+    EdgeStats *stats;      // one per band, or null
+    int haloRows;          // per band boundary, centred on it
+    const uint8_t *halo;   // haloRows gray rows per band boundary, or null
+};
+
+inline int bandStart(const BandJob &job, int band) {
+    return (int) ((int64_t) job.h * band / job.bands);
+}
+
+template <class P>
+void runBand(void *ctx, int band) {
+    const BandJob &job = *(const BandJob *) ctx;
+    int y0 = bandStart(job, band), y1 = bandStart(job, band + 1);
+    HaloRows above, below;
+    if (job.halo) {
+        // Boundary b sits at bandStart(b) and covers input rows start - haloRows/2 .. start + haloRows/2 - 1
+        if (band > 0) {
+            above.first = y0 - job.haloRows / 2;
+            above.count = job.haloRows;
+            above.gray = job.halo + (size_t) (band - 1) * job.haloRows * job.w;
+        }
+        if (band < job.bands - 1) {
+            below.first = y1 - job.haloRows / 2;
+            below.count = job.haloRows;
+            below.gray = job.halo + (size_t) band * job.haloRows * job.w;
+        }
+    }
+    streamBand<P>(job.src, job.srcStride, job.dst, job.dstStride, job.w, job.h, job.mode, *job.options,
+                  job.stats ? job.stats + band : nullptr, y0, y1, above, below);
+}
+
+}
+
+template <class P>
+static void processFrame(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode,
+                         const EdgeOptions &options, EdgeStats *stats) {
+    if (stats) {
+        memset(stats, 0, sizeof(*stats));
+        if (w > 2 && h > 2) stats->pixels = (uint64_t) (w - 2) * (h - 2);
+    }
+    WorkerPool &pool = WorkerPool::instance();
+    int bands = pool.workerCount();
+    if (bands > h / MIN_BAND_ROWS) bands = h / MIN_BAND_ROWS;
+    if (bands <= 1) {
+        streamBand<P>(src, srcStride, dst, dstStride, w, h, mode, options, stats, 0, h, HaloRows(), HaloRows());
+        return;
+    }
+
+    ScratchArena &scratch = ScratchArena::current();
+    BandJob job = { src, srcStride, dst, dstStride, w, h, mode, bands, &options, nullptr, 2 * bandReach(mode, options),
+                    nullptr };
+    if (stats) {
+        job.stats = scratch.get<EdgeStats>(SCRATCH_EDGE_STATS, (size_t) bands);
+        memset(job.stats, 0, (size_t) bands * sizeof(EdgeStats));
+    }
+    if (src == dst && (mode == MODE_BLUR || mode == MODE_EDGE)) {
+        // In place, a band would otherwise read rows its neighbour already overwrote
+        int rows = job.haloRows;
+        uint8_t *halo = scratch.get<uint8_t>(SCRATCH_KERNEL_HALO, (size_t) (bands - 1) * rows * w);
+        for (int b = 1; b < bands; b++) {
+            int start = bandStart(job, b);
+            for (int k = 0; k < rows; k++) {
+                int t = start - rows / 2 + k;
+                if (t >= 0 && t < h) grayRow<P>(src + (size_t) t * srcStride, halo + ((size_t) (b - 1) * rows + k) * w, w);
+            }
+        }
+        job.halo = halo;
+    }
+    pool.run(bands, runBand<P>, &job);
+    if (stats) {
+        for (int b = 0; b < bands; b++) {
+            for (int i = 0; i < EDGE_HISTOGRAM_BINS; i++) stats->histogram[i] += job.stats[b].histogram[i];
+            stats->edges += job.stats[b].edges;
+        }
+    }
+}
+
+void processRgba(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode) {
+    processFrame<Rgba>(src, srcStride, dst, dstStride, w, h, mode, DEFAULT_EDGE, nullptr);
+}
+
+void processGray(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode) {
+    processFrame<Gray8>(src, srcStride, dst, dstStride, w, h, mode, DEFAULT_EDGE, nullptr);
+}
+
+void processEdge(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int bytesPerPixel,
+                 const EdgeOptions &options, EdgeStats *stats) {
+    if (bytesPerPixel == 4) processFrame<Rgba>(src, srcStride, dst, dstStride, w, h, MODE_EDGE, options, stats);
+    else processFrame<Gray8>(src, srcStride, dst, dstStride, w, h, MODE_EDGE, options, stats);
+}
+
+void processGrayRegion(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode,
+                       int x0, int y0, int x1, int y1) {
+    if (x0 >= x1 || y0 >= y1) return;
+    // Run the full-frame kernel on a window that reaches far enough past the region; its own border
+    // columns/rows are wrong unless they are the image's, so only the region is copied out.
+    int reach = modeReach(mode);
+    int wx0 = x0 - reach < 0 ? 0 : x0 - reach;
+    int wy0 = y0 - reach < 0 ? 0 : y0 - reach;
+    int wx1 = x1 + reach > w ? w : x1 + reach;
+    int wy1 = y1 + reach > h ? h : y1 + reach;
+    int ww = wx1 - wx0, wh = wy1 - wy0;
+
+    uint8_t *window = ScratchArena::current().get<uint8_t>(SCRATCH_REGION, (size_t) ww * wh);
+    streamBand<Gray8>(src + (size_t) wy0 * srcStride + wx0, srcStride, window, ww, ww, wh, mode, DEFAULT_EDGE, nullptr,
+                      0, wh, HaloRows(), HaloRows());
+    for (int y = y0; y < y1; y++)
+        memcpy(dst + (size_t) y * dstStride + x0, window + (size_t) (y - wy0) * ww + (x0 - wx0), (size_t) (x1 - x0));
+}
+
+void reserveGrayRegion(int w, int h, int mode, int maxRows) {
+    int rows = maxRows + 2 * modeReach(mode);
+    if (rows > h) rows = h;
+    ScratchArena::current().get<uint8_t>(SCRATCH_REGION, (size_t) w * rows);
+}
+
+template <class P>
+static void processReference(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode,
+                             const EdgeOptions &options, EdgeStats *stats) {
+    if (mode == MODE_ORIGINAL) {
+        copyRows<P>(src, srcStride, dst, dstStride, w, 0, h);
+        return;
+    }
+    int len = w * h;
+    std::vector<int> gray(len);
+    for (int y = 0; y < h; y++)
+        for (int x = 0; x < w; x++) gray[y*w + x] = P::gray(src + (size_t) y * srcStride + x * P::BPP);
+
+    if (mode == MODE_GRAYSCALE) {
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++) P::put(dst + (size_t) y * dstStride + x * P::BPP, (uint8_t) gray[y*w + x]);
+        return;
+    }
+
+    copyBorder<P>(src, srcStride, dst, dstStride, w, h, 0, h);
+
+    // 3x3 box sums (zero on the border, like the original blur buffer)
+    std::vector<int> sum(len, 0);
+    for (int y = 1; y < h-1; y++)
+        for (int x = 1; x < w-1; x++) {
+            int s = 0;
+            for (int ky = -1; ky <= 1; ky++)
+                for (int kx = -1; kx <= 1; kx++) s += gray[(y+ky)*w + (x+kx)];
+            sum[y*w + x] = s;
+        }
+
+    if (mode == MODE_BLUR) {
+        for (int y = 1; y < h-1; y++)
+            for (int x = 1; x < w-1; x++) P::put(dst + (size_t) y * dstStride + x * P::BPP, (uint8_t) (sum[y*w + x] / 9));
+        return;
+    }
+
+    int gxK[9] = {-1,0,1,-2,0,2,-1,0,1};
+    int gyK[9] = {-1,-2,-1,0,0,0,1,2,1};
+    std::vector<int> magnitude(len, 0);
+    for (int y = 1; y < h-1; y++)
+        for (int x = 1; x < w-1; x++) {
+            int gx = 0, gy = 0, idx = 0;
+            for (int ky = -1; ky <= 1; ky++)
+                for (int kx = -1; kx <= 1; kx++) {
+                    int v = sum[(y+ky)*w + (x+kx)];
+                    gx += gxK[idx]*v; gy += gyK[idx]*v; idx++;
+                }
+            magnitude[y*w + x] = gx*gx + gy*gy;
+        }
+
+    int strongSq = thresholdSq(options.threshold), weakSq = thresholdSq(options.weakThreshold);
+    if (stats) {
+        memset(stats, 0, sizeof(*stats));
+        if (w > 2 && h > 2) stats->pixels = (uint64_t) (w - 2) * (h - 2);
+    }
+    for (int y = 1; y < h-1; y++)
+        for (int x = 1; x < w-1; x++) {
+            int m = magnitude[y*w + x];
+            bool edge = m > strongSq;
+            if (!edge && options.weakThreshold >= 0 && m > weakSq) {
+                // Border pixels have magnitude 0, so they are never strong
+                for (int ky = -1; ky <= 1 && !edge; ky++)
+                    for (int kx = -1; kx <= 1; kx++) {
+                        if (magnitude[(y+ky)*w + (x+kx)] > strongSq) edge = true;
+                    }
+            }
+            if (stats) {
+                stats->histogram[edgeBin(m)]++;
+                stats->edges += edge;
+            }
+            P::put(dst + (size_t) y * dstStride + x * P::BPP, edge ? 255 : 0);
+        }
+}
+
+void processRgbaReference(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode) {
+    processReference<Rgba>(src, srcStride, dst, dstStride, w, h, mode, DEFAULT_EDGE, nullptr);
+}
+
+void processGrayReference(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode) {
+    processReference<Gray8>(src, srcStride, dst, dstStride, w, h, mode, DEFAULT_EDGE, nullptr);
+}
+
+void processEdgeReference(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h,
+                          int bytesPerPixel, const EdgeOptions &options, EdgeStats *stats) {
+    if (bytesPerPixel == 4) processReference<Rgba>(src, srcStride, dst, dstStride, w, h, MODE_EDGE, options, stats);
+    else processReference<Gray8>(src, srcStride, dst, dstStride, w, h, MODE_EDGE, options, stats);
+}
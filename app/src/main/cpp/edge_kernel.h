@@ -0,0 +1,90 @@
+#pragma once
+
+#include <cstdint>
+
+/*
+ Frame processing core shared by the JNI layer and host tools. Modes mirror NativeLib.MODE_*:
+ 0 = original (no-op), 1 = grayscale, 2 = blur, 3 = edge (Sobel + threshold).
+ Operates on RGBA rows described by a base pointer and a row stride in bytes.
+ src and dst may alias (in-place).
+
+ Gray is 8-bit fixed point (19595r + 38470g + 7471b) >> 16. The previous float path truncated
+ 0.299r + 0.587g + 0.114b instead, which differs by 1 for ~0.05% of colours; everything downstream
+ is exact integer math on that gray. Blur is floor(sum3x3 / 9). An edge is
+ gx^2 + gy^2 > (9 * 50)^2 on the unnormalised 3x3 sums, i.e. exactly |sobel(sum/9)| > 50.
+ Blur and Sobel read zero outside the 1-pixel border, as the original full-frame code did,
+ and border pixels keep the source value in blur/edge modes.
+*/
+
+enum {
+    MODE_ORIGINAL = 0,
+    MODE_GRAYSCALE = 1,
+    MODE_BLUR = 2,
+    MODE_EDGE = 3,
+};
+
+inline uint8_t rgbaToGray(const uint8_t *px) {
+    return (uint8_t) ((19595 * px[0] + 38470 * px[1] + 7471 * px[2]) >> 16);
+}
+
+// How far past a region a mode reads: a window this much larger computes the region exactly, since only
+// its own border rows and columns come out wrong
+inline int modeReach(int mode) {
+    return mode == MODE_EDGE ? 2 : mode == MODE_BLUR ? 1 : 0;
+}
+
+static const int EDGE_HISTOGRAM_BINS = 256;
+
+// MODE_EDGE thresholds on |sobel(sum / 9)|, 0..255; the defaults are MODE_EDGE's
+struct EdgeOptions {
+    int threshold = 50;
+    // Hysteresis: a pixel above weakThreshold is also an edge when one of its 8 neighbours is above
+    // threshold; -1 turns it off. Only direct neighbours count, so it stays one pass (reach 3, not 2).
+    int weakThreshold = -1;
+};
+
+// Gathered by processEdge in the same pass
+struct EdgeStats {
+    uint32_t histogram[EDGE_HISTOGRAM_BINS];   // interior pixels by |sobel(sum / 9)|, the last bin open-ended
+    uint64_t pixels;                           // interior pixels, (w - 2) * (h - 2)
+    uint64_t edges;                            // interior pixels set in the output
+};
+
+inline int edgeReach(const EdgeOptions &options) {
+    return options.weakThreshold >= 0 ? 3 : 2;
+}
+
+// Single streaming pass keeping three rows of 8/16-bit intermediates per stage. Split into horizontal
+// bands across WorkerPool::instance() when it has more than one worker.
+void processRgba(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode);
+
+// Same modes on a single-channel 8-bit plane (1 byte per pixel in and out); MODE_GRAYSCALE copies.
+void processGray(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode);
+
+/*
+ processGray output for the pixels in [x0, x1) x [y0, y1) only, bit-identical to the same pixels of a
+ full-frame run; the rest of dst is not touched. Single-threaded, and src must not alias dst.
+*/
+void processGrayRegion(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode,
+                       int x0, int y0, int x1, int y1);
+
+/*
+ Sizes the calling thread's scratch for the largest window processGrayRegion needs on a w x h frame with
+ regions of at most maxRows rows, so regions that grow later allocate nothing. Under a ScratchContext its
+ spread() passes the size on to the pool threads.
+*/
+void reserveGrayRegion(int w, int h, int mode, int maxRows);
+
+/*
+ MODE_EDGE on RGBA (bytesPerPixel 4) or gray (1) with the given thresholds, filling stats when it is not
+ null. A pixel's bin is exactly floor(|sobel(sum / 9)|), found from integer math on the squared magnitude,
+ so at threshold t the edges are the pixels in bins t and up, less any exactly on t.
+*/
+void processEdge(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int bytesPerPixel,
+                 const EdgeOptions &options, EdgeStats *stats);
+
+// Straightforward full-frame version of the same math; the fused kernel must match it bit for bit.
+void processRgbaReference(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode);
+void processGrayReference(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode);
+void processEdgeReference(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h,
+                          int bytesPerPixel, const EdgeOptions &options, EdgeStats *stats);
@@ -0,0 +1,660 @@
+#include "filter_graph.h"
+
+#include <cmath>
+#include <cstring>
+
+#include "edge_kernel.h"
+#include "pyramid_edge.h"
+#include "scratch_arena.h"
+#include "worker_pool.h"
+
+// Same split as edge_kernel.cpp: thinner bands are not worth a hand-off
+static const int MIN_BAND_ROWS = 16;
+
+namespace {
+
+enum { OP_POINT, OP_SMOOTH, OP_GRADIENT, OP_DILATE };
+
+// Frame or intermediate plane a pass reads; bpp 4 is only ever the RGBA frame itself.
+struct Plane {
+    const uint8_t *data;
+    int stride;
+    int bpp;
+};
+
+inline int clampRow(int y, int h) {
+    return y < 0 ? 0 : y >= h ? h - 1 : y;
+}
+
+// Gray row y with pad clamped pixels on each side: out[pad + x] is column x.
+void loadPadded(const Plane &in, int y, int w, int pad, uint8_t *out) {
+    const uint8_t *row = in.data + (size_t) y * in.stride;
+    if (in.bpp == 4) {
+        for (int x = 0; x < w; x++) out[pad + x] = rgbaToGray(row + x * 4);
+    } else {
+        memcpy(out + pad, row, (size_t) w);
+    }
+    memset(out, out[pad], (size_t) pad);
+    memset(out + pad + w, out[pad + w - 1], (size_t) pad);
+}
+
+void storeRow(const uint8_t *v, uint8_t *dst, int bpp, int w) {
+    if (bpp == 1) {
+        memcpy(dst, v, (size_t) w);
+        return;
+    }
+    for (int x = 0; x < w; x++) {
+        uint8_t *px = dst + x * 4;
+        px[0] = v[x]; px[1] = v[x]; px[2] = v[x]; px[3] = 255;
+    }
+}
+
+inline int ringSlot(int v, int n) {
+    int m = v % n;
+    return m < 0 ? m + n : m;
+}
+
+/*
+ Separably smoothed rows of a plane, unnormalised (weights sum to op.divisor), with pad clamped
+ columns on each side. Rows must be requested in non-decreasing order; the last three stay valid.
+ Radius 0 passes the input through. Box kernels keep running sums instead of applying taps: a prefix
+ sum difference across each row and a column sum that adds the entering row and drops the leaving one,
+ so their cost per pixel does not depend on the radius.
+*/
+class SmoothRows {
+public:
+    SmoothRows(const FilterPlan::Op &op, const Plane &in, int w, int h, int pad)
+            : op(op), in(in), w(w), h(h), pad(pad), n(2 * op.radius + 1) {
+        ScratchArena &scratch = ScratchArena::current();
+        row = scratch.get<uint8_t>(SCRATCH_SMOOTH_ROW, (size_t) w + 2 * op.radius);
+        hRows = scratch.get<int32_t>(SCRATCH_SMOOTH_H, (size_t) n * w);
+        outRows = scratch.get<int32_t>(SCRATCH_SMOOTH_OUT, (size_t) 3 * (w + 2 * pad));
+        if (op.box) {
+            prefix = scratch.get<int32_t>(SCRATCH_SMOOTH_PREFIX, (size_t) w + 2 * op.radius + 1);
+            column = scratch.get<int32_t>(SCRATCH_SMOOTH_COLUMN, (size_t) w);
+        }
+    }
+
+    const int32_t *get(int y) {
+        y = clampRow(y, h);
+        int32_t *out = outRows + (size_t) (y % 3) * (this->w + 2 * this->pad);
+        if (cached[y % 3] == y) return out;
+        if (op.box) {
+            advanceColumn(y);
+            int32_t *o = out + pad;
+            memcpy(o, column, (size_t) w * sizeof(int32_t));
+            for (int i = 0; i < pad; i++) { out[i] = o[0]; o[w + i] = o[w - 1]; }
+            cached[y % 3] = y;
+            return out;
+        }
+
+        // Horizontal pass for input rows y - r .. y + r that the ring does not hold yet. Locals, so the
+        // stores below cannot alias the loop bounds.
+        const int w = this->w, n = this->n, pad = this->pad;
+        int r = op.radius;
+        int from = nextInput > y - r ? nextInput : y - r;
+        for (int u = from; u <= y + r; u++) {
+            loadPadded(in, clampRow(u, h), w, r, row);
+            int32_t *__restrict hr = hRows + (size_t) ringSlot(u, n) * w;
+            int t0 = op.taps[0];
+            for (int x = 0; x < w; x++) hr[x] = t0 * row[x];
+            for (int k = 1; k < n; k++) {
+                const uint8_t *__restrict shifted = row + k;
+                int t = op.taps[k];
+                for (int x = 0; x < w; x++) hr[x] += t * shifted[x];
+            }
+        }
+        nextInput = y + r + 1;
+
+        int32_t *__restrict o = out + pad;
+        memset(o, 0, (size_t) w * sizeof(int32_t));
+        for (int k = 0; k < n; k++) {
+            const int32_t *__restrict hr = hRows + (size_t) ringSlot(y - r + k, n) * w;
+            int t = op.taps[k];
+            for (int x = 0; x < w; x++) o[x] += t * hr[x];
+        }
+        for (int i = 0; i < pad; i++) { out[i] = o[0]; o[w + i] = o[w - 1]; }
+        cached[y % 3] = y;
+        return out;
+    }
+
+private:
+    // Box sum over 2r+1 columns of input row u into its ring slot, added to column. With replace, the row
+    // that held the slot before is subtracted from column first.
+    void slideRow(int u, bool replace) {
+        const int w = this->w, n = this->n;
+        loadPadded(in, clampRow(u, h), w, op.radius, row);
+        int32_t *__restrict p = prefix;
+        p[0] = 0;
+        for (int i = 0; i < w + n - 1; i++) p[i + 1] = p[i] + row[i];
+        int32_t *__restrict hr = hRows + (size_t) ringSlot(u, n) * w;
+        int32_t *__restrict c = column;
+        if (replace) {
+            for (int x = 0; x < w; x++) {
+                int32_t v = p[x + n] - p[x];
+                c[x] += v - hr[x];
+                hr[x] = v;
+            }
+        } else {
+            for (int x = 0; x < w; x++) {
+                int32_t v = p[x + n] - p[x];
+                c[x] += v;
+                hr[x] = v;
+            }
+        }
+    }
+
+    // column = sum of the horizontal box sums of rows y - r .. y + r
+    void advanceColumn(int y) {
+        int r = op.radius;
+        if (columnRow != NO_ROW && y > columnRow && y - columnRow < n) {
+            // Row u + r enters and takes the ring slot of row u - r - 1, which leaves
+            for (int u = columnRow + 1; u <= y; u++) slideRow(u + r, true);
+        } else if (y != columnRow) {
+            memset(column, 0, (size_t) w * sizeof(int32_t));
+            for (int u = y - r; u <= y + r; u++) slideRow(u, false);
+        }
+        columnRow = y;
+    }
+
+    static const int NO_ROW = -(1 << 30);
+
+    const FilterPlan::Op &op;
+    const Plane &in;
+    int w, h, pad, n;
+    uint8_t *row;
+    int32_t *hRows;
+    int32_t *outRows;
+    int32_t *prefix = nullptr;
+    int32_t *column = nullptr;
+    int columnRow = NO_ROW;
+    int nextInput = -(1 << 30);
+    int cached[3] = { -1, -1, -1 };
+};
+
+inline uint8_t epilogue(int v, int threshold) {
+    if (threshold >= 0) return v > threshold ? 255 : 0;
+    return (uint8_t) (v > 255 ? 255 : v);
+}
+
+void pointBand(const FilterPlan::Op &op, const Plane &in, uint8_t *out, int outStride, int outBpp,
+               int w, int /*h*/, int y0, int y1) {
+    uint8_t *buf = ScratchArena::current().get<uint8_t>(SCRATCH_PASS_ROW, (size_t) w);
+    for (int y = y0; y < y1; y++) {
+        loadPadded(in, y, w, 0, buf);
+        for (int x = 0; x < w; x++) buf[x] = epilogue(buf[x], op.threshold);
+        storeRow(buf, out + (size_t) y * outStride, outBpp, w);
+    }
+}
+
+void smoothBand(const FilterPlan::Op &op, const Plane &in, uint8_t *out, int outStride, int outBpp,
+                int w, int h, int y0, int y1) {
+    SmoothRows rows(op, in, w, h, 0);
+    uint8_t *buf = ScratchArena::current().get<uint8_t>(SCRATCH_PASS_ROW, (size_t) w);
+    // floor(s / divisor) as a multiply: exact for powers of two, and for s * divisor < 2^32 otherwise,
+    // which holds since s <= 255 * divisor and box divisors are at most 31^2
+    uint64_t reciprocal = (0xFFFFFFFFull + op.divisor) / op.divisor;
+    for (int y = y0; y < y1; y++) {
+        const int32_t *s = rows.get(y);
+        for (int x = 0; x < w; x++) buf[x] = epilogue((int) (((uint64_t) s[x] * reciprocal) >> 32), op.threshold);
+        storeRow(buf, out + (size_t) y * outStride, outBpp, w);
+    }
+}
+
+// Squared gradient magnitude of row y of the (optionally smoothed) input, and its direction for NON_MAX:
+// 0 horizontal, 1 vertical, 2 down-right diagonal, 3 up-right diagonal.
+void gradientRow(const FilterPlan::Op &op, SmoothRows &rows, int y, int w, int64_t *m2, uint8_t *dir) {
+    const int32_t *a = rows.get(y - 1);
+    const int32_t *b = rows.get(y);
+    const int32_t *c = rows.get(y + 1);
+    int side = op.scharr ? 3 : 1, mid = op.scharr ? 10 : 2;
+    for (int x = 0; x < w; x++) {
+        // Rows are padded by one column, so index x + 1 is column x
+        int64_t gx = (int64_t) side * (a[x+2] - a[x]) + (int64_t) mid * (b[x+2] - b[x]) + (int64_t) side * (c[x+2] - c[x]);
+        int64_t gy = (int64_t) side * (c[x] - a[x]) + (int64_t) mid * (c[x+1] - a[x+1]) + (int64_t) side * (c[x+2] - a[x+2]);
+        m2[x] = gx * gx + gy * gy;
+        if (dir) {
+            int64_t ax = gx < 0 ? -gx : gx, ay = gy < 0 ? -gy : gy;
+            // tan(22.5 deg) ~ 2/5
+            if (ay * 5 < ax * 2) dir[x] = 0;
+            else if (ax * 5 < ay * 2) dir[x] = 1;
+            else dir[x] = (gx > 0) == (gy > 0) ? 2 : 3;
+        }
+    }
+}
+
+inline int64_t isqrt(int64_t v) {
+    int64_t r = (int64_t) std::sqrt((double) v);
+    while (r * r > v) r--;
+    while ((r + 1) * (r + 1) <= v) r++;
+    return r;
+}
+
+void gradientBand(const FilterPlan::Op &op, const Plane &in, uint8_t *out, int outStride, int outBpp,
+                  int w, int h, int y0, int y1) {
+    SmoothRows rows(op, in, w, h, 1);
+    // Magnitudes are compared in Sobel units of the unsmoothed input
+    int64_t scale = (int64_t) (op.scharr ? 4 : 1) * op.divisor;
+    int64_t thresholdSq = op.threshold >= 0 ? (int64_t) op.threshold * op.threshold * scale * scale : -1;
+
+    // Rings of three magnitude rows, padded by one zero column on each side for NON_MAX, and their directions
+    size_t mw = (size_t) w + 2;
+    ScratchArena &scratch = ScratchArena::current();
+    int64_t *mags = scratch.get<int64_t>(SCRATCH_GRADIENT_MAG, 3 * mw);
+    uint8_t *dirs = scratch.get<uint8_t>(SCRATCH_GRADIENT_DIR, 3 * (size_t) w);
+    uint8_t *buf = scratch.get<uint8_t>(SCRATCH_PASS_ROW, (size_t) w);
+
+    // Rows are computed in increasing order, as SmoothRows requires
+    auto magRow = [&](int y) {
+        int64_t *m = mags + ringSlot(y, 3) * mw;
+        m[0] = 0;
+        m[w + 1] = 0;
+        if (y < 0 || y >= h) memset(m + 1, 0, (size_t) w * sizeof(int64_t));
+        else gradientRow(op, rows, y, w, m + 1, op.nonMax ? dirs + ringSlot(y, 3) * w : nullptr);
+    };
+
+    if (op.nonMax) magRow(y0 - 1);
+    magRow(y0);
+    for (int y = y0; y < y1; y++) {
+        if (op.nonMax) magRow(y + 1);
+        const int64_t *m = mags + ringSlot(y, 3) * mw;
+        const int64_t *up = mags + ringSlot(y - 1, 3) * mw;
+        const int64_t *down = mags + ringSlot(y + 1, 3) * mw;
+        const uint8_t *dir = dirs + ringSlot(y, 3) * w;
+        for (int x = 0; x < w; x++) {
+            int64_t v = m[x + 1];
+            if (op.nonMax && v > 0) {
+                int64_t p, q;
+                switch (dir[x]) {
+                    case 0: p = m[x]; q = m[x + 2]; break;
+                    case 1: p = up[x + 1]; q = down[x + 1]; break;
+                    case 2: p = up[x]; q = down[x + 2]; break;
+                    default: p = up[x + 2]; q = down[x]; break;
+                }
+                // Strict on one side so a plateau two pixels wide keeps exactly one of them
+                if (!(v > p && v >= q)) v = 0;
+            }
+            if (thresholdSq >= 0) {
+                buf[x] = v > thresholdSq ? 255 : 0;
+            } else {
+                int64_t magnitude = isqrt(v) / scale;
+                buf[x] = (uint8_t) (magnitude > 255 ? 255 : magnitude);
+            }
+        }
+        if (!op.nonMax && y + 1 < y1) magRow(y + 1);
+        storeRow(buf, out + (size_t) y * outStride, outBpp, w);
+    }
+}
+
+void dilateBand(const FilterPlan::Op &op, const Plane &in, uint8_t *out, int outStride, int outBpp,
+                int w, int h, int y0, int y1) {
+    int r = op.radius, n = 2 * r + 1;
+    ScratchArena &scratch = ScratchArena::current();
+    uint8_t *row = scratch.get<uint8_t>(SCRATCH_DILATE_ROW, (size_t) w + 2 * r);
+    uint8_t *maxRows = scratch.get<uint8_t>(SCRATCH_DILATE_MAX, (size_t) n * w);
+    uint8_t *buf = scratch.get<uint8_t>(SCRATCH_PASS_ROW, (size_t) w);
+
+    for (int u = y0 - r; u < y1 + r; u++) {
+        // Horizontal max of input row u into the ring
+        loadPadded(in, clampRow(u, h), w, r, row);
+        uint8_t *hm = maxRows + (size_t) ringSlot(u, n) * w;
+        for (int x = 0; x < w; x++) {
+            uint8_t m = row[x];
+            for (int k = 1; k < n; k++) if (row[x + k] > m) m = row[x + k];
+            hm[x] = m;
+        }
+        int y = u - r;
+        if (y < y0) continue;
+        memcpy(buf, maxRows + (size_t) ringSlot(y - r, n) * w, (size_t) w);
+        for (int k = 1; k < n; k++) {
+            const uint8_t *m = maxRows + (size_t) ringSlot(y - r + k, n) * w;
+            for (int x = 0; x < w; x++) if (m[x] > buf[x]) buf[x] = m[x];
+        }
+        if (op.threshold >= 0) for (int x = 0; x < w; x++) buf[x] = epilogue(buf[x], op.threshold);
+        storeRow(buf, out + (size_t) y * outStride, outBpp, w);
+    }
+}
+
+struct PassJob {
+    const FilterPlan::Op *op;
+    Plane in;
+    uint8_t *out;
+    int outStride, outBpp, w, h, bands;
+};
+
+void runPassBand(void *ctx, int band) {
+    const PassJob &job = *(const PassJob *) ctx;
+    int y0 = (int) ((int64_t) job.h * band / job.bands);
+    int y1 = (int) ((int64_t) job.h * (band + 1) / job.bands);
+    switch (job.op->kind) {
+        case OP_POINT: pointBand(*job.op, job.in, job.out, job.outStride, job.outBpp, job.w, job.h, y0, y1); break;
+        case OP_SMOOTH: smoothBand(*job.op, job.in, job.out, job.outStride, job.outBpp, job.w, job.h, y0, y1); break;
+        case OP_GRADIENT: gradientBand(*job.op, job.in, job.out, job.outStride, job.outBpp, job.w, job.h, y0, y1); break;
+        default: dilateBand(*job.op, job.in, job.out, job.outStride, job.outBpp, job.w, job.h, y0, y1); break;
+    }
+}
+
+FilterPlan::Op newOp(int kind) {
+    FilterPlan::Op op;
+    memset(&op, 0, sizeof(op));
+    op.kind = kind;
+    op.taps[0] = 1;
+    op.divisor = 1;
+    op.threshold = -1;
+    return op;
+}
+
+void setSmoothing(FilterPlan::Op &op, int type, int radius) {
+    op.radius = radius;
+    op.box = type == STAGE_BOX;
+    int sum = 0;
+    for (int k = 0; k <= 2 * radius; k++) {
+        if (type == STAGE_BOX) {
+            op.taps[k] = 1;
+        } else {
+            // Binomial coefficient C(2r, k)
+            int c = 1;
+            for (int i = 0; i < k; i++) c = c * (2 * radius - i) / (i + 1);
+            op.taps[k] = c;
+        }
+        sum += op.taps[k];
+    }
+    op.divisor = sum * sum;
+}
+
+}
+
+const char *FilterPlan::compile(const int *stages, int count) {
+    mode = -1;
+    borderMode = BORDER_CLAMP;
+    ops.clear();
+    if (count < 0 || count > MAX_STAGES) return "too many stages";
+
+    bool border = count > 0 && stages[0] == STAGE_BORDER;
+    if (border) {
+        if (stages[1] != BORDER_CLAMP && stages[1] != BORDER_KEEP) return "BORDER must be BORDER_CLAMP or BORDER_KEEP";
+        borderMode = stages[1];
+        stages += 2;
+        count--;
+    }
+    int first = count > 0 && stages[0] == STAGE_GRAY ? 1 : 0;
+    const int *s = stages + 2 * first;
+    int n = count - first;
+    if (n == 0) {
+        mode = first ? MODE_GRAYSCALE : MODE_ORIGINAL;
+        return nullptr;
+    }
+    // The kernels' own border differs from the clamped result, but only within the ring BORDER_KEEP restores
+    bool keep = borderMode == BORDER_KEEP;
+    if (keep && n == 1 && s[0] == STAGE_BOX && s[1] == 1) {
+        mode = MODE_BLUR;
+        return nullptr;
+    }
+    if (keep && n == 3 && s[0] == STAGE_BOX && s[1] == 1 && s[2] == STAGE_SOBEL && s[4] == STAGE_THRESHOLD
+            && s[5] == 50) {
+        mode = MODE_EDGE;
+        return nullptr;
+    }
+    if (n == 1 && s[0] == STAGE_PYRAMID_EDGE) {
+        if (border) return "BORDER does not apply to PYRAMID_EDGE";
+        if (s[1] < 0 || s[1] > MAX_PYRAMID_LEVEL) return "PYRAMID_EDGE level must be 0..4";
+        mode = MODE_PYRAMID_EDGE;
+        pyramidLevel = s[1];
+        return nullptr;
+    }
+
+    int previous = 0;
+    for (int i = 0; i < n; i++, previous = s[2 * i - 2]) {
+        int type = s[2 * i], param = s[2 * i + 1];
+        Op *last = ops.empty() ? nullptr : &ops.back();
+        switch (type) {
+            case STAGE_GRAY:
+                return "GRAY is only valid as the first stage";
+            case STAGE_BOX:
+            case STAGE_GAUSSIAN: {
+                int max = type == STAGE_BOX ? MAX_RADIUS : MAX_GAUSSIAN_RADIUS;
+                if (param < 1 || param > max) return type == STAGE_BOX ? "BOX radius must be 1..15" : "GAUSSIAN radius must be 1..4";
+                Op op = newOp(OP_SMOOTH);
+                setSmoothing(op, type, param);
+                ops.push_back(op);
+                break;
+            }
+            case STAGE_SOBEL:
+            case STAGE_SCHARR:
+                if (last && last->kind == OP_SMOOTH && last->threshold < 0) {
+                    // Differentiate the exact smoothed sums in the same pass
+                    last->kind = OP_GRADIENT;
+                } else {
+                    ops.push_back(newOp(OP_GRADIENT));
+                    last = &ops.back();
+                }
+                last->scharr = type == STAGE_SCHARR;
+                break;
+            case STAGE_NON_MAX:
+                if (previous != STAGE_SOBEL && previous != STAGE_SCHARR) return "NON_MAX must directly follow SOBEL or SCHARR";
+                last->nonMax = true;
+                break;
+            case STAGE_THRESHOLD:
+                if (param < 0) return "THRESHOLD must not be negative";
+                if (!last || last->threshold >= 0) {
+                    ops.push_back(newOp(OP_POINT));
+                    last = &ops.back();
+                }
+                last->threshold = param;
+                break;
+            case STAGE_DILATE: {
+                if (param < 1 || param > MAX_RADIUS) return "DILATE radius must be 1..15";
+                Op op = newOp(OP_DILATE);
+                op.radius = param;
+                ops.push_back(op);
+                break;
+            }
+            case STAGE_PYRAMID_EDGE:
+                return "PYRAMID_EDGE is only valid alone or after GRAY";
+            case STAGE_BORDER:
+                return "BORDER is only valid as the first stage";
+            default:
+                return "unknown stage type";
+        }
+    }
+    return nullptr;
+}
+
+void FilterPlan::setIncremental(int maxTileSad) {
+    this->maxTileSad = maxTileSad;
+}
+
+const char *FilterPlan::setAdaptiveThreshold(int method, int targetPerMille, float smoothing, bool hysteresis) {
+    return adaptive.configure(method, targetPerMille, smoothing, hysteresis);
+}
+
+namespace {
+
+// Calls fn(y, x0, x1) for the pixels of rows [y0, y1) within ring of the frame edge, clipped to columns [cx0, cx1)
+template <class Fn>
+void borderSpans(int w, int h, int ring, int y0, int y1, int cx0, int cx1, Fn fn) {
+    auto clipped = [&](int y, int x0, int x1) {
+        if (x0 < cx0) x0 = cx0;
+        if (x1 > cx1) x1 = cx1;
+        if (x0 < x1) fn(y, x0, x1);
+    };
+    for (int y = y0; y < y1; y++) {
+        if (y < ring || y >= h - ring || 2 * ring >= w) {
+            clipped(y, 0, w);
+        } else {
+            clipped(y, 0, ring);
+            clipped(y, w - ring, w);
+        }
+    }
+}
+
+// Copies the frame's border ring out of src, before an in-place run can overwrite it
+uint8_t *saveBorder(const uint8_t *src, int srcStride, int w, int h, int ring, int bpp) {
+    size_t pixels = (size_t) 2 * ring * ((size_t) w + h);
+    if (pixels > (size_t) w * h) pixels = (size_t) w * h;
+    uint8_t *kept = ScratchArena::current().get<uint8_t>(SCRATCH_BORDER, pixels * bpp);
+    uint8_t *at = kept;
+    borderSpans(w, h, ring, 0, h, 0, w, [&](int y, int x0, int x1) {
+        size_t bytes = (size_t) (x1 - x0) * bpp;
+        memcpy(at, src + (size_t) y * srcStride + (size_t) x0 * bpp, bytes);
+        at += bytes;
+    });
+    return kept;
+}
+
+void restoreBorder(const uint8_t *kept, uint8_t *dst, int dstStride, int w, int h, int ring, int bpp) {
+    borderSpans(w, h, ring, 0, h, 0, w, [&](int y, int x0, int x1) {
+        size_t bytes = (size_t) (x1 - x0) * bpp;
+        memcpy(dst + (size_t) y * dstStride + (size_t) x0 * bpp, kept, bytes);
+        kept += bytes;
+    });
+}
+
+}
+
+int FilterPlan::run(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int bytesPerPixel) {
+    ScratchContext::Scope scope(context ? context : ScratchContext::bound());
+    if (context) context->prepare(w, h);
+    int ring = borderMode == BORDER_KEEP ? halo() : 0;
+    const uint8_t *kept = ring > 0 ? saveBorder(src, srcStride, w, h, ring, bytesPerPixel) : nullptr;
+    int recomputed = execute(src, srcStride, dst, dstStride, w, h, bytesPerPixel, true);
+    if (kept) restoreBorder(kept, dst, dstStride, w, h, ring, bytesPerPixel);
+    if (context) context->spread();
+    return recomputed;
+}
+
+int FilterPlan::halo() const {
+    if (mode == MODE_PYRAMID_EDGE) return pyramidEdgeReach(pyramidLevel);
+    if (adaptiveEdge()) return edgeReach(adaptive.options());
+    if (mode >= 0) return modeReach(mode);
+    int reach = 0;
+    for (const Op &op : ops) {
+        // A gradient reads one pixel past its smoothing front, NON_MAX one past the gradient
+        reach += op.radius;
+        if (op.kind == OP_GRADIENT) reach += op.nonMax ? 2 : 1;
+    }
+    return reach;
+}
+
+namespace {
+
+/*
+ Rectangle clipped to the frame (x0, y0, x1, y1) and the window around it, its origin rounded down to a
+ multiple of align (a power of two); false when the rectangle is empty
+*/
+bool regionWindow(const int *rect, int w, int h, int grow, int align, int *r, int *win) {
+    if (rect[2] <= 0 || rect[3] <= 0 || rect[0] >= w || rect[1] >= h) return false;
+    int64_t x1 = (int64_t) rect[0] + rect[2], y1 = (int64_t) rect[1] + rect[3];
+    r[0] = rect[0] < 0 ? 0 : rect[0];
+    r[1] = rect[1] < 0 ? 0 : rect[1];
+    r[2] = x1 > w ? w : (int) x1;
+    r[3] = y1 > h ? h : (int) y1;
+    if (r[0] >= r[2] || r[1] >= r[3]) return false;
+    win[0] = r[0] - grow < 0 ? 0 : (r[0] - grow) & ~(align - 1);
+    win[1] = r[1] - grow < 0 ? 0 : (r[1] - grow) & ~(align - 1);
+    win[2] = r[2] > w - grow ? w : r[2] + grow;
+    win[3] = r[3] > h - grow ? h : r[3] + grow;
+    return true;
+}
+
+}
+
+void FilterPlan::runRegions(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h,
+                            int bytesPerPixel, const int *rects, int count) {
+    ScratchContext::Scope scope(context ? context : ScratchContext::bound());
+    if (context) context->prepare(w, h);
+    int grow = halo();
+    // A pyramid window must share the frame's grid of coarse pixels
+    int align = mode == MODE_PYRAMID_EDGE ? 1 << pyramidLevel : 1;
+    int r[4], win[4];
+    size_t total = 0;
+    for (int i = 0; i < count; i++) {
+        if (regionWindow(rects + 4 * i, w, h, grow, align, r, win))
+            total += (size_t) (win[2] - win[0]) * (win[3] - win[1]) * bytesPerPixel;
+    }
+    if (total == 0) return;
+
+    // A window's own border rows and columns are clamped (or kept, for the built-in kernels) where the
+    // frame's neighbours would have been read; halo() pixels in, that no longer reaches the rectangle
+    uint8_t *windows = ScratchArena::current().get<uint8_t>(SCRATCH_REGION_WINDOWS, total);
+    uint8_t *out = windows;
+    int ring = borderMode == BORDER_KEEP ? grow : 0;
+    for (int i = 0; i < count; i++) {
+        if (!regionWindow(rects + 4 * i, w, h, grow, align, r, win)) continue;
+        int ww = win[2] - win[0], wh = win[3] - win[1];
+        size_t rowBytes = (size_t) ww * bytesPerPixel;
+        execute(src + (size_t) win[1] * srcStride + (size_t) win[0] * bytesPerPixel, srcStride,
+                out, (int) rowBytes, ww, wh, bytesPerPixel, false);
+        // The frame's own border ring, where the window has one; src is intact until the stores below
+        borderSpans(w, h, ring, win[1], win[3], win[0], win[2], [&](int y, int x0, int x1) {
+            memcpy(out + (size_t) (y - win[1]) * rowBytes + (size_t) (x0 - win[0]) * bytesPerPixel,
+                   src + (size_t) y * srcStride + (size_t) x0 * bytesPerPixel, (size_t) (x1 - x0) * bytesPerPixel);
+        });
+        out += rowBytes * wh;
+    }
+    out = windows;
+    for (int i = 0; i < count; i++) {
+        if (!regionWindow(rects + 4 * i, w, h, grow, align, r, win)) continue;
+        int ww = win[2] - win[0], wh = win[3] - win[1];
+        size_t rowBytes = (size_t) ww * bytesPerPixel;
+        for (int y = r[1]; y < r[3]; y++) {
+            memcpy(dst + (size_t) y * dstStride + (size_t) r[0] * bytesPerPixel,
+                   out + (size_t) (y - win[1]) * rowBytes + (size_t) (r[0] - win[0]) * bytesPerPixel,
+                   (size_t) (r[2] - r[0]) * bytesPerPixel);
+        }
+        out += rowBytes * wh;
+    }
+    if (context) context->spread();
+}
+
+int FilterPlan::execute(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h,
+                        int bytesPerPixel, bool wholeFrame) {
+    if (mode == MODE_PYRAMID_EDGE) {
+        processPyramidEdge(src, srcStride, dst, dstStride, w, h, bytesPerPixel, pyramidLevel);
+        return -1;
+    }
+    if (adaptiveEdge()) {
+        // The histogram of a region window says little about the frame, so only whole frames update it
+        EdgeStats *stats = wholeFrame ? &edgeStats : nullptr;
+        processEdge(src, srcStride, dst, dstStride, w, h, bytesPerPixel, adaptive.options(), stats);
+        if (stats) adaptive.update(*stats);
+        return -1;
+    }
+    if (mode >= 0) {
+        if (bytesPerPixel == 4) {
+            processRgba(src, srcStride, dst, dstStride, w, h, mode);
+        } else if (wholeFrame && maxTileSad >= 0 && (mode == MODE_BLUR || mode == MODE_EDGE)) {
+            return incremental.process(src, srcStride, dst, dstStride, w, h, mode, (uint32_t) maxTileSad);
+        } else if (!(src == dst && mode == MODE_GRAYSCALE)) {
+            // Gray input is already the grayscale result
+            processGray(src, srcStride, dst, dstStride, w, h, mode);
+        }
+        return -1;
+    }
+
+    size_t planeBytes = (size_t) w * h;
+    ScratchArena &scratch = ScratchArena::current();
+    uint8_t *planes[2] = { nullptr, nullptr };
+    if (ops.size() > 1) planes[0] = scratch.get<uint8_t>(SCRATCH_PLANE_0, planeBytes);
+    if (ops.size() > 2 || src == dst) planes[1] = scratch.get<uint8_t>(SCRATCH_PLANE_1, planeBytes);
+
+    Plane in = { src, srcStride, bytesPerPixel };
+    if (src == dst && ops.size() == 1 && ops[0].kind != OP_POINT) {
+        // The only pass would overwrite rows its neighbouring bands still read
+        for (int y = 0; y < h; y++) loadPadded(in, y, w, 0, planes[1] + (size_t) y * w);
+        in = { planes[1], w, 1 };
+    }
+
+    WorkerPool &pool = WorkerPool::instance();
+    int bands = pool.workerCount();
+    if (bands > h / MIN_BAND_ROWS) bands = h / MIN_BAND_ROWS;
+    if (bands < 1) bands = 1;
+    for (size_t i = 0; i < ops.size(); i++) {
+        bool last = i + 1 == ops.size();
+        uint8_t *out = last ? dst : planes[i % 2];
+        PassJob job = { &ops[i], in, out, last ? dstStride : w, last ? bytesPerPixel : 1, w, h, bands };
+        pool.run(bands, runPassBand, &job);
+        in = { out, w, 1 };
+    }
+    return -1;
+}
@@ -0,0 +1,147 @@
+#pragma once
+
+#include <cstdint>
+#include <vector>
+
+#include "adaptive_threshold.h"
+#include "incremental_edge.h"
+#include "scratch_arena.h"
+
+/*
+ Filter graphs built from a linear chain of stages, mirroring NativeLib.STAGE_*. Each stage is a
+ (type, parameter) pair:
+
+   GRAY          RGBA to gray (edge_kernel.h formula); only valid first, implicit for gray input
+   BOX r         mean over a (2r+1)^2 square, r 1..15, floor(sum / (2r+1)^2); running sums, so the
+                 cost per pixel is the same for every radius
+   GAUSSIAN r    separable binomial kernel of 2r+1 taps, r 1..4, floored like BOX
+   SOBEL         3x3 gradient; the output is its magnitude, clamped to 255
+   SCHARR        3x3 Scharr gradient, reported in Sobel units (magnitude / 4)
+   NON_MAX       zeroes gradient pixels that are not a maximum along the gradient direction;
+                 must follow SOBEL or SCHARR. Pixels outside the frame count as 0
+   THRESHOLD t   255 where the value is > t, else 0; after a gradient it compares the exact magnitude
+   DILATE r      max over a (2r+1)^2 square, r 1..15
+   PYRAMID_EDGE l  MODE_PYRAMID_EDGE at level l, 0..4 (pyramid_edge.h); only valid alone or after GRAY
+   BORDER b      the frame border convention of the whole plan, BORDER_CLAMP (the default without this
+                 stage) or BORDER_KEEP; only valid first, and not with PYRAMID_EDGE
+
+ The border convention decides the pixels within halo() of the frame edge, whose neighbourhood reaches
+ outside the frame. BORDER_CLAMP computes them with reads clamped to the nearest edge pixel. BORDER_KEEP
+ leaves them at the source pixel (RGBA frames keep their colour); every other pixel is the same as with
+ BORDER_CLAMP.
+
+ compile() turns the chain into a plan of full-frame passes. Adjacent stages are fused where that saves
+ a pass: THRESHOLD becomes the epilogue of the pass before it, a smoothing stage feeding a gradient is
+ evaluated inside the gradient pass on its exact (unrounded) sums, and NON_MAX runs in the gradient pass.
+ BORDER_KEEP chains equal to a built-in mode (nothing; GRAY; BOX 1; BOX 1, SOBEL, THRESHOLD 50, each
+ optionally after GRAY) compile to the hand-fused kernels of edge_kernel.h instead: those only differ from
+ the clamped result within modeReach() of the edge, and the plan restores the source there, so the
+ output is the same either way. BORDER_CLAMP chains never do, whatever their parameters. Intermediate
+ planes and row buffers come from the scratch arenas of the plan's ScratchContext, or of the calling
+ thread without one (scratch_arena.h).
+*/
+
+enum {
+    STAGE_GRAY = 1,
+    STAGE_BOX = 2,
+    STAGE_GAUSSIAN = 3,
+    STAGE_SOBEL = 4,
+    STAGE_SCHARR = 5,
+    STAGE_THRESHOLD = 6,
+    STAGE_NON_MAX = 7,
+    STAGE_DILATE = 8,
+    STAGE_PYRAMID_EDGE = 9,
+    STAGE_BORDER = 10,
+};
+
+enum {
+    BORDER_CLAMP = 0,
+    BORDER_KEEP = 1,
+};
+
+class FilterPlan {
+public:
+    static const int MAX_STAGES = 16;
+    static const int MAX_RADIUS = 15;
+    static const int MAX_GAUSSIAN_RADIUS = 4;
+    static const int MAX_REGIONS = 64;
+
+    /*
+     Builds the plan from count (type, parameter) pairs, replacing any previous one. Returns null on
+     success or a description of the first invalid stage; the plan is unusable after an error.
+    */
+    const char *compile(const int *stages, int count);
+
+    /*
+     Runs the plan on a frame of bytesPerPixel 4 (RGBA) or 1 (gray); dst gets the same layout, with
+     the result replicated into R, G and B for RGBA. src and dst may alias. Returns the number of tiles
+     recomputed when the incremental path ran (see setIncremental), otherwise -1.
+    */
+    int run(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int bytesPerPixel);
+
+    /*
+     run() output for count rectangles only, each an (x, y, width, height) quadruple clipped to the frame;
+     the pixels inside them are bit-identical to a full run and the rest of dst is not touched, so the
+     cost follows the rectangles' area rather than the frame's. Every rectangle is filtered on a window
+     grown by halo() pixels, and all windows are filtered before any result is stored, so src and dst may
+     alias and rectangles may overlap. Never uses the incremental path.
+    */
+    void runRegions(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int bytesPerPixel,
+                    const int *rects, int count);
+
+    // Pixels past a rectangle that its result depends on
+    int halo() const;
+
+    /*
+     Lets plans compiled to the built-in blur or edge kernel (BORDER_KEEP chains) use IncrementalEdge on gray
+     input with this tile threshold; a negative value turns it off (the default).
+    */
+    void setIncremental(int maxTileSad);
+
+    /*
+     Lets a plan compiled to the built-in edge kernel pick its threshold from the previous run() (see
+     AdaptiveThreshold). Each run() then gathers the gradient histogram in its edge pass and skips the
+     incremental path; runRegions() uses the current threshold without updating it. Returns null on success
+     or a description of the invalid argument, which leaves the previous setting.
+    */
+    const char *setAdaptiveThreshold(int method, int targetPerMille, float smoothing, bool hysteresis);
+
+    const AdaptiveThreshold &adaptiveThreshold() const { return adaptive; }
+
+    // Scratch for run(); the context must outlive the plan or be replaced first. Null uses the thread's own.
+    void setContext(ScratchContext *context) { this->context = context; }
+
+    // MODE_* when the chain compiled to a built-in kernel, otherwise -1
+    int builtinMode() const { return mode; }
+
+    int border() const { return borderMode; }
+
+    int passCount() const { return mode >= 0 ? 1 : (int) ops.size(); }
+
+    struct Op {
+        int kind;
+        int radius;          // smoothing front (gradient) or the pass's own radius
+        int taps[2 * MAX_RADIUS + 1];
+        int divisor;         // sum of taps, squared: the 2D kernel weight
+        bool box;            // all taps 1: smoothed with running sums
+        bool scharr;
+        bool nonMax;
+        int threshold;       // epilogue, -1 for none
+    };
+
+private:
+    int execute(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int bytesPerPixel,
+                bool wholeFrame);
+
+    bool adaptiveEdge() const { return mode == MODE_EDGE && adaptive.enabled(); }
+
+    int mode = -1;
+    int borderMode = BORDER_CLAMP;
+    int pyramidLevel = 0;   // MODE_PYRAMID_EDGE only
+    std::vector<Op> ops;
+    ScratchContext *context = nullptr;
+    IncrementalEdge incremental;
+    int maxTileSad = -1;
+    AdaptiveThreshold adaptive;
+    EdgeStats edgeStats;
+};
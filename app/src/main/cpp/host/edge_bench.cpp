@@ -0,0 +1,181 @@
+#include <chrono>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <functional>
+#include <thread>
+#include <vector>
+
+#include "adaptive_threshold.h"
+#include "edge_kernel.h"
+#include "filter_graph.h"
+#include "incremental_edge.h"
+#include "pyramid_edge.h"
+#include "test_frames.h"
+#include "worker_pool.h"
+#include "yuv_convert.h"
+
+/*
+ Throughput of the processing core per mode, resolution and thread count.
+ Usage: edge-bench [maxThreads] [frames]
+ Thread counts run 1, 2, 4, ... up to maxThreads (default: all cores). "incr" rows run the incremental
+ edge filter on a static frame and with one tile in twenty changing every frame; "graph" rows run filter
+ graphs on the gray frame; the box radius sweep should stay flat. Prints one row per case:
+   stage, size, threads, ms/frame, Mpix/s, speedup over 1 thread
+ "pyramid" rows (720p and up) run the pyramid edge mode on a camera-like scene; their speedup is over the
+ gray edge kernel on the same frame and thread count, followed by the share of pixels equal to that
+ kernel's output and of its edge pixels found. "edge stats" rows gather the gradient histogram in the edge
+ pass and "edge hysteresis" adds a weak threshold; their speedup is over the plain gray edge kernel, so
+ below 1 is their cost. They are followed by the thresholds an adaptive plan settles on for the scene.
+*/
+
+struct Resolution { int w, h; };
+
+static double timeFrames(int frames, const std::function<void()> &fn) {
+    for (int i = 0; i < 5; i++) fn();
+    auto start = std::chrono::steady_clock::now();
+    for (int i = 0; i < frames; i++) fn();
+    return std::chrono::duration<double, std::milli>(std::chrono::steady_clock::now() - start).count() / frames;
+}
+
+static void report(const char *stage, const Resolution &r, int threads, double ms, double base) {
+    char size[16];
+    snprintf(size, sizeof(size), "%dx%d", r.w, r.h);
+    printf("%-16s %-10s %7d %10.3f %10.1f %7.2fx\n", stage, size, threads, ms, r.w * (double) r.h / (ms * 1000.0), base / ms);
+}
+
+int main(int argc, char **argv) {
+    unsigned hw = std::thread::hardware_concurrency();
+    int maxThreads = argc > 1 ? atoi(argv[1]) : (hw ? (int) hw : 1);
+    int frames = argc > 2 ? atoi(argv[2]) : 100;
+    const Resolution sizes[] = { {640, 480}, {1280, 720}, {1920, 1080} };
+    const char *modeNames[] = { "original", "grayscale", "blur", "edge" };
+
+    printf("%-16s %-10s %7s %10s %10s %8s\n", "stage", "size", "threads", "ms/frame", "Mpix/s", "speedup");
+    for (const Resolution &r : sizes) {
+        std::vector<uint8_t> rgba((size_t) r.w * r.h * 4), rgbaOut(rgba.size());
+        std::vector<uint8_t> gray((size_t) r.w * r.h), grayOut(gray.size());
+        fillPattern(rgba, r.w, r.h, r.w * 4);
+        fillGray(gray, r.w, r.h, r.w);
+
+        // Conversion is single threaded; it runs on the pipeline's convert thread
+        TestYuv yuv(r.w, r.h, 2, true, 0);
+        double ms = timeFrames(frames, [&] { yuv420ToRgba(yuv.img, r.w, r.h, 90, rgbaOut.data(), r.h * 4); });
+        report("yuv->rgba rot90", r, 1, ms, ms);
+        ms = timeFrames(frames, [&] { lumaToGray(yuv.img.y, yuv.img.yRowStride, r.w, r.h, 90, grayOut.data(), r.h); });
+        report("luma rot90", r, 1, ms, ms);
+
+        for (int mode = MODE_GRAYSCALE; mode <= MODE_EDGE; mode++) {
+            for (int luma = 0; luma < 2; luma++) {
+                char stage[32];
+                snprintf(stage, sizeof(stage), "%s %s", luma ? "gray" : "rgba", modeNames[mode]);
+                double base = 0;
+                for (int t = 1; t <= maxThreads; t *= 2) {
+                    WorkerPool::instance().setWorkerCount(t);
+                    ms = luma
+                            ? timeFrames(frames, [&] { processGray(gray.data(), r.w, grayOut.data(), r.w, r.w, r.h, mode); })
+                            : timeFrames(frames, [&] { processRgba(rgba.data(), r.w * 4, rgbaOut.data(), r.w * 4, r.w, r.h, mode); });
+                    if (t == 1) base = ms;
+                    report(stage, r, t, ms, base);
+                }
+            }
+        }
+
+        struct { const char *name; std::vector<int> stages; } graphs[] = {
+            { "graph canny", { STAGE_GAUSSIAN, 2, STAGE_SOBEL, 0, STAGE_NON_MAX, 0, STAGE_THRESHOLD, 40 } },
+            // Box cost should not depend on the radius
+            { "graph box r1", { STAGE_BOX, 1, STAGE_THRESHOLD, 254 } },
+            { "graph box r2", { STAGE_BOX, 2 } },
+            { "graph box r4", { STAGE_BOX, 4 } },
+            { "graph box r8", { STAGE_BOX, 8 } },
+            { "graph box r15", { STAGE_BOX, 15 } },
+            { "graph box8 sobel", { STAGE_BOX, 8, STAGE_SOBEL, 0, STAGE_THRESHOLD, 50 } },
+        };
+        for (const auto &g : graphs) {
+            FilterPlan plan;
+            plan.compile(g.stages.data(), (int) g.stages.size() / 2);
+            double base = 0;
+            for (int t = 1; t <= maxThreads; t *= 2) {
+                WorkerPool::instance().setWorkerCount(t);
+                ms = timeFrames(frames, [&] { plan.run(gray.data(), r.w, grayOut.data(), r.w, r.w, r.h, 1); });
+                if (t == 1) base = ms;
+                report(g.name, r, t, ms, base);
+            }
+        }
+
+        for (int changedEvery : {0, 20}) {
+            const char *stage = changedEvery ? "incr edge 5%" : "incr edge static";
+            double base = 0;
+            for (int t = 1; t <= maxThreads; t *= 2) {
+                WorkerPool::instance().setWorkerCount(t);
+                IncrementalEdge state;
+                int frame = 0;
+                ms = timeFrames(frames, [&] {
+                    if (changedEvery) {
+                        // Flip one pixel in every changedEvery-th tile, a different one each frame
+                        int tilesX = (r.w + IncrementalEdge::TILE - 1) / IncrementalEdge::TILE;
+                        int tiles = IncrementalEdge::tileCount(r.w, r.h);
+                        for (int i = frame % changedEvery; i < tiles; i += changedEvery) {
+                            int x = (i % tilesX) * IncrementalEdge::TILE + frame % 7;
+                            int y = (i / tilesX) * IncrementalEdge::TILE + frame % 5;
+                            if (x < r.w && y < r.h) gray[(size_t) y * r.w + x] ^= 0x80;
+                        }
+                    }
+                    frame++;
+                    state.process(gray.data(), r.w, grayOut.data(), r.w, r.w, r.h, MODE_EDGE, 0);
+                });
+                if (t == 1) base = ms;
+                report(stage, r, t, ms, base);
+            }
+        }
+
+        std::vector<uint8_t> scene((size_t) r.w * r.h), edge(scene.size());
+        fillScene(scene, r.w, r.h, r.w);
+        for (int t = 1; t <= maxThreads; t *= 2) {
+            WorkerPool::instance().setWorkerCount(t);
+            double base = timeFrames(frames, [&] { processGray(scene.data(), r.w, grayOut.data(), r.w, r.w, r.h, MODE_EDGE); });
+            EdgeOptions options;
+            EdgeStats stats;
+            ms = timeFrames(frames, [&] { processEdge(scene.data(), r.w, grayOut.data(), r.w, r.w, r.h, 1, options, &stats); });
+            report("edge stats", r, t, ms, base);
+            options.weakThreshold = options.threshold / 2;
+            ms = timeFrames(frames, [&] { processEdge(scene.data(), r.w, grayOut.data(), r.w, r.w, r.h, 1, options, &stats); });
+            report("edge hysteresis", r, t, ms, base);
+        }
+        for (int method : {ADAPTIVE_OTSU, ADAPTIVE_DENSITY}) {
+            const int stages[] = { STAGE_BORDER, BORDER_KEEP, STAGE_BOX, 1, STAGE_SOBEL, 0, STAGE_THRESHOLD, 50 };
+            FilterPlan plan;
+            plan.compile(stages, 4);
+            plan.setAdaptiveThreshold(method, 50, 0.5f, false);
+            for (int i = 0; i < 20; i++) plan.run(scene.data(), r.w, grayOut.data(), r.w, r.w, r.h, 1);
+            printf("%-16s %-10s %7s threshold %d, edge density %.2f%%\n", method == ADAPTIVE_OTSU ? "adaptive otsu"
+                   : "adaptive 5%", "", "", plan.adaptiveThreshold().threshold(), 100.0 * plan.adaptiveThreshold().density());
+        }
+
+        if (r.w < 1280) continue;
+        processGray(scene.data(), r.w, edge.data(), r.w, r.w, r.h, MODE_EDGE);
+        size_t edgePixels = 0;
+        for (uint8_t v : edge) edgePixels += v == 255;
+        for (int t = 1; t <= maxThreads; t *= 2) {
+            WorkerPool::instance().setWorkerCount(t);
+            double base = timeFrames(frames, [&] { processGray(scene.data(), r.w, grayOut.data(), r.w, r.w, r.h, MODE_EDGE); });
+            report("scene edge", r, t, base, base);
+            for (int level = 1; level <= 3; level++) {
+                ms = timeFrames(frames, [&] {
+                    processPyramidEdge(scene.data(), r.w, grayOut.data(), r.w, r.w, r.h, 1, level);
+                });
+                size_t same = 0, found = 0;
+                for (size_t i = 0; i < edge.size(); i++) {
+                    same += grayOut[i] == edge[i];
+                    found += edge[i] == 255 && grayOut[i] == 255;
+                }
+                char stage[32];
+                snprintf(stage, sizeof(stage), "pyramid L%d", level);
+                report(stage, r, t, ms, base);
+                printf("%-16s %-10s %7s agree %.3f%%, edges found %.2f%%\n", "", "", "", 100.0 * same / edge.size(),
+                       edgePixels ? 100.0 * found / edgePixels : 100.0);
+            }
+        }
+    }
+    return 0;
+}
@@ -0,0 +1,697 @@
+#include <cinttypes>
+#include <cstdio>
+#include <cstring>
+#include <functional>
+#include <map>
+#include <string>
+#include <vector>
+
+#include "adaptive_threshold.h"
+#include "edge_kernel.h"
+#include "filter_graph.h"
+#include "incremental_edge.h"
+#include "pyramid_edge.h"
+#include "scratch_arena.h"
+#include "test_frames.h"
+#include "worker_pool.h"
+#include "yuv_convert.h"
+
+/*
+ Golden-output check for the processing core. Every case runs on a deterministic input and its output
+ is hashed; the hash must match the checked-in value in golden.txt. Each filter case is also run through
+ the reference implementation, out of place and in place, and with 1 and 4 workers, and all of those must
+ agree with the golden hash. Output rows are padded, and the padding must come back untouched.
+ The incremental gray filter is checked against full-frame runs over a sequence of partially changed frames.
+ Filter graphs run out of place and in place with 1 and 4 workers; a BORDER_KEEP graph must equal the
+ same chain with BORDER_CLAMP and the source restored around the edge, whether or not it compiled to a
+ built-in kernel, and a BORDER_CLAMP one never compiles to one. Plans sharing a ScratchContext must give
+ the same output on it and allocate no scratch from the second frame of a size on, also when an
+ incremental plan's changed area grows. Region runs and region luma conversion must reproduce the
+ full-frame pixels inside their rectangles and leave everything else alone. The pyramid edge mode may only
+ differ from MODE_EDGE by missing edge pixels, and not at all at level 0. Edge runs with other thresholds
+ must match the reference in output and gradient histogram, and equal MODE_EDGE with the default ones; an
+ adaptive plan must run each frame with the threshold the previous one chose.
+
+ Usage: edge-golden <golden.txt>             verify (exit status 1 on any mismatch)
+        edge-golden --update <golden.txt>    rewrite the file from the current code
+*/
+
+static const uint8_t PAD = 0xA5;
+static const int ROW_PAD = 12;
+
+static const char *MODE_NAMES[] = { "original", "grayscale", "blur", "edge" };
+
+struct Size { int w, h; };
+static const Size SIZES[] = { {1, 1}, {2, 3}, {33, 17}, {64, 48}, {320, 240} };
+
+static int failures = 0;
+
+static void fail(const std::string &name, const char *what) {
+    printf("FAIL %-40s %s\n", name.c_str(), what);
+    failures++;
+}
+
+static bool paddingIntact(const std::vector<uint8_t> &buf, int rowBytes, int rows, int stride) {
+    for (int y = 0; y < rows; y++)
+        for (int i = rowBytes; i < stride; i++)
+            if (buf[(size_t) y * stride + i] != PAD) return false;
+    return true;
+}
+
+typedef void (*FilterFn)(const uint8_t *, int, uint8_t *, int, int, int, int);
+
+// Runs one filter case every way it can be run and returns the hash they all agree on.
+static uint64_t filterCase(const std::string &name, FilterFn fn, FilterFn ref, int bpp,
+                           const std::vector<uint8_t> &src, int w, int h, int srcStride, int mode) {
+    int stride = w * bpp + ROW_PAD;
+    uint64_t expect = 0;
+    bool first = true;
+    auto check = [&](const std::vector<uint8_t> &out, int outStride, const char *how) {
+        if (!paddingIntact(out, w * bpp, h, outStride)) fail(name, (std::string(how) + ": row padding overwritten").c_str());
+        uint64_t hsh = hashRows(out.data(), w * bpp, h, outStride);
+        if (first) { expect = hsh; first = false; }
+        else if (hsh != expect) fail(name, (std::string(how) + ": differs from reference").c_str());
+    };
+
+    std::vector<uint8_t> out((size_t) stride * h, PAD);
+    ref(src.data(), srcStride, out.data(), stride, w, h, mode);
+    check(out, stride, "reference");
+    for (int workers : {1, 4}) {
+        WorkerPool::instance().setWorkerCount(workers);
+        std::fill(out.begin(), out.end(), PAD);
+        fn(src.data(), srcStride, out.data(), stride, w, h, mode);
+        check(out, stride, workers == 1 ? "1 worker" : "4 workers");
+        std::vector<uint8_t> inPlace(src);
+        fn(inPlace.data(), srcStride, inPlace.data(), srcStride, w, h, mode);
+        check(inPlace, srcStride, workers == 1 ? "in place, 1 worker" : "in place, 4 workers");
+    }
+    return expect;
+}
+
+// Feeds IncrementalEdge frames with no, scattered and widespread changes; each output must match processGray.
+static void incrementalCase(const std::string &name, const std::vector<uint8_t> &first, int w, int h, int stride,
+                            int mode) {
+    IncrementalEdge state;
+    std::vector<uint8_t> frame(first), expect((size_t) stride * h, PAD), out((size_t) stride * h, PAD);
+    uint32_t seed = 99;
+    auto next = [&seed] { seed = seed * 1103515245u + 12345u; return seed >> 8; };
+    for (int step = 0; step < 12; step++) {
+        // Steps 0-1 static, then a growing number of small changes, then most of the frame
+        int changes = step < 2 ? 0 : step < 10 ? (1 << (step - 2)) : w * h / 8;
+        for (int i = 0; i < changes; i++) {
+            // Half of them on the first or last row/column of a tile, where the halo matters
+            int x = next() % w, y = next() % h;
+            if (i % 2 == 0) {
+                x = (x & ~(IncrementalEdge::TILE - 1)) + (next() % 2 ? IncrementalEdge::TILE - 1 : 0);
+                y = (y & ~(IncrementalEdge::TILE - 1)) + (next() % 2 ? IncrementalEdge::TILE - 1 : 0);
+                if (x >= w) x = w - 1;
+                if (y >= h) y = h - 1;
+            }
+            // A 3x3 blot: a single pixel is too weak to flip an edge two pixels away
+            uint8_t v = frame[(size_t) y * stride + x] < 128 ? 255 : 0;
+            for (int by = y - 1; by <= y + 1; by++)
+                for (int bx = x - 1; bx <= x + 1; bx++)
+                    if (bx >= 0 && bx < w && by >= 0 && by < h) frame[(size_t) by * stride + bx] = v;
+        }
+        processGray(frame.data(), stride, expect.data(), stride, w, h, mode);
+        bool inPlace = step % 3 == 2;
+        std::vector<uint8_t> input(frame);
+        uint8_t *dst = inPlace ? input.data() : out.data();
+        int recomputed = state.process(input.data(), stride, dst, stride, w, h, mode, 0);
+        const std::vector<uint8_t> &result = inPlace ? input : out;
+        if (hashRows(result.data(), w, h, stride) != hashRows(expect.data(), w, h, stride)) {
+            fail(name, (std::string("differs from full frame at step ") + std::to_string(step)).c_str());
+        }
+        if (!paddingIntact(out, w, h, stride)) fail(name, "row padding overwritten");
+        if (step == 1 && recomputed != 0) fail(name, "static frame recomputed tiles");
+    }
+}
+
+struct GraphCase {
+    const char *name;
+    std::vector<int> stages;   // (type, parameter) pairs
+};
+
+static const GraphCase GRAPHS[] = {
+    { "gaussian2-sobel-nms-t40", { STAGE_GAUSSIAN, 2, STAGE_SOBEL, 0, STAGE_NON_MAX, 0, STAGE_THRESHOLD, 40 } },
+    { "scharr-t60-dilate1", { STAGE_GRAY, 0, STAGE_SCHARR, 0, STAGE_THRESHOLD, 60, STAGE_DILATE, 1 } },
+    { "box3", { STAGE_BOX, 3 } },
+    { "gaussian1-t120", { STAGE_GAUSSIAN, 1, STAGE_THRESHOLD, 120 } },
+    { "sobel", { STAGE_SOBEL, 0 } },
+    { "box1-sobel-t50", { STAGE_GRAY, 0, STAGE_BOX, 1, STAGE_SOBEL, 0, STAGE_THRESHOLD, 50 } },
+    { "pyramid1", { STAGE_PYRAMID_EDGE, 1 } },
+    { "pyramid2", { STAGE_GRAY, 0, STAGE_PYRAMID_EDGE, 2 } },
+    // Built-in blur and edge, and the same edge with a wider blur on the graph path
+    { "keep-box1", { STAGE_BORDER, BORDER_KEEP, STAGE_BOX, 1 } },
+    { "keep-box1-sobel-t50", { STAGE_BORDER, BORDER_KEEP, STAGE_GRAY, 0, STAGE_BOX, 1, STAGE_SOBEL, 0, STAGE_THRESHOLD, 50 } },
+    { "keep-box2-sobel-t50", { STAGE_BORDER, BORDER_KEEP, STAGE_BOX, 2, STAGE_SOBEL, 0, STAGE_THRESHOLD, 50 } },
+};
+
+// Sets the pixels within ring of the frame edge back to src: a BORDER_CLAMP result made BORDER_KEEP
+static void restoreRing(uint8_t *out, int stride, const uint8_t *src, int srcStride, int w, int h, int bpp, int ring) {
+    for (int y = 0; y < h; y++)
+        for (int x = 0; x < w; x++) {
+            if (x >= ring && x < w - ring && y >= ring && y < h - ring) continue;
+            memcpy(out + (size_t) y * stride + x * bpp, src + (size_t) y * srcStride + x * bpp, (size_t) bpp);
+        }
+}
+
+static uint64_t graphCase(const std::string &name, FilterPlan &plan, int bpp, const std::vector<uint8_t> &src,
+                          int w, int h, int srcStride) {
+    int stride = w * bpp + ROW_PAD;
+    uint64_t expect = 0;
+    bool first = true;
+    for (int workers : {1, 4}) {
+        WorkerPool::instance().setWorkerCount(workers);
+        std::vector<uint8_t> out((size_t) stride * h, PAD);
+        plan.run(src.data(), srcStride, out.data(), stride, w, h, bpp);
+        if (!paddingIntact(out, w * bpp, h, stride)) fail(name, "row padding overwritten");
+        uint64_t hsh = hashRows(out.data(), w * bpp, h, stride);
+        if (first) { expect = hsh; first = false; }
+        else if (hsh != expect) fail(name, "differs between worker counts");
+        std::vector<uint8_t> inPlace(src);
+        plan.run(inPlace.data(), srcStride, inPlace.data(), srcStride, w, h, bpp);
+        if (hashRows(inPlace.data(), w * bpp, h, srcStride) != expect) fail(name, "in place differs");
+    }
+    return expect;
+}
+
+// A BORDER_KEEP plan's hash against its chain with BORDER_CLAMP, which never runs a built-in kernel, and
+// the source restored within the plan's halo
+static void keepBorderCase(const std::string &name, const std::vector<int> &stages, const FilterPlan &plan,
+                           const std::vector<uint8_t> &src, int w, int h, int srcStride, uint64_t hsh, int bpp) {
+    FilterPlan clamped;
+    std::vector<int> clampStages(stages);
+    clampStages[1] = BORDER_CLAMP;
+    clamped.compile(clampStages.data(), (int) clampStages.size() / 2);
+    if (clamped.halo() != plan.halo()) fail(name, "halo differs from BORDER_CLAMP");
+    int stride = w * bpp + ROW_PAD;
+    std::vector<uint8_t> out((size_t) stride * h, PAD);
+    clamped.run(src.data(), srcStride, out.data(), stride, w, h, bpp);
+    restoreRing(out.data(), stride, src.data(), srcStride, w, h, bpp, plan.halo());
+    if (hashRows(out.data(), w * bpp, h, stride) != hsh) fail(name, "differs from BORDER_CLAMP with the source border");
+}
+
+// Every graph and built-in chain on one context: a warm frame out of place and in place (which needs more
+// scratch), then the same two must allocate nothing.
+static void scratchCase(const std::map<std::string, uint64_t> &results) {
+    const Size large = { 320, 240 }, small = { 64, 48 };
+    ScratchContext context(large.w, large.h);
+    std::vector<std::pair<std::string, std::vector<int>>> chains;
+    for (const GraphCase &g : GRAPHS) chains.push_back({ std::string("graph/") + g.name, g.stages });
+    size_t heldLarge = 0;
+    for (const Size &s : { large, small }) {
+        int rgbaStride = s.w * 4 + ROW_PAD, grayStride = s.w + ROW_PAD;
+        std::vector<uint8_t> rgba((size_t) rgbaStride * s.h, PAD), gray((size_t) grayStride * s.h, PAD);
+        fillPattern(rgba, s.w, s.h, rgbaStride);
+        fillGray(gray, s.w, s.h, grayStride);
+        for (int workers : {1, 4}) {
+            WorkerPool::instance().setWorkerCount(workers);
+            for (const auto &c : chains) {
+                FilterPlan plan;
+                plan.compile(c.second.data(), (int) c.second.size() / 2);
+                plan.setContext(&context);
+                for (int bpp : {4, 1}) {
+                    char name[96];
+                    snprintf(name, sizeof(name), "scratch/%s/%s/%dx%d/%d workers", c.first.c_str(),
+                             bpp == 4 ? "rgba" : "gray", s.w, s.h, workers);
+                    const std::vector<uint8_t> &src = bpp == 4 ? rgba : gray;
+                    int srcStride = bpp == 4 ? rgbaStride : grayStride;
+                    std::vector<uint8_t> out((size_t) srcStride * s.h, PAD), inPlace(src);
+                    plan.run(src.data(), srcStride, out.data(), srcStride, s.w, s.h, bpp);
+                    plan.run(inPlace.data(), srcStride, inPlace.data(), srcStride, s.w, s.h, bpp);
+                    uint64_t before = ScratchArena::bytesAllocated();
+                    inPlace = src;
+                    plan.run(src.data(), srcStride, out.data(), srcStride, s.w, s.h, bpp);
+                    plan.run(inPlace.data(), srcStride, inPlace.data(), srcStride, s.w, s.h, bpp);
+                    if (ScratchArena::bytesAllocated() != before) fail(name, "allocated scratch on a warm context");
+
+                    char key[96];
+                    snprintf(key, sizeof(key), "%s/%s/%dx%d", c.first.c_str(), bpp == 4 ? "rgba" : "gray", s.w, s.h);
+                    auto expect = results.find(key);
+                    uint64_t hsh = hashRows(out.data(), s.w * bpp, s.h, srcStride);
+                    if (expect != results.end() && expect->second != hsh) fail(name, "differs on a context");
+                    if (hashRows(inPlace.data(), s.w * bpp, s.h, srcStride) != hsh) fail(name, "in place differs on a context");
+                }
+            }
+        }
+        if (s.w == large.w) heldLarge = context.bytesHeld();
+    }
+    // The smaller frames trimmed the arenas instead of running in the large buffers
+    if (context.bytesHeld() >= heldLarge) fail("scratch/resize", "context kept its buffers for a smaller frame");
+
+    // Threads added to the pool get warm arenas even when their first frames needed nothing new
+    WorkerPool::instance().setWorkerCount(1);
+    ScratchContext grown(small.w, small.h);
+    FilterPlan plan;
+    plan.compile(chains[0].second.data(), (int) chains[0].second.size() / 2);
+    plan.setContext(&grown);
+    std::vector<uint8_t> gray((size_t) small.w * small.h), out(gray.size());
+    fillGray(gray, small.w, small.h, small.w);
+    plan.run(gray.data(), small.w, out.data(), small.w, small.w, small.h, 1);
+    WorkerPool::instance().setWorkerCount(4);
+    grown.spread();
+    for (int t = 1; t < 4; t++) {
+        if (grown.arena(t).bytesHeld() == 0) fail("scratch/spread", "left a new pool thread's arena empty");
+    }
+}
+
+// Incremental plans on a context: nothing is allocated after the first frame while the changed area grows
+// from part of a tile row to several rows across most of the frame's width, short of a full-frame pass
+static void incrementalScratchCase() {
+    const int w = 320, h = 240, T = IncrementalEdge::TILE;
+    const std::vector<int> chains[] = {
+        { STAGE_BORDER, BORDER_KEEP, STAGE_BOX, 1 },
+        { STAGE_BORDER, BORDER_KEEP, STAGE_BOX, 1, STAGE_SOBEL, 0, STAGE_THRESHOLD, 50 },
+    };
+    for (const std::vector<int> &stages : chains) {
+        for (int workers : {1, 4}) {
+            WorkerPool::instance().setWorkerCount(workers);
+            ScratchContext context(w, h);
+            FilterPlan plan;
+            plan.compile(stages.data(), (int) stages.size() / 2);
+            plan.setIncremental(0);
+            plan.setContext(&context);
+            char name[64];
+            snprintf(name, sizeof(name), "scratch/incremental/%s/%d workers", MODE_NAMES[plan.builtinMode()], workers);
+            // Frames and their full-frame results up front: processGray allocates scratch of its own
+            std::vector<std::vector<uint8_t>> frames(7, std::vector<uint8_t>((size_t) w * h)), expect(frames);
+            fillGray(frames[0], w, h, w);
+            for (int step = 1; step < (int) frames.size(); step++) {
+                frames[step] = frames[step - 1];
+                int rows = step < 3 ? step : 3, span = (w - 2 * T) * step / 6;
+                for (int y = 2 * T + 5; y < 2 * T + 5 + rows * T - 10; y++)
+                    for (int x = T / 2; x < T / 2 + span; x++) frames[step][(size_t) y * w + x] ^= 0x5A;
+                processGray(frames[step].data(), w, expect[step].data(), w, w, h, plan.builtinMode());
+                restoreRing(expect[step].data(), w, frames[step].data(), w, w, h, 1, plan.halo());
+            }
+            std::vector<uint8_t> out((size_t) w * h);
+            plan.run(frames[0].data(), w, out.data(), w, w, h, 1);
+            uint64_t before = ScratchArena::bytesAllocated();
+            for (int step = 1; step < (int) frames.size(); step++) {
+                int recomputed = plan.run(frames[step].data(), w, out.data(), w, w, h, 1);
+                if (out != expect[step]) {
+                    fail(name, (std::string("differs from full frame at step ") + std::to_string(step)).c_str());
+                }
+                if (recomputed <= 0 || recomputed >= IncrementalEdge::tileCount(w, h) / 2) {
+                    fail(name, "did not take the incremental path");
+                }
+            }
+            if (ScratchArena::bytesAllocated() != before) fail(name, "allocated scratch as the changed area grew");
+        }
+    }
+}
+
+// Corners, frame edges, overlaps, a single column, rectangles partly outside the frame and an empty one
+static std::vector<int> testRegions(int w, int h) {
+    return {
+        0, 0, w / 3 + 1, h / 2 + 1,
+        w / 4, h / 4, w / 3 + 1, h / 3 + 1,
+        w / 2, h / 3, w / 4 + 1, h / 4 + 1,
+        w - 5, h - 4, 5, 4,
+        -3, -2, 4, 3,
+        w / 2, 0, 1, h,
+        w - 2, h / 2, 9, 1,
+        0, 0, 0, 5,
+    };
+}
+
+static bool insideRegion(const std::vector<int> &rects, int x, int y) {
+    for (size_t i = 0; i < rects.size(); i += 4) {
+        if (x >= rects[i] && x < rects[i] + rects[i + 2] && y >= rects[i + 1] && y < rects[i + 1] + rects[i + 3])
+            return true;
+    }
+    return false;
+}
+
+// Pixels inside the rectangles must equal expect, the rest background
+static bool regionsMatch(const uint8_t *out, const uint8_t *expect, const uint8_t *background, int stride,
+                         int w, int h, int bpp, const std::vector<int> &rects) {
+    for (int y = 0; y < h; y++) {
+        const uint8_t *want = expect + (size_t) y * stride;
+        const uint8_t *keep = background + (size_t) y * stride;
+        const uint8_t *got = out + (size_t) y * stride;
+        for (int x = 0; x < w; x++) {
+            const uint8_t *ref = insideRegion(rects, x, y) ? want : keep;
+            if (memcmp(got + x * bpp, ref + x * bpp, (size_t) bpp) != 0) return false;
+        }
+    }
+    return true;
+}
+
+// Every built-in mode and graph through runRegions, out of place over a blank frame and in place
+static void regionCase() {
+    std::vector<std::pair<std::string, std::vector<int>>> chains = {
+        { "original", {} },
+        { "grayscale", { STAGE_GRAY, 0 } },
+    };
+    for (const GraphCase &g : GRAPHS) chains.push_back({ std::string("graph/") + g.name, g.stages });
+    for (const Size &s : { Size{ 33, 17 }, Size{ 320, 240 } }) {
+        std::vector<int> rects = testRegions(s.w, s.h);
+        int rgbaStride = s.w * 4 + ROW_PAD, grayStride = s.w + ROW_PAD;
+        std::vector<uint8_t> rgba((size_t) rgbaStride * s.h, PAD), gray((size_t) grayStride * s.h, PAD);
+        fillPattern(rgba, s.w, s.h, rgbaStride);
+        fillGray(gray, s.w, s.h, grayStride);
+        for (const auto &c : chains) {
+            FilterPlan plan;
+            plan.compile(c.second.data(), (int) c.second.size() / 2);
+            for (int workers : {1, 4}) {
+                WorkerPool::instance().setWorkerCount(workers);
+                for (int bpp : {4, 1}) {
+                    char name[96];
+                    snprintf(name, sizeof(name), "regions/%s/%s/%dx%d/%d workers", c.first.c_str(),
+                             bpp == 4 ? "rgba" : "gray", s.w, s.h, workers);
+                    const std::vector<uint8_t> &src = bpp == 4 ? rgba : gray;
+                    int stride = bpp == 4 ? rgbaStride : grayStride;
+                    std::vector<uint8_t> full((size_t) stride * s.h, PAD), blank((size_t) stride * s.h, PAD);
+                    plan.run(src.data(), stride, full.data(), stride, s.w, s.h, bpp);
+                    std::vector<uint8_t> out(blank), inPlace(src);
+                    plan.runRegions(src.data(), stride, out.data(), stride, s.w, s.h, bpp, rects.data(), (int) rects.size() / 4);
+                    if (!regionsMatch(out.data(), full.data(), blank.data(), stride, s.w, s.h, bpp, rects))
+                        fail(name, "differs from the full frame or wrote outside the regions");
+                    if (!paddingIntact(out, s.w * bpp, s.h, stride)) fail(name, "row padding overwritten");
+                    plan.runRegions(inPlace.data(), stride, inPlace.data(), stride, s.w, s.h, bpp, rects.data(), (int) rects.size() / 4);
+                    if (!regionsMatch(inPlace.data(), full.data(), src.data(), stride, s.w, s.h, bpp, rects))
+                        fail(name, "in place differs from the full frame or wrote outside the regions");
+                }
+            }
+        }
+
+        TestYuv yuv(s.w, s.h, 1, false, 8);
+        for (int rot : {0, 90, 180, 270}) {
+            for (int scale : {1, 2, 4}) {
+                int sw = s.w / scale, sh = s.h / scale;
+                int ow = rot % 180 ? sh : sw, oh = rot % 180 ? sw : sh;
+                int stride = ow + ROW_PAD;
+                std::vector<uint8_t> full((size_t) stride * oh, PAD), out((size_t) stride * oh, PAD);
+                lumaToGrayScaled(yuv.img.y, yuv.img.yRowStride, s.w, s.h, scale, rot, full.data(), stride);
+                std::vector<int> outRects = testRegions(ow, oh);
+                for (size_t i = 0; i < outRects.size(); i += 4) {
+                    int x0 = outRects[i] < 0 ? 0 : outRects[i], y0 = outRects[i + 1] < 0 ? 0 : outRects[i + 1];
+                    int x1 = outRects[i] + outRects[i + 2], y1 = outRects[i + 1] + outRects[i + 3];
+                    lumaToGrayRegion(yuv.img.y, yuv.img.yRowStride, s.w, s.h, scale, rot, x0, y0,
+                                     x1 > ow ? ow : x1, y1 > oh ? oh : y1, out.data(), stride);
+                }
+                char name[96];
+                snprintf(name, sizeof(name), "regions/luma/scale%d/rot%d/%dx%d", scale, rot, s.w, s.h);
+                std::vector<uint8_t> blank((size_t) stride * oh, PAD);
+                if (!regionsMatch(out.data(), full.data(), blank.data(), stride, ow, oh, 1, outRects))
+                    fail(name, "differs from the full conversion or wrote outside the regions");
+            }
+        }
+    }
+}
+
+// Every level on every size against the edge kernel: a pixel may only be 0 where the kernel found an edge
+static void pyramidCase() {
+    WorkerPool::instance().setWorkerCount(4);
+    for (const Size &s : SIZES) {
+        int rgbaStride = s.w * 4 + ROW_PAD, grayStride = s.w + ROW_PAD;
+        std::vector<uint8_t> rgba((size_t) rgbaStride * s.h, PAD), gray((size_t) grayStride * s.h, PAD);
+        fillPattern(rgba, s.w, s.h, rgbaStride);
+        fillGray(gray, s.w, s.h, grayStride);
+        for (int bpp : {4, 1}) {
+            const std::vector<uint8_t> &src = bpp == 4 ? rgba : gray;
+            int stride = bpp == 4 ? rgbaStride : grayStride;
+            std::vector<uint8_t> edge((size_t) stride * s.h, PAD), out((size_t) stride * s.h, PAD);
+            if (bpp == 4) processRgba(src.data(), stride, edge.data(), stride, s.w, s.h, MODE_EDGE);
+            else processGray(src.data(), stride, edge.data(), stride, s.w, s.h, MODE_EDGE);
+            for (int level = 0; level <= MAX_PYRAMID_LEVEL; level++) {
+                char name[96];
+                snprintf(name, sizeof(name), "pyramid/level%d/%s/%dx%d", level, bpp == 4 ? "rgba" : "gray", s.w, s.h);
+                processPyramidEdge(src.data(), stride, out.data(), stride, s.w, s.h, bpp, level);
+                bool same = true, missesOnly = true;
+                for (int y = 0; y < s.h; y++) {
+                    for (int x = 0; x < s.w; x++) {
+                        const uint8_t *a = out.data() + (size_t) y * stride + x * bpp;
+                        const uint8_t *b = edge.data() + (size_t) y * stride + x * bpp;
+                        if (memcmp(a, b, (size_t) bpp) == 0) continue;
+                        same = false;
+                        if (a[0] != 0 || b[0] != 255) missesOnly = false;
+                    }
+                }
+                if (level == 0 && !same) fail(name, "level 0 differs from the edge kernel");
+                if (!missesOnly) fail(name, "found an edge the edge kernel does not");
+            }
+        }
+    }
+}
+
+struct ThresholdCase { const char *name; int threshold, weak; };
+static const ThresholdCase THRESHOLDS[] = { {"t50", 50, -1}, {"t20", 20, -1}, {"t30w15", 30, 15}, {"t120w60", 120, 60} };
+
+static bool sameStats(const EdgeStats &a, const EdgeStats &b) {
+    return a.pixels == b.pixels && a.edges == b.edges && memcmp(a.histogram, b.histogram, sizeof(a.histogram)) == 0;
+}
+
+// processEdge every way it can be run against processEdgeReference, stats included; returns the output hash
+static uint64_t edgeOptionsCase(const std::string &name, const ThresholdCase &t, int bpp,
+                                const std::vector<uint8_t> &src, int w, int h, int srcStride) {
+    EdgeOptions options;
+    options.threshold = t.threshold;
+    options.weakThreshold = t.weak;
+    int stride = w * bpp + ROW_PAD;
+    std::vector<uint8_t> expect((size_t) stride * h, PAD), out(expect.size());
+    EdgeStats refStats, stats;
+    processEdgeReference(src.data(), srcStride, expect.data(), stride, w, h, bpp, options, &refStats);
+    uint64_t hsh = hashRows(expect.data(), w * bpp, h, stride);
+    uint64_t counted = 0, edges = 0;
+    for (uint32_t n : refStats.histogram) counted += n;
+    for (int y = 1; y < h - 1; y++)
+        for (int x = 1; x < w - 1; x++) edges += expect[(size_t) y * stride + x * bpp] == 255;
+    if (counted != refStats.pixels || edges != refStats.edges) fail(name, "reference stats inconsistent");
+    for (int workers : {1, 4}) {
+        WorkerPool::instance().setWorkerCount(workers);
+        std::fill(out.begin(), out.end(), PAD);
+        processEdge(src.data(), srcStride, out.data(), stride, w, h, bpp, options, &stats);
+        if (!paddingIntact(out, w * bpp, h, stride)) fail(name, "row padding overwritten");
+        if (hashRows(out.data(), w * bpp, h, stride) != hsh) fail(name, "differs from reference");
+        if (!sameStats(stats, refStats)) fail(name, "stats differ from reference");
+        std::vector<uint8_t> inPlace(src);
+        processEdge(inPlace.data(), srcStride, inPlace.data(), srcStride, w, h, bpp, options, &stats);
+        if (hashRows(inPlace.data(), w * bpp, h, srcStride) != hsh) fail(name, "in place differs from reference");
+        if (!sameStats(stats, refStats)) fail(name, "in place stats differ from reference");
+        processEdge(src.data(), srcStride, out.data(), stride, w, h, bpp, options, nullptr);
+        if (hashRows(out.data(), w * bpp, h, stride) != hsh) fail(name, "differs without stats");
+    }
+    return hsh;
+}
+
+/*
+ Threshold selection on known histograms, and an adaptive plan over a few frames: each must equal
+ processEdge with the threshold the plan reported before it, and the reported density that frame's
+ share of edge pixels.
+*/
+static void adaptiveCase() {
+    uint32_t hist[EDGE_HISTOGRAM_BINS] = {};
+    hist[5] = 900;
+    hist[200] = 100;
+    int otsu = otsuThreshold(hist, EDGE_HISTOGRAM_BINS);
+    if (otsu <= 5 || otsu > 200) fail("adaptive/otsu", "does not split two peaks");
+    if (densityThreshold(hist, EDGE_HISTOGRAM_BINS, 1000, 100) != 6) fail("adaptive/density", "wrong at 10%");
+    if (densityThreshold(hist, EDGE_HISTOGRAM_BINS, 1000, 50) != 201) fail("adaptive/density", "wrong at 5%");
+
+    const int w = 320, h = 240;
+    std::vector<uint8_t> frame((size_t) w * h), out(frame.size()), expect(frame.size());
+    fillScene(frame, w, h, w);
+    const int graph[] = { STAGE_BORDER, BORDER_KEEP, STAGE_BOX, 1, STAGE_SOBEL, 0, STAGE_THRESHOLD, 50 };
+    for (int method : {ADAPTIVE_OTSU, ADAPTIVE_DENSITY}) {
+        for (bool hysteresis : {false, true}) {
+            char name[64];
+            snprintf(name, sizeof(name), "adaptive/%s%s", method == ADAPTIVE_OTSU ? "otsu" : "density",
+                     hysteresis ? "/hysteresis" : "");
+            FilterPlan plan;
+            plan.compile(graph, 4);
+            plan.setIncremental(0);
+            if (const char *error = plan.setAdaptiveThreshold(method, 50, 0.5f, hysteresis)) {
+                fail(name, error);
+                continue;
+            }
+            if (plan.halo() != (hysteresis ? 3 : 2)) fail(name, "wrong halo");
+            for (int i = 0; i < 4; i++) {
+                EdgeOptions options = plan.adaptiveThreshold().options();
+                if (options.threshold != plan.adaptiveThreshold().threshold()) fail(name, "options disagree");
+                EdgeStats stats;
+                processEdge(frame.data(), w, expect.data(), w, w, h, 1, options, &stats);
+                restoreRing(expect.data(), w, frame.data(), w, w, h, 1, plan.halo());
+                if (plan.run(frame.data(), w, out.data(), w, w, h, 1) != -1) fail(name, "ran incrementally");
+                if (out != expect) fail(name, "differs from processEdge with the previous threshold");
+                if (plan.adaptiveThreshold().density() != (float) ((double) stats.edges / stats.pixels)) {
+                    fail(name, "wrong density");
+                }
+            }
+            int t = plan.adaptiveThreshold().threshold();
+            if (t < MIN_ADAPTIVE_THRESHOLD || t > MAX_ADAPTIVE_THRESHOLD) fail(name, "threshold out of range");
+        }
+    }
+    FilterPlan plan;
+    if (!plan.setAdaptiveThreshold(ADAPTIVE_DENSITY, 0, 1, false)) fail("adaptive/configure", "accepted a 0 target");
+    if (!plan.setAdaptiveThreshold(ADAPTIVE_OTSU, 0, 0, false)) fail("adaptive/configure", "accepted 0 smoothing");
+}
+
+static void collect(std::map<std::string, uint64_t> &results) {
+    char name[96];
+    for (const Size &s : SIZES) {
+        int rgbaStride = s.w * 4 + ROW_PAD;
+        std::vector<uint8_t> rgba((size_t) rgbaStride * s.h, PAD);
+        fillPattern(rgba, s.w, s.h, rgbaStride);
+        int grayStride = s.w + ROW_PAD;
+        std::vector<uint8_t> gray((size_t) grayStride * s.h, PAD);
+        fillGray(gray, s.w, s.h, grayStride);
+
+        for (int mode = 0; mode < 4; mode++) {
+            snprintf(name, sizeof(name), "rgba/%s/%dx%d", MODE_NAMES[mode], s.w, s.h);
+            results[name] = filterCase(name, processRgba, processRgbaReference, 4, rgba, s.w, s.h, rgbaStride, mode);
+            snprintf(name, sizeof(name), "gray/%s/%dx%d", MODE_NAMES[mode], s.w, s.h);
+            results[name] = filterCase(name, processGray, processGrayReference, 1, gray, s.w, s.h, grayStride, mode);
+            if (mode >= 2) {
+                snprintf(name, sizeof(name), "incremental/%s/%dx%d", MODE_NAMES[mode], s.w, s.h);
+                incrementalCase(name, gray, s.w, s.h, grayStride, mode);
+            }
+        }
+
+        for (const ThresholdCase &t : THRESHOLDS) {
+            snprintf(name, sizeof(name), "edge/%s/rgba/%dx%d", t.name, s.w, s.h);
+            uint64_t rgbaHash = edgeOptionsCase(name, t, 4, rgba, s.w, s.h, rgbaStride);
+            snprintf(name, sizeof(name), "edge/%s/gray/%dx%d", t.name, s.w, s.h);
+            uint64_t grayHash = edgeOptionsCase(name, t, 1, gray, s.w, s.h, grayStride);
+            if (t.threshold == EdgeOptions().threshold && t.weak == EdgeOptions().weakThreshold) {
+                snprintf(name, sizeof(name), "rgba/edge/%dx%d", s.w, s.h);
+                if (results[name] != rgbaHash) fail(name, "differs from processEdge with default options");
+                snprintf(name, sizeof(name), "gray/edge/%dx%d", s.w, s.h);
+                if (results[name] != grayHash) fail(name, "differs from processEdge with default options");
+                continue;
+            }
+            snprintf(name, sizeof(name), "edge/%s/rgba/%dx%d", t.name, s.w, s.h);
+            results[name] = rgbaHash;
+            snprintf(name, sizeof(name), "edge/%s/gray/%dx%d", t.name, s.w, s.h);
+            results[name] = grayHash;
+        }
+
+        for (const GraphCase &g : GRAPHS) {
+            FilterPlan plan;
+            if (const char *error = plan.compile(g.stages.data(), (int) g.stages.size() / 2)) {
+                fail(g.name, error);
+                continue;
+            }
+            snprintf(name, sizeof(name), "graph/%s/rgba/%dx%d", g.name, s.w, s.h);
+            uint64_t rgbaHash = graphCase(name, plan, 4, rgba, s.w, s.h, rgbaStride);
+            snprintf(name, sizeof(name), "graph/%s/gray/%dx%d", g.name, s.w, s.h);
+            uint64_t grayHash = graphCase(name, plan, 1, gray, s.w, s.h, grayStride);
+            if (plan.border() == BORDER_KEEP) {
+                keepBorderCase(name, g.stages, plan, rgba, s.w, s.h, rgbaStride, rgbaHash, 4);
+                keepBorderCase(name, g.stages, plan, gray, s.w, s.h, grayStride, grayHash, 1);
+            } else if (plan.builtinMode() == MODE_BLUR || plan.builtinMode() == MODE_EDGE) {
+                fail(name, "BORDER_CLAMP chain compiled to a built-in kernel");
+            }
+            snprintf(name, sizeof(name), "graph/%s/rgba/%dx%d", g.name, s.w, s.h);
+            results[name] = rgbaHash;
+            snprintf(name, sizeof(name), "graph/%s/gray/%dx%d", g.name, s.w, s.h);
+            results[name] = grayHash;
+        }
+
+        struct Layout { const char *name; int pixelStride; bool vFirst; };
+        const Layout layouts[] = { {"i420", 1, false}, {"nv12", 2, false}, {"nv21", 2, true} };
+        for (int rot : {0, 90, 180, 270}) {
+            int ow = rot % 180 ? s.h : s.w, oh = rot % 180 ? s.w : s.h;
+            for (const Layout &l : layouts) {
+                TestYuv yuv(s.w, s.h, l.pixelStride, l.vFirst, 8);
+                int stride = ow * 4 + ROW_PAD;
+                std::vector<uint8_t> out((size_t) stride * oh, PAD);
+                snprintf(name, sizeof(name), "yuv/%s/rot%d/%dx%d", l.name, rot, s.w, s.h);
+                yuv420ToRgba(yuv.img, s.w, s.h, rot, out.data(), stride);
+                if (!paddingIntact(out, ow * 4, oh, stride)) fail(name, "row padding overwritten");
+                uint64_t h = hashRows(out.data(), ow * 4, oh, stride);
+                // Every row kernel this CPU has must agree with the one the dispatcher picked
+                for (int k = 0; k < YUV_KERNELS; k++) {
+                    if (!yuvForceKernel(k)) continue;
+                    std::fill(out.begin(), out.end(), PAD);
+                    yuv420ToRgba(yuv.img, s.w, s.h, rot, out.data(), stride);
+                    if (hashRows(out.data(), ow * 4, oh, stride) != h || !paddingIntact(out, ow * 4, oh, stride)) {
+                        char what[64];
+                        snprintf(what, sizeof(what), "%s kernel differs", yuvKernelName());
+                        fail(name, what);
+                    }
+                }
+                yuvForceKernel(-1);
+                results[name] = h;
+            }
+            TestYuv yuv(s.w, s.h, 1, false, 8);
+            int stride = ow + ROW_PAD;
+            std::vector<uint8_t> out((size_t) stride * oh, PAD);
+            snprintf(name, sizeof(name), "luma/rot%d/%dx%d", rot, s.w, s.h);
+            lumaToGray(yuv.img.y, yuv.img.yRowStride, s.w, s.h, rot, out.data(), stride);
+            if (!paddingIntact(out, ow, oh, stride)) fail(name, "row padding overwritten");
+            results[name] = hashRows(out.data(), ow, oh, stride);
+
+            for (int scale : {2, 4}) {
+                int sw = s.w / scale, sh = s.h / scale;
+                if (sw == 0 || sh == 0) continue;
+                int sow = rot % 180 ? sh : sw, soh = rot % 180 ? sw : sh;
+                int sstride = sow + ROW_PAD;
+                std::vector<uint8_t> scaled((size_t) sstride * soh, PAD);
+                snprintf(name, sizeof(name), "luma/scale%d/rot%d/%dx%d", scale, rot, s.w, s.h);
+                lumaToGrayScaled(yuv.img.y, yuv.img.yRowStride, s.w, s.h, scale, rot, scaled.data(), sstride);
+                if (!paddingIntact(scaled, sow, soh, sstride)) fail(name, "row padding overwritten");
+                results[name] = hashRows(scaled.data(), sow, soh, sstride);
+            }
+        }
+    }
+}
+
+int main(int argc, char **argv) {
+    bool update = argc == 3 && strcmp(argv[1], "--update") == 0;
+    if (argc != 2 && !update) {
+        fprintf(stderr, "usage: edge-golden [--update] <golden.txt>\n");
+        return 2;
+    }
+    const char *path = argv[argc - 1];
+
+    std::map<std::string, uint64_t> results;
+    collect(results);
+    scratchCase(results);
+    incrementalScratchCase();
+    regionCase();
+    pyramidCase();
+    adaptiveCase();
+
+    if (update) {
+        FILE *f = fopen(path, "w");
+        if (!f) { perror(path); return 2; }
+        fprintf(f, "# FNV-1a 64 of each case's output rows; regenerate with edge-golden --update\n");
+        for (const auto &r : results) fprintf(f, "%s %016" PRIx64 "\n", r.first.c_str(), r.second);
+        fclose(f);
+        printf("wrote %zu cases to %s (%d internal mismatches)\n", results.size(), path, failures);
+        return failures ? 1 : 0;
+    }
+
+    FILE *f = fopen(path, "r");
+    if (!f) { perror(path); return 2; }
+    std::map<std::string, uint64_t> golden;
+    char line[256], key[200];
+    uint64_t value;
+    while (fgets(line, sizeof(line), f)) {
+        if (line[0] == '#') continue;
+        if (sscanf(line, "%199s %" SCNx64, key, &value) == 2) golden[key] = value;
+    }
+    fclose(f);
+
+    for (const auto &r : results) {
+        auto g = golden.find(r.first);
+        if (g == golden.end()) fail(r.first, "missing from golden file");
+        else if (g->second != r.second) fail(r.first, "output changed");
+    }
+    for (const auto &g : golden)
+        if (!results.count(g.first)) fail(g.first, "in golden file but no longer produced");
+
+    std::string kernels;
+    for (int k = 0; k < YUV_KERNELS; k++) {
+        if (!yuvForceKernel(k)) continue;
+        if (!kernels.empty()) kernels += ", ";
+        kernels += yuvKernelName();
+    }
+    yuvForceKernel(-1);
+    printf("%zu cases, %d failures (yuv kernel: %s; checked %s)\n", results.size(), failures, yuvKernelName(),
+           kernels.c_str());
+    return failures ? 1 : 0;
+}
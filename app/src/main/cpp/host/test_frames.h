@@ -0,0 +1,107 @@
+#pragma once
+
+#include <cstdint>
+#include <cstdio>
+#include <vector>
+
+#include "yuv_convert.h"
+
+/*
+ Deterministic inputs shared by the host tools, so benchmark and golden runs see the same frames
+ on every machine.
+*/
+
+// Checkerboard of 32-pixel cells with low-amplitude noise: flat areas, strong edges and texture.
+inline void fillPattern(std::vector<uint8_t> &rgba, int w, int h, int stride) {
+    uint32_t seed = 12345;
+    for (int y = 0; y < h; y++)
+        for (int x = 0; x < w; x++) {
+            seed = seed * 1103515245u + 12345u;
+            uint8_t *px = &rgba[(size_t) y * stride + (size_t) x * 4];
+            uint8_t base = (uint8_t) (((x / 32) ^ (y / 32)) & 1 ? 200 : 40);
+            px[0] = (uint8_t) (base + (seed >> 28));
+            px[1] = (uint8_t) (base + (seed >> 26 & 7));
+            px[2] = base;
+            px[3] = 255;
+        }
+}
+
+inline void fillGray(std::vector<uint8_t> &gray, int w, int h, int stride) {
+    uint32_t seed = 777;
+    for (int y = 0; y < h; y++)
+        for (int x = 0; x < w; x++) {
+            seed = seed * 1103515245u + 12345u;
+            gray[(size_t) y * stride + x] = (uint8_t) ((((x / 16) ^ (y / 16)) & 1 ? 190 : 50) + (seed >> 28));
+        }
+}
+
+/*
+ Camera-like frame: shading with shapes of different contrast, thin lines and mild noise, so edges are
+ sparse, where fillGray has an edge every 16 pixels.
+*/
+inline void fillScene(std::vector<uint8_t> &gray, int w, int h, int stride) {
+    // Discs: centre and radius as fractions of the height (centre x of the width), and the added level
+    static const float discs[][4] = {
+        { 0.20f, 0.30f, 0.18f, 70 }, { 0.55f, 0.60f, 0.25f, -45 }, { 0.80f, 0.25f, 0.10f, 25 },
+        { 0.35f, 0.80f, 0.08f, 90 }, { 0.70f, 0.85f, 0.05f, -20 },
+    };
+    uint32_t seed = 2024;
+    for (int y = 0; y < h; y++)
+        for (int x = 0; x < w; x++) {
+            seed = seed * 1103515245u + 12345u;
+            int v = 60 + 80 * x / w + 40 * y / h;
+            for (const auto &d : discs) {
+                float dx = x - d[0] * w, dy = y - d[1] * h, r = d[2] * h;
+                if (dx * dx + dy * dy < r * r) v += (int) d[3];
+            }
+            if (x >= w * 9 / 10 && x < w * 9 / 10 + 2) v += 60;              // thin vertical line
+            if (y > h / 2 && (x - y) % (w / 2) == 0) v -= 50;                // 1-pixel diagonal
+            v += (int) (seed >> 29) - 4;
+            gray[(size_t) y * stride + x] = (uint8_t) (v < 0 ? 0 : v > 255 ? 255 : v);
+        }
+}
+
+// Owns the planes of a YUV_420_888 frame in planar (pixelStride 1) or interleaved (pixelStride 2) layout.
+struct TestYuv {
+    std::vector<uint8_t> y, u, v, uv;
+    YuvImage img;
+
+    TestYuv(int w, int h, int uvPixelStride, bool vFirst, int rowPadding) {
+        int cw = (w + 1) / 2, ch = (h + 1) / 2;
+        uint32_t seed = 4242;
+        auto next = [&seed] { seed = seed * 1103515245u + 12345u; return (uint8_t) (seed >> 24); };
+        img.yRowStride = w + rowPadding;
+        y.resize((size_t) img.yRowStride * h);
+        for (auto &b : y) b = next();
+        img.y = y.data();
+        img.uvPixelStride = uvPixelStride;
+        if (uvPixelStride == 1) {
+            img.uvRowStride = cw + rowPadding;
+            u.resize((size_t) img.uvRowStride * ch);
+            v.resize(u.size());
+            for (auto &b : u) b = next();
+            for (auto &b : v) b = next();
+            img.u = u.data();
+            img.v = v.data();
+        } else {
+            img.uvRowStride = cw * 2 + rowPadding;
+            uv.resize((size_t) img.uvRowStride * ch + 1);
+            for (auto &b : uv) b = next();
+            img.u = uv.data() + (vFirst ? 1 : 0);
+            img.v = uv.data() + (vFirst ? 0 : 1);
+        }
+    }
+};
+
+// FNV-1a over the visible bytes of each row (stride padding excluded)
+inline uint64_t hashRows(const uint8_t *data, int rowBytes, int rows, int stride) {
+    uint64_t h = 1469598103934665603ull;
+    for (int y = 0; y < rows; y++) {
+        const uint8_t *row = data + (size_t) y * stride;
+        for (int i = 0; i < rowBytes; i++) {
+            h ^= row[i];
+            h *= 1099511628211ull;
+        }
+    }
+    return h;
+}
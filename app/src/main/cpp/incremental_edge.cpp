@@ -0,0 +1,116 @@
+#include "incremental_edge.h"
+
+#include <cstring>
+
+#include "edge_kernel.h"
+#include "worker_pool.h"
+
+// Recomputing more than this share of the tiles one by one costs more than a full-frame pass
+static const int FULL_FRAME_PERCENT = 50;
+
+namespace {
+
+// True when the tile differs from the kept luma by more than maxSad; 0 is an exact comparison.
+bool tileChanged(const uint8_t *src, int srcStride, const uint8_t *kept, int keptStride, int tw, int th,
+                 uint32_t maxSad) {
+    if (maxSad == 0) {
+        for (int y = 0; y < th; y++)
+            if (memcmp(src + (size_t) y * srcStride, kept + (size_t) y * keptStride, (size_t) tw) != 0) return true;
+        return false;
+    }
+    uint32_t sad = 0;
+    for (int y = 0; y < th; y++) {
+        const uint8_t *a = src + (size_t) y * srcStride;
+        const uint8_t *b = kept + (size_t) y * keptStride;
+        for (int x = 0; x < tw; x++) sad += (uint32_t) (a[x] > b[x] ? a[x] - b[x] : b[x] - a[x]);
+        if (sad > maxSad) return true;
+    }
+    return false;
+}
+
+struct TileJob {
+    const uint8_t *gray;
+    uint8_t *output;
+    const uint8_t *changed;
+    int w, h, mode, tilesX, tilesY;
+};
+
+// Output rows of one tile row. Changed tiles in this row recompute all of their rows; changed tiles in
+// the rows above and below only reach the first / last `reach` rows. Rows never cross into another band.
+void runTileRow(void *ctx, int ty) {
+    const TileJob &job = *(const TileJob *) ctx;
+    const int T = IncrementalEdge::TILE;
+    int reach = job.mode == MODE_EDGE ? 2 : 1;
+    int y0 = ty * T;
+    int y1 = y0 + T > job.h ? job.h : y0 + T;
+    for (int src = ty - 1; src <= ty + 1; src++) {
+        if (src < 0 || src >= job.tilesY) continue;
+        int ry0 = src < ty ? y0 : src > ty ? y1 - reach : y0;
+        int ry1 = src < ty ? y0 + reach : y1;
+        if (ry0 < y0) ry0 = y0;
+        if (ry1 > y1) ry1 = y1;
+        const uint8_t *flags = job.changed + (size_t) src * job.tilesX;
+        for (int tx = 0; tx < job.tilesX; ) {
+            if (!flags[tx]) { tx++; continue; }
+            int run = tx;
+            while (run < job.tilesX && flags[run]) run++;
+            int x0 = tx * T - reach;
+            int x1 = run * T + reach;
+            processGrayRegion(job.gray, job.w, job.output, job.w, job.w, job.h, job.mode,
+                              x0 < 0 ? 0 : x0, ry0, x1 > job.w ? job.w : x1, ry1);
+            tx = run;
+        }
+    }
+}
+
+}
+
+int IncrementalEdge::process(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h,
+                             int mode, uint32_t maxTileSad) {
+    const int T = TILE;
+    int tilesX = (w + T - 1) / T, tilesY = (h + T - 1) / T;
+    int recomputed = tilesX * tilesY;
+    bool incremental = (mode == MODE_BLUR || mode == MODE_EDGE) && w == width && h == height && mode == this->mode;
+    // A tile row's regions span at most its T rows; sized up front the scratch does not follow the dirty area
+    if (mode == MODE_BLUR || mode == MODE_EDGE) reserveGrayRegion(w, h, mode, T);
+
+    if (!incremental) {
+        width = w;
+        height = h;
+        this->mode = mode;
+        gray.resize((size_t) w * h);
+        output.resize((size_t) w * h);
+        changed.assign((size_t) recomputed, 1);
+        for (int y = 0; y < h; y++) memcpy(&gray[(size_t) y * w], src + (size_t) y * srcStride, (size_t) w);
+        processGray(gray.data(), w, output.data(), w, w, h, mode);
+    } else {
+        // Changed tiles are folded into the kept luma right away; src is not read again after this loop,
+        // so processing in place is safe.
+        int dirty = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            int y0 = ty * T, th = y0 + T > h ? h - y0 : T;
+            for (int tx = 0; tx < tilesX; tx++) {
+                int x0 = tx * T, tw = x0 + T > w ? w - x0 : T;
+                const uint8_t *s = src + (size_t) y0 * srcStride + x0;
+                uint8_t *k = &gray[(size_t) y0 * w + x0];
+                bool c = tileChanged(s, srcStride, k, w, tw, th, maxTileSad);
+                changed[(size_t) ty * tilesX + tx] = c;
+                if (!c) continue;
+                dirty++;
+                for (int y = 0; y < th; y++) memcpy(k + (size_t) y * w, s + (size_t) y * srcStride, (size_t) tw);
+            }
+        }
+        if (dirty * 100 > recomputed * FULL_FRAME_PERCENT) {
+            processGray(gray.data(), w, output.data(), w, w, h, mode);
+        } else if (dirty > 0) {
+            recomputed = dirty;
+            TileJob job = { gray.data(), output.data(), changed.data(), w, h, mode, tilesX, tilesY };
+            WorkerPool::instance().run(tilesY, runTileRow, &job);
+        } else {
+            recomputed = 0;
+        }
+    }
+
+    for (int y = 0; y < h; y++) memcpy(dst + (size_t) y * dstStride, &output[(size_t) y * w], (size_t) w);
+    return recomputed;
+}
@@ -0,0 +1,39 @@
+#pragma once
+
+#include <cstdint>
+#include <vector>
+
+/*
+ processGray for mostly static scenes. Keeps the luma the previous output was computed from and that
+ output, compares each TILE x TILE tile of the new frame against the kept luma, and reruns the kernel
+ only for the tiles that changed plus the pixels around them that read those tiles (2 for edge, 1 for
+ blur); every other output pixel is copied from the previous frame.
+
+ With maxTileSad 0 any changed pixel marks its tile, and the output is bit-identical to processGray on
+ the same frame. A larger value treats tiles whose sum of absolute differences stays within it as
+ unchanged and keeps their previous luma, so sensor noise does not recompute a static scene; the output
+ is then identical to processGray on that kept luma.
+
+ Not thread-safe; use one instance per processing thread.
+*/
+class IncrementalEdge {
+public:
+    static const int TILE = 32;
+
+    /*
+     Same arguments as processGray; src and dst may alias. A change of size or mode (and the first call)
+     recomputes the whole frame. Returns the number of tiles whose output was recomputed.
+    */
+    int process(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h, int mode,
+                uint32_t maxTileSad);
+
+    static int tileCount(int w, int h) {
+        return ((w + TILE - 1) / TILE) * ((h + TILE - 1) / TILE);
+    }
+
+private:
+    int width = 0, height = 0, mode = -1;
+    std::vector<uint8_t> gray;     // width x height, tight
+    std::vector<uint8_t> output;   // width x height, tight
+    std::vector<uint8_t> changed;  // one flag per tile, row major
+};
@@ -1,96 +1,442 @@
 #include <jni.h>
 #include <cstdint>
-#include <cmath>
+#include <cstring>
+
+#include "edge_kernel.h"
+#include "filter_graph.h"
+#include "scratch_arena.h"
+#include "worker_pool.h"
+#include "yuv_convert.h"
 
 /*
- Simple native processing with modes:
- 0 = original (no-op), 1 = grayscale, 2 = blur, 3 = edge (Sobel + threshold).
- In-place on RGBA bytes.
+ JNI glue. The processing itself lives in edge_kernel.cpp and yuv_convert.cpp so it can be
+ built and checked without a JVM.
 */
 
+static void throwIllegalArgument(JNIEnv *env, const char *msg) {
+    jclass cls = env->FindClass("java/lang/IllegalArgumentException");
+    if (cls) env->ThrowNew(cls, msg);
+}
+
+// Copies (x, y, width, height) quadruples into rects; returns their count, or -1 after throwing
+static int readRegions(JNIEnv *env, jintArray arr, int *rects, const char *msg) {
+    jsize len = arr ? env->GetArrayLength(arr) : -1;
+    if (len < 0 || len % 4 != 0 || len / 4 > FilterPlan::MAX_REGIONS) {
+        throwIllegalArgument(env, msg);
+        return -1;
+    }
+    env->GetIntArrayRegion(arr, 0, len, (jint *) rects);
+    return len / 4;
+}
+
+// All overloads of NativeLib.processFrame are native, so the long (signature-mangled) names are required.
+
 extern "C"
 JNIEXPORT void JNICALL
-Java_com_example_edgedetection_NativeLib_processFrame(JNIEnv *env, jclass /*clazz*/, jbyteArray arr,
-                                                      jint width, jint height, jint mode) {
+Java_com_example_edgedetection_NativeLib_processFrame___3BIII(JNIEnv *env, jclass /*clazz*/, jbyteArray arr,
+                                                              jint width, jint height, jint mode) {
     jboolean isCopy;
     jbyte *data = env->GetByteArrayElements(arr, &isCopy);
     if (!data) return;
 
-    int w = width, h = height;
-    int len = w * h;
+    if (mode == 0) { // original passthrough, nothing to write back
+        env->ReleaseByteArrayElements(arr, data, JNI_ABORT);
+        return;
+    }
+    uint8_t *px = (uint8_t *) data;
+    processRgba(px, width * 4, px, width * 4, width, height, mode);
+    env->ReleaseByteArrayElements(arr, data, 0);
+}
 
-    if (mode == 0) { // original passthrough
-        env->ReleaseByteArrayElements(arr, data, 0);
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_processFrame__Ljava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2IIII(
+        JNIEnv *env, jclass /*clazz*/, jobject srcBuf, jint srcStride, jobject dstBuf, jint dstStride,
+        jint width, jint height, jint mode) {
+    uint8_t *src = (uint8_t *) env->GetDirectBufferAddress(srcBuf);
+    uint8_t *dst = (uint8_t *) env->GetDirectBufferAddress(dstBuf);
+    if (!src || !dst) {
+        throwIllegalArgument(env, "processFrame requires direct ByteBuffers");
         return;
     }
+    if (width <= 0 || height <= 0 || srcStride < width * 4 || dstStride < width * 4) {
+        throwIllegalArgument(env, "processFrame: invalid dimensions or stride");
+        return;
+    }
+    jlong need = (jlong) (height - 1) * srcStride + (jlong) width * 4;
+    jlong needDst = (jlong) (height - 1) * dstStride + (jlong) width * 4;
+    if (env->GetDirectBufferCapacity(srcBuf) < need || env->GetDirectBufferCapacity(dstBuf) < needDst) {
+        throwIllegalArgument(env, "processFrame: buffer too small for width/height/stride");
+        return;
+    }
+    processRgba(src, srcStride, dst, dstStride, width, height, mode);
+}
 
-    // Build grayscale
-    float *gray = new float[len]();
-    for (int i = 0; i < len; i++) {
-        int base = i*4;
-        uint8_t r = (uint8_t)data[base];
-        uint8_t g = (uint8_t)data[base+1];
-        uint8_t b = (uint8_t)data[base+2];
-        gray[i] = 0.299f * r + 0.587f * g + 0.114f * b;
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_yuv420ToRgba(JNIEnv *env, jclass /*clazz*/,
+                                                      jobject yBuf, jobject uBuf, jobject vBuf,
+                                                      jint yRowStride, jint uvRowStride, jint uvPixelStride,
+                                                      jint width, jint height, jint rotation,
+                                                      jobject dstBuf, jint dstStride) {
+    YuvImage img;
+    img.y = (const uint8_t *) env->GetDirectBufferAddress(yBuf);
+    img.u = (const uint8_t *) env->GetDirectBufferAddress(uBuf);
+    img.v = (const uint8_t *) env->GetDirectBufferAddress(vBuf);
+    img.yRowStride = yRowStride;
+    img.uvRowStride = uvRowStride;
+    img.uvPixelStride = uvPixelStride;
+    uint8_t *dst = (uint8_t *) env->GetDirectBufferAddress(dstBuf);
+    if (!img.y || !img.u || !img.v || !dst) {
+        throwIllegalArgument(env, "yuv420ToRgba requires direct ByteBuffers");
+        return;
+    }
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+        throwIllegalArgument(env, "yuv420ToRgba: rotation must be 0, 90, 180 or 270");
+        return;
+    }
+    int outW = (rotation == 90 || rotation == 270) ? height : width;
+    int outH = (rotation == 90 || rotation == 270) ? width : height;
+    if (width <= 0 || height <= 0 || yRowStride < width || uvPixelStride < 1 || dstStride < outW * 4) {
+        throwIllegalArgument(env, "yuv420ToRgba: invalid dimensions or stride");
+        return;
+    }
+    // The last row of a plane is not necessarily padded out to the full row stride
+    int cw = (width + 1) / 2, ch = (height + 1) / 2;
+    jlong needY = (jlong) (height - 1) * yRowStride + width;
+    jlong needUv = (jlong) (ch - 1) * uvRowStride + (jlong) (cw - 1) * uvPixelStride + 1;
+    jlong needDst = (jlong) (outH - 1) * dstStride + (jlong) outW * 4;
+    if (env->GetDirectBufferCapacity(yBuf) < needY || env->GetDirectBufferCapacity(uBuf) < needUv
+            || env->GetDirectBufferCapacity(vBuf) < needUv || env->GetDirectBufferCapacity(dstBuf) < needDst) {
+        throwIllegalArgument(env, "yuv420ToRgba: buffer too small for width/height/stride");
+        return;
+    }
+    yuv420ToRgba(img, width, height, rotation, dst, dstStride);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_yuvToLuma(JNIEnv *env, jclass /*clazz*/, jobject yBuf, jint yRowStride,
+                                                   jint width, jint height, jint rotation, jint scale,
+                                                   jobject dstBuf, jint dstStride) {
+    const uint8_t *y = (const uint8_t *) env->GetDirectBufferAddress(yBuf);
+    uint8_t *dst = (uint8_t *) env->GetDirectBufferAddress(dstBuf);
+    if (!y || !dst) {
+        throwIllegalArgument(env, "yuvToLuma requires direct ByteBuffers");
+        return;
+    }
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+        throwIllegalArgument(env, "yuvToLuma: rotation must be 0, 90, 180 or 270");
+        return;
     }
+    if (scale != 1 && scale != 2 && scale != 4) {
+        throwIllegalArgument(env, "yuvToLuma: scale must be 1, 2 or 4");
+        return;
+    }
+    int sw = width / scale, sh = height / scale;
+    int outW = (rotation == 90 || rotation == 270) ? sh : sw;
+    int outH = (rotation == 90 || rotation == 270) ? sw : sh;
+    if (sw <= 0 || sh <= 0 || yRowStride < width || dstStride < outW) {
+        throwIllegalArgument(env, "yuvToLuma: invalid dimensions or stride");
+        return;
+    }
+    jlong needY = (jlong) (height - 1) * yRowStride + width;
+    jlong needDst = (jlong) (outH - 1) * dstStride + outW;
+    if (env->GetDirectBufferCapacity(yBuf) < needY || env->GetDirectBufferCapacity(dstBuf) < needDst) {
+        throwIllegalArgument(env, "yuvToLuma: buffer too small for width/height/stride");
+        return;
+    }
+    lumaToGrayScaled(y, yRowStride, width, height, scale, rotation, dst, dstStride);
+}
 
-    if (mode == 1) { // grayscale
-        for (int i = 0; i < len; i++) {
-            int base = i*4;
-            uint8_t v = (uint8_t) (gray[i] < 0 ? 0 : (gray[i] > 255 ? 255 : gray[i]));
-            data[base] = v; data[base+1] = v; data[base+2] = v; data[base+3] = (jbyte)255;
-        }
-        delete[] gray;
-        env->ReleaseByteArrayElements(arr, data, 0);
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_yuvToLumaRegions(JNIEnv *env, jclass /*clazz*/, jobject yBuf, jint yRowStride,
+                                                          jint width, jint height, jint rotation, jint scale,
+                                                          jintArray rectsArr, jint grow, jint fill,
+                                                          jobject dstBuf, jint dstStride) {
+    const uint8_t *y = (const uint8_t *) env->GetDirectBufferAddress(yBuf);
+    uint8_t *dst = (uint8_t *) env->GetDirectBufferAddress(dstBuf);
+    if (!y || !dst) {
+        throwIllegalArgument(env, "yuvToLumaRegions requires direct ByteBuffers");
         return;
     }
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+        throwIllegalArgument(env, "yuvToLumaRegions: rotation must be 0, 90, 180 or 270");
+        return;
+    }
+    if (scale != 1 && scale != 2 && scale != 4) {
+        throwIllegalArgument(env, "yuvToLumaRegions: scale must be 1, 2 or 4");
+        return;
+    }
+    int sw = width / scale, sh = height / scale;
+    int outW = (rotation == 90 || rotation == 270) ? sh : sw;
+    int outH = (rotation == 90 || rotation == 270) ? sw : sh;
+    if (sw <= 0 || sh <= 0 || yRowStride < width || dstStride < outW || grow < 0 || fill < -1 || fill > 255) {
+        throwIllegalArgument(env, "yuvToLumaRegions: invalid dimensions or stride");
+        return;
+    }
+    jlong needY = (jlong) (height - 1) * yRowStride + width;
+    jlong needDst = (jlong) (outH - 1) * dstStride + outW;
+    if (env->GetDirectBufferCapacity(yBuf) < needY || env->GetDirectBufferCapacity(dstBuf) < needDst) {
+        throwIllegalArgument(env, "yuvToLumaRegions: buffer too small for width/height/stride");
+        return;
+    }
+    int rects[4 * FilterPlan::MAX_REGIONS];
+    int count = readRegions(env, rectsArr, rects, "yuvToLumaRegions: expected at most 64 (x, y, width, height) quadruples");
+    if (count < 0) return;
+    // The rectangles overwrite their part of the fill
+    if (fill >= 0) for (int row = 0; row < outH; row++) memset(dst + (size_t) row * dstStride, fill, (size_t) outW);
+    for (int i = 0; i < count; i++) {
+        const int *r = rects + 4 * i;
+        if (r[2] <= 0 || r[3] <= 0) continue;
+        // 64-bit so huge rectangles clip instead of overflowing
+        jlong x0 = (jlong) r[0] - grow, y0 = (jlong) r[1] - grow;
+        jlong x1 = (jlong) r[0] + r[2] + grow, y1 = (jlong) r[1] + r[3] + grow;
+        if (x0 < 0) x0 = 0;
+        if (y0 < 0) y0 = 0;
+        if (x1 > outW) x1 = outW;
+        if (y1 > outH) y1 = outH;
+        lumaToGrayRegion(y, yRowStride, width, height, scale, rotation, (int) x0, (int) y0, (int) x1, (int) y1,
+                         dst, dstStride);
+    }
+}
 
-    // Prepare a temp buffer for blur (also used by edge)
-    float *blur = new float[len]();
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_processGrayFrame(JNIEnv *env, jclass /*clazz*/, jobject srcBuf, jint srcStride,
+                                                          jobject dstBuf, jint dstStride,
+                                                          jint width, jint height, jint mode) {
+    uint8_t *src = (uint8_t *) env->GetDirectBufferAddress(srcBuf);
+    uint8_t *dst = (uint8_t *) env->GetDirectBufferAddress(dstBuf);
+    if (!src || !dst) {
+        throwIllegalArgument(env, "processGrayFrame requires direct ByteBuffers");
+        return;
+    }
+    if (width <= 0 || height <= 0 || srcStride < width || dstStride < width) {
+        throwIllegalArgument(env, "processGrayFrame: invalid dimensions or stride");
+        return;
+    }
+    jlong need = (jlong) (height - 1) * srcStride + width;
+    jlong needDst = (jlong) (height - 1) * dstStride + width;
+    if (env->GetDirectBufferCapacity(srcBuf) < need || env->GetDirectBufferCapacity(dstBuf) < needDst) {
+        throwIllegalArgument(env, "processGrayFrame: buffer too small for width/height/stride");
+        return;
+    }
+    processGray(src, srcStride, dst, dstStride, width, height, mode);
+}
 
-    // 3x3 box blur (skip borders)
-    for (int y = 1; y < h-1; y++) {
-        for (int x = 1; x < w-1; x++) {
-            float s=0.f;
-            for (int ky=-1; ky<=1; ky++)
-                for (int kx=-1; kx<=1; kx++)
-                    s += gray[(y+ky)*w + (x+kx)];
-            blur[y*w + x] = s/9.f;
-        }
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_example_edgedetection_NativeLib_createPipeline(JNIEnv *env, jclass /*clazz*/, jintArray stagesArr) {
+    if (!stagesArr) {
+        throwIllegalArgument(env, "createPipeline: stages is null");
+        return 0;
+    }
+    jsize len = env->GetArrayLength(stagesArr);
+    if (len % 2 != 0 || len / 2 > FilterPlan::MAX_STAGES) {
+        throwIllegalArgument(env, "createPipeline: expected at most 16 (type, parameter) pairs");
+        return 0;
+    }
+    int stages[2 * FilterPlan::MAX_STAGES];
+    env->GetIntArrayRegion(stagesArr, 0, len, (jint *) stages);
+    FilterPlan *plan = new FilterPlan();
+    if (const char *error = plan->compile(stages, len / 2)) {
+        delete plan;
+        throwIllegalArgument(env, error);
+        return 0;
     }
+    return (jlong) (intptr_t) plan;
+}
 
-    if (mode == 2) { // blur output
-        for (int i = 0; i < len; i++) {
-            int base = i*4;
-            uint8_t v = (uint8_t) (blur[i] < 0 ? 0 : (blur[i] > 255 ? 255 : blur[i]));
-            data[base] = v; data[base+1] = v; data[base+2] = v; data[base+3] = (jbyte)255;
-        }
-        delete[] gray; delete[] blur;
-        env->ReleaseByteArrayElements(arr, data, 0);
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_releasePipeline(JNIEnv * /*env*/, jclass /*clazz*/, jlong pipeline) {
+    delete (FilterPlan *) (intptr_t) pipeline;
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_setPipelineIncremental(JNIEnv *env, jclass /*clazz*/, jlong pipeline,
+                                                                jint maxTileSad) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    if (!plan) {
+        throwIllegalArgument(env, "setPipelineIncremental: pipeline was not created or already released");
+        return;
+    }
+    plan->setIncremental(maxTileSad);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_setPipelineAdaptiveThreshold(JNIEnv *env, jclass /*clazz*/, jlong pipeline,
+                                                                      jint method, jint targetPerMille,
+                                                                      jfloat smoothing, jboolean hysteresis) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    if (!plan) {
+        throwIllegalArgument(env, "setPipelineAdaptiveThreshold: pipeline was not created or already released");
         return;
     }
+    if (const char *error = plan->setAdaptiveThreshold(method, targetPerMille, smoothing, hysteresis)) {
+        throwIllegalArgument(env, error);
+    }
+}
 
-    // mode 3: edges (black background, white edges)
-    int gxK[9] = {-1,0,1,-2,0,2,-1,0,1};
-    int gyK[9] = {-1,-2,-1,0,0,0,1,2,1};
-    const float thresh = 50.f;
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgedetection_NativeLib_pipelineThreshold(JNIEnv *env, jclass /*clazz*/, jlong pipeline) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    if (!plan) {
+        throwIllegalArgument(env, "pipelineThreshold: pipeline was not created or already released");
+        return 0;
+    }
+    return plan->adaptiveThreshold().threshold();
+}
 
-    for (int y=1; y<h-1; y++) {
-        for (int x=1; x<w-1; x++) {
-            float gx=0.f, gy=0.f; int idx=0;
-            for (int ky=-1; ky<=1; ky++) {
-                for (int kx=-1; kx<=1; kx++) {
-                    float v = blur[(y+ky)*w + (x+kx)];
-                    gx += gxK[idx]*v; gy += gyK[idx]*v; idx++;
-                }
-            }
-            float mag = sqrtf(gx*gx + gy*gy);
-            uint8_t e = (mag > thresh) ? 255 : 0; // white edges, black background
-            int base = (y*w + x)*4;
-            data[base] = e; data[base+1] = e; data[base+2] = e; data[base+3] = (jbyte)255;
-        }
+extern "C"
+JNIEXPORT jfloat JNICALL
+Java_com_example_edgedetection_NativeLib_pipelineEdgeDensity(JNIEnv *env, jclass /*clazz*/, jlong pipeline) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    if (!plan) {
+        throwIllegalArgument(env, "pipelineEdgeDensity: pipeline was not created or already released");
+        return 0;
     }
+    return plan->adaptiveThreshold().density();
+}
 
-    delete[] gray; delete[] blur;
-    env->ReleaseByteArrayElements(arr, data, 0);
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgedetection_NativeLib_processFrame__JLjava_nio_ByteBuffer_2ILjava_nio_ByteBuffer_2IIII(
+        JNIEnv *env, jclass /*clazz*/, jlong pipeline, jobject srcBuf, jint srcStride, jobject dstBuf, jint dstStride,
+        jint width, jint height, jint bytesPerPixel) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    uint8_t *src = (uint8_t *) env->GetDirectBufferAddress(srcBuf);
+    uint8_t *dst = (uint8_t *) env->GetDirectBufferAddress(dstBuf);
+    if (!plan) {
+        throwIllegalArgument(env, "processFrame: pipeline was not created or already released");
+        return -1;
+    }
+    if (!src || !dst) {
+        throwIllegalArgument(env, "processFrame requires direct ByteBuffers");
+        return -1;
+    }
+    if (bytesPerPixel != 1 && bytesPerPixel != 4) {
+        throwIllegalArgument(env, "processFrame: bytesPerPixel must be 1 or 4");
+        return -1;
+    }
+    if (width <= 0 || height <= 0 || srcStride < width * bytesPerPixel || dstStride < width * bytesPerPixel) {
+        throwIllegalArgument(env, "processFrame: invalid dimensions or stride");
+        return -1;
+    }
+    jlong need = (jlong) (height - 1) * srcStride + (jlong) width * bytesPerPixel;
+    jlong needDst = (jlong) (height - 1) * dstStride + (jlong) width * bytesPerPixel;
+    if (env->GetDirectBufferCapacity(srcBuf) < need || env->GetDirectBufferCapacity(dstBuf) < needDst) {
+        throwIllegalArgument(env, "processFrame: buffer too small for width/height/stride");
+        return -1;
+    }
+    return plan->run(src, srcStride, dst, dstStride, width, height, bytesPerPixel);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_processRegions(JNIEnv *env, jclass /*clazz*/, jlong pipeline,
+                                                        jobject srcBuf, jint srcStride, jobject dstBuf, jint dstStride,
+                                                        jint width, jint height, jint bytesPerPixel, jintArray rectsArr) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    uint8_t *src = (uint8_t *) env->GetDirectBufferAddress(srcBuf);
+    uint8_t *dst = (uint8_t *) env->GetDirectBufferAddress(dstBuf);
+    if (!plan) {
+        throwIllegalArgument(env, "processRegions: pipeline was not created or already released");
+        return;
+    }
+    if (!src || !dst) {
+        throwIllegalArgument(env, "processRegions requires direct ByteBuffers");
+        return;
+    }
+    if (bytesPerPixel != 1 && bytesPerPixel != 4) {
+        throwIllegalArgument(env, "processRegions: bytesPerPixel must be 1 or 4");
+        return;
+    }
+    if (width <= 0 || height <= 0 || srcStride < width * bytesPerPixel || dstStride < width * bytesPerPixel) {
+        throwIllegalArgument(env, "processRegions: invalid dimensions or stride");
+        return;
+    }
+    jlong need = (jlong) (height - 1) * srcStride + (jlong) width * bytesPerPixel;
+    jlong needDst = (jlong) (height - 1) * dstStride + (jlong) width * bytesPerPixel;
+    if (env->GetDirectBufferCapacity(srcBuf) < need || env->GetDirectBufferCapacity(dstBuf) < needDst) {
+        throwIllegalArgument(env, "processRegions: buffer too small for width/height/stride");
+        return;
+    }
+    int rects[4 * FilterPlan::MAX_REGIONS];
+    int count = readRegions(env, rectsArr, rects, "processRegions: expected at most 64 (x, y, width, height) quadruples");
+    if (count < 0) return;
+    plan->runRegions(src, srcStride, dst, dstStride, width, height, bytesPerPixel, rects, count);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgedetection_NativeLib_pipelineHalo(JNIEnv *env, jclass /*clazz*/, jlong pipeline) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    if (!plan) {
+        throwIllegalArgument(env, "pipelineHalo: pipeline was not created or already released");
+        return 0;
+    }
+    return plan->halo();
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_example_edgedetection_NativeLib_createContext(JNIEnv *env, jclass /*clazz*/, jint width, jint height) {
+    if (width <= 0 || height <= 0) {
+        throwIllegalArgument(env, "createContext: invalid dimensions");
+        return 0;
+    }
+    return (jlong) (intptr_t) new ScratchContext(width, height);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_releaseContext(JNIEnv * /*env*/, jclass /*clazz*/, jlong context) {
+    delete (ScratchContext *) (intptr_t) context;
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_setPipelineContext(JNIEnv *env, jclass /*clazz*/, jlong pipeline,
+                                                            jlong context) {
+    FilterPlan *plan = (FilterPlan *) (intptr_t) pipeline;
+    if (!plan) {
+        throwIllegalArgument(env, "setPipelineContext: pipeline was not created or already released");
+        return;
+    }
+    plan->setContext((ScratchContext *) (intptr_t) context);
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_example_edgedetection_NativeLib_contextBytes(JNIEnv *env, jclass /*clazz*/, jlong context) {
+    ScratchContext *c = (ScratchContext *) (intptr_t) context;
+    if (!c) {
+        throwIllegalArgument(env, "contextBytes: context was not created or already released");
+        return 0;
+    }
+    return (jlong) c->bytesHeld();
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_example_edgedetection_NativeLib_scratchBytesAllocated(JNIEnv * /*env*/, jclass /*clazz*/) {
+    return (jlong) ScratchArena::bytesAllocated();
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgedetection_NativeLib_setWorkerCount(JNIEnv * /*env*/, jclass /*clazz*/, jint count) {
+    WorkerPool::instance().setWorkerCount(count);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgedetection_NativeLib_getWorkerCount(JNIEnv * /*env*/, jclass /*clazz*/) {
+    return WorkerPool::instance().workerCount();
 }
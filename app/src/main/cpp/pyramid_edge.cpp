@@ -0,0 +1,299 @@
+#include "pyramid_edge.h"
+
+#include <cstring>
+
+#include "edge_kernel.h"
+#include "scratch_arena.h"
+#include "worker_pool.h"
+
+// Same split as edge_kernel.cpp: thinner bands are not worth a hand-off
+static const int MIN_BAND_ROWS = 16;
+
+// |sobel(sum / 9)| > 50, as MODE_EDGE
+static const int EDGE_THRESH_SQ = (9 * 50) * (9 * 50);
+// Averaging flattens thin lines and fine texture; a lower bar on the coarse level keeps their edges as candidates
+static const int COARSE_THRESH_SQ = (9 * 10) * (9 * 10);
+
+namespace {
+
+struct PyramidJob {
+    const uint8_t *src;
+    int srcStride;
+    uint8_t *dst;
+    int dstStride, w, h, bpp, level, bands;
+    // Level 0 as the refinement reads it: src itself for out-of-place gray, otherwise grayCopy
+    const uint8_t *gray;
+    int grayStride;
+    uint8_t *grayCopy;
+    uint8_t *levels[MAX_PYRAMID_LEVEL + 1];   // 1..level, rows of widths[k] bytes
+    int widths[MAX_PYRAMID_LEVEL + 1];
+    int heights[MAX_PYRAMID_LEVEL + 1];
+    uint8_t *edges;                           // coarse edges, widths[level] x heights[level]
+};
+
+inline int bandStart(int n, int band, int bands) {
+    return (int) ((int64_t) n * band / bands);
+}
+
+const uint8_t *grayRow(const PyramidJob &job, int y) {
+    const uint8_t *s = job.src + (size_t) y * job.srcStride;
+    if (!job.grayCopy) return s;
+    uint8_t *g = job.grayCopy + (size_t) y * job.w;
+    if (job.bpp == 4) {
+        for (int x = 0; x < job.w; x++) g[x] = rgbaToGray(s + x * 4);
+    } else {
+        memcpy(g, s, (size_t) job.w);
+    }
+    return g;
+}
+
+// Row r of level k, building the rows of the levels below it on the way; each row is built once
+const uint8_t *levelRow(const PyramidJob &job, int k, int r) {
+    if (k == 0) return grayRow(job, r);
+    const uint8_t *a = levelRow(job, k - 1, 2 * r);
+    const uint8_t *b = levelRow(job, k - 1, 2 * r + 1);
+    uint8_t *out = job.levels[k] + (size_t) r * job.widths[k];
+    for (int x = 0; x < job.widths[k]; x++)
+        out[x] = (uint8_t) ((a[2 * x] + a[2 * x + 1] + b[2 * x] + b[2 * x + 1] + 2) >> 2);
+    return out;
+}
+
+void buildBand(void *ctx, int band) {
+    const PyramidJob &job = *(const PyramidJob *) ctx;
+    int top = job.heights[job.level];
+    int r1 = bandStart(top, band + 1, job.bands);
+    for (int r = bandStart(top, band, job.bands); r < r1; r++) levelRow(job, job.level, r);
+    // Rows below the last whole block of the coarsest level are still needed at full resolution
+    if (band == job.bands - 1 && job.grayCopy)
+        for (int y = top << job.level; y < job.h; y++) grayRow(job, y);
+}
+
+// Box sum and Sobel on rows of the coarsest level, reading clamped past its border
+void coarseBand(void *ctx, int band) {
+    const PyramidJob &job = *(const PyramidJob *) ctx;
+    int cw = job.widths[job.level], ch = job.heights[job.level];
+    int r0 = bandStart(ch, band, job.bands), r1 = bandStart(ch, band + 1, job.bands);
+    const uint8_t *level = job.levels[job.level];
+    // Horizontal sums of level rows r0-2..r1+1 and box sums of rows r0-1..r1, for columns -1..cw
+    int sw = cw + 2, n = r1 - r0;
+    ScratchArena &scratch = ScratchArena::current();
+    uint16_t *hsum = scratch.get<uint16_t>(SCRATCH_PYRAMID_SUMS, (size_t) (2 * n + 6) * sw);
+    uint16_t *sum = hsum + (size_t) (n + 4) * sw;
+    uint8_t *padded = scratch.get<uint8_t>(SCRATCH_PASS_ROW, (size_t) cw + 4);
+
+    for (int i = 0; i < n + 4; i++) {
+        int r = r0 - 2 + i;
+        const uint8_t *l = level + (size_t) (r < 0 ? 0 : r >= ch ? ch - 1 : r) * cw;
+        memcpy(padded + 2, l, (size_t) cw);
+        padded[0] = padded[1] = l[0];
+        padded[cw + 2] = padded[cw + 3] = l[cw - 1];
+        uint16_t *hs = hsum + (size_t) i * sw;
+        for (int x = 0; x < sw; x++) hs[x] = (uint16_t) (padded[x] + padded[x + 1] + padded[x + 2]);
+    }
+    for (int i = 0; i < n + 2; i++) {
+        const uint16_t *a = hsum + (size_t) i * sw, *b = a + sw, *c = b + sw;
+        uint16_t *s = sum + (size_t) i * sw;
+        for (int x = 0; x < sw; x++) s[x] = (uint16_t) (a[x] + b[x] + c[x]);
+    }
+    for (int i = 0; i < n; i++) {
+        const uint16_t *a = sum + (size_t) i * sw, *b = a + sw, *c = b + sw;
+        uint8_t *e = job.edges + (size_t) (r0 + i) * cw;
+        for (int x = 0; x < cw; x++) {
+            // Column x of the level is x + 1 of the sums
+            int gx = (a[x + 2] - a[x]) + 2 * (b[x + 2] - b[x]) + (c[x + 2] - c[x]);
+            int gy = (c[x] + 2 * c[x + 1] + c[x + 2]) - (a[x] + 2 * a[x + 1] + a[x + 2]);
+            e[x] = gx * gx + gy * gy > COARSE_THRESH_SQ;
+        }
+    }
+}
+
+// Coarse row cy of edges grown by one pixel, so an edge just across a coarse pixel boundary stays covered
+void grownRow(const PyramidJob &job, int cy, uint8_t *out) {
+    int cw = job.widths[job.level], ch = job.heights[job.level];
+    const uint8_t *mid = job.edges + (size_t) cy * cw;
+    const uint8_t *up = cy > 0 ? mid - cw : mid, *down = cy + 1 < ch ? mid + cw : mid;
+    for (int x = 0; x < cw; x++) out[x] = up[x] | mid[x] | down[x];
+    uint8_t previous = 0;
+    for (int x = 0; x < cw; x++) {
+        uint8_t v = out[x];
+        out[x] = previous | v | (x + 1 < cw ? out[x + 1] : 0);
+        previous = v;
+    }
+}
+
+inline void putSpan(uint8_t *d, int bpp, int x0, int x1, const uint8_t *v) {
+    if (bpp == 1) {
+        memcpy(d + x0, v + x0, (size_t) (x1 - x0));
+        return;
+    }
+    for (int x = x0; x < x1; x++) {
+        uint8_t *px = d + x * 4;
+        px[0] = v[x]; px[1] = v[x]; px[2] = v[x]; px[3] = 255;
+    }
+}
+
+// Box sums of row r over columns [x0 - 1, x1] of each span, zero on the frame border as in edge_kernel.cpp
+void spanSums(const PyramidJob &job, int r, const int *spans, int count, uint16_t *vsum, uint16_t *out) {
+    int w = job.w;
+    if (r == 0 || r == job.h - 1) {
+        for (int i = 0; i < count; i++)
+            memset(out + spans[2 * i] - 1, 0, (size_t) (spans[2 * i + 1] - spans[2 * i] + 2) * sizeof(uint16_t));
+        return;
+    }
+    const uint8_t *g0 = job.gray + (size_t) (r - 1) * job.grayStride;
+    const uint8_t *g1 = g0 + job.grayStride, *g2 = g1 + job.grayStride;
+    for (int i = 0; i < count; i++) {
+        int c0 = spans[2 * i] - 1, c1 = spans[2 * i + 1] + 1;
+        int v0 = c0 > 0 ? c0 - 1 : 0, v1 = c1 < w ? c1 + 1 : w;
+        for (int c = v0; c < v1; c++) vsum[c] = (uint16_t) (g0[c] + g1[c] + g2[c]);
+        int s0 = c0 > 0 ? c0 : 1, s1 = c1 < w - 1 ? c1 : w - 1;
+        for (int c = s0; c < s1; c++) out[c] = (uint16_t) (vsum[c - 1] + vsum[c] + vsum[c + 1]);
+        if (c0 == 0) out[0] = 0;
+        if (c1 == w) out[w - 1] = 0;
+    }
+}
+
+/*
+ Interior columns [1, w - 1) of coarse row cy to refine, as [x0, x1) pairs. MODE_EDGE's box sums are 0 on
+ the frame border, an edge the clamped coarse level cannot see, so the outermost coarse pixels always are.
+*/
+int refinedSpans(const PyramidJob &job, int cy, uint8_t *grown, int *spans) {
+    int w = job.w, level = job.level;
+    int cw = job.widths[level], ch = job.heights[level];
+    grownRow(job, cy, grown);
+    grown[0] = grown[cw - 1] = 1;
+    if (cy == 0 || cy == ch - 1) memset(grown, 1, (size_t) cw);
+    int count = 0;
+    for (int cx = 0; cx < cw; cx++) {
+        if (!grown[cx]) continue;
+        int start = cx;
+        while (cx + 1 < cw && grown[cx + 1]) cx++;
+        // Columns past the last whole coarse pixel belong to it
+        int x0 = start << level, x1 = cx == cw - 1 ? w : (cx + 1) << level;
+        if (x0 < 1) x0 = 1;
+        if (x1 > w - 1) x1 = w - 1;
+        if (x0 >= x1) continue;
+        spans[2 * count] = x0;
+        spans[2 * count + 1] = x1;
+        count++;
+    }
+    return count;
+}
+
+void refineBand(void *ctx, int band) {
+    const PyramidJob &job = *(const PyramidJob *) ctx;
+    int w = job.w, h = job.h, bpp = job.bpp, level = job.level;
+    int cw = job.widths[level], ch = job.heights[level];
+    ScratchArena &scratch = ScratchArena::current();
+    // vsum and three rolling box sum rows, the spans of the current coarse row and its grown edges
+    uint16_t *rows = scratch.get<uint16_t>(SCRATCH_PYRAMID_ROWS, 4 * (size_t) w + 2 * (size_t) (cw + 1) + (cw + 1) / 2);
+    uint16_t *sums[3] = { rows + w, rows + 2 * (size_t) w, rows + 3 * (size_t) w };
+    int *spans = (int *) (rows + 4 * (size_t) w);
+    uint8_t *grown = (uint8_t *) (spans + cw + 1);
+    uint8_t *out = scratch.get<uint8_t>(SCRATCH_PASS_ROW, (size_t) w);
+    int spanRow = -1, count = 0;
+    int summed = -1;   // sums hold rows summed - 1 .. summed + 1 for the current spans
+
+    int y1 = bandStart(h, band + 1, job.bands);
+    for (int y = bandStart(h, band, job.bands); y < y1; y++) {
+        const uint8_t *s = job.src + (size_t) y * job.srcStride;
+        uint8_t *d = job.dst + (size_t) y * job.dstStride;
+        // The frame border keeps the source, as in MODE_EDGE
+        if (y == 0 || y == h - 1) {
+            if (s != d) memcpy(d, s, (size_t) w * bpp);
+            continue;
+        }
+        if (s != d) {
+            memcpy(d, s, (size_t) bpp);
+            memcpy(d + (size_t) (w - 1) * bpp, s + (size_t) (w - 1) * bpp, (size_t) bpp);
+        }
+        int cy = y >> level < ch ? y >> level : ch - 1;
+        if (cy != spanRow) {
+            // Spans alternate with at least one coarse pixel between them, so cw + 1 ints hold them all
+            count = refinedSpans(job, cy, grown, spans);
+            spanRow = cy;
+            summed = -1;
+        }
+        if (summed == y - 1) {
+            uint16_t *oldest = sums[0];
+            sums[0] = sums[1];
+            sums[1] = sums[2];
+            sums[2] = oldest;
+            spanSums(job, y + 1, spans, count, rows, sums[2]);
+        } else {
+            for (int i = 0; i < 3; i++) spanSums(job, y - 1 + i, spans, count, rows, sums[i]);
+        }
+        summed = y;
+
+        memset(out + 1, 0, (size_t) (w - 2));
+        const uint16_t *a = sums[0], *b = sums[1], *c = sums[2];
+        for (int i = 0; i < count; i++) {
+            for (int x = spans[2 * i]; x < spans[2 * i + 1]; x++) {
+                int gx = (a[x + 1] - a[x - 1]) + 2 * (b[x + 1] - b[x - 1]) + (c[x + 1] - c[x - 1]);
+                int gy = (c[x - 1] + 2 * c[x] + c[x + 1]) - (a[x - 1] + 2 * a[x] + a[x + 1]);
+                out[x] = gx * gx + gy * gy > EDGE_THRESH_SQ ? 255 : 0;
+            }
+        }
+        putSpan(d, bpp, 1, w - 1, out);
+    }
+}
+
+}
+
+void processPyramidEdge(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h,
+                        int bytesPerPixel, int level) {
+    if (level > MAX_PYRAMID_LEVEL) level = MAX_PYRAMID_LEVEL;
+    if (level <= 0 || (w >> level) < 3 || (h >> level) < 3) {
+        if (bytesPerPixel == 4) processRgba(src, srcStride, dst, dstStride, w, h, MODE_EDGE);
+        else processGray(src, srcStride, dst, dstStride, w, h, MODE_EDGE);
+        return;
+    }
+
+    PyramidJob job;
+    memset(&job, 0, sizeof(job));
+    job.src = src;
+    job.srcStride = srcStride;
+    job.dst = dst;
+    job.dstStride = dstStride;
+    job.w = w;
+    job.h = h;
+    job.bpp = bytesPerPixel;
+    job.level = level;
+    // In place, the refinement would read rows it has already overwritten
+    bool copy = bytesPerPixel == 4 || src == dst;
+    size_t total = copy ? (size_t) w * h : 0;
+    for (int k = 1; k <= level; k++) {
+        job.widths[k] = w >> k;
+        job.heights[k] = h >> k;
+        total += (size_t) job.widths[k] * job.heights[k];
+    }
+    int cw = job.widths[level], ch = job.heights[level];
+    uint8_t *planes = ScratchArena::current().get<uint8_t>(SCRATCH_PYRAMID, total + (size_t) cw * ch);
+    uint8_t *next = planes;
+    if (copy) {
+        job.grayCopy = planes;
+        next += (size_t) w * h;
+    }
+    job.gray = copy ? job.grayCopy : src;
+    job.grayStride = copy ? w : srcStride;
+    for (int k = 1; k <= level; k++) {
+        job.levels[k] = next;
+        next += (size_t) job.widths[k] * job.heights[k];
+    }
+    job.edges = next;
+
+    WorkerPool &pool = WorkerPool::instance();
+    int bands = pool.workerCount();
+    if (bands > h / MIN_BAND_ROWS) bands = h / MIN_BAND_ROWS;
+    if (bands > ch) bands = ch;
+    if (bands < 1) bands = 1;
+    job.bands = bands;
+    pool.run(bands, buildBand, &job);
+    pool.run(bands, coarseBand, &job);
+
+    bands = pool.workerCount();
+    if (bands > h / MIN_BAND_ROWS) bands = h / MIN_BAND_ROWS;
+    if (bands < 1) bands = 1;
+    job.bands = bands;
+    pool.run(bands, refineBand, &job);
+}
@@ -0,0 +1,33 @@
+#pragma once
+
+#include <cstdint>
+
+/*
+ Multi-scale edge mode for frames too large for the full-resolution kernel. One pass over the source
+ builds the gray plane and its 2x mean-downsampled levels 1..level (each pixel the rounded mean of a 2x2
+ block of the level below; an odd last row or column is dropped). Edges are detected on the coarsest
+ level with a lower threshold than MODE_EDGE's, the coarse edge mask is grown by one coarse pixel, and
+ only full-resolution pixels under it are computed, with exactly the MODE_EDGE math, along with the
+ outermost coarse pixels (MODE_EDGE always finds an edge one pixel inside the frame border). Everything
+ else is 0, and the frame border keeps the source value as in MODE_EDGE.
+
+ So the output equals MODE_EDGE wherever a coarse edge is near and can only miss edges that are too
+ faint or too fine to show at the coarse level. Level 0 is MODE_EDGE itself; levels whose coarse plane
+ would be smaller than 3x3 fall back to it as well.
+*/
+
+enum { MODE_PYRAMID_EDGE = 4 };
+
+static const int MAX_PYRAMID_LEVEL = 4;
+
+// Pixels past a region the result depends on, for a window whose origin is a multiple of 1 << level
+inline int pyramidEdgeReach(int level) {
+    return level > 0 ? (5 << level) + 2 : 2;
+}
+
+/*
+ bytesPerPixel 4 (RGBA, the result replicated into R, G and B) or 1 (gray); src and dst may alias.
+ Split into horizontal bands across WorkerPool::instance().
+*/
+void processPyramidEdge(const uint8_t *src, int srcStride, uint8_t *dst, int dstStride, int w, int h,
+                        int bytesPerPixel, int level);
@@ -0,0 +1,108 @@
+#include "scratch_arena.h"
+
+#include <cstdlib>
+
+static const size_t ALIGNMENT = 64;
+
+static std::atomic<uint64_t> allocated{0};
+static thread_local ScratchContext *boundContext = nullptr;
+
+ScratchArena::~ScratchArena() {
+    trim();
+}
+
+void *ScratchArena::block(ScratchSlot slot, size_t bytes) {
+    if (bytes <= sizes[slot]) return blocks[slot];
+    free(blocks[slot]);
+    size_t size = (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    void *p = nullptr;
+    if (posix_memalign(&p, ALIGNMENT, size) != 0) abort();
+    blocks[slot] = p;
+    sizes[slot] = size;
+    allocated.fetch_add(size, std::memory_order_relaxed);
+    if (owner) owner->grew(slot, size);
+    return p;
+}
+
+void ScratchArena::trim() {
+    for (int i = 0; i < SCRATCH_SLOTS; i++) {
+        free(blocks[i]);
+        blocks[i] = nullptr;
+        sizes[i] = 0;
+    }
+}
+
+size_t ScratchArena::bytesHeld() const {
+    size_t total = 0;
+    for (size_t s : sizes) total += s;
+    return total;
+}
+
+ScratchArena &ScratchArena::current() {
+    if (ScratchContext *context = boundContext) return context->arena(WorkerPool::threadIndex());
+    thread_local ScratchArena own;
+    return own;
+}
+
+uint64_t ScratchArena::bytesAllocated() {
+    return allocated.load(std::memory_order_relaxed);
+}
+
+void ScratchContext::prepare(int width, int height) {
+    if (width == this->width && height == this->height) return;
+    this->width = width;
+    this->height = height;
+    for (auto &a : arenas) if (a) a->trim();
+    for (auto &n : needed) n.store(0, std::memory_order_relaxed);
+}
+
+void ScratchContext::grew(ScratchSlot slot, size_t bytes) {
+    size_t n = needed[slot].load(std::memory_order_relaxed);
+    while (n < bytes && !needed[slot].compare_exchange_weak(n, bytes, std::memory_order_relaxed)) {}
+    growing.store(true, std::memory_order_relaxed);
+}
+
+void ScratchContext::spread() {
+    int threads = WorkerPool::instance().workerCount();
+    // Threads added since the last spread have empty arenas even when nothing grew
+    if (!growing.exchange(false, std::memory_order_acquire) && threads <= spreadThreads) return;
+    for (int t = 0; t < threads; t++) {
+        ScratchArena &a = arena(t);
+        for (int slot = 0; slot < SCRATCH_SLOTS; slot++) {
+            // Only the calling thread (index 0) ever uses these
+            if (t > 0 && (slot == SCRATCH_KERNEL_HALO || slot == SCRATCH_EDGE_STATS || slot == SCRATCH_PLANE_0
+                    || slot == SCRATCH_PLANE_1 || slot == SCRATCH_REGION_WINDOWS || slot == SCRATCH_PYRAMID
+                    || slot == SCRATCH_BORDER)) continue;
+            size_t n = needed[slot].load(std::memory_order_relaxed);
+            if (n > 0) a.get<uint8_t>((ScratchSlot) slot, n);
+        }
+    }
+    // Growing the arenas above set the flag again
+    growing.store(false, std::memory_order_relaxed);
+    spreadThreads = threads;
+}
+
+ScratchArena &ScratchContext::arena(int thread) {
+    // Only thread `thread` creates its entry, so no lock is needed
+    std::unique_ptr<ScratchArena> &a = arenas[thread];
+    if (!a) a.reset(new ScratchArena(this));
+    return *a;
+}
+
+size_t ScratchContext::bytesHeld() const {
+    size_t total = 0;
+    for (const auto &a : arenas) if (a) total += a->bytesHeld();
+    return total;
+}
+
+ScratchContext::Scope::Scope(ScratchContext *context) : previous(boundContext) {
+    boundContext = context;
+}
+
+ScratchContext::Scope::~Scope() {
+    boundContext = previous;
+}
+
+ScratchContext *ScratchContext::bound() {
+    return boundContext;
+}
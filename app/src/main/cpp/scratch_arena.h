@@ -0,0 +1,132 @@
+#pragma once
+
+#include <atomic>
+#include <cstddef>
+#include <cstdint>
+#include <memory>
+
+#include "worker_pool.h"
+
+/*
+ Scratch memory for the processing kernels. Every kernel buffer has its own slot; get() returns a
+ 64-byte aligned block of at least the requested size and only reallocates when the block is too small.
+ Blocks are neither zeroed nor copied on growth, so a run of same-sized frames allocates nothing after
+ the first one.
+
+ A ScratchContext (NativeLib.createContext) owns one arena per pool thread. Binding it to the calling
+ thread for a call (ScratchContext::Scope) makes ScratchArena::current() return the context's arena on
+ that thread and, through WorkerPool::run, on each worker. A thread without a bound context uses an
+ arena of its own, freed when the thread exits. Every block allocated through either path is counted
+ in ScratchArena::bytesAllocated().
+*/
+
+class ScratchContext;
+
+enum ScratchSlot {
+    SCRATCH_KERNEL_GRAY,     // edge_kernel: rolling gray rows
+    SCRATCH_KERNEL_SUMS,     // edge_kernel: rolling horizontal and box sums
+    SCRATCH_KERNEL_HALO,     // edge_kernel: gray rows around band boundaries, calling thread only
+    SCRATCH_REGION,          // processGrayRegion window, sized by reserveGrayRegion
+    SCRATCH_EDGE_STATS,      // edge_kernel: per-band histograms, calling thread only
+    SCRATCH_SMOOTH_ROW,      // filter_graph SmoothRows
+    SCRATCH_SMOOTH_H,
+    SCRATCH_SMOOTH_OUT,
+    SCRATCH_SMOOTH_PREFIX,
+    SCRATCH_SMOOTH_COLUMN,
+    SCRATCH_PASS_ROW,        // filter_graph: one output row of any pass
+    SCRATCH_GRADIENT_MAG,
+    SCRATCH_GRADIENT_DIR,
+    SCRATCH_DILATE_ROW,
+    SCRATCH_DILATE_MAX,
+    SCRATCH_PLANE_0,         // filter_graph intermediate planes, calling thread only
+    SCRATCH_PLANE_1,
+    SCRATCH_CHROMA,          // yuv_convert: de-interleaved chroma row
+    SCRATCH_ROTATE,          // yuv_convert: rows waiting to be rotated out
+    SCRATCH_LUMA_SMALL,      // yuv_convert: downsampled luma
+    SCRATCH_REGION_WINDOWS,  // filter_graph runRegions results, calling thread only
+    SCRATCH_PYRAMID,         // pyramid_edge: gray copy, levels and coarse edges, calling thread only
+    SCRATCH_PYRAMID_SUMS,    // pyramid_edge: coarse box sums
+    SCRATCH_PYRAMID_ROWS,    // pyramid_edge: refinement sums
+    SCRATCH_BORDER,          // filter_graph: source pixels a BORDER_KEEP plan restores, calling thread only
+    SCRATCH_SLOTS
+};
+
+class ScratchArena {
+public:
+    explicit ScratchArena(ScratchContext *owner = nullptr) : owner(owner) {}
+    ~ScratchArena();
+    ScratchArena(const ScratchArena &) = delete;
+    ScratchArena &operator=(const ScratchArena &) = delete;
+
+    // count elements of T in slot; the previous contents are undefined after a call that grows it
+    template <class T>
+    T *get(ScratchSlot slot, size_t count) {
+        return (T *) block(slot, count * sizeof(T));
+    }
+
+    // Frees every block
+    void trim();
+
+    size_t bytesHeld() const;
+
+    // Arena for kernel code on this thread: the bound context's, or the thread's own
+    static ScratchArena &current();
+
+    // Total bytes of scratch ever allocated, over all arenas; it stops growing once every thread is warm
+    static uint64_t bytesAllocated();
+
+private:
+    void *block(ScratchSlot slot, size_t bytes);
+
+    ScratchContext *owner;
+    void *blocks[SCRATCH_SLOTS] = {};
+    size_t sizes[SCRATCH_SLOTS] = {};
+};
+
+/*
+ Scratch for one processing thread's frames, shared by every pipeline it runs. Not thread-safe: bind it
+ on one thread at a time. The arenas are sized by the frames they see; a frame of another size than the
+ previous one trims them first, so the memory follows the current resolution instead of the largest.
+*/
+class ScratchContext {
+public:
+    ScratchContext(int width, int height) : width(width), height(height) {}
+
+    // Call before a frame, with no pool job running
+    void prepare(int width, int height);
+
+    /*
+     Call after a frame, with no pool job running: grows every pool thread's arena to the slot sizes any
+     thread needed, so the next frame allocates nothing whichever thread runs which band. Free when
+     nothing grew and the pool has no threads the last call did not cover.
+    */
+    void spread();
+
+    // Arena of pool thread index (0 is the calling thread)
+    ScratchArena &arena(int thread);
+
+    size_t bytesHeld() const;
+
+    // Binds a context (or none, for null) to the calling thread until the scope ends
+    class Scope {
+    public:
+        explicit Scope(ScratchContext *context);
+        ~Scope();
+        Scope(const Scope &) = delete;
+        Scope &operator=(const Scope &) = delete;
+    private:
+        ScratchContext *previous;
+    };
+
+    static ScratchContext *bound();
+
+private:
+    friend class ScratchArena;
+    void grew(ScratchSlot slot, size_t bytes);
+
+    int width, height;
+    std::unique_ptr<ScratchArena> arenas[WorkerPool::MAX_WORKERS];
+    std::atomic<size_t> needed[SCRATCH_SLOTS] = {};
+    std::atomic<bool> growing{false};
+    int spreadThreads = 0;
+};
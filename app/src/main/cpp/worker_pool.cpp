@@ -0,0 +1,131 @@
+#include "worker_pool.h"
+
+#include "scratch_arena.h"
+
+// Spins before the caller falls back to sleeping on the completion condition
+static const int COMPLETION_SPINS = 2000;
+
+static thread_local int poolThreadIndex = 0;
+
+WorkerPool &WorkerPool::instance() {
+    static WorkerPool pool;
+    return pool;
+}
+
+WorkerPool::WorkerPool() {
+    unsigned hw = std::thread::hardware_concurrency();
+    startThreads(hw == 0 ? 1 : (hw > 4 ? 4 : (int) hw));
+}
+
+WorkerPool::~WorkerPool() {
+    stopThreads();
+}
+
+void WorkerPool::setWorkerCount(int count) {
+    if (count < 1) count = 1;
+    if (count > MAX_WORKERS) count = MAX_WORKERS;
+    std::lock_guard<std::mutex> runLock(runMutex);
+    if ((int) threads.size() + 1 == count) return;
+    stopThreads();
+    startThreads(count);
+}
+
+int WorkerPool::workerCount() {
+    std::lock_guard<std::mutex> runLock(runMutex);
+    return (int) threads.size() + 1;
+}
+
+void WorkerPool::startThreads(int count) {
+    stopping = false;
+    for (int i = 1; i < count; i++) threads.emplace_back(&WorkerPool::workerLoop, this, i);
+    workers.store(count, std::memory_order_release);
+}
+
+void WorkerPool::stopThreads() {
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        stopping = true;
+    }
+    wake.notify_all();
+    for (std::thread &t : threads) t.join();
+    threads.clear();
+}
+
+void WorkerPool::run(int bandCount, BandFn fn, void *ctx) {
+    if (bandCount <= 0) return;
+    if (workers.load(std::memory_order_acquire) == 1) {
+        for (int b = 0; b < bandCount; b++) fn(ctx, b);
+        return;
+    }
+    std::lock_guard<std::mutex> runLock(runMutex);
+    if (threads.empty() || bandCount == 1) {
+        for (int b = 0; b < bandCount; b++) fn(ctx, b);
+        return;
+    }
+
+    uint32_t myJob;
+    {
+        std::lock_guard<std::mutex> lock(mutex);
+        myJob = ++job;
+        jobBands = bandCount;
+        jobFn = fn;
+        jobCtx = ctx;
+        jobScratch = ScratchContext::bound();
+        remaining.store(bandCount, std::memory_order_relaxed);
+        ticket.store((uint64_t) myJob << 32, std::memory_order_release);
+    }
+    wake.notify_all();
+
+    drain(myJob, bandCount, fn, ctx);
+
+    for (int i = 0; i < COMPLETION_SPINS && remaining.load(std::memory_order_acquire) > 0; i++) {
+        std::this_thread::yield();
+    }
+    if (remaining.load(std::memory_order_acquire) > 0) {
+        std::unique_lock<std::mutex> lock(mutex);
+        done.wait(lock, [this] { return remaining.load(std::memory_order_acquire) == 0; });
+    }
+}
+
+// Claims bands of one job until none are left. The job id in the ticket keeps a thread that is late
+// from a previous frame from claiming bands of the next one.
+void WorkerPool::drain(uint32_t myJob, int bandCount, BandFn fn, void *ctx) {
+    for (;;) {
+        uint64_t t = ticket.load(std::memory_order_acquire);
+        if ((uint32_t) (t >> 32) != myJob || (int) (uint32_t) t >= bandCount) return;
+        if (!ticket.compare_exchange_weak(t, t + 1, std::memory_order_acq_rel)) continue;
+        fn(ctx, (int) (uint32_t) t);
+        if (remaining.fetch_sub(1, std::memory_order_acq_rel) == 1) {
+            std::lock_guard<std::mutex> lock(mutex);
+            done.notify_all();
+        }
+    }
+}
+
+int WorkerPool::threadIndex() {
+    return poolThreadIndex;
+}
+
+void WorkerPool::workerLoop(int index) {
+    poolThreadIndex = index;
+    uint32_t seen = 0;
+    for (;;) {
+        uint32_t myJob;
+        int bands;
+        BandFn fn;
+        void *ctx;
+        ScratchContext *scratch;
+        {
+            std::unique_lock<std::mutex> lock(mutex);
+            wake.wait(lock, [&] { return stopping || job != seen; });
+            if (stopping) return;
+            seen = myJob = job;
+            bands = jobBands;
+            fn = jobFn;
+            ctx = jobCtx;
+            scratch = jobScratch;
+        }
+        ScratchContext::Scope scope(scratch);
+        drain(myJob, bands, fn, ctx);
+    }
+}
@@ -0,0 +1,62 @@
+#pragma once
+
+#include <atomic>
+#include <condition_variable>
+#include <cstdint>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+class ScratchContext;
+
+/*
+ Persistent pool of native worker threads for band-parallel frame processing.
+ run() hands out bands through an atomic ticket; the caller works on bands too and returns once a
+ completion counter reaches zero. Workers never wait for each other, so there is no barrier.
+ A ScratchContext bound on the calling thread is bound on the workers for the bands they run.
+*/
+class WorkerPool {
+public:
+    typedef void (*BandFn)(void *ctx, int band);
+
+    static const int MAX_WORKERS = 64;
+
+    static WorkerPool &instance();
+
+    ~WorkerPool();
+
+    // Total threads used by run(), including the calling thread. Clamped to [1, 64].
+    void setWorkerCount(int count);
+    int workerCount();
+
+    // Calls fn(ctx, band) for every band in [0, bandCount) and returns when all of them finished.
+    // With a single worker the bands run inline without taking the run lock, so independent callers
+    // (one per replay stream, say) do not serialize on the pool.
+    void run(int bandCount, BandFn fn, void *ctx);
+
+    // 1 .. workerCount() - 1 on a pool thread, 0 on any other thread
+    static int threadIndex();
+
+private:
+    WorkerPool();
+    void startThreads(int count);
+    void stopThreads();
+    void workerLoop(int index);
+    void drain(uint32_t job, int bandCount, BandFn fn, void *ctx);
+
+    std::mutex runMutex;          // one frame job at a time
+    std::mutex mutex;             // guards the job fields and wake/done waits
+    std::condition_variable wake;
+    std::condition_variable done;
+    std::vector<std::thread> threads;
+    std::atomic<int> workers{1};  // threads.size() + 1, readable without runMutex
+    bool stopping = false;
+
+    uint32_t job = 0;
+    int jobBands = 0;
+    BandFn jobFn = nullptr;
+    void *jobCtx = nullptr;
+    ScratchContext *jobScratch = nullptr;
+    std::atomic<uint64_t> ticket{0};   // (job << 32) | next band
+    std::atomic<int> remaining{0};
+};
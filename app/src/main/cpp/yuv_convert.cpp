@@ -0,0 +1,413 @@
+#include "yuv_convert.h"
+
+#include <cstring>
+
+#include "scratch_arena.h"
+
+#if defined(__x86_64__) || defined(__i386__)
+#include <immintrin.h>
+#define YUV_X86 1
+#elif defined(__ARM_NEON) || defined(__ARM_NEON__)
+#include <arm_neon.h>
+#define YUV_NEON 1
+#endif
+
+/*
+ Row kernels convert one row of Y plus already de-interleaved half-width U/V rows into packed RGBA:
+   c = y-16, d = u-128, e = v-128
+   r = clamp((298c + 409e + 128) >> 8)
+   g = clamp((298c - 100d - 208e + 128) >> 8)
+   b = clamp((298c + 516d + 128) >> 8)
+ The SIMD kernels keep 32-bit intermediates and clamp via saturating packs, so they match the scalar
+ kernel (and YuvToRgbaConverter.java) exactly.
+*/
+
+typedef void (*RowFn)(const uint8_t *y, const uint8_t *u, const uint8_t *v, uint8_t *out, int w);
+
+static inline uint8_t clamp8(int v) {
+    return (uint8_t) (v < 0 ? 0 : (v > 255 ? 255 : v));
+}
+
+static void rowScalarFrom(const uint8_t *y, const uint8_t *u, const uint8_t *v, uint8_t *out, int x0, int w) {
+    for (int i = x0; i < w; i++) {
+        int c = y[i] - 16;
+        int d = u[i >> 1] - 128;
+        int e = v[i >> 1] - 128;
+        uint8_t *px = out + i * 4;
+        px[0] = clamp8((298 * c + 409 * e + 128) >> 8);
+        px[1] = clamp8((298 * c - 100 * d - 208 * e + 128) >> 8);
+        px[2] = clamp8((298 * c + 516 * d + 128) >> 8);
+        px[3] = 255;
+    }
+}
+
+static void rowScalar(const uint8_t *y, const uint8_t *u, const uint8_t *v, uint8_t *out, int w) {
+    rowScalarFrom(y, u, v, out, 0, w);
+}
+
+#if defined(YUV_X86)
+
+static void rowSse2(const uint8_t *y, const uint8_t *u, const uint8_t *v, uint8_t *out, int w) {
+    const __m128i zero = _mm_setzero_si128();
+    const __m128i one = _mm_set1_epi16(1);
+    const __m128i k16 = _mm_set1_epi16(16);
+    const __m128i k128 = _mm_set1_epi16(128);
+    const __m128i alpha = _mm_set1_epi8((char) 0xFF);
+    // madd constants: (c,1)->298c+128, (d,e)->409e / -100d-208e / 516d
+    const __m128i kY = _mm_set1_epi32((128 << 16) | 298);
+    const __m128i kR = _mm_set1_epi32(409 << 16);
+    const __m128i kG = _mm_set1_epi32((int) (((uint32_t) (uint16_t) -208 << 16) | (uint16_t) -100));
+    const __m128i kB = _mm_set1_epi32(516);
+
+    int i = 0;
+    for (; i + 8 <= w; i += 8) {
+        __m128i c = _mm_sub_epi16(_mm_unpacklo_epi8(_mm_loadl_epi64((const __m128i *) (y + i)), zero), k16);
+        int32_t u4, v4;
+        memcpy(&u4, u + i / 2, 4);
+        memcpy(&v4, v + i / 2, 4);
+        __m128i uu = _mm_cvtsi32_si128(u4);
+        __m128i vv = _mm_cvtsi32_si128(v4);
+        __m128i d = _mm_sub_epi16(_mm_unpacklo_epi8(_mm_unpacklo_epi8(uu, uu), zero), k128);
+        __m128i e = _mm_sub_epi16(_mm_unpacklo_epi8(_mm_unpacklo_epi8(vv, vv), zero), k128);
+
+        __m128i yLo = _mm_madd_epi16(_mm_unpacklo_epi16(c, one), kY);
+        __m128i yHi = _mm_madd_epi16(_mm_unpackhi_epi16(c, one), kY);
+        __m128i deLo = _mm_unpacklo_epi16(d, e);
+        __m128i deHi = _mm_unpackhi_epi16(d, e);
+
+        __m128i r = _mm_packs_epi32(_mm_srai_epi32(_mm_add_epi32(yLo, _mm_madd_epi16(deLo, kR)), 8),
+                                    _mm_srai_epi32(_mm_add_epi32(yHi, _mm_madd_epi16(deHi, kR)), 8));
+        __m128i g = _mm_packs_epi32(_mm_srai_epi32(_mm_add_epi32(yLo, _mm_madd_epi16(deLo, kG)), 8),
+                                    _mm_srai_epi32(_mm_add_epi32(yHi, _mm_madd_epi16(deHi, kG)), 8));
+        __m128i b = _mm_packs_epi32(_mm_srai_epi32(_mm_add_epi32(yLo, _mm_madd_epi16(deLo, kB)), 8),
+                                    _mm_srai_epi32(_mm_add_epi32(yHi, _mm_madd_epi16(deHi, kB)), 8));
+
+        __m128i r8 = _mm_packus_epi16(r, r);
+        __m128i g8 = _mm_packus_epi16(g, g);
+        __m128i b8 = _mm_packus_epi16(b, b);
+        __m128i rg = _mm_unpacklo_epi8(r8, g8);
+        __m128i ba = _mm_unpacklo_epi8(b8, alpha);
+        _mm_storeu_si128((__m128i *) (out + i * 4), _mm_unpacklo_epi16(rg, ba));
+        _mm_storeu_si128((__m128i *) (out + i * 4 + 16), _mm_unpackhi_epi16(rg, ba));
+    }
+    rowScalarFrom(y, u, v, out, i, w);
+}
+
+__attribute__((target("avx2")))
+static void rowAvx2(const uint8_t *y, const uint8_t *u, const uint8_t *v, uint8_t *out, int w) {
+    const __m256i one = _mm256_set1_epi16(1);
+    const __m256i k16 = _mm256_set1_epi16(16);
+    const __m256i k128 = _mm256_set1_epi16(128);
+    const __m256i alpha = _mm256_set1_epi16(255);
+    const __m256i kY = _mm256_set1_epi32((128 << 16) | 298);
+    const __m256i kR = _mm256_set1_epi32(409 << 16);
+    const __m256i kG = _mm256_set1_epi32((int) (((uint32_t) (uint16_t) -208 << 16) | (uint16_t) -100));
+    const __m256i kB = _mm256_set1_epi32(516);
+
+    int i = 0;
+    for (; i + 16 <= w; i += 16) {
+        __m256i c = _mm256_sub_epi16(_mm256_cvtepu8_epi16(_mm_loadu_si128((const __m128i *) (y + i))), k16);
+        __m128i u8 = _mm_loadl_epi64((const __m128i *) (u + i / 2));
+        __m128i v8 = _mm_loadl_epi64((const __m128i *) (v + i / 2));
+        __m256i d = _mm256_sub_epi16(_mm256_cvtepu8_epi16(_mm_unpacklo_epi8(u8, u8)), k128);
+        __m256i e = _mm256_sub_epi16(_mm256_cvtepu8_epi16(_mm_unpacklo_epi8(v8, v8)), k128);
+
+        // unpacklo/hi work per 128-bit lane; packs_epi32 below restores pixel order
+        __m256i yLo = _mm256_madd_epi16(_mm256_unpacklo_epi16(c, one), kY);
+        __m256i yHi = _mm256_madd_epi16(_mm256_unpackhi_epi16(c, one), kY);
+        __m256i deLo = _mm256_unpacklo_epi16(d, e);
+        __m256i deHi = _mm256_unpackhi_epi16(d, e);
+
+        __m256i r = _mm256_packs_epi32(_mm256_srai_epi32(_mm256_add_epi32(yLo, _mm256_madd_epi16(deLo, kR)), 8),
+                                       _mm256_srai_epi32(_mm256_add_epi32(yHi, _mm256_madd_epi16(deHi, kR)), 8));
+        __m256i g = _mm256_packs_epi32(_mm256_srai_epi32(_mm256_add_epi32(yLo, _mm256_madd_epi16(deLo, kG)), 8),
+                                       _mm256_srai_epi32(_mm256_add_epi32(yHi, _mm256_madd_epi16(deHi, kG)), 8));
+        __m256i b = _mm256_packs_epi32(_mm256_srai_epi32(_mm256_add_epi32(yLo, _mm256_madd_epi16(deLo, kB)), 8),
+                                       _mm256_srai_epi32(_mm256_add_epi32(yHi, _mm256_madd_epi16(deHi, kB)), 8));
+
+        __m256i rb = _mm256_packus_epi16(r, b);      // lane: R0-7 B0-7 | R8-15 B8-15
+        __m256i ga = _mm256_packus_epi16(g, alpha);  // lane: G0-7 A0-7 | G8-15 A8-15
+        __m256i rg = _mm256_unpacklo_epi8(rb, ga);
+        __m256i ba = _mm256_unpackhi_epi8(rb, ga);
+        __m256i pLo = _mm256_unpacklo_epi16(rg, ba); // px 0-3 | 8-11
+        __m256i pHi = _mm256_unpackhi_epi16(rg, ba); // px 4-7 | 12-15
+        _mm256_storeu_si256((__m256i *) (out + i * 4), _mm256_permute2x128_si256(pLo, pHi, 0x20));
+        _mm256_storeu_si256((__m256i *) (out + i * 4 + 32), _mm256_permute2x128_si256(pLo, pHi, 0x31));
+    }
+    rowScalarFrom(y, u, v, out, i, w);
+}
+
+#elif defined(YUV_NEON)
+
+static inline void neonHalf(int16x8_t c, int16x8_t d, int16x8_t e, uint8_t *out) {
+    const int32x4_t k128 = vdupq_n_s32(128);
+    int32x4_t yLo = vmlal_n_s16(k128, vget_low_s16(c), 298);
+    int32x4_t yHi = vmlal_n_s16(k128, vget_high_s16(c), 298);
+
+    int32x4_t rLo = vmlal_n_s16(yLo, vget_low_s16(e), 409);
+    int32x4_t rHi = vmlal_n_s16(yHi, vget_high_s16(e), 409);
+    int32x4_t gLo = vmlal_n_s16(vmlal_n_s16(yLo, vget_low_s16(d), -100), vget_low_s16(e), -208);
+    int32x4_t gHi = vmlal_n_s16(vmlal_n_s16(yHi, vget_high_s16(d), -100), vget_high_s16(e), -208);
+    int32x4_t bLo = vmlal_n_s16(yLo, vget_low_s16(d), 516);
+    int32x4_t bHi = vmlal_n_s16(yHi, vget_high_s16(d), 516);
+
+    uint8x8x4_t px;
+    px.val[0] = vqmovun_s16(vcombine_s16(vqmovn_s32(vshrq_n_s32(rLo, 8)), vqmovn_s32(vshrq_n_s32(rHi, 8))));
+    px.val[1] = vqmovun_s16(vcombine_s16(vqmovn_s32(vshrq_n_s32(gLo, 8)), vqmovn_s32(vshrq_n_s32(gHi, 8))));
+    px.val[2] = vqmovun_s16(vcombine_s16(vqmovn_s32(vshrq_n_s32(bLo, 8)), vqmovn_s32(vshrq_n_s32(bHi, 8))));
+    px.val[3] = vdup_n_u8(255);
+    vst4_u8(out, px);
+}
+
+static void rowNeon(const uint8_t *y, const uint8_t *u, const uint8_t *v, uint8_t *out, int w) {
+    const int16x8_t k16 = vdupq_n_s16(16);
+    const int16x8_t k128 = vdupq_n_s16(128);
+    int i = 0;
+    for (; i + 16 <= w; i += 16) {
+        uint8x16_t yv = vld1q_u8(y + i);
+        uint8x8_t u8 = vld1_u8(u + i / 2);
+        uint8x8_t v8 = vld1_u8(v + i / 2);
+        uint8x8x2_t uz = vzip_u8(u8, u8);
+        uint8x8x2_t vz = vzip_u8(v8, v8);
+        for (int half = 0; half < 2; half++) {
+            uint8x8_t yh = half ? vget_high_u8(yv) : vget_low_u8(yv);
+            int16x8_t c = vsubq_s16(vreinterpretq_s16_u16(vmovl_u8(yh)), k16);
+            int16x8_t d = vsubq_s16(vreinterpretq_s16_u16(vmovl_u8(uz.val[half])), k128);
+            int16x8_t e = vsubq_s16(vreinterpretq_s16_u16(vmovl_u8(vz.val[half])), k128);
+            neonHalf(c, d, e, out + (i + half * 8) * 4);
+        }
+    }
+    rowScalarFrom(y, u, v, out, i, w);
+}
+
+#endif
+
+static const char *const KERNEL_NAMES[YUV_KERNELS] = { "scalar", "sse2", "avx2", "neon" };
+
+bool yuvKernelSupported(int kernel) {
+    switch (kernel) {
+        case YUV_KERNEL_SCALAR: return true;
+#if defined(YUV_X86)
+        case YUV_KERNEL_SSE2: return true;
+        case YUV_KERNEL_AVX2: return __builtin_cpu_supports("avx2");
+#elif defined(YUV_NEON)
+        case YUV_KERNEL_NEON: return true;
+#endif
+        default: return false;
+    }
+}
+
+static RowFn rowFor(int kernel) {
+    switch (kernel) {
+#if defined(YUV_X86)
+        case YUV_KERNEL_SSE2: return rowSse2;
+        case YUV_KERNEL_AVX2: return rowAvx2;
+#elif defined(YUV_NEON)
+        case YUV_KERNEL_NEON: return rowNeon;
+#endif
+        default: return rowScalar;
+    }
+}
+
+static int bestKernel() {
+    int best = YUV_KERNEL_SCALAR;
+    for (int k = 0; k < YUV_KERNELS; k++) if (yuvKernelSupported(k)) best = k;
+    return best;
+}
+
+static int forcedKernel = -1;
+
+static int selectedKernel() {
+    static const int best = bestKernel();
+    return forcedKernel >= 0 ? forcedKernel : best;
+}
+
+const char *yuvKernelName() {
+    return KERNEL_NAMES[selectedKernel()];
+}
+
+bool yuvForceKernel(int kernel) {
+    if (kernel >= 0 && !yuvKernelSupported(kernel)) return false;
+    forcedKernel = kernel;
+    return true;
+}
+
+namespace {
+
+// Hands out the half-width U/V rows for a luma row, de-interleaving semi-planar chroma once per chroma row.
+struct ChromaRows {
+    const YuvImage &img;
+    int cw;
+    int cached = -1;
+    uint8_t *uRow = nullptr, *vRow = nullptr;
+    uint8_t *scratch;
+
+    ChromaRows(const YuvImage &img, int w, ScratchArena &arena)
+            : img(img), cw((w + 1) / 2), scratch(arena.get<uint8_t>(SCRATCH_CHROMA, (size_t) cw * 2)) {}
+
+    void select(int j) {
+        int cy = j >> 1;
+        if (cy == cached) return;
+        cached = cy;
+        const uint8_t *us = img.u + (size_t) cy * img.uvRowStride;
+        const uint8_t *vs = img.v + (size_t) cy * img.uvRowStride;
+        if (img.uvPixelStride == 1) {
+            uRow = (uint8_t *) us;
+            vRow = (uint8_t *) vs;
+            return;
+        }
+        uRow = scratch;
+        vRow = scratch + cw;
+        int ps = img.uvPixelStride;
+        for (int k = 0; k < cw; k++) {
+            uRow[k] = us[k * ps];
+            vRow[k] = vs[k * ps];
+        }
+    }
+};
+
+}
+
+// Rows converted per block before they are transposed out for 90/270 rotation (16 px = one cache line).
+static const int ROTATE_BLOCK = 16;
+
+void yuv420ToRgba(const YuvImage &img, int w, int h, int rotation, uint8_t *dst, int dstStride) {
+    RowFn row = rowFor(selectedKernel());
+
+    ScratchArena &scratch = ScratchArena::current();
+    ChromaRows chroma(img, w, scratch);
+
+    if (rotation == 0) {
+        for (int j = 0; j < h; j++) {
+            chroma.select(j);
+            row(img.y + (size_t) j * img.yRowStride, chroma.uRow, chroma.vRow, dst + (size_t) j * dstStride, w);
+        }
+        return;
+    }
+
+    if (rotation == 180) {
+        uint32_t *tmp = scratch.get<uint32_t>(SCRATCH_ROTATE, (size_t) w);
+        for (int j = 0; j < h; j++) {
+            chroma.select(j);
+            row(img.y + (size_t) j * img.yRowStride, chroma.uRow, chroma.vRow, (uint8_t *) tmp, w);
+            uint8_t *out = dst + (size_t) (h - 1 - j) * dstStride;
+            for (int x = 0; x < w; x++) memcpy(out + (size_t) (w - 1 - x) * 4, &tmp[x], 4);
+        }
+        return;
+    }
+
+    // 90 / 270: convert a block of source rows, then write each source column as a short output row run
+    uint8_t *rows = scratch.get<uint8_t>(SCRATCH_ROTATE, (size_t) w * 4 * ROTATE_BLOCK);
+    const uint32_t *block = (const uint32_t *) rows;
+    for (int y0 = 0; y0 < h; y0 += ROTATE_BLOCK) {
+        int nb = h - y0 < ROTATE_BLOCK ? h - y0 : ROTATE_BLOCK;
+        for (int k = 0; k < nb; k++) {
+            chroma.select(y0 + k);
+            row(img.y + (size_t) (y0 + k) * img.yRowStride, chroma.uRow, chroma.vRow,
+                rows + (size_t) k * w * 4, w);
+        }
+        for (int x = 0; x < w; x++) {
+            if (rotation == 90) {
+                // (x, y) -> (h-1-y, x)
+                uint8_t *out = dst + (size_t) x * dstStride;
+                for (int k = 0; k < nb; k++) memcpy(out + (size_t) (h - 1 - y0 - k) * 4, &block[(size_t) k * w + x], 4);
+            } else {
+                // (x, y) -> (y, w-1-x)
+                uint8_t *out = dst + (size_t) (w - 1 - x) * dstStride;
+                for (int k = 0; k < nb; k++) memcpy(out + (size_t) (y0 + k) * 4, &block[(size_t) k * w + x], 4);
+            }
+        }
+    }
+}
+
+// clamp((298 * (y - 16) + 128) >> 8): the R=G=B value of a pixel with neutral chroma
+static const uint8_t *lumaLut() {
+    static uint8_t lut[256];
+    static bool ready = [] {
+        for (int y = 0; y < 256; y++) lut[y] = clamp8((298 * (y - 16) + 128) >> 8);
+        return true;
+    }();
+    (void) ready;
+    return lut;
+}
+
+void lumaToGray(const uint8_t *y, int yRowStride, int w, int h, int rotation, uint8_t *dst, int dstStride) {
+    const uint8_t *lut = lumaLut();
+    if (rotation == 0 || rotation == 180) {
+        for (int j = 0; j < h; j++) {
+            const uint8_t *s = y + (size_t) j * yRowStride;
+            if (rotation == 0) {
+                uint8_t *out = dst + (size_t) j * dstStride;
+                for (int x = 0; x < w; x++) out[x] = lut[s[x]];
+            } else {
+                uint8_t *out = dst + (size_t) (h - 1 - j) * dstStride + (w - 1);
+                for (int x = 0; x < w; x++) out[-x] = lut[s[x]];
+            }
+        }
+        return;
+    }
+    // 90 / 270: transpose in square tiles so both reads and writes stay within a few cache lines
+    for (int y0 = 0; y0 < h; y0 += ROTATE_BLOCK) {
+        int y1 = y0 + ROTATE_BLOCK < h ? y0 + ROTATE_BLOCK : h;
+        for (int x0 = 0; x0 < w; x0 += ROTATE_BLOCK) {
+            int x1 = x0 + ROTATE_BLOCK < w ? x0 + ROTATE_BLOCK : w;
+            for (int x = x0; x < x1; x++) {
+                if (rotation == 90) {
+                    // (x, y) -> (h-1-y, x)
+                    uint8_t *out = dst + (size_t) x * dstStride + (h - 1);
+                    for (int j = y0; j < y1; j++) out[-j] = lut[y[(size_t) j * yRowStride + x]];
+                } else {
+                    // (x, y) -> (y, w-1-x)
+                    uint8_t *out = dst + (size_t) (w - 1 - x) * dstStride;
+                    for (int j = y0; j < y1; j++) out[j] = lut[y[(size_t) j * yRowStride + x]];
+                }
+            }
+        }
+    }
+}
+
+void lumaToGrayScaled(const uint8_t *y, int yRowStride, int w, int h, int scale, int rotation,
+                      uint8_t *dst, int dstStride) {
+    if (scale <= 1) {
+        lumaToGray(y, yRowStride, w, h, rotation, dst, dstStride);
+        return;
+    }
+    int sw = w / scale, sh = h / scale;
+    if (sw <= 0 || sh <= 0) return;
+    // Average in video range first; the LUT's clamp is not linear
+    uint8_t *small = ScratchArena::current().get<uint8_t>(SCRATCH_LUMA_SMALL, (size_t) sw * sh);
+    int area = scale * scale;
+    for (int j = 0; j < sh; j++) {
+        uint8_t *out = small + (size_t) j * sw;
+        const uint8_t *rows = y + (size_t) j * scale * yRowStride;
+        for (int x = 0; x < sw; x++) {
+            const uint8_t *block = rows + x * scale;
+            int sum = 0;
+            for (int dy = 0; dy < scale; dy++) {
+                const uint8_t *p = block + (size_t) dy * yRowStride;
+                for (int dx = 0; dx < scale; dx++) sum += p[dx];
+            }
+            out[x] = (uint8_t) ((sum + area / 2) / area);
+        }
+    }
+    lumaToGray(small, sw, sw, sh, rotation, dst, dstStride);
+}
+
+void lumaToGrayRegion(const uint8_t *y, int yRowStride, int w, int h, int scale, int rotation,
+                      int x0, int y0, int x1, int y1, uint8_t *dst, int dstStride) {
+    if (x0 >= x1 || y0 >= y1) return;
+    if (scale < 1) scale = 1;
+    int sw = w / scale, sh = h / scale;
+    // Source rectangle, in downsampled pixels, that rotates onto the output one
+    int sx0, sy0, sx1, sy1;
+    switch (rotation) {
+        case 90: sx0 = y0; sx1 = y1; sy0 = sh - x1; sy1 = sh - x0; break;
+        case 180: sx0 = sw - x1; sx1 = sw - x0; sy0 = sh - y1; sy1 = sh - y0; break;
+        case 270: sx0 = sw - y1; sx1 = sw - y0; sy0 = x0; sy1 = x1; break;
+        default: sx0 = x0; sx1 = x1; sy0 = y0; sy1 = y1; break;
+    }
+    // Rotating the sub-image puts its output origin at (x0, y0)
+    lumaToGrayScaled(y + (size_t) sy0 * scale * yRowStride + (size_t) sx0 * scale, yRowStride,
+                     (sx1 - sx0) * scale, (sy1 - sy0) * scale, scale, rotation,
+                     dst + (size_t) y0 * dstStride + x0, dstStride);
+}
@@ -0,0 +1,63 @@
+#pragma once
+
+#include <cstdint>
+
+/*
+ YUV_420_888 -> RGBA conversion with the rotation fused into the same pass.
+ Uses the same BT.601 integer math as YuvToRgbaConverter.java so results are bit-identical.
+*/
+
+struct YuvImage {
+    const uint8_t *y;
+    const uint8_t *u;
+    const uint8_t *v;
+    int yRowStride;
+    int uvRowStride;
+    int uvPixelStride;  // 1 = planar (I420), 2 = semi-planar (NV12/NV21)
+};
+
+// Row kernels, by level; the dispatcher picks the highest one the build and CPU support
+enum YuvKernel {
+    YUV_KERNEL_SCALAR,
+    YUV_KERNEL_SSE2,
+    YUV_KERNEL_AVX2,
+    YUV_KERNEL_NEON,
+    YUV_KERNELS
+};
+
+bool yuvKernelSupported(int kernel);
+
+// Which row kernel conversions use now ("scalar", "sse2", "avx2", "neon").
+const char *yuvKernelName();
+
+/*
+ Makes every conversion use this kernel (for verification on SIMD hosts), or the dispatcher's pick again
+ for -1. Returns false, changing nothing, for a kernel this CPU does not support.
+*/
+bool yuvForceKernel(int kernel);
+
+/*
+ Writes a (w x h) source image rotated clockwise by rotation (0/90/180/270) into dst.
+ The output is h x w for 90/270. dstStride is in bytes per output row.
+*/
+void yuv420ToRgba(const YuvImage &img, int w, int h, int rotation, uint8_t *dst, int dstStride);
+
+/*
+ Luma-only path for the gray/blur/edge modes: expands the Y plane from video range to full range
+ (the same value the RGB path produces for neutral chroma) and writes it rotated into an 8-bit plane.
+*/
+void lumaToGray(const uint8_t *y, int yRowStride, int w, int h, int rotation, uint8_t *dst, int dstStride);
+
+/*
+ lumaToGray on a (w / scale) x (h / scale) image whose pixels are the rounded mean of scale x scale
+ source blocks (scale 1, 2 or 4); leftover right/bottom source pixels are ignored.
+*/
+void lumaToGrayScaled(const uint8_t *y, int yRowStride, int w, int h, int scale, int rotation,
+                      uint8_t *dst, int dstStride);
+
+/*
+ The [x0, x1) x [y0, y1) part of the lumaToGrayScaled output (in output coordinates, after rotation) and
+ nothing else; only the source pixels behind it are read. The rectangle must lie inside the output.
+*/
+void lumaToGrayRegion(const uint8_t *y, int yRowStride, int w, int h, int scale, int rotation,
+                      int x0, int y0, int x1, int y1, uint8_t *dst, int dstStride);
@@ -0,0 +1,82 @@
+package com.example.edgedetection;
+
+import android.opengl.GLES20;
+import java.nio.Buffer;
+
+/** {@link GlApi} backed by the real GLES20 bindings. */
+final class AndroidGl implements GlApi {
+    private final int[] ids = new int[1];
+
+    @Override public int glCreateShader(int type) { return GLES20.glCreateShader(type); }
+
+    @Override public void glShaderSource(int shader, String source) { GLES20.glShaderSource(shader, source); }
+
+    @Override public void glCompileShader(int shader) { GLES20.glCompileShader(shader); }
+
+    @Override public int glGetShaderi(int shader, int name) {
+        GLES20.glGetShaderiv(shader, name, ids, 0);
+        return ids[0];
+    }
+
+    @Override public String glGetShaderInfoLog(int shader) { return GLES20.glGetShaderInfoLog(shader); }
+
+    @Override public void glDeleteShader(int shader) { GLES20.glDeleteShader(shader); }
+
+    @Override public int glCreateProgram() { return GLES20.glCreateProgram(); }
+
+    @Override public void glAttachShader(int program, int shader) { GLES20.glAttachShader(program, shader); }
+
+    @Override public void glLinkProgram(int program) { GLES20.glLinkProgram(program); }
+
+    @Override public int glGetProgrami(int program, int name) {
+        GLES20.glGetProgramiv(program, name, ids, 0);
+        return ids[0];
+    }
+
+    @Override public String glGetProgramInfoLog(int program) { return GLES20.glGetProgramInfoLog(program); }
+
+    @Override public void glUseProgram(int program) { GLES20.glUseProgram(program); }
+
+    @Override public int glGetAttribLocation(int program, String name) { return GLES20.glGetAttribLocation(program, name); }
+
+    @Override public int glGetUniformLocation(int program, String name) { return GLES20.glGetUniformLocation(program, name); }
+
+    @Override public int glGenTexture() {
+        GLES20.glGenTextures(1, ids, 0);
+        return ids[0];
+    }
+
+    @Override public void glBindTexture(int target, int texture) { GLES20.glBindTexture(target, texture); }
+
+    @Override public void glTexParameteri(int target, int name, int value) { GLES20.glTexParameteri(target, name, value); }
+
+    @Override public void glPixelStorei(int name, int value) { GLES20.glPixelStorei(name, value); }
+
+    @Override public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                                       int format, int type, Buffer pixels) {
+        GLES20.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+    }
+
+    @Override public void glTexSubImage2D(int target, int level, int x, int y, int width, int height,
+                                          int format, int type, Buffer pixels) {
+        GLES20.glTexSubImage2D(target, level, x, y, width, height, format, type, pixels);
+    }
+
+    @Override public void glActiveTexture(int texture) { GLES20.glActiveTexture(texture); }
+
+    @Override public void glUniform1i(int location, int value) { GLES20.glUniform1i(location, value); }
+
+    @Override public void glEnableVertexAttribArray(int index) { GLES20.glEnableVertexAttribArray(index); }
+
+    @Override public void glDisableVertexAttribArray(int index) { GLES20.glDisableVertexAttribArray(index); }
+
+    @Override public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, data);
+    }
+
+    @Override public void glViewport(int x, int y, int width, int height) { GLES20.glViewport(x, y, width, height); }
+
+    @Override public void glClear(int mask) { GLES20.glClear(mask); }
+
+    @Override public void glDrawArrays(int mode, int first, int count) { GLES20.glDrawArrays(mode, first, count); }
+}
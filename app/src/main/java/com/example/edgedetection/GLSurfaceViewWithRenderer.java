@@ -19,9 +19,13 @@ public class GLSurfaceViewWithRenderer extends GLSurfaceView {
 
     private void init() {
         setEGLContextClientVersion(2);
+        // Returning from the background then skips recompiling the shaders and reallocating the textures
+        setPreserveEGLContextOnPause(true);
         renderer = new CameraRenderer();
         setRenderer(renderer);
-        setRenderMode(RENDERMODE_CONTINUOUSLY);
+        // Redraw only when the pipeline posts a frame
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
+        renderer.setRenderRequester(this::requestRender);
     }
 
     public CameraRenderer getRenderer() { return renderer; }
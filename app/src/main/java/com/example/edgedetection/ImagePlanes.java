@@ -0,0 +1,26 @@
+package com.example.edgedetection;
+
+import android.media.Image;
+import java.nio.ByteBuffer;
+
+/** Presents a camera {@link Image} as {@link YuvPlanes}; reusable, so wrapping a frame does not allocate. */
+final class ImagePlanes implements YuvPlanes {
+    private Image image;
+    private Image.Plane[] planes;
+
+    ImagePlanes wrap(Image image) {
+        this.image = image;
+        this.planes = image.getPlanes();
+        return this;
+    }
+
+    @Override public int getWidth() { return image.getWidth(); }
+
+    @Override public int getHeight() { return image.getHeight(); }
+
+    @Override public ByteBuffer getBuffer(int plane) { return planes[plane].getBuffer(); }
+
+    @Override public int getRowStride(int plane) { return planes[plane].getRowStride(); }
+
+    @Override public int getPixelStride(int plane) { return planes[plane].getPixelStride(); }
+}
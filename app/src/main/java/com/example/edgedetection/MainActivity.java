@@ -25,7 +25,7 @@ import android.opengl.GLSurfaceView;
 import android.view.View;
 import com.google.android.material.button.MaterialButton;
 import java.io.FileOutputStream;
-import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainActivity extends AppCompatActivity {
     private static final int CAMERA_PERMISSION_CODE = 1001;
@@ -36,7 +36,7 @@ public class MainActivity extends AppCompatActivity {
     private MaterialButton toggleButton;
     private com.google.android.material.floatingactionbutton.FloatingActionButton captureButton;
     private TextView metricsOverlay;
-    private int currentMode = NativeLib.MODE_EDGE;
+    private volatile int currentMode = NativeLib.MODE_EDGE;
 
     private CameraDevice cameraDevice;
     private CameraCaptureSession captureSession;
@@ -45,22 +45,87 @@ public class MainActivity extends AppCompatActivity {
 
     private ImageReader imageReader;
 
-    static {
-        System.loadLibrary("native-lib");
-    }
-
     private final int PREVIEW_W = 640;
     private final int PREVIEW_H = 480;
     private int rotationDegrees = 0;
-    private volatile boolean savedSample = false;
-    private long lastFpsTimestamp = System.nanoTime();
-    private int framesSinceLastFps = 0;
-    private float currentFps = 0f;
-    private double lastProcessingMs = 0d;
+
+    // Per-stage latency histograms; the overlay shows the last refresh interval, a long press on it
+    // appends a cumulative snapshot to metrics.jsonl
+    private final FrameMetrics metrics = new FrameMetrics();
+    private static final long OVERLAY_REFRESH_MS = 500;
+    private final StringBuilder overlayText = new StringBuilder(256);
+    private long lastOverlayNs;
+    private long lastCompletedFrames;
+
+    // Pooled direct buffers shared with the renderer; nothing is allocated per frame once warmed up.
+    // Up to one per pipeline stage and queue (5), two in the renderer (pending + on screen), one spare,
+    // plus the frames snapshots may pin while they wait for the encoder.
+    private static final int SNAPSHOT_BURST = 4;
+    private static final int FRAME_POOL_SIZE = 8 + SNAPSHOT_BURST;
+    // Images held by the pipeline (one queued, one converting) plus headroom for acquireLatestImage
+    private static final int MAX_IMAGES = 4;
+    // Published by the startup thread once warmed up and running; camera images before that are dropped
+    private volatile FramePipeline<Image> pipeline;
+
+    // Compiled filter pipeline per NativeLib.MODE_*, used only by the single processing thread.
+    // Blur and edge recompute only changed tiles; a tile SAD of 0 keeps the output identical to a full
+    // recompute, raise it to let sensor noise count as static.
+    private static final int STATIC_TILE_SAD = 0;
+    // Blur radius of the blur and edge modes. Radius 1 runs the hand-fused kernels (and the incremental path);
+    // wider radii cost the same per pixel and help on noisy low-light footage.
+    private static final int BLUR_RADIUS = 1;
+    // ADAPTIVE_OTSU or ADAPTIVE_DENSITY pick the edge mode threshold from the previous frame's gradient
+    // histogram, so it follows the lighting, but need the whole frame and so turn off the incremental path
+    private static final int EDGE_ADAPTIVE = NativeLib.ADAPTIVE_OFF;
+    private static final int EDGE_DENSITY_PER_MILLE = 50;
+    private static final float EDGE_THRESHOLD_SMOOTHING = 0.25f;
+    private static final boolean EDGE_HYSTERESIS = false;
+    private final long[] filterPipelines = new long[4];
+    // Pixels each pipeline reads around a region, converted along with it
+    private final int[] filterHalos = new int[4];
+
+    // Set to e.g. new FrameRegions(FrameRegions.BACKGROUND_LUMA, 0.25f, 0.25f, 0.5f, 0.5f) to filter only those
+    // parts of the frame (fractions of its width and height) in the gray, blur and edge modes
+    private static final FrameRegions INSPECTION_REGIONS = null;
+    // Native scratch the pipelines share on the processing thread; resized when the governor changes resolution
+    private long scratchContext;
+
+    // Lowers the processing resolution, then the processed frame rate, when the pipeline cannot keep up
+    private static final double TARGET_FPS = 30;
+    private final FrameGovernor governor = new FrameGovernor(TARGET_FPS, 0);
+
+    // Viewers connect with ws://<device>:STREAM_PORT (adb forward tcp:8765 tcp:8765 for USB)
+    private static final int STREAM_PORT = 8765;
+    private volatile FrameStreamServer streamServer;
+
+    // Keeps the last few seconds of processed frames in recording.edgr (edge frames as 1-bit bitmaps):
+    // about 4 s of full-size RGBA, much longer for edge mode
+    private static final int RECORDING_BYTES = 160 * 1024 * 1024;
+    private static final int RECORDING_FRAMES = 4096;
+    private volatile FrameRecorder recorder;
+
+    // Capture pins the next processed frame (a long press the next SNAPSHOT_BURST) and encodes it off the UI
+    // thread: edge frames as 1-bit PNG, the rest as JPEG
+    private volatile FrameSnapshotter snapshotter;
+    private final AtomicInteger snapshotSequence = new AtomicInteger();
+
+    // Set to N to write the first N camera images to camera.yuvd, as captured, for FrameReplay on a desktop
+    private static final int CAMERA_DUMP_FRAMES = 0;
+    private YuvDump.Writer cameraDump;
+    private int cameraDumpFrames;
+
+    // The camera opens and the GL context comes up while a startup thread loads the native library, sizes the
+    // pools and native scratch and runs a frame through every filter; the overlay shows the time from onCreate
+    // to the first processed frame
+    private StartupOrchestrator startup;
+    private Thread startupThread;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startup = new StartupOrchestrator();
+        startup.setMetrics(metrics);
+        startup.setListener(this::onStartupStep);
         setContentView(R.layout.activity_main);
 
         glView = findViewById(R.id.glSurfaceView);
@@ -68,29 +133,45 @@ public class MainActivity extends AppCompatActivity {
         glView.setZOrderOnTop(false);
         glView.setVisibility(View.VISIBLE);
         renderer = glView.getRenderer();
+        renderer.setStartup(startup);
 
         metricsOverlay = findViewById(R.id.metricsOverlay);
-        lastFpsTimestamp = System.nanoTime();
+        metricsOverlay.setOnLongClickListener(v -> {
+            dumpMetrics();
+            return true;
+        });
+        renderer.setMetrics(metrics);
+        metrics.addDropCounter("pipeline", () -> {
+            FramePipeline<Image> p = pipeline;
+            return p != null ? p.droppedFrames() : 0;
+        });
+        metrics.addDropCounter("render", renderer::droppedFrames);
+        metrics.addDropCounter("recorder", () -> {
+            FrameRecorder r = recorder;
+            return r != null ? r.dropped() : 0;
+        });
+        metrics.addDropCounter("snapshot", () -> {
+            FrameSnapshotter s = snapshotter;
+            return s != null ? s.dropped() : 0;
+        });
 
         // Setup toggle button
         // Setup toggle button
         toggleButton = findViewById(R.id.toggleButton);
         toggleButton.setText("Grayscale");
         
-        // Setup capture button
+        // Setup capture button: a tap saves the next frame, a long press the next SNAPSHOT_BURST
         captureButton = findViewById(R.id.captureButton);
         captureButton.setOnClickListener(v -> {
             if (checkStoragePermission()) {
-                saveCurrentFrame();
+                requestSnapshots(1);
             }
         });
-        
-        // Setup capture button
-        captureButton = findViewById(R.id.captureButton);
-        captureButton.setOnClickListener(v -> {
+        captureButton.setOnLongClickListener(v -> {
             if (checkStoragePermission()) {
-                saveCurrentFrame();
+                requestSnapshots(SNAPSHOT_BURST);
             }
+            return true;
         });
         toggleButton.setOnClickListener(v -> {
             // Cycle modes: GRAYSCALE -> BLUR -> EDGE -> GRAYSCALE
@@ -145,14 +226,21 @@ public class MainActivity extends AppCompatActivity {
             boolean swapDimensions = rotationDegrees == 90 || rotationDegrees == 270;
             int previewWidth = swapDimensions ? PREVIEW_H : PREVIEW_W;
             int previewHeight = swapDimensions ? PREVIEW_W : PREVIEW_H;
-            
-            imageReader = ImageReader.newInstance(previewWidth, previewHeight, android.graphics.ImageFormat.YUV_420_888, 2);
+            // Conversion rotates the image back to PREVIEW_W x PREVIEW_H; luma in every mode but the original
+            renderer.setExpectedFrame(PREVIEW_W, PREVIEW_H,
+                    currentMode == NativeLib.MODE_ORIGINAL ? FrameBuffer.FORMAT_RGBA : FrameBuffer.FORMAT_LUMA);
+
+            if (pipeline == null && startupThread == null) {
+                startupThread = startup.runAsync(StartupOrchestrator.WARMED_UP, this::startPipeline);
+            }
+            imageReader = ImageReader.newInstance(previewWidth, previewHeight, android.graphics.ImageFormat.YUV_420_888, MAX_IMAGES);
             imageReader.setOnImageAvailableListener(this::onImageAvailable, backgroundHandler);
 
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) return;
             manager.openCamera(cameraId, new CameraDevice.StateCallback() {
                 @Override public void onOpened(@NonNull CameraDevice camera) {
                     cameraDevice = camera;
+                    startup.complete(StartupOrchestrator.CAMERA_OPENED);
                     try {
                         android.view.Surface surface = imageReader.getSurface();
                         final CaptureRequest.Builder req = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
@@ -163,60 +251,243 @@ public class MainActivity extends AppCompatActivity {
                                 try {
                                     req.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
                                     session.setRepeatingRequest(req.build(), null, backgroundHandler);
-                                } catch (CameraAccessException e) { e.printStackTrace(); }
+                                    startup.complete(StartupOrchestrator.CAMERA_STREAMING);
+                                } catch (CameraAccessException e) {
+                                    e.printStackTrace();
+                                    startup.fail(StartupOrchestrator.CAMERA_STREAMING, e.toString());
+                                }
+                            }
+                            @Override public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                                startup.fail(StartupOrchestrator.CAMERA_STREAMING, "capture session configuration failed");
                             }
-                            @Override public void onConfigureFailed(@NonNull CameraCaptureSession session) { }
                         }, backgroundHandler);
                     } catch (CameraAccessException e) { e.printStackTrace(); }
                 }
                 @Override public void onDisconnected(@NonNull CameraDevice camera) { camera.close(); cameraDevice=null; }
-                @Override public void onError(@NonNull CameraDevice camera, int error) { camera.close(); cameraDevice=null; }
+                @Override public void onError(@NonNull CameraDevice camera, int error) {
+                    camera.close();
+                    cameraDevice = null;
+                    startup.fail(StartupOrchestrator.CAMERA_OPENED, "camera error " + error);
+                }
             }, backgroundHandler);
-        } catch (CameraAccessException e) { e.printStackTrace(); }
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+            startup.fail(StartupOrchestrator.CAMERA_OPENED, e.toString());
+        }
+    }
+
+    // Any thread; failures are shown, the full report goes to the log once the first frame is out
+    private void onStartupStep(int step, String error) {
+        if (error != null) {
+            android.util.Log.e("Startup", StartupOrchestrator.stepName(step) + " failed: " + error);
+            runOnUiThread(() -> Toast.makeText(this, "Startup failed (" + StartupOrchestrator.stepName(step) + "): "
+                    + error, Toast.LENGTH_LONG).show());
+        } else if (step == StartupOrchestrator.FIRST_FRAME) {
+            StringBuilder report = new StringBuilder();
+            startup.formatReport(report);
+            android.util.Log.i("Startup", report.toString());
+        }
     }
 
     private void onImageAvailable(ImageReader reader) {
-        android.media.Image image = null;
         try {
-            image = reader.acquireLatestImage();
+            android.media.Image image = reader.acquireLatestImage();
             if (image == null) return;
-            long startNs = System.nanoTime();
+            FramePipeline<Image> p = pipeline;
+            if (p == null) {
+                // Still warming up
+                image.close();
+                return;
+            }
+            // The pipeline owns the image from here and closes it once converted or dropped
+            p.submit(image);
+            startup.complete(StartupOrchestrator.FIRST_INPUT);
+        } catch (Exception ex) { ex.printStackTrace(); }
+    }
 
-            byte[] rgba = YuvToRgbaConverter.yuv420ToRgba(image, PREVIEW_W, PREVIEW_H);
-            
-            // Rotate the image data if needed
-            if (rotationDegrees != 0) {
-                rgba = rotateImageData(rgba, PREVIEW_W, PREVIEW_H, rotationDegrees);
+    // Startup thread, while the camera opens; onPause joins it before tearing down
+    private void startPipeline() {
+        // First use of NativeLib loads the library
+        NativeLib.getWorkerCount();
+        startup.complete(StartupOrchestrator.NATIVE_LOADED);
+        FrameBufferPool pool = new FrameBufferPool(FRAME_POOL_SIZE, PREVIEW_W * PREVIEW_H * 4);
+        scratchContext = NativeLib.createContext(PREVIEW_W, PREVIEW_H);
+        for (int mode = 0; mode < filterPipelines.length; mode++) {
+            filterPipelines[mode] = FilterGraph.forMode(mode, BLUR_RADIUS).build();
+            NativeLib.setPipelineIncremental(filterPipelines[mode], STATIC_TILE_SAD);
+            NativeLib.setPipelineContext(filterPipelines[mode], scratchContext);
+            filterHalos[mode] = NativeLib.pipelineHalo(filterPipelines[mode]);
+        }
+        // A full-size luma frame through every pipeline: scratch, worker threads and kernels are ready before the
+        // camera delivers. Adaptive thresholds are turned on after it so they only learn from camera frames.
+        StartupOrchestrator.warmUp(pool, filterPipelines, PREVIEW_W, PREVIEW_H, 1);
+        if (BLUR_RADIUS == 1 && EDGE_ADAPTIVE != NativeLib.ADAPTIVE_OFF) {
+            NativeLib.setPipelineAdaptiveThreshold(filterPipelines[NativeLib.MODE_EDGE], EDGE_ADAPTIVE,
+                    EDGE_DENSITY_PER_MILLE, EDGE_THRESHOLD_SMOOTHING, EDGE_HYSTERESIS);
+        }
+        try {
+            recorder = new FrameRecorder(new java.io.File(getExternalFilesDir(null), "recording.edgr"),
+                    RECORDING_BYTES, RECORDING_FRAMES);
+        } catch (java.io.IOException e) {
+            // Recording is optional as well
+            e.printStackTrace();
+        }
+        snapshotter = new FrameSnapshotter(SNAPSHOT_BURST, this::saveSnapshot);
+        FrameStreamServer server = new FrameStreamServer(STREAM_PORT);
+        try {
+            server.start();
+            streamServer = server;
+        } catch (java.io.IOException e) {
+            // Streaming is optional; the local preview keeps running without it
+            e.printStackTrace();
+        }
+        FramePipeline<Image> p = new FramePipeline<>(pool, cameraInput, this::processFrame, this::onFrameProcessed, 1);
+        p.setMetrics(metrics);
+        p.start();
+        pipeline = p;
+    }
+
+    // Runs the mode chosen at conversion time so the format and the filter always agree
+    private void processFrame(FrameBuffer frame) {
+        if (frame.regions != null) {
+            NativeLib.processRegions(filterPipelines[frame.mode], frame.buffer(), frame.stride, frame.buffer(), frame.stride,
+                    frame.width, frame.height, frame.bytesPerPixel(), frame.regions.rects(frame.width, frame.height));
+            return;
+        }
+        int recomputed = NativeLib.processFrame(filterPipelines[frame.mode], frame.buffer(), frame.stride,
+                frame.buffer(), frame.stride, frame.width, frame.height, frame.bytesPerPixel());
+        if (recomputed >= 0) metrics.recordTiles(recomputed, NativeLib.incrementalTileCount(frame.width, frame.height));
+    }
+
+    private void stopPipeline() {
+        if (startupThread != null) {
+            // Setup still running finishes first; it is bounded by one warm-up frame
+            try {
+                startupThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            
-            // Use the correct dimensions based on rotation
-            int outputWidth = (rotationDegrees == 90 || rotationDegrees == 270) ? PREVIEW_H : PREVIEW_W;
-            int outputHeight = (rotationDegrees == 90 || rotationDegrees == 270) ? PREVIEW_W : PREVIEW_H;
-            
-            NativeLib.processFrame(rgba, outputWidth, outputHeight, currentMode);
-            renderer.updateFrame(rgba, outputWidth, outputHeight);
+            startupThread = null;
+        }
+        if (streamServer != null) {
+            streamServer.stop();
+            streamServer = null;
+        }
+        if (pipeline != null) {
+            pipeline.stop();
+            pipeline = null;
+        }
+        // The convert thread has been joined
+        closeCameraDump();
+        FrameSnapshotter s = snapshotter;
+        if (s != null) {
+            // Nothing offers frames any more; this finishes the queued snapshots
+            snapshotter = null;
+            s.shutdown();
+        }
+        FrameRecorder r = recorder;
+        if (r != null) {
+            recorder = null;
+            try {
+                r.close();
+            } catch (java.io.IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (filterPipelines[0] != 0) {
+            // The processing thread has been joined, nothing uses the pipelines any more
+            for (int mode = 0; mode < filterPipelines.length; mode++) {
+                NativeLib.releasePipeline(filterPipelines[mode]);
+                filterPipelines[mode] = 0;
+            }
+            NativeLib.releaseContext(scratchContext);
+            scratchContext = 0;
+        }
+    }
 
-            lastProcessingMs = (System.nanoTime() - startNs) / 1_000_000.0;
-            framesSinceLastFps++;
-            long now = System.nanoTime();
-            if (now - lastFpsTimestamp >= 1_000_000_000L) {
-                currentFps = framesSinceLastFps * 1_000_000_000f / (now - lastFpsTimestamp);
-                framesSinceLastFps = 0;
-                lastFpsTimestamp = now;
+    // Converts and rotates in one native pass straight from the image planes. Gray, blur and edge only
+    // need luma, so for those the chroma planes are never read and the frame stays 1 byte per pixel.
+    private final FramePipeline.InputAdapter<Image> cameraInput = new FramePipeline.InputAdapter<Image>() {
+        private final ImagePlanes planes = new ImagePlanes();
+
+        @Override public boolean convert(Image image, FrameBuffer out) {
+            if (cameraDumpFrames < CAMERA_DUMP_FRAMES) dumpCameraFrame(planes.wrap(image), image.getTimestamp());
+            if (!governor.shouldProcess()) return false;
+            int w = image.getWidth(), h = image.getHeight();
+            int rotation = rotationDegrees;
+            int mode = currentMode;
+            boolean swap = rotation == 90 || rotation == 270;
+            int outputWidth = swap ? h : w;
+            int outputHeight = swap ? w : h;
+            FrameRegions regions = mode == NativeLib.MODE_ORIGINAL ? null : INSPECTION_REGIONS;
+            if (mode == NativeLib.MODE_ORIGINAL) {
+                // Original is only converted, never filtered, so it always runs at full resolution
+                if (out.buffer().capacity() < outputWidth * outputHeight * 4) return false;
+                NativeLib.yuv420ToRgba(planes.wrap(image), rotation, out.buffer(), outputWidth * 4);
+                out.setFrame(FrameBuffer.FORMAT_RGBA, outputWidth, outputHeight, outputWidth * 4);
+            } else {
+                // Reduced sizes are upsampled again by the texture sampler when drawn
+                int scale = governor.scaleDivisor();
+                outputWidth /= scale;
+                outputHeight /= scale;
+                if (out.buffer().capacity() < outputWidth * outputHeight) return false;
+                Image.Plane y = image.getPlanes()[0];
+                if (regions != null && regions.background() == FrameRegions.BACKGROUND_BLACK) {
+                    // Only what the regions' filter reads
+                    NativeLib.yuvToLumaRegions(y.getBuffer(), y.getRowStride(), w, h, rotation, scale,
+                            regions.rects(outputWidth, outputHeight), filterHalos[mode], 0, out.buffer(), outputWidth);
+                } else {
+                    NativeLib.yuvToLuma(y.getBuffer(), y.getRowStride(), w, h, rotation, scale, out.buffer(), outputWidth);
+                }
+                out.setFrame(FrameBuffer.FORMAT_LUMA, outputWidth, outputHeight, outputWidth);
             }
-            updateMetricsOverlay();
+            out.mode = mode;
+            out.regions = regions;
+            out.timestampNs = image.getTimestamp();
+            return true;
+        }
 
-            if (savedSample) return;
-            savedSample = true;
-            try {
-                java.io.File out = new java.io.File(getExternalFilesDir(null), "sample_processed.raw");
-                FileOutputStream fos = new FileOutputStream(out);
-                fos.write(rgba);
-                fos.close();
-            } catch (Exception ex) { ex.printStackTrace(); }
+        @Override public void release(Image image) {
+            image.close();
+        }
+    };
 
-        } catch (Exception ex) { ex.printStackTrace(); }
-        finally { if (image != null) image.close(); }
+    // Convert thread only; a debugging aid, so the write blocks conversion while it lasts
+    private void dumpCameraFrame(YuvPlanes image, long timestampNs) {
+        try {
+            if (cameraDump == null) {
+                cameraDump = new YuvDump.Writer(new java.io.File(getExternalFilesDir(null), "camera.yuvd"), rotationDegrees);
+            }
+            cameraDump.append(image, timestampNs);
+            if (++cameraDumpFrames == CAMERA_DUMP_FRAMES) closeCameraDump();
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            cameraDumpFrames = CAMERA_DUMP_FRAMES;
+            closeCameraDump();
+        }
+    }
+
+    private void closeCameraDump() {
+        if (cameraDump == null) return;
+        try {
+            cameraDump.close();
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+        }
+        cameraDump = null;
+    }
+
+    // Hand-off stage: the renderer takes over the frame's reference
+    private void onFrameProcessed(FrameBuffer frame) {
+        startup.complete(StartupOrchestrator.FIRST_FRAME);
+        governor.onFrameCost(Math.max(frame.convertNs, frame.processNs), frame.convertNs + frame.processNs);
+        FrameRecorder r = recorder;
+        if (r != null) r.record(frame, frame.mode == NativeLib.MODE_EDGE);
+        FrameSnapshotter s = snapshotter;
+        if (s != null) s.offer(frame);
+        FrameStreamServer server = streamServer;
+        if (server != null) server.publish(frame, frame.mode == NativeLib.MODE_EDGE);
+        renderer.updateFrame(frame);
     }
 
     @Override 
@@ -231,7 +502,7 @@ public class MainActivity extends AppCompatActivity {
             }
         } else if (requestCode == STORAGE_PERMISSION_CODE) {
             if (results.length > 0 && results[0] == PackageManager.PERMISSION_GRANTED) {
-                saveCurrentFrame();
+                requestSnapshots(1);
             } else {
                 Toast.makeText(this, "Storage permission is required to save images", Toast.LENGTH_SHORT).show();
             }
@@ -253,42 +524,53 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private byte[] rotateImageData(byte[] input, int width, int height, int rotation) {
-        if (rotation == 0) return input.clone();
-
-        byte[] output = new byte[input.length];
-        int pixelSize = 4; // RGBA
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int sourceIndex = (y * width + x) * pixelSize;
-                int destIndex;
-                
-                switch (rotation) {
-                    case 90: // 90 degrees clockwise
-                        destIndex = (x * height + (height - 1 - y)) * pixelSize;
-                        break;
-                    case 180: // 180 degrees
-                        destIndex = ((height - 1 - y) * width + (width - 1 - x)) * pixelSize;
-                        break;
-                    case 270: // 270 degrees clockwise (or 90 counter-clockwise)
-                        destIndex = ((width - 1 - x) * height + y) * pixelSize;
-                        break;
-                    default: // No rotation
-                        return input.clone();
-                }
-                
-                // Copy RGBA pixel
-                System.arraycopy(input, sourceIndex, output, destIndex, pixelSize);
+    // Runs on the UI thread every OVERLAY_REFRESH_MS while the activity is resumed
+    private final Runnable overlayRefresh = new Runnable() {
+        @Override public void run() {
+            long now = System.nanoTime();
+            FramePipeline<Image> p = pipeline;
+            long completed = p != null ? p.completedFrames() : 0;
+            overlayText.setLength(0);
+            if (lastOverlayNs != 0 && completed >= lastCompletedFrames) {
+                long fpsTenths = (completed - lastCompletedFrames) * 10_000_000_000L / (now - lastOverlayNs);
+                overlayText.append("FPS: ").append(fpsTenths / 10).append('.').append(fpsTenths % 10).append('\n');
+            }
+            lastOverlayNs = now;
+            lastCompletedFrames = completed;
+            overlayText.append("Scale 1/").append(governor.scaleDivisor());
+            if (governor.skipRatio() > 1) overlayText.append(", 1 in ").append(governor.skipRatio()).append(" frames");
+            overlayText.append('\n');
+            long edgePipeline = filterPipelines[NativeLib.MODE_EDGE];
+            if (p != null && currentMode == NativeLib.MODE_EDGE && edgePipeline != 0) {
+                // Written by the processing thread; one frame stale at worst
+                float density = NativeLib.pipelineEdgeDensity(edgePipeline);
+                overlayText.append("Threshold ").append(NativeLib.pipelineThreshold(edgePipeline));
+                if (density >= 0) overlayText.append(", edges ").append(Math.round(density * 1000) / 10f).append('%');
+                overlayText.append('\n');
             }
+            long firstFrameNs = metrics.timeToFirstFrameNs();
+            if (firstFrameNs >= 0) overlayText.append("First frame ").append(firstFrameNs / 1_000_000).append(" ms\n");
+            metrics.formatOverlay(overlayText);
+            metricsOverlay.setText(overlayText.toString());
+            metricsOverlay.postDelayed(this, OVERLAY_REFRESH_MS);
+        }
+    };
+
+    private void dumpMetrics() {
+        java.io.File out = new java.io.File(getExternalFilesDir(null), "metrics.jsonl");
+        try (java.io.Writer w = new java.io.OutputStreamWriter(new FileOutputStream(out, true), "UTF-8")) {
+            metrics.writeSnapshot(w, System.currentTimeMillis());
+            Toast.makeText(this, "Metrics appended to " + out.getName(), Toast.LENGTH_SHORT).show();
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
         }
-        return output;
     }
 
-    private void updateMetricsOverlay() {
-        if (metricsOverlay == null) return;
-        final String text = String.format(Locale.US, "FPS: %.1f\nProc: %.2f ms", currentFps, lastProcessingMs);
-        runOnUiThread(() -> metricsOverlay.setText(text));
+    @Override protected void onResume() {
+        super.onResume();
+        lastOverlayNs = 0;
+        metricsOverlay.removeCallbacks(overlayRefresh);
+        metricsOverlay.post(overlayRefresh);
     }
     
     private boolean checkStoragePermission() {
@@ -304,57 +586,59 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
     
-    private void saveCurrentFrame() {
-        if (renderer == null) {
-            Toast.makeText(this, "Renderer not ready", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        
-        // Get the current frame as a bitmap
-        Bitmap bitmap = renderer.captureFrame();
-        if (bitmap == null) {
-            Toast.makeText(this, "Failed to capture frame", Toast.LENGTH_SHORT).show();
+    private void requestSnapshots(int frames) {
+        FrameSnapshotter s = snapshotter;
+        if (s == null) {
+            Toast.makeText(this, "Camera not running", Toast.LENGTH_SHORT).show();
             return;
         }
-        
-        // Create a file name with timestamp
-        String fileName = "EDV_" + System.currentTimeMillis() + ".jpg";
-        
+        s.requestBurst(frames);
+    }
+
+    // Snapshot thread; the frame is pinned for the duration of the call
+    private void saveSnapshot(FrameBuffer frame) {
+        boolean binary = frame.mode == NativeLib.MODE_EDGE;
+        String fileName = "EDV_" + System.currentTimeMillis() + "_" + snapshotSequence.incrementAndGet()
+                + (binary ? ".png" : ".jpg");
         try {
             // Save to the Pictures directory
-            String relativePath = Environment.DIRECTORY_PICTURES + "/EdgeDetection";
             java.io.File storageDir = new java.io.File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "EdgeDetection");
             if (!storageDir.exists()) {
                 storageDir.mkdirs();
             }
-            
+
             java.io.File imageFile = new java.io.File(storageDir, fileName);
-            try (java.io.FileOutputStream out = new java.io.FileOutputStream(imageFile)) {
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-                
-                // Add the image to the media store
-                MediaStore.Images.Media.insertImage(
-                    getContentResolver(),
-                    imageFile.getAbsolutePath(),
-                    imageFile.getName(),
-                    "Edge Detection Image"
-                );
-                
-                // Notify the media scanner about the new image
-                sendBroadcast(new Intent(
-                    Intent.ACTION_MEDIA_SCANNER_SCAN_FILE,
-                    Uri.fromFile(imageFile)
-                ));
-                
-                Toast.makeText(this, "Image saved to Pictures/EdgeDetection", Toast.LENGTH_SHORT).show();
+            try (java.io.OutputStream out = new java.io.BufferedOutputStream(new FileOutputStream(imageFile))) {
+                if (binary) {
+                    PngWriter.writeBinary(out, frame.buffer(), frame.stride, frame.bytesPerPixel(), frame.width, frame.height);
+                } else {
+                    CameraRenderer.toBitmap(frame).compress(Bitmap.CompressFormat.JPEG, 90, out);
+                }
             }
+
+            // Add the image to the media store
+            MediaStore.Images.Media.insertImage(
+                getContentResolver(),
+                imageFile.getAbsolutePath(),
+                imageFile.getName(),
+                "Edge Detection Image"
+            );
+
+            // Notify the media scanner about the new image
+            sendBroadcast(new Intent(
+                Intent.ACTION_MEDIA_SCANNER_SCAN_FILE,
+                Uri.fromFile(imageFile)
+            ));
+
+            runOnUiThread(() -> Toast.makeText(this, "Image saved to Pictures/EdgeDetection", Toast.LENGTH_SHORT).show());
         } catch (Exception e) {
             e.printStackTrace();
-            Toast.makeText(this, "Failed to save image: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            runOnUiThread(() -> Toast.makeText(this, "Failed to save image: " + e.getMessage(), Toast.LENGTH_SHORT).show());
         }
     }
-    
+
     @Override protected void onPause() {
+        metricsOverlay.removeCallbacks(overlayRefresh);
         if (captureSession != null) {
             captureSession.close();
             captureSession = null;
@@ -363,6 +647,7 @@ public class MainActivity extends AppCompatActivity {
             cameraDevice.close();
             cameraDevice = null;
         }
+        stopPipeline();
         if (imageReader != null) {
             imageReader.close();
             imageReader = null;
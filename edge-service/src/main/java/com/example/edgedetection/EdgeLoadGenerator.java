@@ -0,0 +1,327 @@
+package com.example.edgedetection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates many cameras against an {@link EdgeService}: one connection per stream, each sending synthetic
+ * moving frames with up to {@code --window} frames in flight. Checks every result's sequence and size,
+ * re-runs every {@code --verify}th frame through a local pipeline and compares the pixels, then reports
+ * aggregate throughput, round-trip latency and how evenly the service shared itself between streams.
+ * Exits 1 on any mismatch.
+ *
+ * <pre>
+ *   EdgeLoadGenerator [--streams n] [--seconds s] [--size WxH] [--rgba] [--fps n] [--window n]
+ *                     [--mode original|gray|blur|edge] [--verify n] [--workers n]
+ *                     [--host h --port n | --unix path]
+ * </pre>
+ * Without {@code --host} or {@code --unix} it starts an in-process service with {@code --workers} workers.
+ */
+public final class EdgeLoadGenerator {
+    private static final String[] MODES = {"original", "gray", "blur", "edge"};
+
+    private final int mode, width, height, bytesPerPixel, fps, window, verifyEvery;
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final AtomicLong mismatches = new AtomicLong();
+    private volatile boolean running = true;
+
+    private EdgeLoadGenerator(int mode, int width, int height, int bytesPerPixel, int fps, int window, int verifyEvery) {
+        this.mode = mode;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = bytesPerPixel;
+        this.fps = fps;
+        this.window = window;
+        this.verifyEvery = verifyEvery;
+    }
+
+    /** One simulated camera: a sender and a receiver thread sharing the connection. */
+    private final class Camera {
+        final int id;
+        final SocketChannel channel;
+        final Semaphore inFlight = new Semaphore(window);
+        // Send times by sequence, so the receiver can time each round trip
+        final long[] sentNs = new long[window];
+        // The sender reuses a slot only after the receiver released it, so the verifier sees the sent bytes
+        final byte[][] sentPixels = new byte[window][];
+        volatile long received;
+        volatile IOException failure;
+        Thread sender, receiver;
+
+        Camera(int id, SocketChannel channel) throws IOException {
+            this.id = id;
+            this.channel = channel;
+            for (int i = 0; i < window; i++) sentPixels[i] = new byte[width * height * bytesPerPixel];
+        }
+
+        void start() {
+            sender = new Thread(this::sendLoop, "camera-" + id + "-send");
+            receiver = new Thread(this::receiveLoop, "camera-" + id + "-receive");
+            sender.start();
+            receiver.start();
+        }
+
+        void sendLoop() {
+            long periodNs = fps > 0 ? 1_000_000_000L / fps : 0, next = System.nanoTime();
+            ByteBuffer header = ByteBuffer.allocate(EdgeService.FRAME_HEADER_BYTES);
+            try {
+                header.putInt(EdgeService.MAGIC).put((byte) EdgeService.VERSION).put((byte) mode).put((byte) 1)
+                        .put((byte) 0).flip();
+                writeFully(header);
+                for (int seq = 0; running; seq++) {
+                    if (periodNs > 0) {
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                        next += periodNs;
+                    }
+                    // Polls so the sender notices the end of the run without an interrupt, which would close the channel
+                    while (!inFlight.tryAcquire(50, TimeUnit.MILLISECONDS)) {
+                        if (!running) return;
+                    }
+                    byte[] pixels = sentPixels[seq % window];
+                    fill(pixels, seq);
+                    sentNs[seq % window] = System.nanoTime();
+                    header.clear();
+                    header.putInt(seq).putShort((short) width).putShort((short) height).put((byte) bytesPerPixel)
+                            .put((byte) 0).putShort((short) 0).putLong(sentNs[seq % window]).flip();
+                    writeFully(header);
+                    writeFully(ByteBuffer.wrap(pixels));
+                }
+            } catch (IOException e) {
+                if (running) failure = e;
+            } catch (InterruptedException e) {
+                // Stopping
+            } finally {
+                // The service answers what it already has, then closes, which ends the receiver
+                try {
+                    channel.shutdownOutput();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        void receiveLoop() {
+            int bitmapBytes = EdgeCodec.bitmapBytes(width, height);
+            int payloadBytes = mode == NativeLib.MODE_EDGE ? bitmapBytes : width * height * bytesPerPixel;
+            byte[] payload = new byte[payloadBytes];
+            byte[] expected = new byte[payloadBytes];
+            ByteBuffer header = ByteBuffer.allocate(EdgeService.RESULT_HEADER_BYTES);
+            Verifier verifier = verifyEvery > 0 ? new Verifier() : null;
+            try {
+                for (int seq = 0; ; seq++) {
+                    header.clear();
+                    if (!readFully(header)) break;
+                    // The server latency at 16 is already in the service's own metrics
+                    int sequence = header.getInt(0), length = header.getInt(12);
+                    int w = header.getShort(4) & 0xFFFF, h = header.getShort(6) & 0xFFFF, encoding = header.get(8);
+                    int expectedEncoding = mode == NativeLib.MODE_EDGE ? EdgeService.ENCODING_BITS : EdgeService.ENCODING_RAW;
+                    if (sequence != seq || w != width || h != height || encoding != expectedEncoding || length != payloadBytes) {
+                        throw new IOException("stream " + id + ": unexpected result header for frame " + seq);
+                    }
+                    if (!readFully(ByteBuffer.wrap(payload))) throw new EOFException("stream " + id + ": result cut short");
+                    roundTrip.record(System.nanoTime() - sentNs[seq % window]);
+                    if (verifier != null && seq % verifyEvery == 0) {
+                        verifier.expect(sentPixels[seq % window], expected);
+                        if (!Arrays.equals(payload, expected)) {
+                            mismatches.incrementAndGet();
+                            System.err.println("stream " + id + ": frame " + seq + " differs from the local pipeline");
+                        }
+                    }
+                    received = seq + 1;
+                    inFlight.release();
+                }
+            } catch (IOException e) {
+                failure = e;
+                running = false;
+            } finally {
+                if (verifier != null) verifier.close();
+            }
+        }
+
+        // Channel reads and writes, unlike its stream adapters, may run concurrently from two threads
+        private boolean readFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                if (channel.read(b) < 0) {
+                    if (b.position() == 0) return false;
+                    throw new EOFException("stream " + id + ": connection closed inside a result");
+                }
+            }
+            return true;
+        }
+
+        private void writeFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) channel.write(b);
+        }
+
+        void join() throws InterruptedException, IOException {
+            sender.join();
+            receiver.join();
+            channel.close();
+        }
+    }
+
+    /**
+     * Runs the same filters as the service on a frame still held in the send window. It uses a fresh
+     * (non-incremental) pipeline, which must match: the service's incremental path is exact for gray frames.
+     */
+    private final class Verifier {
+        final long pipeline = FilterGraph.forMode(mode).build();
+        final ByteBuffer frame = ByteBuffer.allocateDirect(width * height * bytesPerPixel);
+        final byte[] row = new byte[width * bytesPerPixel];
+
+        void expect(byte[] pixels, byte[] out) {
+            int stride = width * bytesPerPixel;
+            frame.clear();
+            frame.put(pixels).clear();
+            NativeLib.processFrame(pipeline, frame, stride, frame, stride, width, height, bytesPerPixel);
+            if (mode == NativeLib.MODE_EDGE) {
+                EdgeCodec.packBits(frame, stride, bytesPerPixel, width, height, row, out);
+            } else {
+                frame.get(out);
+            }
+        }
+
+        void close() {
+            NativeLib.releasePipeline(pipeline);
+        }
+    }
+
+    // A checkerboard scrolling right with a disc drifting across it, so every frame has edges to find
+    private void fill(byte[] pixels, int seq) {
+        int shift = seq * 3;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int v = ((x + shift) / 16 + y / 16) % 2 == 0 ? 40 : 200;
+                if ((x - shift / 2 - width / 2) * (x - shift / 2 - width / 2) + (y - height / 2) * (y - height / 2)
+                        < height * height / 16) {
+                    v = 120;
+                }
+                for (int c = 0; c < bytesPerPixel; c++) pixels[i++] = (byte) (c == 3 ? 255 : v);
+            }
+        }
+    }
+
+    private static SocketChannel connect(String host, int port, String unixPath) throws IOException {
+        if (unixPath != null) {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(unixPath));
+            return channel;
+        }
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        return channel;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args) ? 0 : 1);
+    }
+
+    /**
+     * Runs the load the arguments describe and prints the report; true when every result came back in order
+     * and matched the local pipeline.
+     */
+    static boolean run(String[] args) throws Exception {
+        int streams = 32, seconds = 10, width = 320, height = 240, bytesPerPixel = 1, fps = 0, window = 2;
+        int mode = NativeLib.MODE_EDGE, verifyEvery = 16, workers = Runtime.getRuntime().availableProcessors();
+        String host = null, unixPath = null;
+        int port = 9300;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (a.equals("--streams") && hasValue) {
+                streams = Integer.parseInt(args[++i]);
+            } else if (a.equals("--seconds") && hasValue) {
+                seconds = Integer.parseInt(args[++i]);
+            } else if (a.equals("--size") && hasValue) {
+                String[] wh = args[++i].split("x");
+                width = Integer.parseInt(wh[0]);
+                height = Integer.parseInt(wh[1]);
+            } else if (a.equals("--rgba")) {
+                bytesPerPixel = 4;
+            } else if (a.equals("--fps") && hasValue) {
+                fps = Integer.parseInt(args[++i]);
+            } else if (a.equals("--window") && hasValue) {
+                window = Integer.parseInt(args[++i]);
+            } else if (a.equals("--mode") && hasValue) {
+                mode = Arrays.asList(MODES).indexOf(args[++i]);
+                if (mode < 0) throw new IllegalArgumentException("unknown mode " + args[i]);
+            } else if (a.equals("--verify") && hasValue) {
+                verifyEvery = Integer.parseInt(args[++i]);
+            } else if (a.equals("--workers") && hasValue) {
+                workers = Integer.parseInt(args[++i]);
+            } else if (a.equals("--host") && hasValue) {
+                host = args[++i];
+            } else if (a.equals("--port") && hasValue) {
+                port = Integer.parseInt(args[++i]);
+            } else if (a.equals("--unix") && hasValue) {
+                unixPath = args[++i];
+            } else {
+                throw new IllegalArgumentException("unknown option " + a);
+            }
+        }
+        if (width > EdgeService.MAX_DIMENSION || height > EdgeService.MAX_DIMENSION) {
+            throw new IllegalArgumentException("frames are limited to " + EdgeService.MAX_DIMENSION + " pixels a side");
+        }
+
+        EdgeService service = null;
+        if (host == null && unixPath == null) {
+            service = EdgeService.tcp(0, workers);
+            service.start();
+            host = "127.0.0.1";
+            port = service.port();
+            System.out.println("in-process service with " + workers + " workers");
+        }
+        EdgeLoadGenerator load = new EdgeLoadGenerator(mode, width, height, bytesPerPixel, fps, window, verifyEvery);
+        List<Camera> cameras = new ArrayList<>();
+        for (int i = 0; i < streams; i++) cameras.add(load.new Camera(i, connect(host, port, unixPath)));
+        System.out.println(streams + " streams of " + width + "x" + height + (bytesPerPixel == 4 ? " RGBA" : " gray")
+                + " " + MODES[mode] + ", " + (fps > 0 ? fps + " fps" : "unthrottled") + ", window " + window);
+
+        long start = System.nanoTime();
+        for (Camera c : cameras) c.start();
+        Thread.sleep(seconds * 1000L);
+        load.running = false;
+        for (Camera c : cameras) c.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = 0, failures = 0;
+        long[] perStream = new long[streams];
+        for (int i = 0; i < streams; i++) {
+            Camera c = cameras.get(i);
+            perStream[i] = c.received;
+            total += c.received;
+            if (c.failure != null) {
+                failures++;
+                System.err.println("stream " + i + ": " + c.failure);
+            }
+        }
+        Arrays.sort(perStream);
+        System.out.printf("%d frames in %.1f s: %.1f frames/s, %.1f MB/s in%n", total, elapsed, total / elapsed,
+                total * (double) width * height * bytesPerPixel / elapsed / 1e6);
+        System.out.printf("round trip p50 %.2f ms  p99 %.2f ms  max %.2f ms%n",
+                load.roundTrip.valueAtPercentile(50) / 1e6, load.roundTrip.valueAtPercentile(99) / 1e6,
+                load.roundTrip.max() / 1e6);
+        // Fair scheduling keeps min close to max when every stream sends as fast as it can
+        System.out.printf("per stream frames/s min %.1f  median %.1f  max %.1f%n", perStream[0] / elapsed,
+                perStream[streams / 2] / elapsed, perStream[streams - 1] / elapsed);
+        System.out.println(load.mismatches.get() + " mismatches, " + failures + " failed streams");
+        if (service != null) {
+            StringBuilder status = new StringBuilder(512);
+            service.formatStatus(status, service.completedFrames(), elapsed);
+            System.out.println("service: " + status);
+            service.stop();
+        }
+        return load.mismatches.get() == 0 && failures == 0;
+    }
+}
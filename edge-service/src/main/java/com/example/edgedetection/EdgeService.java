@@ -0,0 +1,408 @@
+package com.example.edgedetection;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the native processing core for many concurrent camera streams, one connection each, over local TCP
+ * or a Unix domain socket.
+ *
+ * <p>Protocol (big-endian). The client opens with a hello, then sends frames; the server answers every
+ * frame with a result, in order.
+ * <pre>
+ *   hello   u32 magic "EDGS"   u8 version (1)   u8 mode (NativeLib.MODE_*)   u8 blur radius   u8 reserved
+ *   frame   u32 sequence   u16 width   u16 height   u8 bytes per pixel (1 gray, 4 RGBA)   3 reserved
+ *           u64 timestamp ns   then width * height * bytes per pixel pixel bytes
+ *   result  u32 sequence   u16 width   u16 height   u8 encoding   3 reserved   u32 payload bytes
+ *           u64 server latency ns (frame received to result ready)   then the payload
+ * </pre>
+ * Edge results are {@link EdgeCodec} bitmaps (encoding 1); other modes return the processed rows (0).
+ *
+ * <p>Scheduling: each stream owns {@link #FRAMES_PER_STREAM} frame slots and its own compiled pipeline
+ * (so the incremental path sees consecutive frames of one camera). Its reader fills free slots straight
+ * from the socket and stops reading when none is free, which pushes back on the client through TCP flow
+ * control. Streams with queued frames wait in one FIFO; a worker takes the stream at the head, processes a
+ * single frame and requeues the stream at the tail if it has more, so every busy stream gets one frame
+ * per round however fast it sends, and a stream's frames never run concurrently or out of order.
+ * Workers run frames single-threaded; the service parallelises across streams instead.
+ */
+public final class EdgeService {
+    static final int MAGIC = 0x45444753;
+    static final int VERSION = 1;
+    static final int HELLO_BYTES = 8;
+    static final int FRAME_HEADER_BYTES = 20;
+    static final int RESULT_HEADER_BYTES = 24;
+    static final int ENCODING_RAW = 0;
+    static final int ENCODING_BITS = 1;
+    static final int MAX_DIMENSION = 4096;
+
+    /** Frames a stream may have received but not yet answered. */
+    static final int FRAMES_PER_STREAM = 3;
+    // Same settings as the app
+    private static final int STATIC_TILE_SAD = 0;
+
+    private final ServerSocketChannel server;
+    private final int workerCount;
+    private final LinkedBlockingQueue<Stream> ready = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final Set<Stream> streams = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger streamIds = new AtomicInteger();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final FrameMetrics metrics = new FrameMetrics();
+    private volatile boolean running;
+
+    private EdgeService(ServerSocketChannel server, int workerCount) {
+        this.server = server;
+        this.workerCount = workerCount;
+        // Frames whose client went away before the result could be sent
+        metrics.addDropCounter("discarded", discarded::get);
+    }
+
+    /** Listens on {@code port} of the loopback interface (0 picks a free port). */
+    public static EdgeService tcp(int port, int workers) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return new EdgeService(server, workers);
+    }
+
+    /** Listens on a Unix domain socket at {@code path}, replacing a stale socket file. */
+    public static EdgeService unix(Path path, int workers) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        return new EdgeService(server, workers);
+    }
+
+    public int port() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    public FrameMetrics metrics() { return metrics; }
+
+    public long completedFrames() { return completed.get(); }
+
+    public int openStreams() { return openStreams.get(); }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        // Streams run in parallel, so native band splitting would only contend for the same cores
+        NativeLib.setWorkerCount(1);
+        for (int i = 0; i < workerCount; i++) threads.add(startThread(this::workLoop, "EdgeService-worker-" + i));
+        threads.add(startThread(this::acceptLoop, "EdgeService-accept"));
+    }
+
+    /** Stops accepting and processing and closes every open connection. */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        for (Stream stream : streams) stream.closeChannel();
+        for (Thread t : threads) t.interrupt();
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads.clear();
+    }
+
+    private static Thread startThread(Runnable body, String name) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private static final class Slot {
+        final ByteBuffer header = ByteBuffer.allocate(Math.max(FRAME_HEADER_BYTES, RESULT_HEADER_BYTES));
+        ByteBuffer pixels = ByteBuffer.allocateDirect(0);
+        byte[] row = new byte[0];
+        byte[] out = new byte[0];
+        int sequence, width, height, bytesPerPixel, outLength, encoding;
+        long receivedNs, processedNs;
+    }
+
+    private final class Stream {
+        final int id = streamIds.incrementAndGet();
+        final SocketChannel channel;
+        final ArrayBlockingQueue<Slot> free = new ArrayBlockingQueue<>(FRAMES_PER_STREAM);
+        final ArrayBlockingQueue<Slot> done = new ArrayBlockingQueue<>(FRAMES_PER_STREAM);
+        // Guarded by this
+        final ArrayDeque<Slot> queued = new ArrayDeque<>(FRAMES_PER_STREAM);
+        boolean scheduled;
+        int mode;
+        long pipeline;
+        // Native scratch for this stream's frames, whichever worker runs them; created with the first frame
+        long context;
+        volatile boolean closing;
+        volatile boolean broken;
+
+        Stream(SocketChannel channel) {
+            this.channel = channel;
+            for (int i = 0; i < FRAMES_PER_STREAM; i++) free.add(new Slot());
+        }
+
+        void readLoop() {
+            Thread writer = null;
+            Slot slot = null;
+            try {
+                ByteBuffer hello = ByteBuffer.allocate(HELLO_BYTES);
+                readFully(hello);
+                if (hello.getInt(0) != MAGIC || hello.get(4) != VERSION) throw new IOException("bad hello");
+                mode = hello.get(5);
+                int blurRadius = hello.get(6);
+                if (mode < NativeLib.MODE_ORIGINAL || mode > NativeLib.MODE_EDGE) throw new IOException("bad mode " + mode);
+                // Throws IllegalArgumentException for a radius out of range
+                pipeline = FilterGraph.forMode(mode, Math.max(1, blurRadius)).build();
+                NativeLib.setPipelineIncremental(pipeline, STATIC_TILE_SAD);
+                writer = startThread(this::writeLoop, "EdgeService-stream-" + id + "-writer");
+
+                for (;;) {
+                    slot = free.take();
+                    slot.header.clear().limit(FRAME_HEADER_BYTES);
+                    if (!readFully(slot.header)) break;
+                    ByteBuffer h = slot.header;
+                    slot.sequence = h.getInt(0);
+                    slot.width = h.getShort(4) & 0xFFFF;
+                    slot.height = h.getShort(6) & 0xFFFF;
+                    slot.bytesPerPixel = h.get(8);
+                    if (slot.width == 0 || slot.height == 0 || slot.width > MAX_DIMENSION || slot.height > MAX_DIMENSION
+                            || (slot.bytesPerPixel != 1 && slot.bytesPerPixel != 4)) {
+                        throw new IOException("bad frame header");
+                    }
+                    int bytes = slot.width * slot.height * slot.bytesPerPixel;
+                    if (slot.pixels.capacity() < bytes) slot.pixels = ByteBuffer.allocateDirect(bytes);
+                    slot.pixels.clear().limit(bytes);
+                    if (!readFully(slot.pixels)) throw new EOFException("stream ended inside a frame");
+                    slot.receivedNs = System.nanoTime();
+                    schedule(this, slot);
+                    slot = null;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (running) System.err.println("stream " + id + ": " + e);
+            } catch (InterruptedException e) {
+                // Service stopping
+            }
+            // The writer finishes the frames already scheduled, then releases the stream
+            if (slot != null) free.add(slot);
+            closing = true;
+            if (writer == null) {
+                closeChannel();
+                streams.remove(this);
+            }
+        }
+
+        // Sends results in order; owns the pipeline and the channel once the reader is done
+        void writeLoop() {
+            openStreams.incrementAndGet();
+            try {
+                while (running && !(closing && free.size() == FRAMES_PER_STREAM)) {
+                    Slot slot = done.poll(50, TimeUnit.MILLISECONDS);
+                    if (slot == null) continue;
+                    if (!broken) {
+                        try {
+                            ByteBuffer h = slot.header;
+                            h.clear();
+                            h.putInt(slot.sequence).putShort((short) slot.width).putShort((short) slot.height)
+                                    .put((byte) slot.encoding).put((byte) 0).putShort((short) 0)
+                                    .putInt(slot.outLength).putLong(slot.processedNs - slot.receivedNs).flip();
+                            writeFully(h);
+                            writeFully(ByteBuffer.wrap(slot.out, 0, slot.outLength));
+                            completed.incrementAndGet();
+                            metrics.record(FrameMetrics.END_TO_END, System.nanoTime() - slot.receivedNs);
+                        } catch (IOException e) {
+                            broken = true;
+                        }
+                    }
+                    if (broken) discarded.incrementAndGet();
+                    free.add(slot);
+                }
+            } catch (InterruptedException e) {
+                // Service stopping; a worker may still hold a slot, so the pipeline is left to the process exit
+                closeChannel();
+                return;
+            } finally {
+                openStreams.decrementAndGet();
+                streams.remove(this);
+            }
+            // A stopped service leaves the pipeline to process exit: a worker may have been interrupted holding it
+            if (running) {
+                NativeLib.releasePipeline(pipeline);
+                if (context != 0) NativeLib.releaseContext(context);
+            }
+            closeChannel();
+        }
+
+        void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private boolean readFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                if (channel.read(b) < 0) {
+                    if (b.position() == 0) return false;
+                    throw new EOFException("stream ended inside a message");
+                }
+            }
+            return true;
+        }
+
+        private void writeFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) channel.write(b);
+        }
+    }
+
+    private void schedule(Stream stream, Slot slot) {
+        synchronized (stream) {
+            stream.queued.add(slot);
+            if (stream.scheduled) return;
+            stream.scheduled = true;
+        }
+        ready.add(stream);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                Stream stream = new Stream(channel);
+                streams.add(stream);
+                startThread(stream::readLoop, "EdgeService-stream-" + stream.id + "-reader");
+            } catch (IOException e) {
+                if (running) System.err.println("accept: " + e);
+            }
+        }
+    }
+
+    private void workLoop() {
+        try {
+            while (running) {
+                Stream stream = ready.take();
+                Slot slot;
+                synchronized (stream) {
+                    slot = stream.queued.poll();
+                }
+                process(stream, slot);
+                boolean more;
+                synchronized (stream) {
+                    // Before the stream can be taken again, so its next frame is never written first
+                    stream.done.add(slot);
+                    more = !stream.queued.isEmpty();
+                    stream.scheduled = more;
+                }
+                // Back of the line: every other busy stream gets a frame before this one's next
+                if (more) ready.add(stream);
+            }
+        } catch (InterruptedException e) {
+            // Service stopping
+        }
+    }
+
+    private void process(Stream stream, Slot slot) {
+        long start = System.nanoTime();
+        metrics.record(FrameMetrics.QUEUE_WAIT, start - slot.receivedNs);
+        int w = slot.width, h = slot.height, bpp = slot.bytesPerPixel;
+        if (stream.context == 0) {
+            stream.context = NativeLib.createContext(w, h);
+            NativeLib.setPipelineContext(stream.pipeline, stream.context);
+        }
+        int recomputed = NativeLib.processFrame(stream.pipeline, slot.pixels, w * bpp, slot.pixels, w * bpp, w, h, bpp);
+        if (recomputed >= 0) metrics.recordTiles(recomputed, NativeLib.incrementalTileCount(w, h));
+        if (slot.row.length < w * bpp) slot.row = new byte[w * bpp];
+        if (stream.mode == NativeLib.MODE_EDGE) {
+            slot.encoding = ENCODING_BITS;
+            slot.outLength = EdgeCodec.bitmapBytes(w, h);
+            if (slot.out.length < slot.outLength) slot.out = new byte[slot.outLength];
+            EdgeCodec.packBits(slot.pixels, w * bpp, bpp, w, h, slot.row, slot.out);
+        } else {
+            slot.encoding = ENCODING_RAW;
+            slot.outLength = w * h * bpp;
+            if (slot.out.length < slot.outLength) slot.out = new byte[slot.outLength];
+            ByteBuffer d = slot.pixels.duplicate();
+            d.clear();
+            d.get(slot.out, 0, slot.outLength);
+        }
+        slot.processedNs = System.nanoTime();
+        metrics.record(FrameMetrics.PROCESS, slot.processedNs - start);
+    }
+
+    /** One status line plus the interval's stage latencies, for a periodic report. */
+    void formatStatus(StringBuilder out, long frames, double seconds) {
+        out.append(String.format("%d streams, %.1f frames/s%n", openStreams.get(), frames / seconds));
+        metrics.formatOverlay(out);
+    }
+
+    /**
+     * {@code EdgeService [--port n | --unix path] [--workers n] [--report seconds] [--metrics file]}
+     * Serves until killed, printing throughput and latency every report interval.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 9300, workers = Runtime.getRuntime().availableProcessors(), reportSeconds = 5;
+        String unixPath = null;
+        File metricsFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--unix": unixPath = args[i + 1]; break;
+                case "--workers": workers = Integer.parseInt(args[i + 1]); break;
+                case "--report": reportSeconds = Integer.parseInt(args[i + 1]); break;
+                case "--metrics": metricsFile = new File(args[i + 1]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        EdgeService service = unixPath != null ? unix(Path.of(unixPath), workers) : tcp(port, workers);
+        service.start();
+        System.out.println("serving on " + (unixPath != null ? unixPath : "127.0.0.1:" + service.port())
+                + " with " + workers + " workers");
+        StringBuilder status = new StringBuilder(512);
+        long lastFrames = 0, lastNs = System.nanoTime();
+        for (;;) {
+            Thread.sleep(reportSeconds * 1000L);
+            long now = System.nanoTime(), frames = service.completedFrames();
+            status.setLength(0);
+            service.formatStatus(status, frames - lastFrames, (now - lastNs) / 1e9);
+            System.out.println(status);
+            lastFrames = frames;
+            lastNs = now;
+            if (metricsFile != null) {
+                try (Writer w = new OutputStreamWriter(new FileOutputStream(metricsFile, true), "UTF-8")) {
+                    service.metrics().writeSnapshot(w, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+}
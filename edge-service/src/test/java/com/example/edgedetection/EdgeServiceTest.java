@@ -0,0 +1,32 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Drives an in-process EdgeService with EdgeLoadGenerator, which fails on any result out of order or wrong. */
+public class EdgeServiceTest {
+    @BeforeClass
+    public static void nativeLib() {
+        try {
+            NativeLib.scratchBytesAllocated();
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("needs the host build of native-lib", e);
+        }
+    }
+
+    @Test
+    public void manyWorkersKeepEachStreamInOrder() throws Exception {
+        // More workers than streams, so a stream's next frame is regularly taken by a second worker
+        assertTrue(EdgeLoadGenerator.run(new String[] {"--streams", "4", "--seconds", "3", "--size", "64x48",
+                "--window", "8", "--workers", "16", "--verify", "4"}));
+    }
+
+    @Test
+    public void rgbaBlurStreamsStayInOrder() throws Exception {
+        assertTrue(EdgeLoadGenerator.run(new String[] {"--streams", "8", "--seconds", "2", "--size", "64x48",
+                "--rgba", "--mode", "blur", "--window", "4", "--workers", "8"}));
+    }
+}
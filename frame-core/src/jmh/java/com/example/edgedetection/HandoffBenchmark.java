@@ -0,0 +1,86 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of moving one frame from the processing thread to the renderer: pool acquire, the
+ * latest-wins queue between pipeline stages, and the renderer's {@link FrameSlot}.
+ * Buffer size does not matter here (nothing is copied), so a small one keeps setup cheap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HandoffBenchmark {
+    private static final int POOL_SIZE = 8;
+    private static final int BUFFER_SIZE = 64;
+
+    @State(Scope.Thread)
+    public static class SingleThread {
+        FrameBufferPool pool;
+        FrameSlot slot;
+        LatestWinsQueue<FrameBuffer> queue;
+
+        @Setup
+        public void setup() {
+            pool = new FrameBufferPool(POOL_SIZE, BUFFER_SIZE);
+            slot = new FrameSlot();
+            queue = new LatestWinsQueue<>(2, FrameBuffer::release);
+        }
+
+        @TearDown
+        public void tearDown() {
+            queue.clear();
+            slot.clear();
+        }
+    }
+
+    /** acquire -> slot.put -> latch, as the hand-off and GL threads do per displayed frame. */
+    @Benchmark
+    public FrameBuffer slotPutLatch(SingleThread s) {
+        FrameBuffer frame = s.pool.acquire();
+        s.slot.put(frame);
+        return s.slot.latch();
+    }
+
+    /** acquire -> queue.offer -> pollLatest -> release, one pipeline stage boundary. */
+    @Benchmark
+    public void queueOfferPoll(SingleThread s, Blackhole bh) {
+        s.queue.offer(s.pool.acquire());
+        FrameBuffer frame = s.queue.pollLatest();
+        bh.consume(frame);
+        frame.release();
+    }
+
+    /** Producer and renderer on separate threads hitting the same slot. */
+    @State(Scope.Group)
+    public static class Shared {
+        FrameBufferPool pool;
+        FrameSlot slot;
+
+        @Setup
+        public void setup() {
+            pool = new FrameBufferPool(POOL_SIZE, BUFFER_SIZE);
+            slot = new FrameSlot();
+        }
+
+        @TearDown
+        public void tearDown() {
+            slot.clear();
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    public void producer(Shared s) {
+        FrameBuffer frame = s.pool.acquire();
+        // Pool momentarily exhausted: the camera path drops the frame too
+        if (frame != null) s.slot.put(frame);
+    }
+
+    @Benchmark
+    @Group("contended")
+    public FrameBuffer renderer(Shared s) {
+        return s.slot.latch();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Reference RGBA rotation per frame. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RotateBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    @Param({"0", "90", "180", "270"})
+    public int rotation;
+
+    private int width, height;
+    private ByteBuffer in, out;
+
+    @Setup
+    public void setup() {
+        int[] wh = Sizes.parse(size);
+        width = wh[0];
+        height = wh[1];
+        in = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+        out = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < in.capacity(); i++) in.put(i, (byte) (i * 31));
+    }
+
+    @Benchmark
+    public ByteBuffer rotate() {
+        YuvToRgbaConverter.rotateRgba(in, out, width, height, rotation);
+        return out;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.edgedetection;
+
+final class Sizes {
+    private Sizes() {}
+
+    /** "640x480" -> {640, 480} */
+    static int[] parse(String size) {
+        int x = size.indexOf('x');
+        return new int[]{Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1))};
+    }
+}
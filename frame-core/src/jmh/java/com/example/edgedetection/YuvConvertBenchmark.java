@@ -0,0 +1,38 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Java YUV_420_888 -> RGBA reference conversion per frame, across resolutions and plane layouts. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class YuvConvertBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    @Param({"I420", "NV12", "NV21"})
+    public YuvBuffers.Layout layout;
+
+    // Bytes of padding per row; camera HALs commonly align rows to 16 or 64 bytes
+    @Param({"0", "64"})
+    public int rowPadding;
+
+    private YuvBuffers image;
+    private ByteBuffer out;
+    private final YuvToRgbaConverter converter = new YuvToRgbaConverter();
+
+    @Setup
+    public void setup() {
+        int[] wh = Sizes.parse(size);
+        image = new YuvBuffers(layout, wh[0], wh[1], rowPadding).fillRandom(42);
+        out = ByteBuffer.allocateDirect(wh[0] * wh[1] * 4);
+    }
+
+    @Benchmark
+    public ByteBuffer convert() {
+        converter.yuv420ToRgba(image, image.getWidth(), image.getHeight(), out);
+        return out;
+    }
+}
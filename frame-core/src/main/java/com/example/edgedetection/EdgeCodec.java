@@ -0,0 +1,122 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact encodings for binary (edge) images. A bitmap is one bit per pixel, rows back to back with
+ * no padding, most significant bit first. On top of that:
+ * <ul>
+ *   <li>runs: alternating run lengths of 0 and 1 bits (starting with 0, so the first run may be empty),
+ *       each as an unsigned LEB128 varint. Edge maps are mostly long runs of 0.</li>
+ *   <li>delta: the bitmap XORed with the previously sent one, then run-length coded; a static scene
+ *       costs a few bytes per frame.</li>
+ * </ul>
+ */
+public final class EdgeCodec {
+    private EdgeCodec() {}
+
+    public static int bitmapBytes(int width, int height) {
+        return (int) (((long) width * height + 7) / 8);
+    }
+
+    /**
+     * Packs pixels >= 128 as 1 bits. {@code src} rows are {@code srcStride} apart with {@code bpp} bytes
+     * per pixel (the first channel is tested); {@code row} is scratch of at least width * bpp bytes.
+     */
+    public static void packBits(ByteBuffer src, int srcStride, int bpp, int width, int height,
+                                byte[] row, byte[] bits) {
+        int acc = 0, n = 0, out = 0;
+        ByteBuffer in = src.duplicate();
+        for (int y = 0; y < height; y++) {
+            in.position(y * srcStride);
+            in.get(row, 0, width * bpp);
+            for (int x = 0, i = 0; x < width; x++, i += bpp) {
+                acc = (acc << 1) | ((row[i] & 0x80) >>> 7);
+                if (++n == 8) {
+                    bits[out++] = (byte) acc;
+                    acc = 0;
+                    n = 0;
+                }
+            }
+        }
+        if (n > 0) bits[out] = (byte) (acc << (8 - n));
+    }
+
+    /** Expands {@code nbits} bits starting at {@code bits[offset]} to one byte per pixel, 0 or 255. */
+    public static void unpackBits(byte[] bits, int offset, int nbits, byte[] out) {
+        for (int i = 0; i < nbits; i++) {
+            out[i] = (byte) -((bits[offset + (i >> 3)] >> (7 - (i & 7))) & 1);
+        }
+    }
+
+    public static void xor(byte[] a, byte[] b, byte[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = (byte) (a[i] ^ b[i]);
+    }
+
+    /**
+     * Run-length codes the first {@code nbits} bits into {@code out} starting at {@code offset}.
+     * Returns the end offset, or -1 as soon as the output would pass {@code limit}.
+     */
+    public static int encodeRuns(byte[] bits, int nbits, byte[] out, int offset, int limit) {
+        int pos = offset;
+        int current = 0;
+        long run = 0;
+        int i = 0;
+        while (i < nbits) {
+            // Whole bytes that continue the current run are the common case
+            if ((i & 7) == 0 && i + 8 <= nbits && bits[i >> 3] == (current == 0 ? 0 : (byte) 0xFF)) {
+                run += 8;
+                i += 8;
+                continue;
+            }
+            int bit = (bits[i >> 3] >> (7 - (i & 7))) & 1;
+            if (bit != current) {
+                pos = putVarint(out, pos, run, limit);
+                if (pos < 0) return -1;
+                current = bit;
+                run = 0;
+            }
+            run++;
+            i++;
+        }
+        return putVarint(out, pos, run, limit);
+    }
+
+    /** Inverse of {@link #encodeRuns}; {@code bits} must hold {@link #bitmapBytes} for nbits. */
+    public static void decodeRuns(byte[] in, int offset, int end, byte[] bits, int nbits) {
+        Arrays.fill(bits, 0, (nbits + 7) / 8, (byte) 0);
+        int pos = offset;
+        int bit = 0;
+        long at = 0;
+        while (pos < end) {
+            long run = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (pos >= end || shift > 35) throw new IllegalArgumentException("truncated run length");
+                b = in[pos++] & 0xFF;
+                run |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (at + run > nbits) throw new IllegalArgumentException("runs exceed bitmap size");
+            if (bit == 1) {
+                for (long i = at; i < at + run; i++) bits[(int) (i >> 3)] |= (byte) (0x80 >>> (i & 7));
+            }
+            at += run;
+            bit ^= 1;
+        }
+        if (at != nbits) throw new IllegalArgumentException("runs cover " + at + " of " + nbits + " bits");
+    }
+
+    private static int putVarint(byte[] out, int pos, long v, int limit) {
+        while (v >= 0x80) {
+            if (pos >= limit) return -1;
+            out[pos++] = (byte) (v | 0x80);
+            v >>>= 7;
+        }
+        if (pos >= limit) return -1;
+        out[pos++] = (byte) v;
+        return pos;
+    }
+}
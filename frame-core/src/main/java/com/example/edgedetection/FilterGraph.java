@@ -0,0 +1,113 @@
+package com.example.edgedetection;
+
+import java.util.Arrays;
+
+/**
+ * Builds a chain of native filter stages, compiled once by {@link #build()} into a pipeline handle for
+ * {@link NativeLib#processFrame(long, java.nio.ByteBuffer, int, java.nio.ByteBuffer, int, int, int, int)}.
+ * Neighbourhood stages clamp reads at the frame edge unless {@link #border} says otherwise. Stage order and
+ * parameter ranges are checked natively; see filter_graph.h for the exact semantics.
+ */
+public final class FilterGraph {
+    /** Pyramid level of {@link #forMode} for MODE_PYRAMID_EDGE: a 4x smaller coarse frame. */
+    public static final int DEFAULT_PYRAMID_LEVEL = 2;
+
+    private int[] stages = new int[16];
+    private int length;
+
+    /**
+     * How the pixels whose neighbourhood reaches past the frame edge are computed: NativeLib.BORDER_CLAMP (the
+     * default) clamps the reads, BORDER_KEEP leaves them at the source pixel. Only BORDER_KEEP chains equal to a
+     * built-in mode run on its hand-fused kernel. Only valid first.
+     */
+    public FilterGraph border(int border) {
+        return add(NativeLib.STAGE_BORDER, border);
+    }
+
+    /** RGBA to gray; only valid first (after border), and implied for gray frames. */
+    public FilterGraph gray() {
+        return add(NativeLib.STAGE_GRAY, 0);
+    }
+
+    /** Mean over a (2r+1) square, r 1..15; the cost per pixel is the same for every radius. */
+    public FilterGraph box(int radius) {
+        return add(NativeLib.STAGE_BOX, radius);
+    }
+
+    /** Binomial approximation of a Gaussian with 2r+1 taps, r 1..4. */
+    public FilterGraph gaussian(int radius) {
+        return add(NativeLib.STAGE_GAUSSIAN, radius);
+    }
+
+    /** 3x3 gradient magnitude. */
+    public FilterGraph sobel() {
+        return add(NativeLib.STAGE_SOBEL, 0);
+    }
+
+    /** 3x3 Scharr gradient magnitude, in the same units as {@link #sobel()}. */
+    public FilterGraph scharr() {
+        return add(NativeLib.STAGE_SCHARR, 0);
+    }
+
+    /** Keeps only gradient maxima along the gradient direction; must directly follow sobel or scharr. */
+    public FilterGraph nonMaxSuppression() {
+        return add(NativeLib.STAGE_NON_MAX, 0);
+    }
+
+    /** 255 where the value (or gradient magnitude) is above {@code threshold}, else 0. */
+    public FilterGraph threshold(int threshold) {
+        return add(NativeLib.STAGE_THRESHOLD, threshold);
+    }
+
+    /** Max over a (2r+1) square, r 1..15. */
+    public FilterGraph dilate(int radius) {
+        return add(NativeLib.STAGE_DILATE, radius);
+    }
+
+    /**
+     * MODE_PYRAMID_EDGE with edges found on the frame downsampled {@code level} times, 0..4, each halving it;
+     * only valid alone or after gray. Higher levels skip more of the frame but miss more fine edges, level 0
+     * is MODE_EDGE.
+     */
+    public FilterGraph pyramidEdge(int level) {
+        return add(NativeLib.STAGE_PYRAMID_EDGE, level);
+    }
+
+    /** Compiles the chain; the caller owns the handle and frees it with NativeLib.releasePipeline. */
+    public long build() {
+        return NativeLib.createPipeline(Arrays.copyOf(stages, length));
+    }
+
+    /**
+     * The chain of one of the NativeLib.MODE_* filters; these compile to the hand-fused kernels. Blur and edge
+     * keep the border pixels, like the kernels do.
+     */
+    public static FilterGraph forMode(int mode) {
+        return forMode(mode, 1);
+    }
+
+    /**
+     * Like {@link #forMode(int)} with the blur (and the smoothing in front of the edge gradient) widened to
+     * {@code blurRadius}, 1..15, e.g. for noisy low-light footage. Radius 1 is the built-in filter; every radius
+     * keeps the border pixels, so changing it does not change the border. The pyramid edge mode has no blur to
+     * widen and runs at {@link #DEFAULT_PYRAMID_LEVEL}.
+     */
+    public static FilterGraph forMode(int mode, int blurRadius) {
+        FilterGraph graph = new FilterGraph();
+        switch (mode) {
+            case NativeLib.MODE_GRAYSCALE: return graph.gray();
+            case NativeLib.MODE_BLUR: return graph.border(NativeLib.BORDER_KEEP).gray().box(blurRadius);
+            case NativeLib.MODE_EDGE:
+                return graph.border(NativeLib.BORDER_KEEP).gray().box(blurRadius).sobel().threshold(50);
+            case NativeLib.MODE_PYRAMID_EDGE: return graph.gray().pyramidEdge(DEFAULT_PYRAMID_LEVEL);
+            default: return graph;
+        }
+    }
+
+    private FilterGraph add(int type, int param) {
+        if (length == stages.length) stages = Arrays.copyOf(stages, length * 2);
+        stages[length++] = type;
+        stages[length++] = param;
+        return this;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reusable direct buffer owned by a {@link FrameBufferPool}.
+ * Ownership is reference counted: whoever acquires or {@link #retain()}s a frame must
+ * {@link #release()} it exactly once, and the last release hands it back to the pool.
+ */
+public final class FrameBuffer {
+    private final FrameBufferPool pool;
+    private final ByteBuffer buffer;
+    final AtomicInteger refCount = new AtomicInteger();
+
+    /** Packed 8-bit RGBA, 4 bytes per pixel. */
+    public static final int FORMAT_RGBA = 0;
+    /** Single 8-bit gray channel, 1 byte per pixel. */
+    public static final int FORMAT_LUMA = 1;
+
+    public int format = FORMAT_RGBA;
+    /** NativeLib.MODE_* the frame was (or is to be) processed with. */
+    public int mode;
+    /** Regions the mode applies to, or null for the whole frame. */
+    public FrameRegions regions;
+    public int width;
+    public int height;
+    public int stride;
+    public long timestampNs;
+    /** System.nanoTime() when the pipeline started working on this frame. */
+    public long startNs;
+    /** Time the pipeline spent converting and filtering this frame. */
+    public long convertNs;
+    public long processNs;
+    /** When the frame entered its current pipeline queue, and the total time it spent queued so far. */
+    long queuedNs;
+    long queueWaitNs;
+
+    FrameBuffer(FrameBufferPool pool, int capacity) {
+        this.pool = pool;
+        this.buffer = ByteBuffer.allocateDirect(capacity).order(java.nio.ByteOrder.nativeOrder());
+    }
+
+    /** The backing direct buffer; position is always reset to 0 before it is handed out. */
+    public ByteBuffer buffer() { return buffer; }
+
+    public void setFrame(int width, int height, int stride) {
+        setFrame(FORMAT_RGBA, width, height, stride);
+    }
+
+    public void setFrame(int format, int width, int height, int stride) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+    }
+
+    public int bytesPerPixel() { return format == FORMAT_LUMA ? 1 : 4; }
+
+    /** Adds an owner, e.g. before handing the frame to another thread while keeping it. */
+    public FrameBuffer retain() {
+        int prev;
+        do {
+            prev = refCount.get();
+            if (prev <= 0) throw new IllegalStateException("retain on a released FrameBuffer");
+        } while (!refCount.compareAndSet(prev, prev + 1));
+        return this;
+    }
+
+    public void release() {
+        int left = refCount.decrementAndGet();
+        if (left == 0) {
+            pool.recycle(this);
+        } else if (left < 0) {
+            throw new IllegalStateException("FrameBuffer released more times than acquired");
+        }
+    }
+}
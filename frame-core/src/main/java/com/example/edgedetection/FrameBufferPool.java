@@ -0,0 +1,47 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed ring of preallocated direct frame buffers shared by the camera thread and the GL thread.
+ * {@link #acquire()} never allocates and never blocks: it returns {@code null} when every buffer is
+ * in flight, and the caller is expected to drop that frame.
+ */
+public final class FrameBufferPool {
+    private final FrameBuffer[] buffers;
+    private final int bufferSize;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    public FrameBufferPool(int count, int bufferSize) {
+        this.bufferSize = bufferSize;
+        buffers = new FrameBuffer[count];
+        for (int i = 0; i < count; i++) buffers[i] = new FrameBuffer(this, bufferSize);
+    }
+
+    public int bufferSize() { return bufferSize; }
+
+    public int capacity() { return buffers.length; }
+
+    /** Number of buffers currently owned by somebody. */
+    public int inUse() { return inUse.get(); }
+
+    /** Takes a free buffer with a reference count of one, or returns null if the pool is exhausted. */
+    public FrameBuffer acquire() {
+        int n = buffers.length;
+        int start = cursor.getAndIncrement() & 0x7fffffff;
+        for (int i = 0; i < n; i++) {
+            FrameBuffer fb = buffers[(start + i) % n];
+            if (fb.refCount.get() == 0 && fb.refCount.compareAndSet(0, 1)) {
+                inUse.incrementAndGet();
+                fb.buffer().clear();
+                return fb;
+            }
+        }
+        return null;
+    }
+
+    void recycle(FrameBuffer fb) {
+        inUse.decrementAndGet();
+    }
+}
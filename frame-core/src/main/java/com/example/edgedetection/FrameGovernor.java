@@ -0,0 +1,138 @@
+package com.example.edgedetection;
+
+/**
+ * Picks how much work each camera frame gets so the pipeline holds a target frame rate and latency.
+ * Levels go from full resolution on every frame, through 1/2 and 1/4 scale (the renderer upsamples),
+ * to 1/4 scale on every second or third frame.
+ *
+ * <p>Feed it one cost sample per processed frame: the slowest stage (which bounds throughput, since the
+ * stages run in parallel) and the sum of the stages (the latency the frame adds). Its load is the
+ * worse of slowest/frame budget and sum/latency budget. It steps down as soon as the smoothed load
+ * stays over budget for a few frames, and steps back up only once the next finer level is predicted to
+ * fit with margin for a while. A step up that has to be undone quickly doubles the wait before the
+ * next attempt, so a load near a boundary does not oscillate.
+ *
+ * <p>Pure control logic with no clock of its own, so it can be driven by a simulated cost model.
+ * {@link #onFrameCost} runs on one thread; the getters may be read from any thread.
+ */
+public final class FrameGovernor {
+    private static final int[] SCALE = {1, 2, 4, 4, 4};
+    private static final int[] SKIP = {1, 1, 1, 2, 3};
+    public static final int LEVELS = SCALE.length;
+
+    // Load thresholds; the gap between them is the hysteresis band
+    private static final double STEP_DOWN_LOAD = 1.0;
+    private static final double STEP_UP_LOAD = 0.7;
+    private static final int FRAMES_OVER_BEFORE_DOWN = 5;
+    private static final int FRAMES_UNDER_BEFORE_UP = 30;
+    private static final int MIN_FRAMES_AT_LEVEL = 10;
+    private static final int MAX_UP_BACKOFF = 16;
+    private static final int FRAMES_HELD_TO_CLEAR_BACKOFF = 300;
+    private static final double SMOOTHING = 0.2;
+
+    private final long frameBudgetNs;
+    private final long latencyBudgetNs;
+
+    private volatile int level;
+    private double stageNs, totalNs;  // smoothed costs at the current level
+    private int framesAtLevel;
+    private int framesOver, framesUnder;
+    private int upBackoff = 1;
+    private boolean lastChangeWasUp;
+
+    // Read by the capture thread
+    private int skipCounter;
+
+    /**
+     * @param targetFps      frames per second the slowest stage must sustain
+     * @param latencyBudgetMs upper bound for the summed stage cost of a frame; <= 0 uses one frame period
+     */
+    public FrameGovernor(double targetFps, double latencyBudgetMs) {
+        frameBudgetNs = (long) (1e9 / targetFps);
+        latencyBudgetNs = latencyBudgetMs > 0 ? (long) (latencyBudgetMs * 1e6) : frameBudgetNs;
+    }
+
+    public int level() { return level; }
+
+    /** Output width and height are divided by this (1, 2 or 4). */
+    public int scaleDivisor() { return SCALE[level]; }
+
+    /** One in this many camera frames is processed. */
+    public int skipRatio() { return SKIP[level]; }
+
+    /** Capture-thread side of frame skipping: true for the frames that should be processed. */
+    public boolean shouldProcess() {
+        int skip = SKIP[level];
+        if (skip == 1) {
+            skipCounter = 0;
+            return true;
+        }
+        if (++skipCounter >= skip) {
+            skipCounter = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the cost of one processed frame at the current level.
+     * @param slowestStageNs the longest single stage (convert or filter) for this frame
+     * @param totalNs        all stages together
+     */
+    public void onFrameCost(long slowestStageNs, long totalNs) {
+        if (framesAtLevel == 0) {
+            stageNs = slowestStageNs;
+            this.totalNs = totalNs;
+        } else {
+            stageNs += SMOOTHING * (slowestStageNs - stageNs);
+            this.totalNs += SMOOTHING * (totalNs - this.totalNs);
+        }
+        framesAtLevel++;
+        // A step up that held for a long time clears the penalty from earlier failed attempts
+        if (lastChangeWasUp && framesAtLevel == FRAMES_HELD_TO_CLEAR_BACKOFF) upBackoff = 1;
+
+        int current = level;
+        if (load(current, current) > STEP_DOWN_LOAD) {
+            framesOver++;
+            framesUnder = 0;
+        } else if (current > 0 && load(current, current - 1) < STEP_UP_LOAD) {
+            framesUnder++;
+            framesOver = 0;
+        } else {
+            framesOver = 0;
+            framesUnder = 0;
+        }
+        if (framesAtLevel < MIN_FRAMES_AT_LEVEL) return;
+
+        if (framesOver >= FRAMES_OVER_BEFORE_DOWN && current < LEVELS - 1) {
+            // Undoing a step up right away: make the next attempt wait longer
+            if (lastChangeWasUp && framesAtLevel < FRAMES_UNDER_BEFORE_UP) {
+                upBackoff = Math.min(upBackoff * 2, MAX_UP_BACKOFF);
+            }
+            changeLevel(current + 1, false);
+        } else if (framesUnder >= FRAMES_UNDER_BEFORE_UP * upBackoff) {
+            changeLevel(current - 1, true);
+        }
+    }
+
+    /** Load at level {@code to}, predicted from the costs measured at level {@code from}. */
+    private double load(int from, int to) {
+        // Both stages are dominated by per-pixel work
+        double pixels = (double) (SCALE[from] * SCALE[from]) / (SCALE[to] * SCALE[to]);
+        double stage = stageNs * pixels / ((double) frameBudgetNs * SKIP[to]);
+        double total = totalNs * pixels / latencyBudgetNs;
+        return Math.max(stage, total);
+    }
+
+    private void changeLevel(int to, boolean up) {
+        double pixels = (double) (SCALE[level] * SCALE[level]) / (SCALE[to] * SCALE[to]);
+        stageNs *= pixels;
+        totalNs *= pixels;
+        level = to;
+        // Keep the prediction as the starting point but let real samples replace it quickly
+        framesAtLevel = 1;
+        framesOver = 0;
+        framesUnder = 0;
+        lastChangeWasUp = up;
+    }
+}
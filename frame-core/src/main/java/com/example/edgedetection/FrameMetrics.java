@@ -0,0 +1,173 @@
+package com.example.edgedetection;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage latency histograms for the capture-to-screen path plus the dropped-frame counters of the
+ * components that can drop. Recording is allocation free; formatting and dumping are meant for a
+ * low-rate timer or an explicit request.
+ */
+public final class FrameMetrics {
+    /** Camera image to RGBA/luma frame, rotation included. */
+    public static final int CONVERT = 0;
+    /** Time a frame sat in the pipeline's queues between stages. */
+    public static final int QUEUE_WAIT = 1;
+    /** Native filter. */
+    public static final int PROCESS = 2;
+    /** Texture upload on the GL thread. */
+    public static final int UPLOAD = 3;
+    /** Draw call submission (CPU side; the GPU finishes asynchronously). */
+    public static final int DRAW = 4;
+    /** Start of conversion until the frame's draw was submitted. */
+    public static final int END_TO_END = 5;
+    public static final int STAGE_COUNT = 6;
+
+    private static final String[] STAGE_NAMES = {"convert", "queue", "process", "upload", "draw", "total"};
+    private static final int MAX_DROP_COUNTERS = 4;
+
+    /** Anything that counts frames it threw away. */
+    public interface DropCounter {
+        long dropped();
+    }
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_COUNT];
+    private final String[] dropNames = new String[MAX_DROP_COUNTERS];
+    private final DropCounter[] dropCounters = new DropCounter[MAX_DROP_COUNTERS];
+    private volatile int dropCounterCount;
+
+    // Tiles the incremental filter recomputed, out of the tiles of the frames it ran on
+    private final AtomicLong tilesRecomputed = new AtomicLong();
+    private final AtomicLong tilesTotal = new AtomicLong();
+
+    // From the start of the latest (re)start to its first processed frame, -1 before one
+    private volatile long timeToFirstFrameNs = -1;
+
+    // Overlay state: counts at the previous refresh, so the overlay shows the last interval only
+    private final long[][] previous = new long[STAGE_COUNT][LatencyHistogram.BUCKETS];
+    private final long[] scratch = new long[LatencyHistogram.BUCKETS];
+    private long previousTilesRecomputed;
+    private long previousTilesTotal;
+
+    public FrameMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++) stages[i] = new LatencyHistogram();
+    }
+
+    public void record(int stage, long ns) {
+        stages[stage].record(ns);
+    }
+
+    public LatencyHistogram stage(int stage) {
+        return stages[stage];
+    }
+
+    /** Records how many of a frame's {@code total} tiles were recomputed rather than carried over. */
+    public void recordTiles(int recomputed, int total) {
+        tilesRecomputed.addAndGet(recomputed);
+        tilesTotal.addAndGet(total);
+    }
+
+    /** Share of tiles recomputed since startup, 0..1; 0 when the incremental filter never ran. */
+    public double recomputedTileFraction() {
+        long total = tilesTotal.get();
+        return total == 0 ? 0 : (double) tilesRecomputed.get() / total;
+    }
+
+    /** Records how long the latest start took to its first processed frame (see {@link StartupOrchestrator}). */
+    public void recordTimeToFirstFrame(long ns) {
+        timeToFirstFrameNs = ns;
+    }
+
+    public long timeToFirstFrameNs() {
+        return timeToFirstFrameNs;
+    }
+
+    /** Registers a drop source; call during setup, not per frame. */
+    public synchronized void addDropCounter(String name, DropCounter counter) {
+        int n = dropCounterCount;
+        if (n == MAX_DROP_COUNTERS) throw new IllegalStateException("too many drop counters");
+        dropNames[n] = name;
+        dropCounters[n] = counter;
+        dropCounterCount = n + 1;
+    }
+
+    public long droppedFrames() {
+        long sum = 0;
+        for (int i = 0, n = dropCounterCount; i < n; i++) sum += dropCounters[i].dropped();
+        return sum;
+    }
+
+    /**
+     * Appends p50 / p99 per stage for the frames recorded since the previous call, e.g.
+     * "process 3.10 / 7.85 ms". Call from a single thread.
+     */
+    public void formatOverlay(StringBuilder out) {
+        for (int s = 0; s < STAGE_COUNT; s++) {
+            long[] prev = previous[s];
+            stages[s].copyCounts(scratch);
+            long n = 0;
+            for (int i = 0; i < scratch.length; i++) {
+                long now = scratch[i];
+                scratch[i] = now - prev[i];
+                prev[i] = now;
+                n += scratch[i];
+            }
+            if (n == 0) continue;
+            out.append(STAGE_NAMES[s]).append(' ');
+            appendMs(out, LatencyHistogram.valueAtPercentile(scratch, n, 50));
+            out.append(" / ");
+            appendMs(out, LatencyHistogram.valueAtPercentile(scratch, n, 99));
+            out.append(" ms\n");
+        }
+        long recomputed = tilesRecomputed.get(), total = tilesTotal.get();
+        if (total > previousTilesTotal) {
+            out.append("tiles recomputed ")
+                    .append((recomputed - previousTilesRecomputed) * 100 / (total - previousTilesTotal)).append("%\n");
+        }
+        previousTilesRecomputed = recomputed;
+        previousTilesTotal = total;
+        out.append("dropped ").append(droppedFrames());
+    }
+
+    /**
+     * Writes every stage's cumulative count, p50, p99, p99.9 and max (in microseconds), the time to the first
+     * frame (microseconds, -1 before one), the incremental filter's tile counts and the drop counters as JSON.
+     */
+    public void writeSnapshot(Writer out, long wallClockMs) throws IOException {
+        long[] buckets = new long[LatencyHistogram.BUCKETS];
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"timeMs\":").append(wallClockMs).append(",\"stages\":{");
+        for (int s = 0; s < STAGE_COUNT; s++) {
+            LatencyHistogram h = stages[s];
+            long n = h.copyCounts(buckets);
+            long max = h.max();
+            if (s > 0) sb.append(',');
+            sb.append('"').append(STAGE_NAMES[s]).append("\":{\"count\":").append(n)
+                    .append(",\"p50Us\":").append(Math.min(LatencyHistogram.valueAtPercentile(buckets, n, 50), max) / 1000)
+                    .append(",\"p99Us\":").append(Math.min(LatencyHistogram.valueAtPercentile(buckets, n, 99), max) / 1000)
+                    .append(",\"p999Us\":").append(Math.min(LatencyHistogram.valueAtPercentile(buckets, n, 99.9), max) / 1000)
+                    .append(",\"maxUs\":").append(max / 1000).append('}');
+        }
+        long firstFrame = timeToFirstFrameNs;
+        sb.append("},\"firstFrameUs\":").append(firstFrame < 0 ? -1 : firstFrame / 1000);
+        sb.append(",\"tiles\":{\"recomputed\":").append(tilesRecomputed.get())
+                .append(",\"total\":").append(tilesTotal.get());
+        sb.append("},\"dropped\":{");
+        for (int i = 0, n = dropCounterCount; i < n; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(dropNames[i]).append("\":").append(dropCounters[i].dropped());
+        }
+        sb.append("}}\n");
+        out.write(sb.toString());
+    }
+
+    // ns -> "12.34" without String.format
+    static void appendMs(StringBuilder out, long ns) {
+        long centi = (ns + 5_000) / 10_000;
+        out.append(centi / 100).append('.');
+        long frac = centi % 100;
+        if (frac < 10) out.append('0');
+        out.append(frac);
+    }
+}
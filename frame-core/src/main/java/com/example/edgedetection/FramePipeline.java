@@ -0,0 +1,170 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Three-stage frame pipeline: convert, filter and hand-off each run on their own thread and are
+ * connected by {@link LatestWinsQueue}s, so throughput is bounded by the slowest stage rather than
+ * the sum of all of them. Every queue keeps only the newest entries; a stage that falls behind drops
+ * stale frames instead of building latency.
+ *
+ * <p>Inputs are generic so the same pipeline runs from camera images or from a
+ * {@link SyntheticFrameSource}.
+ */
+public final class FramePipeline<I> {
+    /** Turns one captured input into an RGBA frame; runs on the convert thread. */
+    public interface InputAdapter<I> {
+        /** Fills {@code out} (including width/height/stride); returns false to drop the input. */
+        boolean convert(I input, FrameBuffer out);
+
+        /** Called exactly once per submitted input, after conversion or when it is dropped. */
+        void release(I input);
+    }
+
+    /** Filters a frame in place; runs on the filter thread. */
+    public interface FrameProcessor {
+        void process(FrameBuffer frame);
+    }
+
+    /** Receives finished frames on the hand-off thread and takes over their reference. */
+    public interface FrameSink {
+        void accept(FrameBuffer frame);
+    }
+
+    private final FrameBufferPool pool;
+    private final InputAdapter<I> adapter;
+    private final FrameProcessor processor;
+    private final FrameSink sink;
+
+    private final LatestWinsQueue<I> inputs;
+    private final LatestWinsQueue<FrameBuffer> converted;
+    private final LatestWinsQueue<FrameBuffer> filtered;
+
+    private volatile FrameMetrics metrics;
+    private volatile boolean running;
+    private Thread convertThread, filterThread, handoffThread;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong poolExhausted = new AtomicLong();
+
+    public FramePipeline(FrameBufferPool pool, InputAdapter<I> adapter, FrameProcessor processor,
+                         FrameSink sink, int queueCapacity) {
+        this.pool = pool;
+        this.adapter = adapter;
+        this.processor = processor;
+        this.sink = sink;
+        inputs = new LatestWinsQueue<>(queueCapacity, adapter::release);
+        converted = new LatestWinsQueue<>(queueCapacity, FrameBuffer::release);
+        filtered = new LatestWinsQueue<>(queueCapacity, FrameBuffer::release);
+    }
+
+    /** Records convert, queue-wait and process latencies into {@code metrics}; null turns recording off. */
+    public void setMetrics(FrameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        convertThread = new Thread(this::convertLoop, "FrameConvert");
+        filterThread = new Thread(this::filterLoop, "FrameFilter");
+        handoffThread = new Thread(this::handoffLoop, "FrameHandoff");
+        convertThread.start();
+        filterThread.start();
+        handoffThread.start();
+    }
+
+    /** Stops all stages, waits for them and releases every frame and input still queued. */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        for (Thread t : new Thread[]{convertThread, filterThread, handoffThread}) {
+            LockSupport.unpark(t);
+            try { t.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        inputs.clear();
+        converted.clear();
+        filtered.clear();
+    }
+
+    /**
+     * Queues an input from the capture thread. Never blocks; if the convert stage is still busy with
+     * older inputs they are released in favour of this one.
+     */
+    public void submit(I input) {
+        if (!running) {
+            adapter.release(input);
+            return;
+        }
+        submitted.incrementAndGet();
+        inputs.offer(input);
+        LockSupport.unpark(convertThread);
+    }
+
+    public long submittedFrames() { return submitted.get(); }
+
+    public long completedFrames() { return completed.get(); }
+
+    /** Frames dropped anywhere in the pipeline: stale queue entries plus frames the pool could not hold. */
+    public long droppedFrames() {
+        return inputs.dropped() + converted.dropped() + filtered.dropped() + poolExhausted.get();
+    }
+
+    private void convertLoop() {
+        while (running) {
+            I input = inputs.pollLatest();
+            if (input == null) { LockSupport.park(this); continue; }
+            FrameBuffer frame = pool.acquire();
+            try {
+                if (frame == null) {
+                    poolExhausted.incrementAndGet();
+                    continue;
+                }
+                frame.startNs = System.nanoTime();
+                frame.queueWaitNs = 0;
+                if (!adapter.convert(input, frame)) {
+                    frame.release();
+                    continue;
+                }
+            } finally {
+                adapter.release(input);
+            }
+            frame.queuedNs = System.nanoTime();
+            frame.convertNs = frame.queuedNs - frame.startNs;
+            frame.processNs = 0;
+            FrameMetrics m = metrics;
+            if (m != null) m.record(FrameMetrics.CONVERT, frame.convertNs);
+            converted.offer(frame);
+            LockSupport.unpark(filterThread);
+        }
+    }
+
+    private void filterLoop() {
+        while (running) {
+            FrameBuffer frame = converted.pollLatest();
+            if (frame == null) { LockSupport.park(this); continue; }
+            long start = System.nanoTime();
+            frame.queueWaitNs += start - frame.queuedNs;
+            processor.process(frame);
+            frame.queuedNs = System.nanoTime();
+            frame.processNs = frame.queuedNs - start;
+            FrameMetrics m = metrics;
+            if (m != null) m.record(FrameMetrics.PROCESS, frame.processNs);
+            filtered.offer(frame);
+            LockSupport.unpark(handoffThread);
+        }
+    }
+
+    private void handoffLoop() {
+        while (running) {
+            FrameBuffer frame = filtered.pollLatest();
+            if (frame == null) { LockSupport.park(this); continue; }
+            FrameMetrics m = metrics;
+            if (m != null) m.record(FrameMetrics.QUEUE_WAIT, frame.queueWaitNs + System.nanoTime() - frame.queuedNs);
+            completed.incrementAndGet();
+            sink.accept(frame);
+        }
+    }
+}
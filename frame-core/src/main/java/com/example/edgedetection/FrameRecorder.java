@@ -0,0 +1,216 @@
+package com.example.edgedetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Continuously records processed frames into a {@link FrameRecording}, so the last few seconds are always
+ * on disk and can be read back at once.
+ *
+ * <p>{@link #record} runs on the pipeline's hand-off thread and never touches the file: it copies the frame
+ * into a pooled snapshot (a 1-bit bitmap for binary edge frames) and queues it. A dedicated writer thread
+ * copies snapshots into the mapping. When the writer falls behind and every snapshot is queued, frames are
+ * dropped and counted instead of blocking the caller.
+ */
+public final class FrameRecorder implements FrameMetrics.DropCounter {
+    private static final int SNAPSHOTS = 4;
+
+    private static final class Snapshot {
+        long timestampNs;
+        int width, height, format, mode, encoding, length;
+        byte[] data = new byte[0];
+    }
+
+    private final FrameRecording recording;
+    private final ArrayBlockingQueue<Snapshot> free = new ArrayBlockingQueue<>(SNAPSHOTS);
+    private final ArrayBlockingQueue<Snapshot> queued = new ArrayBlockingQueue<>(SNAPSHOTS);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean stopping;
+    private byte[] rowScratch = new byte[0];
+
+    /**
+     * Creates (or truncates) {@code file} holding {@code dataBytes} of frames, and at most {@code indexEntries}
+     * of them, and starts the writer thread.
+     */
+    public FrameRecorder(File file, int dataBytes, int indexEntries) throws IOException {
+        recording = FrameRecording.create(file, dataBytes, indexEntries);
+        for (int i = 0; i < SNAPSHOTS; i++) free.add(new Snapshot());
+        writer = new Thread(this::writeLoop, "FrameRecorder");
+        writer.start();
+    }
+
+    /**
+     * Queues a copy of {@code frame}; the caller keeps its reference. {@code binary} marks a two-level frame
+     * (edge mode) that is stored as a bitmap. Call from a single thread.
+     */
+    public void record(FrameBuffer frame, boolean binary) {
+        Snapshot snap = free.poll();
+        if (snap == null || stopping) {
+            if (snap != null) free.offer(snap);
+            dropped.incrementAndGet();
+            return;
+        }
+        int bpp = frame.bytesPerPixel();
+        int rowBytes = frame.width * bpp;
+        if (rowScratch.length < rowBytes) rowScratch = new byte[rowBytes];
+        snap.timestampNs = frame.timestampNs;
+        snap.width = frame.width;
+        snap.height = frame.height;
+        snap.format = frame.format;
+        snap.mode = frame.mode;
+        if (binary) {
+            snap.encoding = FrameRecording.ENCODING_BITS;
+            snap.length = EdgeCodec.bitmapBytes(frame.width, frame.height);
+            ensure(snap, snap.length);
+            EdgeCodec.packBits(frame.buffer(), frame.stride, bpp, frame.width, frame.height, rowScratch, snap.data);
+        } else {
+            snap.encoding = FrameRecording.ENCODING_RAW;
+            snap.length = rowBytes * frame.height;
+            ensure(snap, snap.length);
+            ByteBuffer in = frame.buffer().duplicate();
+            for (int y = 0; y < frame.height; y++) {
+                in.position(y * frame.stride);
+                in.get(snap.data, y * rowBytes, rowBytes);
+            }
+        }
+        if (snap.length > recording.dataCapacity()) {
+            free.offer(snap);
+            dropped.incrementAndGet();
+            return;
+        }
+        // Cannot fail: there are only SNAPSHOTS snapshots and this one was not queued
+        queued.offer(snap);
+    }
+
+    /** Frames not recorded because the writer was behind (or the frame did not fit the recording). */
+    @Override
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /** The recorded frames of the last {@code windowNs} before the newest one, oldest first. */
+    public List<RecordedFrame> readLast(long windowNs) {
+        return recording.readLast(windowNs);
+    }
+
+    public List<RecordedFrame> readSince(long timestampNs) {
+        return recording.readSince(timestampNs);
+    }
+
+    /** Writes what is still queued, stops the writer and closes the file. */
+    public void close() throws IOException {
+        stopping = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recording.close();
+    }
+
+    private void writeLoop() {
+        ByteBuffer view = recording.newView();
+        for (;;) {
+            Snapshot snap;
+            try {
+                snap = queued.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (snap == null) {
+                if (stopping && queued.isEmpty()) return;
+                continue;
+            }
+            recording.append(view, snap.timestampNs, snap.width, snap.height, snap.format, snap.mode,
+                    snap.encoding, snap.data, snap.length);
+            free.offer(snap);
+        }
+    }
+
+    private static void ensure(Snapshot snap, int size) {
+        if (snap.data.length < size) snap.data = new byte[size];
+    }
+
+    /**
+     * Desktop check: records synthetic frames (every other one as a bitmap) into a ring that wraps several
+     * times, then reads back the last two seconds, live and after reopening the file, and checks that the
+     * newest frame matches what was recorded. Args: [seconds] [file].
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        File file = args.length > 1 ? new File(args[1]) : File.createTempFile("frames", ".rec");
+        int w = 320, h = 240;
+        // About 1.5 s of raw frames, so the ring wraps
+        FrameRecorder recorder = new FrameRecorder(file, w * h * 4 * 45, 256);
+        final byte[][] newest = new byte[1][];
+        final long[] newestNs = new long[1];
+        final int[] sequence = new int[1];
+        SyntheticFrameSource source = new SyntheticFrameSource(w, h);
+        FramePipeline<SyntheticFrameSource.Frame> pipeline = new FramePipeline<>(new FrameBufferPool(8, w * h * 4),
+                source, f -> { }, f -> {
+                    boolean binary = sequence[0]++ % 2 == 0;
+                    long dropped = recorder.dropped();
+                    recorder.record(f, binary);
+                    // Only this thread drops frames, so an unchanged count means the frame was queued
+                    if (recorder.dropped() == dropped) {
+                        newest[0] = expected(f, binary);
+                        newestNs[0] = f.timestampNs;
+                    }
+                    f.release();
+                }, 1);
+        pipeline.start();
+        source.start(pipeline, 30);
+        Thread.sleep(seconds * 1000L);
+        source.stop();
+        pipeline.stop();
+        // Wait for the writer to drain before comparing against the newest queued frame
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (recorder.recording.lastTimestampNs() != newestNs[0]) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("writer did not drain");
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        List<RecordedFrame> live = recorder.readLast(2_000_000_000L);
+        long readNs = System.nanoTime() - start;
+        recorder.close();
+        FrameRecording reopened = FrameRecording.open(file);
+        List<RecordedFrame> fromFile = reopened.readLast(2_000_000_000L);
+        int frames = reopened.frameCount();
+        reopened.close();
+
+        boolean ok = !live.isEmpty() && live.size() == fromFile.size();
+        for (int i = 1; ok && i < live.size(); i++) ok = live.get(i).timestampNs > live.get(i - 1).timestampNs;
+        ok = ok && Arrays.equals(live.get(live.size() - 1).pixels(), newest[0])
+                && Arrays.equals(fromFile.get(fromFile.size() - 1).pixels(), newest[0]);
+        System.out.printf("%d frames readable, %d in the last 2 s (read in %.1f ms), %d dropped: %s%n",
+                frames, live.size(), readNs / 1e6, recorder.dropped(), ok ? "OK" : "MISMATCH");
+        if (args.length < 2) file.delete();
+        if (!ok) System.exit(1);
+    }
+
+    // What pixels() should return for the frame as recorded
+    private static byte[] expected(FrameBuffer f, boolean binary) {
+        int bpp = f.bytesPerPixel();
+        byte[] out = new byte[f.width * f.height * (binary ? 1 : bpp)];
+        ByteBuffer in = f.buffer();
+        for (int y = 0; y < f.height; y++) {
+            for (int x = 0; x < f.width; x++) {
+                int i = y * f.stride + x * bpp;
+                if (binary) {
+                    out[y * f.width + x] = (byte) ((in.get(i) & 0x80) != 0 ? 255 : 0);
+                } else {
+                    for (int c = 0; c < bpp; c++) out[(y * f.width + x) * bpp + c] = in.get(i + c);
+                }
+            }
+        }
+        return out;
+    }
+}
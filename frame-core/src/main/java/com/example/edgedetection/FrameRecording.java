@@ -0,0 +1,233 @@
+package com.example.edgedetection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed-size recording file used as a ring buffer of frames, accessed through one memory mapping.
+ *
+ * <p>Layout (big-endian): a 64-byte header, an index of fixed 32-byte entries used as a ring, then the
+ * data ring. A frame's payload is written at its logical offset modulo the data capacity and may wrap.
+ * <pre>
+ *   header  u32 magic "EDGR"   u32 version (1)   u64 data capacity   u32 index capacity   u32 reserved
+ *           u64 committed (logical end of the data written)   u64 entries (frames ever written)
+ *           u64 first (oldest entry not given up for overwriting)
+ *   entry   u64 timestamp ns   u64 logical offset   u32 length   u16 width   u16 height
+ *           u8 format   u8 encoding   u8 mode   (5 bytes padding)
+ * </pre>
+ * Entry {@code i} lives in slot {@code i % indexCapacity} and is still readable while
+ * {@code i >= first}, {@code i >= entries - indexCapacity} and its offset {@code >= committed - dataCapacity}.
+ * An append first raises {@code first} past every entry whose payload or slot it is about to reuse, then
+ * writes the payload and the entry, and only then the counters that make it visible. So when the writing
+ * process dies at any point the file reads back as the frames committed before it, minus those the
+ * interrupted append had given up; a lost power supply may reorder the pages and is not covered.
+ * Timestamps must not decrease.
+ *
+ * <p>All methods are synchronized, so a {@link FrameRecorder}'s writer and readers may share one instance.
+ */
+public final class FrameRecording implements Closeable {
+    /** Payload is the frame's rows back to back, {@code width * bytesPerPixel} bytes each. */
+    public static final int ENCODING_RAW = 0;
+    /** Payload is an {@link EdgeCodec} bitmap (binary edge frames). */
+    public static final int ENCODING_BITS = 1;
+
+    static final int MAGIC = 0x45444752;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int ENTRY_BYTES = 32;
+    private static final int COMMITTED_AT = 24;
+    private static final int ENTRIES_AT = 32;
+    static final int FIRST_AT = 40;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final long dataCapacity;
+    private final int indexCapacity;
+    private final int dataStart;
+    private long committed;
+    private long entries;
+    private long first;
+
+    private FrameRecording(RandomAccessFile file, MappedByteBuffer map, long dataCapacity, int indexCapacity) {
+        this.file = file;
+        this.map = map;
+        this.dataCapacity = dataCapacity;
+        this.indexCapacity = indexCapacity;
+        this.dataStart = HEADER_BYTES + indexCapacity * ENTRY_BYTES;
+        this.committed = map.getLong(COMMITTED_AT);
+        this.entries = map.getLong(ENTRIES_AT);
+        this.first = map.getLong(FIRST_AT);
+    }
+
+    /** Creates (or truncates) {@code path} with room for {@code dataBytes} of payload and {@code indexEntries} frames. */
+    public static FrameRecording create(File path, int dataBytes, int indexEntries) throws IOException {
+        if (dataBytes <= 0 || indexEntries <= 0) throw new IllegalArgumentException("capacities must be positive");
+        long size = HEADER_BYTES + (long) indexEntries * ENTRY_BYTES + dataBytes;
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("recording larger than 2 GB");
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(size);
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putLong(8, dataBytes);
+            map.putInt(16, indexEntries);
+            map.putLong(COMMITTED_AT, 0);
+            map.putLong(ENTRIES_AT, 0);
+            map.putLong(FIRST_AT, 0);
+            return new FrameRecording(raf, map, dataBytes, indexEntries);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /** Opens an existing recording read-only. */
+    public static FrameRecording open(File path) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(path, "r");
+        try {
+            long size = raf.length();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) throw new IOException("not a frame recording: " + path);
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long dataCapacity = map.getLong(8);
+            int indexCapacity = map.getInt(16);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || indexCapacity <= 0 || dataCapacity <= 0
+                    || HEADER_BYTES + (long) indexCapacity * ENTRY_BYTES + dataCapacity != size) {
+                throw new IOException("not a frame recording: " + path);
+            }
+            return new FrameRecording(raf, map, dataCapacity, indexCapacity);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public long dataCapacity() {
+        return dataCapacity;
+    }
+
+    /** Frames that have not been overwritten yet. */
+    public synchronized int frameCount() {
+        return (int) (entries - firstReadable());
+    }
+
+    /** Timestamp of the newest frame, or -1 when the recording is empty. */
+    public synchronized long lastTimestampNs() {
+        return entries == 0 ? -1 : map.getLong(entryAt(entries - 1));
+    }
+
+    /** The readable frames with a timestamp of at least {@code timestampNs}, oldest first. */
+    public synchronized List<RecordedFrame> readSince(long timestampNs) {
+        // Binary search the index for the first entry at or after timestampNs
+        long lo = firstReadable(), hi = entries;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (map.getLong(entryAt(mid)) < timestampNs) lo = mid + 1;
+            else hi = mid;
+        }
+        List<RecordedFrame> frames = new ArrayList<>((int) (entries - lo));
+        ByteBuffer view = map.duplicate();
+        for (long i = lo; i < entries; i++) frames.add(read(view, i));
+        return frames;
+    }
+
+    /** The frames of the last {@code windowNs} before the newest one, oldest first. */
+    public synchronized List<RecordedFrame> readLast(long windowNs) {
+        return entries == 0 ? new ArrayList<RecordedFrame>() : readSince(lastTimestampNs() - windowNs);
+    }
+
+    /**
+     * Appends one frame's payload, overwriting the oldest frames as needed. {@code view} is a writer-owned
+     * duplicate of the mapping so the call does not allocate.
+     */
+    synchronized void append(ByteBuffer view, long timestampNs, int width, int height, int format, int mode,
+                             int encoding, byte[] payload, int length) {
+        if (length > dataCapacity) throw new IllegalArgumentException("frame larger than the recording");
+        long offset = committed;
+        // Give up the entries this append overwrites before touching their payload or slot
+        long keep = Math.max(first, entries + 1 - indexCapacity);
+        long oldestData = offset + length - dataCapacity;
+        while (keep < entries && map.getLong(entryAt(keep) + 8) < oldestData) keep++;
+        if (keep != first) {
+            first = keep;
+            map.putLong(FIRST_AT, first);
+        }
+        int at = (int) (offset % dataCapacity);
+        // Bytes up to the end of the data area; the rest wraps to its start
+        int headBytes = (int) Math.min(length, dataCapacity - at);
+        view.clear();
+        view.position(dataStart + at);
+        view.put(payload, 0, headBytes);
+        if (headBytes < length) {
+            view.position(dataStart);
+            view.put(payload, headBytes, length - headBytes);
+        }
+        int e = entryAt(entries);
+        map.putLong(e, timestampNs);
+        map.putLong(e + 8, offset);
+        map.putInt(e + 16, length);
+        map.putShort(e + 20, (short) width);
+        map.putShort(e + 22, (short) height);
+        map.put(e + 24, (byte) format);
+        map.put(e + 25, (byte) encoding);
+        map.put(e + 26, (byte) mode);
+        committed = offset + length;
+        entries++;
+        map.putLong(COMMITTED_AT, committed);
+        map.putLong(ENTRIES_AT, entries);
+    }
+
+    ByteBuffer newView() {
+        return map.duplicate();
+    }
+
+    /** Flushes the mapping (when writable) and closes the file. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!map.isReadOnly()) map.force();
+        file.close();
+    }
+
+    private int entryAt(long i) {
+        return HEADER_BYTES + (int) (i % indexCapacity) * ENTRY_BYTES;
+    }
+
+    // Oldest entry whose slot and payload have not been given up; offsets increase with the entry number
+    private long firstReadable() {
+        long lo = Math.max(first, Math.max(0, entries - indexCapacity)), hi = entries;
+        long oldestData = committed - dataCapacity;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (map.getLong(entryAt(mid) + 8) < oldestData) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private RecordedFrame read(ByteBuffer view, long i) {
+        int e = entryAt(i);
+        long offset = map.getLong(e + 8);
+        int length = map.getInt(e + 16);
+        byte[] payload = new byte[length];
+        int at = (int) (offset % dataCapacity);
+        // Bytes up to the end of the data area; the rest wraps to its start
+        int headBytes = (int) Math.min(length, dataCapacity - at);
+        view.clear();
+        view.position(dataStart + at);
+        view.get(payload, 0, headBytes);
+        if (headBytes < length) {
+            view.position(dataStart);
+            view.get(payload, headBytes, length - headBytes);
+        }
+        return new RecordedFrame(map.getLong(e), map.getShort(e + 20) & 0xFFFF, map.getShort(e + 22) & 0xFFFF,
+                map.get(e + 24), map.get(e + 26), map.get(e + 25), payload);
+    }
+}
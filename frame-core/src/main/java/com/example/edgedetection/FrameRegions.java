@@ -0,0 +1,87 @@
+package com.example.edgedetection;
+
+/**
+ * Regions of interest: the only rectangles of a frame that get filtered, given as fractions of the frame's
+ * width and height so they stay put when the processing resolution changes. Around them the frame shows a
+ * background that costs next to nothing: the unfiltered luma, or black, in which case only the regions (and
+ * the filter's halo around them) are converted at all.
+ *
+ * <p>Immutable; the pixel rectangles of the last frame size are cached, so it can be shared by the pipeline
+ * threads without allocating per frame.
+ */
+public final class FrameRegions {
+    /** The whole frame is converted and shown unfiltered outside the regions. */
+    public static final int BACKGROUND_LUMA = 0;
+    /**
+     * Only the regions are converted, grown by the pipeline's halo; the rest is black, with a ring of
+     * unfiltered luma as wide as the halo around each region.
+     */
+    public static final int BACKGROUND_BLACK = 1;
+
+    private final int background;
+    private final float[] fractions;
+    private volatile Sized sized;
+
+    private static final class Sized {
+        final int width, height;
+        final int[] rects;
+
+        Sized(int width, int height, int[] rects) {
+            this.width = width;
+            this.height = height;
+            this.rects = rects;
+        }
+    }
+
+    /**
+     * {@code fractions} holds up to {@link NativeLib#MAX_REGIONS} (x, y, width, height) quadruples, each a
+     * fraction of the frame's width or height.
+     */
+    public FrameRegions(int background, float... fractions) {
+        if (background != BACKGROUND_LUMA && background != BACKGROUND_BLACK) {
+            throw new IllegalArgumentException("unknown background " + background);
+        }
+        if (fractions.length == 0 || fractions.length % 4 != 0 || fractions.length / 4 > NativeLib.MAX_REGIONS) {
+            throw new IllegalArgumentException("expected 1 to " + NativeLib.MAX_REGIONS + " (x, y, width, height) quadruples");
+        }
+        this.background = background;
+        this.fractions = fractions.clone();
+    }
+
+    public int background() { return background; }
+
+    /**
+     * The regions in pixels of a width x height frame, as (x, y, width, height) quadruples clipped to it.
+     * The array is shared and must not be modified.
+     */
+    public int[] rects(int width, int height) {
+        Sized s = sized;
+        if (s != null && s.width == width && s.height == height) return s.rects;
+        int[] rects = new int[fractions.length];
+        for (int i = 0; i < fractions.length; i += 4) {
+            // Rounded outwards, so a region never loses a partly covered pixel
+            int x0 = clamp((int) Math.floor(fractions[i] * width), width);
+            int y0 = clamp((int) Math.floor(fractions[i + 1] * height), height);
+            int x1 = clamp((int) Math.ceil((fractions[i] + fractions[i + 2]) * width), width);
+            int y1 = clamp((int) Math.ceil((fractions[i + 1] + fractions[i + 3]) * height), height);
+            rects[i] = x0;
+            rects[i + 1] = y0;
+            rects[i + 2] = Math.max(0, x1 - x0);
+            rects[i + 3] = Math.max(0, y1 - y0);
+        }
+        sized = new Sized(width, height, rects);
+        return rects;
+    }
+
+    /** Pixels the regions cover in a width x height frame, overlaps counted once per region. */
+    public long area(int width, int height) {
+        int[] rects = rects(width, height);
+        long area = 0;
+        for (int i = 0; i < rects.length; i += 4) area += (long) rects[i + 2] * rects[i + 3];
+        return area;
+    }
+
+    private static int clamp(int v, int max) {
+        return v < 0 ? 0 : v > max ? max : v;
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws frames as a full-screen quad through a {@link GlApi}. Texture storage is allocated once per
+ * size and format; each frame is then streamed with glTexSubImage2D into the texture the previous draw
+ * did not use, so the upload never has to wait for the GPU to finish reading the one on screen.
+ * All methods run on the GL thread.
+ */
+public final class FrameRenderer {
+    private final GlApi gl;
+
+    private static final float[] SQUARE_COORDS = {
+            -1f,  1f, 0f,
+            -1f, -1f, 0f,
+             1f,  1f, 0f,
+             1f, -1f, 0f
+    };
+    private static final float[] TEX_COORDS = {
+            0f, 0f,
+            0f, 1f,
+            1f, 0f,
+            1f, 1f
+    };
+    private final FloatBuffer vertexBuffer, texBuffer;
+
+    private int program;
+    private int posLoc, texLoc, samplerLoc;
+
+    private final int[] textures = new int[2];
+    // Storage currently allocated for each texture; width 0 means none
+    private final int[] texWidth = new int[2], texHeight = new int[2], texFormat = new int[2];
+    // Texture holding the newest frame, -1 before the first upload
+    private int front = -1;
+
+    public FrameRenderer(GlApi gl) {
+        this.gl = gl;
+        vertexBuffer = ByteBuffer.allocateDirect(SQUARE_COORDS.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertexBuffer.put(SQUARE_COORDS).position(0);
+        texBuffer = ByteBuffer.allocateDirect(TEX_COORDS.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        texBuffer.put(TEX_COORDS).position(0);
+    }
+
+    /**
+     * (Re)creates all GL objects; a new context has none of the old ones. Throws IllegalStateException with
+     * the driver's log when a shader does not compile or link.
+     */
+    public void onSurfaceCreated() {
+        program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        posLoc = gl.glGetAttribLocation(program, "aPosition");
+        texLoc = gl.glGetAttribLocation(program, "aTexCoord");
+        samplerLoc = gl.glGetUniformLocation(program, "uTexture");
+        for (int i = 0; i < textures.length; i++) {
+            textures[i] = generateTexture();
+            texWidth[i] = 0;
+            texHeight[i] = 0;
+        }
+        front = -1;
+    }
+
+    /**
+     * Allocates storage for frames of this size and {@link FrameBuffer} format in both textures ahead of the
+     * first upload, which then only streams pixels. Call after {@link #onSurfaceCreated}.
+     */
+    public void reserve(int width, int height, int frameFormat) {
+        int format = frameFormat == FrameBuffer.FORMAT_LUMA ? GlApi.GL_LUMINANCE : GlApi.GL_RGBA;
+        for (int i = 0; i < textures.length; i++) {
+            if (texWidth[i] == width && texHeight[i] == height && texFormat[i] == format) continue;
+            gl.glBindTexture(GlApi.GL_TEXTURE_2D, textures[i]);
+            gl.glTexImage2D(GlApi.GL_TEXTURE_2D, 0, format, width, height, 0, format, GlApi.GL_UNSIGNED_BYTE, null);
+            texWidth[i] = width;
+            texHeight[i] = height;
+            texFormat[i] = format;
+        }
+    }
+
+    public void onSurfaceChanged(int width, int height) {
+        gl.glViewport(0, 0, width, height);
+    }
+
+    /** Copies a tightly packed RGBA or luma frame into the back texture, which then becomes the front. */
+    public void upload(FrameBuffer frame) {
+        int bpp = frame.bytesPerPixel();
+        if (frame.stride != frame.width * bpp) {
+            // GLES 2.0 has no UNPACK_ROW_LENGTH
+            throw new IllegalArgumentException("FrameRenderer needs tightly packed rows");
+        }
+        int back = front < 0 ? 0 : front ^ 1;
+        // Luma frames go up as a single channel; the sampler replicates it into r, g and b
+        int format = frame.format == FrameBuffer.FORMAT_LUMA ? GlApi.GL_LUMINANCE : GlApi.GL_RGBA;
+
+        gl.glBindTexture(GlApi.GL_TEXTURE_2D, textures[back]);
+        gl.glPixelStorei(GlApi.GL_UNPACK_ALIGNMENT, bpp == 4 ? 4 : 1);
+        if (texWidth[back] != frame.width || texHeight[back] != frame.height || texFormat[back] != format) {
+            gl.glTexImage2D(GlApi.GL_TEXTURE_2D, 0, format, frame.width, frame.height, 0, format,
+                    GlApi.GL_UNSIGNED_BYTE, null);
+            texWidth[back] = frame.width;
+            texHeight[back] = frame.height;
+            texFormat[back] = format;
+        }
+        ByteBuffer pixels = frame.buffer();
+        pixels.position(0);
+        gl.glTexSubImage2D(GlApi.GL_TEXTURE_2D, 0, 0, 0, frame.width, frame.height, format,
+                GlApi.GL_UNSIGNED_BYTE, pixels);
+        front = back;
+    }
+
+    /** Clears and, once a frame has been uploaded, draws the newest one. */
+    public void draw() {
+        gl.glClear(GlApi.GL_COLOR_BUFFER_BIT);
+        if (front < 0) return;
+
+        gl.glUseProgram(program);
+        gl.glEnableVertexAttribArray(posLoc);
+        gl.glVertexAttribPointer(posLoc, 3, GlApi.GL_FLOAT, false, 0, vertexBuffer);
+        gl.glEnableVertexAttribArray(texLoc);
+        gl.glVertexAttribPointer(texLoc, 2, GlApi.GL_FLOAT, false, 0, texBuffer);
+
+        gl.glActiveTexture(GlApi.GL_TEXTURE0);
+        gl.glBindTexture(GlApi.GL_TEXTURE_2D, textures[front]);
+        gl.glUniform1i(samplerLoc, 0);
+
+        gl.glDrawArrays(GlApi.GL_TRIANGLE_STRIP, 0, 4);
+
+        gl.glDisableVertexAttribArray(posLoc);
+        gl.glDisableVertexAttribArray(texLoc);
+    }
+
+    private int generateTexture() {
+        int id = gl.glGenTexture();
+        gl.glBindTexture(GlApi.GL_TEXTURE_2D, id);
+        gl.glTexParameteri(GlApi.GL_TEXTURE_2D, GlApi.GL_TEXTURE_MIN_FILTER, GlApi.GL_LINEAR);
+        gl.glTexParameteri(GlApi.GL_TEXTURE_2D, GlApi.GL_TEXTURE_MAG_FILTER, GlApi.GL_LINEAR);
+        gl.glTexParameteri(GlApi.GL_TEXTURE_2D, GlApi.GL_TEXTURE_WRAP_S, GlApi.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GlApi.GL_TEXTURE_2D, GlApi.GL_TEXTURE_WRAP_T, GlApi.GL_CLAMP_TO_EDGE);
+        return id;
+    }
+
+    private int createProgram(String vs, String fs) {
+        int v = loadShader(GlApi.GL_VERTEX_SHADER, vs);
+        int f = loadShader(GlApi.GL_FRAGMENT_SHADER, fs);
+        int p = gl.glCreateProgram();
+        gl.glAttachShader(p, v);
+        gl.glAttachShader(p, f);
+        gl.glLinkProgram(p);
+        // Attached shaders are freed along with the program
+        gl.glDeleteShader(v);
+        gl.glDeleteShader(f);
+        if (gl.glGetProgrami(p, GlApi.GL_LINK_STATUS) == 0) {
+            throw new IllegalStateException("shader program did not link: " + gl.glGetProgramInfoLog(p));
+        }
+        return p;
+    }
+
+    private int loadShader(int type, String src) {
+        int shader = gl.glCreateShader(type);
+        gl.glShaderSource(shader, src);
+        gl.glCompileShader(shader);
+        if (gl.glGetShaderi(shader, GlApi.GL_COMPILE_STATUS) == 0) {
+            String log = gl.glGetShaderInfoLog(shader);
+            gl.glDeleteShader(shader);
+            throw new IllegalStateException((type == GlApi.GL_VERTEX_SHADER ? "vertex" : "fragment")
+                    + " shader did not compile: " + log);
+        }
+        return shader;
+    }
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+            "attribute vec2 aTexCoord;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "  gl_Position = aPosition;\n" +
+            "  vTexCoord = aTexCoord;\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "uniform sampler2D uTexture;\n" +
+            "void main() {\n" +
+            "  gl_FragColor = texture2D(uTexture, vTexCoord);\n" +
+            "}\n";
+}
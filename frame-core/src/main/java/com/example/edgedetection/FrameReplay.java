@@ -0,0 +1,606 @@
+package com.example.edgedetection;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Headless replay of recorded footage through the app's frame path (native convert and rotate, then the
+ * mode's compiled filter pipeline) as fast as it will go, for throughput numbers and output regressions
+ * without a camera. Needs the host build of native-lib on java.library.path.
+ *
+ * <p>Inputs are {@link YuvDump} files or directories of binary PGM (gray) / PPM (RGB) images, replayed in
+ * name order. Images are not rotated; PGM frames take the luma path and PPM frames the RGBA one. Every
+ * input is read through a memory mapping. With one thread the inputs run in order and each frame is split
+ * across the native worker pool; with more, the inputs run concurrently, one thread each and no native bands.
+ *
+ * <p>The report lists frames/s and a CRC-32 of the processed frames per input, and the convert / process /
+ * output latencies over all of them. {@code --golden file} compares the CRCs with a previous run.
+ * {@code --roi x,y,w,h} (fractions of the frame, repeatable) filters only those regions, as the app does
+ * with {@link FrameRegions}. {@code --adaptive} lets the edge mode pick its threshold from the previous frame,
+ * restarting for each input, and reports where it ended.
+ */
+public final class FrameReplay {
+    private static final String USAGE = "usage: FrameReplay [--mode original|gray|blur|edge|pyramid] [--blur-radius r] [--pyramid-level l]\n"
+            + "                   [--adaptive otsu|density[:permille] [--hysteresis]]\n"
+            + "                   [--threads n] [--repeat n] [--rotation deg] [--roi x,y,w,h]... [--roi-background luma|black]\n"
+            + "                   [--out dir] [--metrics file] [--golden file [--update]] input...\n"
+            + "       FrameReplay --generate file.yuvd [frames]";
+
+    private static final String[] MODES = {"original", "gray", "blur", "edge", "pyramid"};
+
+    // Same settings as the app, so replayed output matches what the device showed
+    private static final int STATIC_TILE_SAD = 0;
+    // Step towards each new adaptive threshold estimate, and the edge share --adaptive density aims for
+    private static final float ADAPTIVE_SMOOTHING = 0.25f;
+    private static final int DEFAULT_EDGE_PER_MILLE = 50;
+    // Processed frames kept per input with --out
+    private static final int MAX_RECORDING_BYTES = 1 << 30;
+
+    private final int mode;
+    private final int blurRadius;
+    private final int pyramidLevel;
+    private final int adaptive;
+    private final int edgePerMille;
+    private final boolean hysteresis;
+    private final int rotation;
+    private final int repeat;
+    private final FrameRegions regions;
+    private final File outDir;
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final LatencyHistogram output = new LatencyHistogram();
+
+    private FrameReplay(int mode, int blurRadius, int pyramidLevel, int adaptive, int edgePerMille, boolean hysteresis,
+                        int rotation, int repeat, FrameRegions regions, File outDir) {
+        this.mode = mode;
+        this.blurRadius = blurRadius;
+        this.pyramidLevel = pyramidLevel;
+        this.adaptive = adaptive;
+        this.edgePerMille = edgePerMille;
+        this.hysteresis = hysteresis;
+        this.rotation = rotation;
+        this.repeat = repeat;
+        this.regions = regions;
+        this.outDir = outDir;
+    }
+
+    /**
+     * One input; converts frame {@code i} into the start of {@code dst}, tightly packed. With regions on a black
+     * background a source may convert only the regions grown by {@code grow} pixels.
+     */
+    private abstract static class Source {
+        final String name;
+        int width, height, bytesPerPixel;
+
+        Source(String name) {
+            this.name = name;
+        }
+
+        abstract int frameCount();
+
+        abstract int maxFrameBytes();
+
+        abstract long timestampNs(int i);
+
+        abstract void convert(int i, int mode, int rotation, FrameRegions regions, int grow, ByteBuffer dst)
+                throws IOException;
+
+        void close() throws IOException { }
+    }
+
+    private static final class DumpSource extends Source {
+        private final YuvDump dump;
+        private final YuvDump.Frame frame;
+
+        DumpSource(File file) throws IOException {
+            super(file.getName());
+            dump = YuvDump.open(file);
+            frame = dump.new Frame();
+        }
+
+        @Override int frameCount() { return dump.frameCount(); }
+
+        @Override int maxFrameBytes() { return dump.width() * dump.height() * 4; }
+
+        @Override long timestampNs(int i) { return dump.timestampNs(i); }
+
+        @Override void convert(int i, int mode, int rotation, FrameRegions regions, int grow, ByteBuffer dst) {
+            if (rotation < 0) rotation = dump.rotation();
+            boolean swap = rotation == 90 || rotation == 270;
+            width = swap ? dump.height() : dump.width();
+            height = swap ? dump.width() : dump.height();
+            dump.frame(i, frame);
+            // Same split as the app: only the original mode needs chroma
+            if (mode == NativeLib.MODE_ORIGINAL) {
+                bytesPerPixel = 4;
+                NativeLib.yuv420ToRgba(frame, rotation, dst, width * 4);
+            } else if (regions != null && regions.background() == FrameRegions.BACKGROUND_BLACK) {
+                bytesPerPixel = 1;
+                NativeLib.yuvToLumaRegions(frame.getBuffer(0), frame.getRowStride(0), dump.width(), dump.height(), rotation,
+                        1, regions.rects(width, height), grow, 0, dst, width);
+            } else {
+                bytesPerPixel = 1;
+                NativeLib.yuvToLuma(frame.getBuffer(0), frame.getRowStride(0), dump.width(), dump.height(), rotation, 1,
+                        dst, width);
+            }
+        }
+
+        @Override void close() throws IOException {
+            dump.close();
+        }
+    }
+
+    private static final class ImageSource extends Source {
+        private final File[] files;
+        private final int maxFrameBytes;
+        private byte[] row = new byte[0];
+        private byte[] rgba = new byte[0];
+
+        ImageSource(File dir) throws IOException {
+            super(dir.getName());
+            files = dir.listFiles((d, n) -> n.endsWith(".pgm") || n.endsWith(".ppm"));
+            if (files == null || files.length == 0) throw new IOException("no .pgm or .ppm images in " + dir);
+            Arrays.sort(files);
+            int max = 0;
+            for (File f : files) {
+                int[] header = readHeader(f);
+                max = Math.max(max, header[0] * header[1] * 4);
+            }
+            maxFrameBytes = max;
+        }
+
+        @Override int frameCount() { return files.length; }
+
+        @Override int maxFrameBytes() { return maxFrameBytes; }
+
+        // Images carry no capture time; 30 fps spacing keeps recordings readable by time
+        @Override long timestampNs(int i) { return i * 33_333_333L; }
+
+        // Images are read whole, so regions only change what gets filtered
+        @Override void convert(int i, int mode, int rotation, FrameRegions regions, int grow, ByteBuffer dst)
+                throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(files[i], "r")) {
+                MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                int[] header = parseHeader(map, files[i]);
+                width = header[0];
+                height = header[1];
+                boolean rgb = header[2] == 3;
+                int rowBytes = width * header[2];
+                if (map.capacity() - header[3] < rowBytes * height) throw new IOException("truncated image " + files[i]);
+                ByteBuffer out = dst.duplicate();
+                out.clear();
+                map.position(header[3]);
+                if (!rgb) {
+                    bytesPerPixel = 1;
+                    map.limit(header[3] + rowBytes * height);
+                    out.put(map);
+                    return;
+                }
+                bytesPerPixel = 4;
+                if (row.length < rowBytes) {
+                    row = new byte[rowBytes];
+                    rgba = new byte[width * 4];
+                }
+                for (int y = 0; y < height; y++) {
+                    map.get(row, 0, rowBytes);
+                    for (int x = 0, o = 0; x < rowBytes; x += 3, o += 4) {
+                        rgba[o] = row[x];
+                        rgba[o + 1] = row[x + 1];
+                        rgba[o + 2] = row[x + 2];
+                        rgba[o + 3] = (byte) 255;
+                    }
+                    out.put(rgba, 0, width * 4);
+                }
+            }
+        }
+
+        private static int[] readHeader(File f) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+                ByteBuffer head = ByteBuffer.allocate((int) Math.min(raf.length(), 512));
+                raf.getChannel().read(head, 0);
+                head.flip();
+                return parseHeader(head, f);
+            }
+        }
+
+        // {width, height, channels, offset of the pixels}; 8-bit binary netpbm only
+        private static int[] parseHeader(ByteBuffer b, File f) throws IOException {
+            int[] fields = new int[4];
+            if (b.limit() < 2 || b.get(0) != 'P' || (b.get(1) != '5' && b.get(1) != '6')) {
+                throw new IOException("not a binary PGM/PPM image: " + f);
+            }
+            int channels = b.get(1) == '5' ? 1 : 3;
+            int pos = 2;
+            for (int n = 0; n < 3; n++) {
+                // Whitespace and # comments between fields
+                while (pos < b.limit()) {
+                    int c = b.get(pos);
+                    if (c == '#') {
+                        while (pos < b.limit() && b.get(pos) != '\n') pos++;
+                    } else if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                        pos++;
+                    } else {
+                        break;
+                    }
+                }
+                int v = 0, digits = 0;
+                while (pos < b.limit() && b.get(pos) >= '0' && b.get(pos) <= '9') {
+                    v = v * 10 + b.get(pos++) - '0';
+                    digits++;
+                }
+                if (digits == 0) throw new IOException("malformed image header: " + f);
+                fields[n] = v;
+            }
+            if (fields[2] != 255) throw new IOException("only 8-bit images are supported: " + f);
+            fields[2] = channels;
+            // Exactly one whitespace byte ends the header
+            fields[3] = pos + 1;
+            return fields;
+        }
+    }
+
+    private static final class Result {
+        long frames;
+        long elapsedNs;
+        long crc;
+        // Native scratch allocated after the first frame, and held by the input's context at the end
+        long scratchAllocated;
+        long scratchHeld;
+        // Share of the (last) frame the regions cover
+        double regionCoverage = 1;
+        // Adaptive edge threshold after the last frame, and that frame's edge share
+        int threshold;
+        float edgeDensity;
+    }
+
+    // Replays one input on the calling thread with its own pipeline (pipelines are not thread-safe) and a
+    // native scratch context sized by its first frame
+    private Result replay(Source source, long pipeline, ByteBuffer frame) throws IOException {
+        Result result = new Result();
+        CRC32 crc = new CRC32();
+        byte[] pixels = new byte[source.maxFrameBytes()];
+        byte[] bits = new byte[0];
+        FrameRecording recording = null;
+        ByteBuffer view = null;
+        if (outDir != null) {
+            // Edge frames are stored as bitmaps, a 32nd of the RGBA bound
+            int frameBytes = binary() ? (source.maxFrameBytes() / 4 + 7) / 8 : source.maxFrameBytes();
+            long total = (long) source.frameCount() * repeat * frameBytes;
+            recording = FrameRecording.create(new File(outDir, source.name + ".edgr"),
+                    (int) Math.max(1, Math.min(total, MAX_RECORDING_BYTES)), source.frameCount() * repeat);
+            view = recording.newView();
+        }
+        long context = 0;
+        if (adaptive != NativeLib.ADAPTIVE_OFF) {
+            NativeLib.setPipelineAdaptiveThreshold(pipeline, adaptive, edgePerMille, ADAPTIVE_SMOOTHING, hysteresis);
+        }
+        int grow = regions != null ? NativeLib.pipelineHalo(pipeline) : 0;
+        try {
+            long start = System.nanoTime();
+            long warmScratch = 0;
+            for (int r = 0; r < repeat; r++) {
+                for (int i = 0; i < source.frameCount(); i++) {
+                    long t0 = System.nanoTime();
+                    source.convert(i, mode, rotation, regions, grow, frame);
+                    if (context == 0) {
+                        context = NativeLib.createContext(source.width, source.height);
+                        NativeLib.setPipelineContext(pipeline, context);
+                    }
+                    long t1 = System.nanoTime();
+                    metrics.record(FrameMetrics.CONVERT, t1 - t0);
+
+                    int w = source.width, h = source.height, bpp = source.bytesPerPixel;
+                    int recomputed = -1;
+                    if (regions != null) {
+                        NativeLib.processRegions(pipeline, frame, w * bpp, frame, w * bpp, w, h, bpp, regions.rects(w, h));
+                    } else {
+                        recomputed = NativeLib.processFrame(pipeline, frame, w * bpp, frame, w * bpp, w, h, bpp);
+                    }
+                    long t2 = System.nanoTime();
+                    metrics.record(FrameMetrics.PROCESS, t2 - t1);
+                    if (recomputed >= 0) metrics.recordTiles(recomputed, NativeLib.incrementalTileCount(w, h));
+
+                    int length = w * h * bpp;
+                    ByteBuffer d = frame.duplicate();
+                    d.clear();
+                    d.get(pixels, 0, length);
+                    crc.update(pixels, 0, length);
+                    if (recording != null) {
+                        // Each repeat continues the timeline so the recording stays in time order
+                        long ts = source.timestampNs(i) + r * (source.timestampNs(source.frameCount() - 1) + 1);
+                        int format = bpp == 1 ? FrameBuffer.FORMAT_LUMA : FrameBuffer.FORMAT_RGBA;
+                        if (binary()) {
+                            int n = EdgeCodec.bitmapBytes(w, h);
+                            if (bits.length < n) bits = new byte[n];
+                            EdgeCodec.packBits(frame, w * bpp, bpp, w, h, pixels, bits);
+                            recording.append(view, ts, w, h, format, mode, FrameRecording.ENCODING_BITS, bits, n);
+                        } else {
+                            recording.append(view, ts, w, h, format, mode, FrameRecording.ENCODING_RAW, pixels, length);
+                        }
+                    }
+                    output.record(System.nanoTime() - t2);
+                    if (result.frames++ == 0) warmScratch = NativeLib.scratchBytesAllocated();
+                }
+            }
+            result.elapsedNs = System.nanoTime() - start;
+            if (regions != null) {
+                result.regionCoverage = (double) regions.area(source.width, source.height) / ((long) source.width * source.height);
+            }
+            result.scratchAllocated = NativeLib.scratchBytesAllocated() - warmScratch;
+            result.threshold = NativeLib.pipelineThreshold(pipeline);
+            result.edgeDensity = NativeLib.pipelineEdgeDensity(pipeline);
+        } finally {
+            if (recording != null) recording.close();
+            if (context != 0) {
+                result.scratchHeld = NativeLib.contextBytes(context);
+                NativeLib.setPipelineContext(pipeline, 0);
+                NativeLib.releaseContext(context);
+            }
+        }
+        result.crc = crc.getValue();
+        return result;
+    }
+
+    private Result[] run(final List<Source> sources, int threads) throws Exception {
+        final Result[] results = new Result[sources.size()];
+        final Exception[] failure = new Exception[1];
+        final AtomicInteger next = new AtomicInteger();
+        int maxFrameBytes = 0;
+        for (Source s : sources) maxFrameBytes = Math.max(maxFrameBytes, s.maxFrameBytes());
+        final int frameBytes = maxFrameBytes;
+        Runnable worker = () -> {
+            long pipeline = (mode == NativeLib.MODE_PYRAMID_EDGE
+                    ? new FilterGraph().gray().pyramidEdge(pyramidLevel)
+                    : FilterGraph.forMode(mode, blurRadius)).build();
+            NativeLib.setPipelineIncremental(pipeline, STATIC_TILE_SAD);
+            ByteBuffer frame = ByteBuffer.allocateDirect(frameBytes);
+            try {
+                for (int i; (i = next.getAndIncrement()) < sources.size(); ) {
+                    results[i] = replay(sources.get(i), pipeline, frame);
+                }
+            } catch (Exception e) {
+                synchronized (failure) {
+                    if (failure[0] == null) failure[0] = e;
+                }
+                next.set(sources.size());
+            } finally {
+                NativeLib.releasePipeline(pipeline);
+            }
+        };
+        Thread[] pool = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            pool[t] = new Thread(worker, "FrameReplay-" + t);
+            pool[t].start();
+        }
+        for (Thread t : pool) t.join();
+        if (failure[0] != null) throw failure[0];
+        return results;
+    }
+
+    private void report(List<Source> sources, Result[] results, long wallNs, int threads) {
+        long frames = 0;
+        System.out.printf("%-28s %8s %10s  %s%n", "input", "frames", "frames/s", "crc32");
+        for (int i = 0; i < sources.size(); i++) {
+            Result r = results[i];
+            frames += r.frames;
+            System.out.printf("%-28s %8d %10.1f  %08x%n", sources.get(i).name, r.frames,
+                    r.frames * 1e9 / Math.max(1, r.elapsedNs), r.crc);
+        }
+        String filter = mode == NativeLib.MODE_PYRAMID_EDGE ? MODES[mode] + " level " + pyramidLevel
+                : MODES[mode] + (blurRadius > 1 && mode >= NativeLib.MODE_BLUR ? " r" + blurRadius : "");
+        System.out.printf("%d frames in %.2f s: %.1f frames/s (%s, %d replay threads, %d native workers)%n",
+                frames, wallNs / 1e9, frames * 1e9 / wallNs, filter, threads, NativeLib.getWorkerCount());
+        System.out.printf("%-8s %9s %9s %9s%n", "stage", "p50 ms", "p99 ms", "max ms");
+        printStage("convert", metrics.stage(FrameMetrics.CONVERT));
+        printStage("process", metrics.stage(FrameMetrics.PROCESS));
+        printStage("output", output);
+        if (regions != null) {
+            double coverage = 0;
+            for (Result r : results) coverage = Math.max(coverage, r.regionCoverage);
+            System.out.printf("regions cover %.1f%% of the frame, %s background%n", coverage * 100,
+                    regions.background() == FrameRegions.BACKGROUND_BLACK ? "black" : "luma");
+        } else if (mode == NativeLib.MODE_BLUR || (mode == NativeLib.MODE_EDGE && adaptive == NativeLib.ADAPTIVE_OFF)) {
+            System.out.printf("tiles recomputed %.1f%%%n", metrics.recomputedTileFraction() * 100);
+        }
+        if (adaptive != NativeLib.ADAPTIVE_OFF) {
+            for (int i = 0; i < sources.size(); i++) {
+                System.out.printf("%s: adaptive threshold %d, edge density %.2f%%%n", sources.get(i).name,
+                        results[i].threshold, results[i].edgeDensity * 100);
+            }
+        }
+        long held = 0, allocated = 0;
+        for (Result r : results) {
+            held = Math.max(held, r.scratchHeld);
+            allocated += r.scratchAllocated;
+        }
+        // The counter is process-wide, so with several threads one input's count includes the others' warm-up
+        System.out.printf("native scratch %d KB per input, %d bytes allocated after each input's first frame%s%n",
+                held / 1024, allocated, threads > 1 ? " (all threads)" : "");
+    }
+
+    // Edge output is 0 or 255 per pixel
+    private boolean binary() {
+        return mode == NativeLib.MODE_EDGE || mode == NativeLib.MODE_PYRAMID_EDGE;
+    }
+
+    private static void printStage(String name, LatencyHistogram h) {
+        System.out.printf("%-8s %9.3f %9.3f %9.3f%n", name, h.valueAtPercentile(50) / 1e6,
+                h.valueAtPercentile(99) / 1e6, h.max() / 1e6);
+    }
+
+    // "name crc" per line, as printed by the report
+    private static int checkGolden(File golden, boolean update, List<Source> sources, Result[] results) throws IOException {
+        if (update) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(golden), "UTF-8")) {
+                for (int i = 0; i < sources.size(); i++) {
+                    w.write(String.format("%s %08x%n", sources.get(i).name, results[i].crc));
+                }
+            }
+            System.out.println("updated " + golden);
+            return 0;
+        }
+        Map<String, String> expected = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(golden), "UTF-8"))) {
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length == 2) expected.put(parts[0], parts[1]);
+            }
+        }
+        int failures = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            String name = sources.get(i).name;
+            String actual = String.format("%08x", results[i].crc);
+            String want = expected.get(name);
+            if (want == null) {
+                System.out.println("no golden entry for " + name);
+            } else if (!want.equals(actual)) {
+                System.out.println("MISMATCH " + name + ": expected " + want + ", got " + actual);
+                failures++;
+            }
+        }
+        System.out.println(failures == 0 ? "golden OK" : failures + " input(s) differ from " + golden);
+        return failures;
+    }
+
+    /**
+     * Writes a synthetic NV21 dump shaped like a camera stream (padded rows, 90 degree sensor rotation): a
+     * fixed noise background with a block moving across it, so the incremental path sees realistic dirt.
+     */
+    private static void generate(File file, int frames) throws IOException {
+        int w = 640, h = 480, block = 64;
+        YuvBuffers yuv = new YuvBuffers(YuvBuffers.Layout.NV21, w, h, 64).fillRandom(1);
+        ByteBuffer background = ByteBuffer.allocate(yuv.getBuffer(0).capacity());
+        background.put(yuv.getBuffer(0).duplicate()).flip();
+        try (YuvDump.Writer out = new YuvDump.Writer(file, 90)) {
+            for (int i = 0; i < frames; i++) {
+                ByteBuffer y = yuv.getBuffer(0);
+                ByteBuffer src = background.duplicate();
+                ByteBuffer dst = y.duplicate();
+                dst.put(src);
+                int bx = (i * 8) % (w - block), by = (i * 3) % (h - block);
+                for (int row = by; row < by + block; row++) {
+                    for (int x = bx; x < bx + block; x++) y.put(row * yuv.getRowStride(0) + x, (byte) 235);
+                }
+                out.append(yuv, i * 33_333_333L);
+            }
+        }
+        System.out.println("wrote " + frames + " frames to " + file);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int mode = NativeLib.MODE_EDGE, blurRadius = 1, threads = 1, repeat = 1, rotation = -1;
+        int pyramidLevel = FilterGraph.DEFAULT_PYRAMID_LEVEL;
+        int adaptive = NativeLib.ADAPTIVE_OFF, edgePerMille = DEFAULT_EDGE_PER_MILLE;
+        boolean hysteresis = false;
+        File outDir = null, metricsFile = null, golden = null;
+        boolean update = false;
+        List<String> inputs = new ArrayList<>();
+        List<Float> roi = new ArrayList<>();
+        int roiBackground = FrameRegions.BACKGROUND_LUMA;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (a.equals("--generate") && hasValue) {
+                generate(new File(args[i + 1]), i + 2 < args.length ? Integer.parseInt(args[i + 2]) : 300);
+                return;
+            } else if (a.equals("--mode") && hasValue) {
+                mode = Arrays.asList(MODES).indexOf(args[++i]);
+                if (mode < 0) throw new IllegalArgumentException("unknown mode " + args[i] + "\n" + USAGE);
+            } else if (a.equals("--blur-radius") && hasValue) {
+                blurRadius = Integer.parseInt(args[++i]);
+            } else if (a.equals("--pyramid-level") && hasValue) {
+                pyramidLevel = Integer.parseInt(args[++i]);
+            } else if (a.equals("--adaptive") && hasValue) {
+                String[] parts = args[++i].split(":");
+                if (parts[0].equals("otsu") && parts.length == 1) {
+                    adaptive = NativeLib.ADAPTIVE_OTSU;
+                } else if (parts[0].equals("density") && parts.length <= 2) {
+                    adaptive = NativeLib.ADAPTIVE_DENSITY;
+                    if (parts.length == 2) edgePerMille = Integer.parseInt(parts[1]);
+                } else {
+                    throw new IllegalArgumentException("unknown adaptive threshold " + args[i] + "\n" + USAGE);
+                }
+            } else if (a.equals("--hysteresis")) {
+                hysteresis = true;
+            } else if (a.equals("--threads") && hasValue) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (a.equals("--repeat") && hasValue) {
+                repeat = Integer.parseInt(args[++i]);
+            } else if (a.equals("--rotation") && hasValue) {
+                rotation = Integer.parseInt(args[++i]);
+            } else if (a.equals("--roi") && hasValue) {
+                String[] parts = args[++i].split(",");
+                if (parts.length != 4) throw new IllegalArgumentException("--roi takes x,y,w,h\n" + USAGE);
+                for (String p : parts) roi.add(Float.parseFloat(p));
+            } else if (a.equals("--roi-background") && hasValue) {
+                roiBackground = args[++i].equals("black") ? FrameRegions.BACKGROUND_BLACK : FrameRegions.BACKGROUND_LUMA;
+            } else if (a.equals("--out") && hasValue) {
+                outDir = new File(args[++i]);
+            } else if (a.equals("--metrics") && hasValue) {
+                metricsFile = new File(args[++i]);
+            } else if (a.equals("--golden") && hasValue) {
+                golden = new File(args[++i]);
+            } else if (a.equals("--update")) {
+                update = true;
+            } else if (a.startsWith("--")) {
+                throw new IllegalArgumentException("unknown option " + a + "\n" + USAGE);
+            } else {
+                inputs.add(a);
+            }
+        }
+        // Only the built-in edge kernel gathers the histogram
+        boolean edgeKernel = mode == NativeLib.MODE_EDGE && blurRadius == 1;
+        if (inputs.isEmpty() || threads < 1 || repeat < 1 || (adaptive != NativeLib.ADAPTIVE_OFF && !edgeKernel)) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (outDir != null && !outDir.isDirectory() && !outDir.mkdirs()) throw new IOException("cannot create " + outDir);
+
+        List<Source> sources = new ArrayList<>();
+        for (String input : inputs) {
+            File f = new File(input);
+            sources.add(f.isDirectory() ? new ImageSource(f) : new DumpSource(f));
+        }
+        threads = Math.min(threads, sources.size());
+        // Concurrent inputs already use the cores; native bands would only contend for them
+        if (threads > 1) NativeLib.setWorkerCount(1);
+
+        FrameRegions regions = null;
+        if (!roi.isEmpty()) {
+            float[] fractions = new float[roi.size()];
+            for (int i = 0; i < fractions.length; i++) fractions[i] = roi.get(i);
+            regions = new FrameRegions(roiBackground, fractions);
+        }
+
+        FrameReplay replay = new FrameReplay(mode, blurRadius, pyramidLevel, adaptive, edgePerMille, hysteresis, rotation,
+                repeat, regions, outDir);
+        long start = System.nanoTime();
+        Result[] results = replay.run(sources, threads);
+        long wallNs = System.nanoTime() - start;
+        for (Source s : sources) s.close();
+
+        replay.report(sources, results, wallNs, threads);
+        if (metricsFile != null) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(metricsFile, true), "UTF-8")) {
+                replay.metrics.writeSnapshot(w, System.currentTimeMillis());
+            }
+        }
+        if (golden != null && checkGolden(golden, update, sources, results) != 0) System.exit(1);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-frame mailbox between a producer and the render thread. The producer {@link #put}s the newest
+ * frame and the consumer {@link #latch}es it when it is ready to draw; a frame that was never latched is
+ * released as soon as a newer one arrives (latest wins). All methods take over or hand out references.
+ */
+public final class FrameSlot {
+    // pending is the newest frame not yet latched, current is the one on screen; both guarded by lock
+    private final Object lock = new Object();
+    private FrameBuffer pending;
+    private FrameBuffer current;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Takes over the caller's reference to {@code frame}. */
+    public void put(FrameBuffer frame) {
+        FrameBuffer dropped;
+        synchronized (lock) {
+            dropped = pending;
+            pending = frame;
+        }
+        if (dropped != null) {
+            this.dropped.incrementAndGet();
+            dropped.release();
+        }
+    }
+
+    /** Frames replaced before they were ever latched. */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Promotes the pending frame to current and returns it, or returns null if nothing new arrived.
+     * The returned frame stays owned by the slot; the frame it replaces is released.
+     */
+    public FrameBuffer latch() {
+        FrameBuffer frame;
+        FrameBuffer previous;
+        synchronized (lock) {
+            frame = pending;
+            if (frame == null) return null;
+            pending = null;
+            previous = current;
+            current = frame;
+        }
+        if (previous != null) previous.release();
+        return frame;
+    }
+
+    /** The frame on screen (or the pending one before the first draw), retained for the caller; may be null. */
+    public FrameBuffer acquireLatest() {
+        synchronized (lock) {
+            FrameBuffer frame = current != null ? current : pending;
+            return frame != null ? frame.retain() : null;
+        }
+    }
+
+    /** Releases both frames, e.g. when the surface goes away. */
+    public void clear() {
+        FrameBuffer a, b;
+        synchronized (lock) {
+            a = pending;
+            b = current;
+            pending = null;
+            current = null;
+        }
+        if (a != null) a.release();
+        if (b != null) b.release();
+    }
+}
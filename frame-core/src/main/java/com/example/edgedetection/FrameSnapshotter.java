@@ -0,0 +1,75 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captures processed frames on request without copying them: {@link #offer} pins the next frame(s) after
+ * a {@link #requestBurst} by retaining the pooled buffer, and a single background thread hands each pinned
+ * frame to the {@link Encoder}, then releases it. Frames that are not requested cost one atomic read.
+ *
+ * <p>At most {@code maxPending} frames wait for the encoder; a burst frame beyond that is dropped and
+ * counted, so a slow encoder can never hold more pool buffers than that.
+ */
+public final class FrameSnapshotter implements FrameMetrics.DropCounter {
+    /** Encodes and stores one frame; runs on the snapshot thread and must not keep the frame. */
+    public interface Encoder {
+        void encode(FrameBuffer frame);
+    }
+
+    private final Encoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger requested = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public FrameSnapshotter(int maxPending, Encoder encoder) {
+        this.encoder = encoder;
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxPending), r -> new Thread(r, "FrameSnapshotter"));
+    }
+
+    /** Captures the next {@code frames} frames passed to {@link #offer}; callable from any thread. */
+    public void requestBurst(int frames) {
+        requested.addAndGet(frames);
+    }
+
+    /** Call for every processed frame, from a single thread; the caller keeps its reference. */
+    public void offer(FrameBuffer frame) {
+        if (requested.get() == 0) return;
+        requested.decrementAndGet();
+        final FrameBuffer pinned = frame.retain();
+        try {
+            executor.execute(() -> {
+                try {
+                    encoder.encode(pinned);
+                } finally {
+                    pinned.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pinned.release();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /** Requested frames not captured because the encoder was behind. */
+    @Override
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /** Encodes what is already queued, then stops the thread; later offers are dropped. */
+    public void shutdown() {
+        requested.set(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
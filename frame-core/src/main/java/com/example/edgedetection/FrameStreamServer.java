@@ -0,0 +1,337 @@
+package com.example.edgedetection;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Embedded WebSocket server that streams processed frames to viewers.
+ *
+ * <p>{@link #publish} runs on the pipeline's hand-off thread and never touches the network: it copies
+ * the frame once into a pooled snapshot (a 1-bit bitmap for binary edge frames, raw bytes otherwise)
+ * and offers it to every client's latest-wins queue. Each client has its own sender thread, so a slow
+ * viewer only skips frames and never stalls the camera path or the other viewers.
+ *
+ * <p>Every binary message is a 16-byte big-endian header followed by the payload:
+ * <pre>
+ *   u8  version (1)      u8  encoding (ENCODING_*)   u16 width   u16 height   u16 reserved
+ *   u32 sequence         u32 payload length
+ * </pre>
+ * Bitmap payloads use {@link EdgeCodec}'s layouts; a delta is relative to the previous message the
+ * same client received.
+ */
+public final class FrameStreamServer {
+    public static final int ENCODING_RGBA = 0;
+    public static final int ENCODING_GRAY = 1;
+    public static final int ENCODING_BITS = 2;
+    public static final int ENCODING_RUNS = 3;
+    public static final int ENCODING_DELTA_RUNS = 4;
+    static final int HEADER_BYTES = 16;
+
+    // Snapshots in flight: one being published plus one queued and one being sent per client
+    private static final int SNAPSHOT_POOL = 8;
+    private static final int CLIENT_QUEUE = 1;
+
+    private final int requestedPort;
+    private volatile ServerSocket serverSocket;
+    private Thread acceptThread;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    private final Snapshot[] snapshots = new Snapshot[SNAPSHOT_POOL];
+    private byte[] rowScratch = new byte[0];
+    private int sequence;
+    private final AtomicLong unpublished = new AtomicLong();
+
+    public FrameStreamServer(int port) {
+        this.requestedPort = port;
+        for (int i = 0; i < SNAPSHOT_POOL; i++) snapshots[i] = new Snapshot();
+    }
+
+    /** Binds and starts accepting viewers; port 0 picks a free port (see {@link #port()}). */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) return;
+        ServerSocket ss = new ServerSocket();
+        ss.setReuseAddress(true);
+        ss.bind(new InetSocketAddress(requestedPort));
+        serverSocket = ss;
+        acceptThread = new Thread(this::acceptLoop, "StreamAccept");
+        acceptThread.start();
+    }
+
+    public synchronized void stop() {
+        ServerSocket ss = serverSocket;
+        if (ss == null) return;
+        serverSocket = null;
+        try { ss.close(); } catch (IOException ignored) { }
+        try { acceptThread.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        for (Client c : clients) c.close();
+        clients.clear();
+    }
+
+    public int port() {
+        ServerSocket ss = serverSocket;
+        return ss != null ? ss.getLocalPort() : -1;
+    }
+
+    public int clientCount() { return clients.size(); }
+
+    /** Sequence number of the latest frame {@link #publish} streamed, 0 before the first; publisher thread only. */
+    public int lastSequence() { return sequence; }
+
+    /** Frames not streamed because every snapshot buffer was still being sent. */
+    public long unpublishedFrames() { return unpublished.get(); }
+
+    /**
+     * Streams {@code frame} to all connected viewers. The caller keeps its reference; the pixels are
+     * copied before this returns. {@code binary} marks a two-level frame (edge mode) that is sent as a
+     * bitmap. Call from a single thread.
+     */
+    public void publish(FrameBuffer frame, boolean binary) {
+        if (clients.isEmpty()) return;
+        Snapshot snap = acquireSnapshot();
+        if (snap == null) {
+            unpublished.incrementAndGet();
+            return;
+        }
+        int bpp = frame.bytesPerPixel();
+        int rowBytes = frame.width * bpp;
+        if (rowScratch.length < rowBytes) rowScratch = new byte[rowBytes];
+        snap.width = frame.width;
+        snap.height = frame.height;
+        snap.sequence = ++sequence;
+        if (binary) {
+            snap.encoding = ENCODING_BITS;
+            snap.length = EdgeCodec.bitmapBytes(frame.width, frame.height);
+            snap.ensure(snap.length);
+            EdgeCodec.packBits(frame.buffer(), frame.stride, bpp, frame.width, frame.height, rowScratch, snap.data);
+        } else {
+            snap.encoding = bpp == 1 ? ENCODING_GRAY : ENCODING_RGBA;
+            snap.length = rowBytes * frame.height;
+            snap.ensure(snap.length);
+            ByteBuffer in = frame.buffer().duplicate();
+            for (int y = 0; y < frame.height; y++) {
+                in.position(y * frame.stride);
+                in.get(snap.data, y * rowBytes, rowBytes);
+            }
+        }
+        for (Client c : clients) c.offer(snap);
+        snap.release();
+    }
+
+    private Snapshot acquireSnapshot() {
+        for (Snapshot s : snapshots) {
+            if (s.refs.get() == 0 && s.refs.compareAndSet(0, 1)) return s;
+        }
+        return null;
+    }
+
+    private void acceptLoop() {
+        for (;;) {
+            ServerSocket ss = serverSocket;
+            if (ss == null) return;
+            Socket socket;
+            try {
+                socket = ss.accept();
+            } catch (IOException e) {
+                return; // closed by stop()
+            }
+            try {
+                Client c = new Client(socket);
+                if (c.handshake()) {
+                    clients.add(c);
+                    c.start();
+                } else {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                try { socket.close(); } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    /** One published frame shared by all clients; the last release returns it to the pool. */
+    static final class Snapshot {
+        final AtomicInteger refs = new AtomicInteger();
+        byte[] data = new byte[0];
+        int length, width, height, encoding, sequence;
+
+        void ensure(int size) {
+            if (data.length < size) data = new byte[size];
+        }
+
+        void release() {
+            refs.decrementAndGet();
+        }
+    }
+
+    private final class Client {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        final LatestWinsQueue<Snapshot> queue = new LatestWinsQueue<>(CLIENT_QUEUE, Snapshot::release);
+        Thread sender;
+        private Thread reader;
+        private volatile boolean open = true;
+
+        // Sender-owned encoding state: the bitmap this client last received, and scratch space
+        private byte[] previousBits = new byte[0];
+        private int previousWidth = -1, previousHeight = -1;
+        private byte[] delta = new byte[0];
+        private byte[] encoded = new byte[0];
+        private final byte[] header = new byte[HEADER_BYTES];
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            // Bounds how long a silent peer can hold up the accept thread during the handshake
+            socket.setSoTimeout(5000);
+            in = socket.getInputStream();
+            out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        }
+
+        boolean handshake() throws IOException {
+            Map<String, String> head = WebSocketIo.readHttpHead(in);
+            String key = head.get("sec-websocket-key");
+            String upgrade = head.get("upgrade");
+            if (key == null || upgrade == null || !upgrade.equalsIgnoreCase("websocket")) {
+                WebSocketIo.writeAscii(out, "HTTP/1.1 400 Bad Request\r\nConnection: close\r\n\r\n");
+                out.flush();
+                return false;
+            }
+            WebSocketIo.writeAscii(out, "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + WebSocketIo.acceptKey(key) + "\r\n\r\n");
+            out.flush();
+            socket.setSoTimeout(0);
+            return true;
+        }
+
+        void start() {
+            sender = new Thread(this::sendLoop, "StreamSend");
+            reader = new Thread(this::readLoop, "StreamRead");
+            sender.start();
+            reader.start();
+        }
+
+        // offer and close are serialized so nothing is queued after the sender's final clear()
+        synchronized void offer(Snapshot snap) {
+            if (!open) return;
+            snap.refs.incrementAndGet();
+            queue.offer(snap);
+            LockSupport.unpark(sender);
+        }
+
+        void close() {
+            synchronized (this) {
+                if (!open) return;
+                open = false;
+            }
+            clients.remove(this);
+            try { socket.close(); } catch (IOException ignored) { }
+            LockSupport.unpark(sender);
+        }
+
+        private void sendLoop() {
+            try {
+                while (open) {
+                    Snapshot snap = queue.pollLatest();
+                    if (snap == null) { LockSupport.park(this); continue; }
+                    try {
+                        send(snap);
+                    } finally {
+                        snap.release();
+                    }
+                }
+            } catch (IOException e) {
+                // viewer went away
+            } finally {
+                close();
+                queue.clear();
+            }
+        }
+
+        private void send(Snapshot snap) throws IOException {
+            byte[] payload = snap.data;
+            int length = snap.length;
+            int encoding = snap.encoding;
+            if (encoding == ENCODING_BITS) {
+                int nbits = snap.width * snap.height;
+                if (encoded.length < length) encoded = new byte[length];
+                boolean haveDelta = previousWidth == snap.width && previousHeight == snap.height;
+                int runs = -1;
+                if (haveDelta) {
+                    if (delta.length < length) delta = new byte[length];
+                    EdgeCodec.xor(snap.data, previousBits, delta, length);
+                    runs = EdgeCodec.encodeRuns(delta, nbits, encoded, 0, length);
+                    if (runs >= 0) encoding = ENCODING_DELTA_RUNS;
+                }
+                if (runs < 0) {
+                    runs = EdgeCodec.encodeRuns(snap.data, nbits, encoded, 0, length);
+                    if (runs >= 0) encoding = ENCODING_RUNS;
+                }
+                if (runs >= 0) {
+                    payload = encoded;
+                    length = runs;
+                }
+                // Remember what this client now has, whatever encoding carried it
+                if (previousBits.length < snap.length) previousBits = new byte[snap.length];
+                System.arraycopy(snap.data, 0, previousBits, 0, snap.length);
+                previousWidth = snap.width;
+                previousHeight = snap.height;
+            }
+            writeHeader(encoding, snap.width, snap.height, snap.sequence, length);
+            synchronized (out) {
+                WebSocketIo.writeFrameHeader(out, WebSocketIo.OP_BINARY, HEADER_BYTES + length, null);
+                out.write(header);
+                out.write(payload, 0, length);
+                out.flush();
+            }
+        }
+
+        private void writeHeader(int encoding, int width, int height, int seq, int length) {
+            byte[] h = header;
+            h[0] = 1;
+            h[1] = (byte) encoding;
+            h[2] = (byte) (width >>> 8);
+            h[3] = (byte) width;
+            h[4] = (byte) (height >>> 8);
+            h[5] = (byte) height;
+            h[6] = 0;
+            h[7] = 0;
+            for (int i = 0; i < 4; i++) {
+                h[8 + i] = (byte) (seq >>> (24 - 8 * i));
+                h[12 + i] = (byte) (length >>> (24 - 8 * i));
+            }
+        }
+
+        // Viewers only send control frames; answer pings and stop on close or error
+        private void readLoop() {
+            WebSocketIo.Frame frame = new WebSocketIo.Frame();
+            try {
+                while (open) {
+                    WebSocketIo.readFrame(in, frame, 4096);
+                    if (frame.opcode == WebSocketIo.OP_CLOSE) break;
+                    if (frame.opcode == WebSocketIo.OP_PING) {
+                        synchronized (out) {
+                            WebSocketIo.writeFrameHeader(out, WebSocketIo.OP_PONG, frame.length, null);
+                            out.write(frame.payload, 0, frame.length);
+                            out.flush();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // connection dropped
+            } finally {
+                close();
+            }
+        }
+    }
+}
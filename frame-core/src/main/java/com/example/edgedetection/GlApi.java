@@ -0,0 +1,90 @@
+package com.example.edgedetection;
+
+import java.nio.Buffer;
+
+/**
+ * The slice of OpenGL ES 2.0 the frame renderer uses. On device this forwards to GLES20; a recording
+ * fake can stand in for it on the JVM. Constants carry the standard GL enum values.
+ */
+public interface GlApi {
+    int GL_TEXTURE_2D = 0x0DE1;
+    int GL_TEXTURE0 = 0x84C0;
+    int GL_TEXTURE_MIN_FILTER = 0x2801;
+    int GL_TEXTURE_MAG_FILTER = 0x2800;
+    int GL_TEXTURE_WRAP_S = 0x2802;
+    int GL_TEXTURE_WRAP_T = 0x2803;
+    int GL_LINEAR = 0x2601;
+    int GL_CLAMP_TO_EDGE = 0x812F;
+    int GL_RGBA = 0x1908;
+    int GL_LUMINANCE = 0x1909;
+    int GL_UNSIGNED_BYTE = 0x1401;
+    int GL_FLOAT = 0x1406;
+    int GL_UNPACK_ALIGNMENT = 0x0CF5;
+    int GL_COLOR_BUFFER_BIT = 0x4000;
+    int GL_TRIANGLE_STRIP = 0x0005;
+    int GL_VERTEX_SHADER = 0x8B31;
+    int GL_FRAGMENT_SHADER = 0x8B30;
+    int GL_COMPILE_STATUS = 0x8B81;
+    int GL_LINK_STATUS = 0x8B82;
+
+    int glCreateShader(int type);
+
+    void glShaderSource(int shader, String source);
+
+    void glCompileShader(int shader);
+
+    /** Single-value form of glGetShaderiv. */
+    int glGetShaderi(int shader, int name);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glDeleteShader(int shader);
+
+    int glCreateProgram();
+
+    void glAttachShader(int program, int shader);
+
+    void glLinkProgram(int program);
+
+    /** Single-value form of glGetProgramiv. */
+    int glGetProgrami(int program, int name);
+
+    String glGetProgramInfoLog(int program);
+
+    void glUseProgram(int program);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetUniformLocation(int program, String name);
+
+    /** Single-texture form of glGenTextures. */
+    int glGenTexture();
+
+    void glBindTexture(int target, int texture);
+
+    void glTexParameteri(int target, int name, int value);
+
+    void glPixelStorei(int name, int value);
+
+    void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                      int format, int type, Buffer pixels);
+
+    void glTexSubImage2D(int target, int level, int x, int y, int width, int height,
+                         int format, int type, Buffer pixels);
+
+    void glActiveTexture(int texture);
+
+    void glUniform1i(int location, int value);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data);
+
+    void glViewport(int x, int y, int width, int height);
+
+    void glClear(int mask);
+
+    void glDrawArrays(int mode, int first, int count);
+}
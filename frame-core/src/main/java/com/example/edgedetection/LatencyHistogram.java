@@ -0,0 +1,80 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size log-linear histogram of nanosecond latencies. Each power of two is split into eight
+ * linear buckets, so any reported value is within 12.5% of the recorded one, from 1 ns up to ~18 min.
+ * {@link #record} never allocates or locks and may be called from any thread.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_MSB = 39;
+    static final int BUCKETS = (MAX_MSB - SUB_BITS + 2) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long ns) {
+        if (ns < 0) ns = 0;
+        counts.incrementAndGet(bucketOf(ns));
+        total.incrementAndGet();
+        long m;
+        while (ns > (m = max.get()) && !max.compareAndSet(m, ns)) { }
+    }
+
+    public long count() { return total.get(); }
+
+    public long max() { return max.get(); }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /** Copies the bucket counts into {@code into} (length {@link #BUCKETS}) and returns their sum. */
+    long copyCounts(long[] into) {
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) sum += into[i] = counts.get(i);
+        return sum;
+    }
+
+    /** Smallest value v such that at least {@code percentile}% of the recorded values are <= v. */
+    public long valueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = copyCounts(snapshot);
+        return Math.min(valueAtPercentile(snapshot, n, percentile), max());
+    }
+
+    /** Same as {@link #valueAtPercentile(double)} over bucket counts taken with {@link #copyCounts}. */
+    static long valueAtPercentile(long[] buckets, long n, double percentile) {
+        if (n == 0) return 0;
+        // The slack keeps rounding error from pushing an exact rank up one, e.g. 99.9% of 1000 to the 1000th
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n - 1e-6));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return highestValueIn(i);
+        }
+        return highestValueIn(BUCKETS - 1);
+    }
+
+    static int bucketOf(long v) {
+        if (v < SUB) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        if (msb > MAX_MSB) return BUCKETS - 1;
+        int shift = msb - SUB_BITS;
+        return (shift + 1) * SUB + (int) ((v >>> shift) - SUB);
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB) return bucket;
+        int shift = bucket / SUB - 1;
+        long low = (long) (bucket % SUB + SUB) << shift;
+        return low + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free single-producer/single-consumer ring that keeps only the newest entries.
+ * A full queue evicts its oldest entry instead of blocking the producer, and the consumer always
+ * skips to the newest entry, so a slow stage drops stale frames rather than building up latency.
+ * Evicted and skipped entries are handed to the {@link Discarder}.
+ */
+public final class LatestWinsQueue<T> {
+    public interface Discarder<T> {
+        void discard(T item);
+    }
+
+    private final AtomicReferenceArray<T> slots;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next entry to consume
+    private final AtomicLong tail = new AtomicLong(); // next slot to publish
+    private final Object[] scratch;                   // consumer-owned, avoids allocating in pollLatest
+    private final Discarder<T> discarder;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** @param capacity a power of two */
+    public LatestWinsQueue(int capacity, Discarder<T> discarder) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.scratch = new Object[capacity];
+        this.discarder = discarder;
+    }
+
+    /** Producer only. Never blocks; evicts the oldest entry when the queue is full. */
+    public void offer(T item) {
+        long t = tail.get();
+        for (;;) {
+            long h = head.get();
+            if (t - h < capacity) break;
+            T oldest = slots.get((int) h & mask);
+            // Races with the consumer for the oldest entry; whoever moves head owns it
+            if (head.compareAndSet(h, h + 1)) {
+                drop(oldest);
+                break;
+            }
+        }
+        slots.set((int) t & mask, item);
+        tail.set(t + 1);
+    }
+
+    /** Consumer only. Returns the newest entry, discarding everything older, or null when empty. */
+    @SuppressWarnings("unchecked")
+    public T pollLatest() {
+        for (;;) {
+            // Tail first: head only moves forward and the producer keeps it within capacity of the newer tail,
+            // so t - h <= capacity. Read the other way round an eviction in between could make it capacity + 1.
+            long t = tail.get();
+            long h = head.get();
+            if (h == t) return null;
+            // Evictions overtook the tail we read; there are newer entries
+            if (h > t) continue;
+            int n = (int) (t - h);
+            // Read before claiming: once head moves the producer may reuse these slots
+            for (int i = 0; i < n; i++) scratch[i] = slots.get((int) (h + i) & mask);
+            if (head.compareAndSet(h, t)) {
+                for (int i = 0; i < n - 1; i++) {
+                    drop((T) scratch[i]);
+                    scratch[i] = null;
+                }
+                T latest = (T) scratch[n - 1];
+                scratch[n - 1] = null;
+                return latest;
+            }
+        }
+    }
+
+    /** Discards everything still queued; only call once producer and consumer have stopped. */
+    public void clear() {
+        long h = head.get(), t = tail.get();
+        for (long i = h; i < t; i++) discarder.discard(slots.getAndSet((int) i & mask, null));
+        head.set(t);
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /** Entries evicted or skipped since creation. */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void drop(T item) {
+        dropped.incrementAndGet();
+        discarder.discard(item);
+    }
+}
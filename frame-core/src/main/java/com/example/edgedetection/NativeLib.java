@@ -0,0 +1,189 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+
+public class NativeLib {
+    static {
+        System.loadLibrary("native-lib");
+    }
+
+    // Processing modes
+    public static final int MODE_ORIGINAL = 0;
+    public static final int MODE_GRAYSCALE = 1;
+    public static final int MODE_BLUR = 2;
+    public static final int MODE_EDGE = 3;
+    /**
+     * MODE_EDGE detected on a 2x-downsampled pyramid level and computed at full resolution only near the edges
+     * found there; the same output except for edges too faint or fine to show at that level. Only available
+     * through a pipeline, see {@link FilterGraph#pyramidEdge(int)}.
+     */
+    public static final int MODE_PYRAMID_EDGE = 4;
+
+    public static native void processFrame(byte[] rgba, int width, int height, int mode);
+
+    /**
+     * Zero-copy variant working directly on the memory behind two direct buffers.
+     * Strides are in bytes per row; src and dst may be the same buffer for in-place processing.
+     */
+    public static native void processFrame(ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+                                           int width, int height, int mode);
+
+    /**
+     * Converts YUV_420_888 planes (direct buffers, as returned by Image.Plane) to RGBA and rotates the
+     * result clockwise by 0/90/180/270 degrees in the same pass. Output is height x width for 90/270.
+     */
+    public static native void yuv420ToRgba(ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                           int yRowStride, int uvRowStride, int uvPixelStride,
+                                           int width, int height, int rotation,
+                                           ByteBuffer dst, int dstStride);
+
+    /** Native conversion straight from the image planes; {@code dst} receives the rotated frame. */
+    public static void yuv420ToRgba(YuvPlanes image, int rotation, ByteBuffer dst, int dstStride) {
+        yuv420ToRgba(image.getBuffer(0), image.getBuffer(1), image.getBuffer(2),
+                image.getRowStride(0), image.getRowStride(1), image.getPixelStride(1),
+                image.getWidth(), image.getHeight(), rotation, dst, dstStride);
+    }
+
+    /**
+     * Luma-only conversion for the gray/blur/edge modes: expands the Y plane to full-range gray and rotates
+     * it into an 8-bit plane (1 byte per pixel), skipping the chroma planes entirely.
+     * {@code scale} 2 or 4 box-downsamples first; the output is then (width / scale) x (height / scale)
+     * before rotation.
+     */
+    public static native void yuvToLuma(ByteBuffer y, int yRowStride, int width, int height, int rotation,
+                                        int scale, ByteBuffer dst, int dstStride);
+
+    /**
+     * yuvToLuma for the given rectangles of the output only, each grown by {@code grow} pixels on every side
+     * and clipped to it; {@code rects} holds up to {@link #MAX_REGIONS} (x, y, width, height) quadruples in
+     * output (rotated, scaled) coordinates. Only the Y pixels behind the rectangles are read. With {@code fill}
+     * 0..255 the rest of the output is set to that value first; -1 leaves it alone.
+     */
+    public static native void yuvToLumaRegions(ByteBuffer y, int yRowStride, int width, int height, int rotation,
+                                               int scale, int[] rects, int grow, int fill,
+                                               ByteBuffer dst, int dstStride);
+
+    /**
+     * Same modes as processFrame on an 8-bit gray plane; MODE_GRAYSCALE is a plain copy.
+     * src and dst may be the same buffer.
+     */
+    public static native void processGrayFrame(ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+                                               int width, int height, int mode);
+
+    // Filter graph stages for createPipeline, see FilterGraph
+    public static final int STAGE_GRAY = 1;
+    public static final int STAGE_BOX = 2;
+    public static final int STAGE_GAUSSIAN = 3;
+    public static final int STAGE_SOBEL = 4;
+    public static final int STAGE_SCHARR = 5;
+    public static final int STAGE_THRESHOLD = 6;
+    public static final int STAGE_NON_MAX = 7;
+    public static final int STAGE_DILATE = 8;
+    public static final int STAGE_PYRAMID_EDGE = 9;
+    public static final int STAGE_BORDER = 10;
+    /** Frame border conventions for STAGE_BORDER, see FilterGraph#border. */
+    public static final int BORDER_CLAMP = 0;
+    public static final int BORDER_KEEP = 1;
+
+    /**
+     * Compiles a chain of (type, parameter) stage pairs into a native plan and returns its handle.
+     * Throws IllegalArgumentException for a null or invalid chain. Release the handle with {@link #releasePipeline}.
+     */
+    public static native long createPipeline(int[] stages);
+
+    public static native void releasePipeline(long pipeline);
+
+    /**
+     * Runs a compiled pipeline on an RGBA ({@code bytesPerPixel} 4) or gray (1) frame; dst gets the same layout
+     * and may be the same buffer as src. A pipeline is not thread-safe. Returns the number of tiles recomputed
+     * when the incremental path ran, otherwise -1.
+     */
+    public static native int processFrame(long pipeline, ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+                                          int width, int height, int bytesPerPixel);
+
+    /** Most rectangles one processRegions or yuvToLumaRegions call takes. */
+    public static final int MAX_REGIONS = 64;
+
+    /**
+     * processFrame restricted to the given (x, y, width, height) rectangles: pixels inside them get exactly
+     * the values a full run would give, the rest of dst is left alone, and the cost follows their area. Each
+     * rectangle reads {@link #pipelineHalo} pixels around it from src. src and dst may be the same buffer and
+     * rectangles may overlap; the incremental path is not used.
+     */
+    public static native void processRegions(long pipeline, ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+                                             int width, int height, int bytesPerPixel, int[] rects);
+
+    /** How many pixels past a rectangle the pipeline reads to compute it. */
+    public static native int pipelineHalo(long pipeline);
+
+    /** Edge of the square tiles the incremental path compares and recomputes. */
+    public static final int INCREMENTAL_TILE = 32;
+
+    /**
+     * Lets a BORDER_KEEP pipeline equal to MODE_BLUR or MODE_EDGE recompute only the tiles of a gray frame that
+     * changed since its previous frame; the rest of the output is carried over. With {@code maxTileSad} 0 the output is
+     * identical to a full run; a larger value keeps the previous luma of tiles whose sum of absolute differences
+     * stays within it. A size change recomputes everything; a negative value turns it off (the default).
+     */
+    public static native void setPipelineIncremental(long pipeline, int maxTileSad);
+
+    public static int incrementalTileCount(int width, int height) {
+        return ((width + INCREMENTAL_TILE - 1) / INCREMENTAL_TILE) * ((height + INCREMENTAL_TILE - 1) / INCREMENTAL_TILE);
+    }
+
+    public static final int ADAPTIVE_OFF = 0;
+    /** Otsu's split of the previous frame's gradient histogram into flat areas and edges. */
+    public static final int ADAPTIVE_OTSU = 1;
+    /** The lowest threshold that kept edge pixels within a target share of the previous frame. */
+    public static final int ADAPTIVE_DENSITY = 2;
+
+    /**
+     * Lets a BORDER_KEEP pipeline equal to MODE_EDGE pick its threshold from the gradient histogram its previous
+     * frame gathered in the same pass, moving {@code smoothing} (0, 1] of the way to each new estimate.
+     * {@code targetPerMille} is ADAPTIVE_DENSITY's edge share, 1..1000 per mille of the frame; hysteresis also
+     * marks pixels above half the threshold next to a stronger one. The incremental path is off meanwhile, and
+     * processRegions uses the threshold without updating it. ADAPTIVE_OFF restores the fixed threshold.
+     */
+    public static native void setPipelineAdaptiveThreshold(long pipeline, int method, int targetPerMille,
+                                                           float smoothing, boolean hysteresis);
+
+    /** Edge threshold the pipeline's next frame uses; 50 unless it is adaptive. */
+    public static native int pipelineThreshold(long pipeline);
+
+    /** Share of pixels the pipeline's last adaptive frame marked as edges, 0..1, or -1 before one. */
+    public static native float pipelineEdgeDensity(long pipeline);
+
+    /**
+     * Creates a native scratch context: aligned, resolution-sized working buffers, one set per worker thread,
+     * kept across frames. Pipelines given it with {@link #setPipelineContext} take their scratch from it instead
+     * of from the calling thread. A frame of another size than the previous one resizes the buffers; frames of
+     * one size allocate nothing after the first. Release it with {@link #releaseContext}.
+     */
+    public static native long createContext(int width, int height);
+
+    /** Frees a context; detach it from its pipelines first (or release them). */
+    public static native void releaseContext(long context);
+
+    /**
+     * Runs {@code pipeline} on {@code context}'s scratch; 0 goes back to the calling thread's own. A context is
+     * not thread-safe, so the pipelines sharing one must run on one thread at a time.
+     */
+    public static native void setPipelineContext(long pipeline, long context);
+
+    /** Scratch bytes the context currently holds, over all of its threads. */
+    public static native long contextBytes(long context);
+
+    /**
+     * Total scratch bytes the native core has ever allocated, for every context and thread. Once every
+     * processing thread has seen a frame of the current size it stays constant.
+     */
+    public static native long scratchBytesAllocated();
+
+    /**
+     * Number of threads (including the caller) that processFrame splits each frame across.
+     * Defaults to min(cores, 4); 1 runs everything on the calling thread.
+     */
+    public static native void setWorkerCount(int count);
+
+    public static native int getWorkerCount();
+}
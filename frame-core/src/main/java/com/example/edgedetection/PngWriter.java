@@ -0,0 +1,68 @@
+package com.example.edgedetection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Minimal PNG encoder for binary frames: 1-bit grayscale, no filtering, one IDAT chunk. An edge frame
+ * compresses to a few KB where an RGBA JPEG of it would be ~100 KB and blurred at every edge.
+ */
+public final class PngWriter {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private PngWriter() {}
+
+    /**
+     * Writes pixels >= 128 as white, the rest black (the {@link EdgeCodec#packBits} rule). {@code src} rows
+     * are {@code stride} apart with {@code bpp} bytes per pixel; only the first channel is read.
+     */
+    public static void writeBinary(OutputStream out, ByteBuffer src, int stride, int bpp, int width, int height)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height).put((byte) 1).put((byte) 0).put((byte) 0).put((byte) 0).put((byte) 0);
+
+        int rowBytes = (width + 7) / 8;
+        byte[] in = new byte[width * bpp];
+        byte[] row = new byte[1 + rowBytes]; // leading filter type 0
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(rowBytes * height / 8 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream z = new DeflaterOutputStream(compressed, deflater, 8192)) {
+            ByteBuffer pixels = src.duplicate();
+            for (int y = 0; y < height; y++) {
+                pixels.position(y * stride);
+                pixels.get(in, 0, width * bpp);
+                for (int i = 1; i <= rowBytes; i++) row[i] = 0;
+                for (int x = 0, i = 0; x < width; x++, i += bpp) {
+                    if ((in[i] & 0x80) != 0) row[1 + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+                z.write(row);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        out.write(SIGNATURE);
+        writeChunk(out, "IHDR", header.array(), header.position());
+        writeChunk(out, "IDAT", compressed.toByteArray(), compressed.size());
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        ByteBuffer head = ByteBuffer.allocate(8);
+        head.putInt(length).put(typeBytes);
+        out.write(head.array());
+        out.write(data, 0, length);
+        ByteBuffer tail = ByteBuffer.allocate(4);
+        tail.putInt((int) crc.getValue());
+        out.write(tail.array());
+    }
+}
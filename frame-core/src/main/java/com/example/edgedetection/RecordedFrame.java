@@ -0,0 +1,37 @@
+package com.example.edgedetection;
+
+/** One frame read back from a {@link FrameRecording}; owns a copy of its payload. */
+public final class RecordedFrame {
+    public final long timestampNs;
+    public final int width;
+    public final int height;
+    /** {@link FrameBuffer#FORMAT_RGBA} or {@link FrameBuffer#FORMAT_LUMA} of the frame that was recorded. */
+    public final int format;
+    /** Processing mode the frame was recorded in. */
+    public final int mode;
+    /** {@link FrameRecording#ENCODING_RAW} rows back to back, or {@link FrameRecording#ENCODING_BITS}. */
+    public final int encoding;
+    public final byte[] payload;
+
+    RecordedFrame(long timestampNs, int width, int height, int format, int mode, int encoding, byte[] payload) {
+        this.timestampNs = timestampNs;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.mode = mode;
+        this.encoding = encoding;
+        this.payload = payload;
+    }
+
+    public int bytesPerPixel() {
+        return encoding == FrameRecording.ENCODING_BITS || format == FrameBuffer.FORMAT_LUMA ? 1 : 4;
+    }
+
+    /** Tightly packed pixels at {@link #bytesPerPixel()}; bitmaps are expanded to 0 / 255 gray. */
+    public byte[] pixels() {
+        if (encoding != FrameRecording.ENCODING_BITS) return payload;
+        byte[] out = new byte[width * height];
+        EdgeCodec.unpackBits(payload, 0, width * height, out);
+        return out;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.edgedetection;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cold start as steps that run side by side where they do not depend on each other: the camera opens while
+ * the GL context comes up and a worker thread loads the native library, sizes the frame pool, native scratch
+ * and filter pipelines and pushes a frame through every kernel ({@link #warmUp}), so the first camera frame
+ * does not pay for page faults, worker thread start-up and cold caches.
+ *
+ * <p>Records when each step finished, relative to construction, including the time to the first processed
+ * frame, which also goes to {@link FrameMetrics#recordTimeToFirstFrame}. One instance per start; all methods
+ * are thread-safe. {@link #main} runs a start against a {@link SyntheticFrameSource} standing in for the
+ * camera.
+ */
+public final class StartupOrchestrator {
+    /** Native library loaded. */
+    public static final int NATIVE_LOADED = 0;
+    /** Frame pool, native scratch and pipelines sized, a frame through each pipeline, pipeline started. */
+    public static final int WARMED_UP = 1;
+    /** Camera device opened. */
+    public static final int CAMERA_OPENED = 2;
+    /** Capture session configured and the repeating request running. */
+    public static final int CAMERA_STREAMING = 3;
+    /** GL context up, shaders compiled and linked, textures allocated. */
+    public static final int RENDERER_READY = 4;
+    /** First camera input handed to the pipeline. */
+    public static final int FIRST_INPUT = 5;
+    /** First processed frame handed off. */
+    public static final int FIRST_FRAME = 6;
+    public static final int STEP_COUNT = 7;
+
+    private static final String[] STEP_NAMES = {"native", "warm-up", "camera", "streaming", "renderer", "first input",
+            "first frame"};
+
+    /** Told about every step that completes or fails, on the thread that finished it. */
+    public interface Listener {
+        /** {@code error} is null when the step completed. */
+        void onStep(int step, String error);
+    }
+
+    private final long startNs = System.nanoTime();
+    // Elapsed ns when each step completed, -1 while it has not
+    private final AtomicLongArray doneNs = new AtomicLongArray(STEP_COUNT);
+    private final AtomicReferenceArray<String> errors = new AtomicReferenceArray<>(STEP_COUNT);
+    private volatile FrameMetrics metrics;
+    private volatile Listener listener;
+
+    public StartupOrchestrator() {
+        for (int i = 0; i < STEP_COUNT; i++) doneNs.set(i, -1);
+    }
+
+    /** Also records the time to the first frame into {@code metrics}; null turns that off. */
+    public void setMetrics(FrameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public static String stepName(int step) {
+        return STEP_NAMES[step];
+    }
+
+    /** Runs {@code task} on a new thread, completing {@code step} when it returns or failing it when it throws. */
+    public Thread runAsync(int step, Runnable task) {
+        Thread t = new Thread(() -> {
+            try {
+                task.run();
+                complete(step);
+            } catch (Throwable e) {
+                fail(step, e.toString());
+            }
+        }, "Startup-" + STEP_NAMES[step]);
+        t.start();
+        return t;
+    }
+
+    /**
+     * Marks a step done now. Only the first call counts and returns true; later ones return false without
+     * allocating, so per-frame callers (FIRST_INPUT, FIRST_FRAME) can call it every time.
+     */
+    public boolean complete(int step) {
+        if (doneNs.get(step) >= 0) return false;
+        long elapsed = System.nanoTime() - startNs;
+        if (!doneNs.compareAndSet(step, -1, elapsed)) return false;
+        FrameMetrics m = metrics;
+        if (step == FIRST_FRAME && m != null) m.recordTimeToFirstFrame(elapsed);
+        finished(step, null);
+        return true;
+    }
+
+    /** Marks a step failed; it never completes. Only the first error is kept. */
+    public void fail(int step, String error) {
+        if (doneNs.get(step) >= 0 || !errors.compareAndSet(step, null, error)) return;
+        finished(step, error);
+    }
+
+    public boolean isDone(int step) {
+        return doneNs.get(step) >= 0;
+    }
+
+    /** Time from construction until the step completed, -1 while it has not. */
+    public long elapsedNs(int step) {
+        return doneNs.get(step);
+    }
+
+    /** Why the step failed, or null. */
+    public String error(int step) {
+        return errors.get(step);
+    }
+
+    /** Waits until the step completes (true) or fails or the timeout runs out (false). */
+    public synchronized boolean await(int step, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (doneNs.get(step) < 0 && errors.get(step) == null) {
+            long left = (deadline - System.nanoTime()) / 1_000_000L;
+            if (left <= 0) return false;
+            wait(left);
+        }
+        return doneNs.get(step) >= 0;
+    }
+
+    /** Appends one line per step: the time it completed, its error, or "-" while pending. */
+    public void formatReport(StringBuilder out) {
+        for (int s = 0; s < STEP_COUNT; s++) {
+            out.append(STEP_NAMES[s]).append(' ');
+            long ns = doneNs.get(s);
+            String error = errors.get(s);
+            if (ns >= 0) {
+                FrameMetrics.appendMs(out, ns);
+                out.append(" ms");
+            } else {
+                out.append(error != null ? "failed: " + error : "-");
+            }
+            out.append('\n');
+        }
+    }
+
+    private void finished(int step, String error) {
+        synchronized (this) {
+            notifyAll();
+        }
+        Listener l = listener;
+        if (l != null) l.onStep(step, error);
+    }
+
+    /**
+     * Runs one width x height frame of bytesPerPixel 1 (luma) or 4 (RGBA) through each pipeline, in place in a
+     * buffer borrowed from {@code pool}, on the calling thread. The pipelines' native scratch is allocated and
+     * faulted in, the native worker threads started and the kernels paged in, so a real frame of that size
+     * costs what every later one does. The frame is whatever the buffer holds; the incremental path compares
+     * the first real frame against it like against any previous one, but an adaptive threshold learns from it,
+     * so configure that afterwards. The convert stage's own scratch is not covered.
+     */
+    public static void warmUp(FrameBufferPool pool, long[] pipelines, int width, int height, int bytesPerPixel) {
+        if ((long) width * height * bytesPerPixel > pool.bufferSize()) {
+            throw new IllegalArgumentException("warm-up frame larger than the pool's buffers");
+        }
+        FrameBuffer frame = pool.acquire();
+        if (frame == null) throw new IllegalStateException("frame pool exhausted");
+        try {
+            int stride = width * bytesPerPixel;
+            for (long pipeline : pipelines) {
+                NativeLib.processFrame(pipeline, frame.buffer(), stride, frame.buffer(), stride, width, height, bytesPerPixel);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Desktop check with a {@link SyntheticFrameSource} as the camera, whose opening is simulated by a delay:
+     * sets up an edge pipeline on the source's RGBA frames the way the app does and prints each step's time,
+     * including the time to the first processed frame, and the first frame's convert and process times
+     * against the median of the following second. Needs the host native-lib on java.library.path.
+     * Args: [--serial] [--no-warm-up] [--camera-ms n] [width height]. --serial sets the pipeline up before
+     * opening the camera instead of alongside it.
+     */
+    public static void main(String[] args) throws Exception {
+        boolean serial = false, warm = true;
+        int cameraMs = 150, w = 1280, h = 720;
+        for (int i = 0, size = 0; i < args.length; i++) {
+            if (args[i].equals("--serial")) serial = true;
+            else if (args[i].equals("--no-warm-up")) warm = false;
+            else if (args[i].equals("--camera-ms") && i + 1 < args.length) cameraMs = Integer.parseInt(args[++i]);
+            else if (size++ == 0) w = Integer.parseInt(args[i]);
+            else h = Integer.parseInt(args[i]);
+        }
+        final boolean warmUp = warm;
+        final int width = w, height = h, openMs = cameraMs;
+
+        StartupOrchestrator startup = new StartupOrchestrator();
+        FrameMetrics metrics = new FrameMetrics();
+        startup.setMetrics(metrics);
+        SyntheticFrameSource source = new SyntheticFrameSource(width, height);
+        AtomicReference<FramePipeline<SyntheticFrameSource.Frame>> started = new AtomicReference<>();
+        long[] firstFrame = new long[2];
+        long[] pipelines = new long[1];
+        long[] context = new long[1];
+
+        Runnable setup = () -> {
+            NativeLib.getWorkerCount();
+            startup.complete(NATIVE_LOADED);
+            FrameBufferPool pool = new FrameBufferPool(8, width * height * 4);
+            context[0] = NativeLib.createContext(width, height);
+            pipelines[0] = FilterGraph.forMode(NativeLib.MODE_EDGE, 1).build();
+            NativeLib.setPipelineContext(pipelines[0], context[0]);
+            if (warmUp) warmUp(pool, pipelines, width, height, 4);
+            FramePipeline<SyntheticFrameSource.Frame> pipeline = new FramePipeline<>(pool, source,
+                    frame -> NativeLib.processFrame(pipelines[0], frame.buffer(), frame.stride, frame.buffer(),
+                            frame.stride, frame.width, frame.height, frame.bytesPerPixel()),
+                    frame -> {
+                        if (startup.complete(FIRST_FRAME)) {
+                            firstFrame[0] = frame.convertNs;
+                            firstFrame[1] = frame.processNs;
+                        }
+                        frame.release();
+                    }, 1);
+            pipeline.setMetrics(metrics);
+            pipeline.start();
+            started.set(pipeline);
+        };
+        // Camera thread: opens, then delivers a frame every 33 ms; inputs before the pipeline runs are dropped
+        Thread camera = new Thread(() -> {
+            LockSupport.parkNanos(openMs * 1_000_000L);
+            startup.complete(CAMERA_OPENED);
+            startup.complete(CAMERA_STREAMING);
+            while (!Thread.currentThread().isInterrupted()) {
+                FramePipeline<SyntheticFrameSource.Frame> p = started.get();
+                if (p != null) {
+                    p.submit(source.nextFrame());
+                    startup.complete(FIRST_INPUT);
+                }
+                LockSupport.parkNanos(33_000_000L);
+            }
+        }, "SyntheticCamera");
+
+        if (serial) {
+            setup.run();
+            startup.complete(WARMED_UP);
+            camera.start();
+        } else {
+            camera.start();
+            startup.runAsync(WARMED_UP, setup);
+        }
+        boolean ok = startup.await(FIRST_FRAME, 10_000);
+        Thread.sleep(1000);
+        camera.interrupt();
+        camera.join();
+        FramePipeline<SyntheticFrameSource.Frame> pipeline = started.get();
+        if (pipeline != null) pipeline.stop();
+        if (pipelines[0] != 0) NativeLib.releasePipeline(pipelines[0]);
+        if (context[0] != 0) NativeLib.releaseContext(context[0]);
+
+        StringBuilder report = new StringBuilder();
+        startup.formatReport(report);
+        System.out.print(report);
+        System.out.printf("%dx%d, %s, %s, camera opens in %d ms%n", width, height, serial ? "serial" : "parallel",
+                warmUp ? "warm-up" : "no warm-up", openMs);
+        if (ok) {
+            System.out.printf("first frame: convert %.2f ms, process %.2f ms; p50 after it: convert %.2f ms, process %.2f ms%n",
+                    firstFrame[0] / 1e6, firstFrame[1] / 1e6,
+                    metrics.stage(FrameMetrics.CONVERT).valueAtPercentile(50) / 1e6,
+                    metrics.stage(FrameMetrics.PROCESS).valueAtPercentile(50) / 1e6);
+        }
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.edgedetection;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Minimal viewer for {@link FrameStreamServer}: connects, decodes every message back to pixels and
+ * reports frames/s and bytes per frame by encoding. Against its in-process server it also compares every
+ * decoded bitmap with the frame that was published and exits 1 on any difference.
+ *
+ * <pre>
+ *   StreamLoopbackClient host port [seconds]    measure a running server (e.g. the app over adb forward)
+ *   StreamLoopbackClient [seconds]              start an in-process server fed with synthetic edge frames
+ * </pre>
+ */
+public final class StreamLoopbackClient {
+    private final Socket socket;
+    private final InputStream in;
+    private final WebSocketIo.Frame frame = new WebSocketIo.Frame();
+    private byte[] bits = new byte[0];
+
+    public long frames;
+    public long payloadBytes;
+    public final long[] framesByEncoding = new long[5];
+    public final long[] bytesByEncoding = new long[5];
+    public long lastSequence;
+    /** Set pixels in the most recent bitmap frame, as a cheap check that decoding worked. */
+    public long lastSetBits;
+    /**
+     * Published frames by sequence, one byte per pixel (the first channel), when the publisher shares them;
+     * each decoded bitmap is then compared with its frame. Entries up to the newest received are dropped.
+     */
+    public ConcurrentSkipListMap<Long, byte[]> published;
+    public long checkedFrames, mismatchedFrames;
+    private byte[] pixels = new byte[0];
+
+    public StreamLoopbackClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+        OutputStream out = socket.getOutputStream();
+        byte[] nonce = new byte[16];
+        new Random().nextBytes(nonce);
+        String key = WebSocketIo.base64(nonce);
+        WebSocketIo.writeAscii(out, "GET / HTTP/1.1\r\nHost: " + host + ":" + port + "\r\nUpgrade: websocket\r\n"
+                + "Connection: Upgrade\r\nSec-WebSocket-Key: " + key + "\r\nSec-WebSocket-Version: 13\r\n\r\n");
+        out.flush();
+        Map<String, String> head = WebSocketIo.readHttpHead(in);
+        String status = head.get("");
+        if (status == null || !status.contains(" 101 ")) throw new IOException("handshake rejected: " + status);
+        if (!WebSocketIo.acceptKey(key).equals(head.get("sec-websocket-accept"))) {
+            throw new IOException("bad Sec-WebSocket-Accept");
+        }
+    }
+
+    /** Receives and decodes one frame message; control frames are skipped. */
+    public void receive() throws IOException {
+        for (;;) {
+            WebSocketIo.readFrame(in, frame, 64 * 1024 * 1024);
+            if (frame.opcode == WebSocketIo.OP_CLOSE) throw new IOException("server closed the stream");
+            if (frame.opcode == WebSocketIo.OP_BINARY) break;
+        }
+        ByteBuffer msg = ByteBuffer.wrap(frame.payload, 0, frame.length);
+        int version = msg.get() & 0xFF;
+        int encoding = msg.get() & 0xFF;
+        int width = msg.getShort() & 0xFFFF;
+        int height = msg.getShort() & 0xFFFF;
+        msg.getShort();
+        long sequence = msg.getInt() & 0xFFFFFFFFL;
+        int length = msg.getInt();
+        if (version != 1 || length != frame.length - FrameStreamServer.HEADER_BYTES || encoding >= framesByEncoding.length) {
+            throw new IOException("malformed frame header");
+        }
+        int offset = FrameStreamServer.HEADER_BYTES;
+        int nbits = width * height;
+        int bitmapBytes = EdgeCodec.bitmapBytes(width, height);
+        switch (encoding) {
+            case FrameStreamServer.ENCODING_BITS:
+                ensureBits(bitmapBytes);
+                System.arraycopy(frame.payload, offset, bits, 0, bitmapBytes);
+                lastSetBits = countBits(bitmapBytes);
+                break;
+            case FrameStreamServer.ENCODING_RUNS:
+                ensureBits(bitmapBytes);
+                EdgeCodec.decodeRuns(frame.payload, offset, offset + length, bits, nbits);
+                lastSetBits = countBits(bitmapBytes);
+                break;
+            case FrameStreamServer.ENCODING_DELTA_RUNS: {
+                // bits holds the previous bitmap; apply the delta in place
+                byte[] delta = new byte[bitmapBytes];
+                EdgeCodec.decodeRuns(frame.payload, offset, offset + length, delta, nbits);
+                EdgeCodec.xor(bits, delta, bits, bitmapBytes);
+                lastSetBits = countBits(bitmapBytes);
+                break;
+            }
+            default:
+                break; // raw gray / RGBA: nothing to decode
+        }
+        if (published != null && encoding >= FrameStreamServer.ENCODING_BITS) check(sequence, nbits);
+        frames++;
+        payloadBytes += length;
+        framesByEncoding[encoding]++;
+        bytesByEncoding[encoding] += length;
+        lastSequence = sequence;
+    }
+
+    // Binary frames are 0 or 255, so unpacking must give the published pixels back exactly
+    private void check(long sequence, int nbits) {
+        byte[] expected = published.get(sequence);
+        published.headMap(sequence, true).clear();
+        if (expected == null) throw new IllegalStateException("frame " + sequence + " was not published");
+        if (pixels.length != nbits) pixels = new byte[nbits];
+        EdgeCodec.unpackBits(bits, 0, nbits, pixels);
+        checkedFrames++;
+        if (!Arrays.equals(pixels, expected)) mismatchedFrames++;
+    }
+
+    private void ensureBits(int size) {
+        if (bits.length != size) bits = new byte[size];
+    }
+
+    private long countBits(int size) {
+        long n = 0;
+        for (int i = 0; i < size; i++) n += Integer.bitCount(bits[i] & 0xFF);
+        return n;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port;
+        int seconds;
+        FrameStreamServer server = null;
+        FramePipeline<SyntheticFrameSource.Frame> pipeline = null;
+        SyntheticFrameSource source = null;
+        ConcurrentSkipListMap<Long, byte[]> published = null;
+        if (args.length >= 2) {
+            host = args[0];
+            port = Integer.parseInt(args[1]);
+            seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        } else {
+            seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+            int w = 640, h = 480;
+            server = new FrameStreamServer(0);
+            server.start();
+            port = server.port();
+            final FrameStreamServer s = server;
+            final ConcurrentSkipListMap<Long, byte[]> sent = published = new ConcurrentSkipListMap<>();
+            source = new SyntheticFrameSource(w, h);
+            pipeline = new FramePipeline<>(new FrameBufferPool(8, w * h * 4), source,
+                    StreamLoopbackClient::toEdges, f -> { publish(s, f, sent); f.release(); }, 1);
+            pipeline.start();
+            source.start(pipeline, 30);
+        }
+
+        StreamLoopbackClient client = new StreamLoopbackClient(host, port);
+        client.published = published;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) client.receive();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        client.close();
+
+        String[] names = {"rgba", "gray", "bits", "runs", "delta"};
+        System.out.printf("%d frames in %.1f s: %.1f frames/s, %.0f bytes/frame%n", client.frames, elapsed,
+                client.frames / elapsed, client.frames > 0 ? client.payloadBytes / (double) client.frames : 0.0);
+        for (int i = 0; i < names.length; i++) {
+            if (client.framesByEncoding[i] == 0) continue;
+            System.out.printf("  %-6s %6d frames %10.0f bytes/frame%n", names[i], client.framesByEncoding[i],
+                    client.bytesByEncoding[i] / (double) client.framesByEncoding[i]);
+        }
+
+        if (source != null) source.stop();
+        if (pipeline != null) pipeline.stop();
+        if (server != null) server.stop();
+        if (published != null) {
+            System.out.println(client.checkedFrames + " frames compared with the published ones, "
+                    + client.mismatchedFrames + " differ");
+            if (client.checkedFrames == 0 || client.mismatchedFrames > 0) System.exit(1);
+        }
+    }
+
+    // Shares the frame's first channel under the sequence it is streamed with, before a viewer can receive it
+    private static void publish(FrameStreamServer server, FrameBuffer f, Map<Long, byte[]> sent) {
+        byte[] pixels = new byte[f.width * f.height];
+        ByteBuffer b = f.buffer();
+        for (int y = 0, i = 0; y < f.height; y++) {
+            for (int x = 0; x < f.width; x++) pixels[i++] = b.get(y * f.stride + x * 4);
+        }
+        long next = server.lastSequence() + 1;
+        sent.put(next, pixels);
+        server.publish(f, true);
+        if (server.lastSequence() != next) sent.remove(next);
+    }
+
+    // Stand-in for the native edge filter: white where a pixel differs from its left or upper neighbour
+    private static void toEdges(FrameBuffer f) {
+        ByteBuffer b = f.buffer();
+        int w = f.width, stride = f.stride;
+        for (int y = f.height - 1; y >= 0; y--) {
+            for (int x = w - 1; x >= 0; x--) {
+                int i = y * stride + x * 4;
+                int v = b.get(i) & 0xFF;
+                boolean edge = (x > 0 && (b.get(i - 4) & 0xFF) != v) || (y > 0 && (b.get(i - stride) & 0xFF) != v);
+                b.putInt(i, edge ? -1 : 0xFF000000);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Camera stand-in that feeds a {@link FramePipeline} with generated RGBA frames (a checkerboard
+ * scrolling one pixel per frame) at a fixed rate, so the pipeline can run without a camera.
+ */
+public final class SyntheticFrameSource implements FramePipeline.InputAdapter<SyntheticFrameSource.Frame> {
+    /** Preallocated descriptor of one generated frame; recycled through a small ring. */
+    public static final class Frame {
+        long sequence;
+        long createdNs;
+    }
+
+    private final int width, height;
+    private final Frame[] ring = new Frame[16];
+    private long sequence;
+    private byte[] row = new byte[0];
+    private volatile boolean running;
+    private Thread thread;
+
+    public SyntheticFrameSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+        for (int i = 0; i < ring.length; i++) ring[i] = new Frame();
+    }
+
+    /** Submits frames to {@code pipeline} from a background thread; fps <= 0 means as fast as possible. */
+    public synchronized void start(FramePipeline<Frame> pipeline, int fps) {
+        if (running) return;
+        running = true;
+        long periodNs = fps > 0 ? 1_000_000_000L / fps : 0;
+        thread = new Thread(() -> {
+            long next = System.nanoTime();
+            while (running) {
+                pipeline.submit(nextFrame());
+                if (periodNs == 0) continue;
+                next += periodNs;
+                long wait = next - System.nanoTime();
+                if (wait > 0) java.util.concurrent.locks.LockSupport.parkNanos(wait);
+            }
+        }, "SyntheticFrames");
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            try { thread.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            thread = null;
+        }
+    }
+
+    /** Next frame descriptor; the ring is large enough that a descriptor is released before reuse. */
+    public Frame nextFrame() {
+        Frame f = ring[(int) (sequence % ring.length)];
+        f.sequence = sequence++;
+        f.createdNs = System.nanoTime();
+        return f;
+    }
+
+    @Override
+    public boolean convert(Frame input, FrameBuffer out) {
+        int stride = width * 4;
+        if (out.buffer().capacity() < stride * height) return false;
+        if (row.length != stride) row = new byte[stride];
+        ByteBuffer bb = out.buffer();
+        int shift = (int) (input.sequence % 64);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                byte v = (byte) ((((x + shift) >> 5) ^ (y >> 5)) % 2 == 0 ? 40 : 200);
+                int i = x * 4;
+                row[i] = v; row[i + 1] = v; row[i + 2] = v; row[i + 3] = (byte) 0xFF;
+            }
+            bb.position(y * stride);
+            bb.put(row);
+        }
+        bb.position(0);
+        out.setFrame(width, height, stride);
+        out.timestampNs = input.createdNs;
+        return true;
+    }
+
+    @Override
+    public void release(Frame input) {
+        // Descriptors are recycled through the ring
+    }
+}
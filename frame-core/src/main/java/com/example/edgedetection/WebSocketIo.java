@@ -0,0 +1,149 @@
+package com.example.edgedetection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Just enough RFC 6455 for binary streaming: the HTTP upgrade handshake and frame headers.
+ * No extensions, no fragmentation on send; fragmented messages are not expected from clients.
+ */
+final class WebSocketIo {
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int MAX_HEADER_BYTES = 8192;
+
+    private WebSocketIo() {}
+
+    /** Reads an HTTP request or response head; keys are lower-cased, the first line is stored under "". */
+    static Map<String, String> readHttpHead(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int total = 0;
+        for (;;) {
+            int c = in.read();
+            if (c < 0) throw new EOFException("connection closed during handshake");
+            if (++total > MAX_HEADER_BYTES) throw new IOException("handshake too large");
+            if (c != '\n') {
+                if (c != '\r') line.write(c);
+                continue;
+            }
+            String s = new String(line.toByteArray(), ASCII);
+            line.reset();
+            if (s.isEmpty()) return headers;
+            if (!headers.containsKey("")) {
+                headers.put("", s);
+                continue;
+            }
+            int colon = s.indexOf(':');
+            if (colon > 0) headers.put(s.substring(0, colon).trim().toLowerCase(Locale.US), s.substring(colon + 1).trim());
+        }
+    }
+
+    static void writeAscii(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(ASCII));
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key + GUID).getBytes(ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // java.util.Base64 needs API 26
+    private static final char[] B64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    static String base64(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int n = (data[i] & 0xFF) << 16;
+            if (i + 1 < data.length) n |= (data[i + 1] & 0xFF) << 8;
+            if (i + 2 < data.length) n |= data[i + 2] & 0xFF;
+            sb.append(B64[n >>> 18 & 63]).append(B64[n >>> 12 & 63]);
+            sb.append(i + 1 < data.length ? B64[n >>> 6 & 63] : '=');
+            sb.append(i + 2 < data.length ? B64[n & 63] : '=');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the header of a single unfragmented frame carrying {@code length} payload bytes.
+     * With {@code mask} non-null (client to server) the caller must XOR the payload with it.
+     */
+    static void writeFrameHeader(OutputStream out, int opcode, long length, byte[] mask) throws IOException {
+        out.write(0x80 | opcode);
+        int maskBit = mask != null ? 0x80 : 0;
+        if (length < 126) {
+            out.write(maskBit | (int) length);
+        } else if (length <= 0xFFFF) {
+            out.write(maskBit | 126);
+            out.write((int) (length >>> 8));
+            out.write((int) length);
+        } else {
+            out.write(maskBit | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) out.write((int) (length >>> shift));
+        }
+        if (mask != null) out.write(mask, 0, 4);
+    }
+
+    /** A received frame; the payload array is reused and grown as needed. */
+    static final class Frame {
+        int opcode;
+        int length;
+        byte[] payload = new byte[256];
+        final byte[] mask = new byte[4];
+    }
+
+    /** Reads one frame, unmasking it if needed. Frames larger than {@code maxLength} are rejected. */
+    static void readFrame(InputStream in, Frame frame, int maxLength) throws IOException {
+        int b0 = readByte(in);
+        int b1 = readByte(in);
+        frame.opcode = b0 & 0x0F;
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = (readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) length = (length << 8) | readByte(in);
+        }
+        if (length > maxLength) throw new IOException("frame of " + length + " bytes exceeds " + maxLength);
+        boolean masked = (b1 & 0x80) != 0;
+        if (masked) readFully(in, frame.mask, 4);
+        if (frame.payload.length < length) frame.payload = new byte[(int) length];
+        readFully(in, frame.payload, (int) length);
+        if (masked) for (int i = 0; i < length; i++) frame.payload[i] ^= frame.mask[i & 3];
+        frame.length = (int) length;
+    }
+
+    static void readFully(InputStream in, byte[] buf, int length) throws IOException {
+        int off = 0;
+        while (off < length) {
+            int n = in.read(buf, off, length - off);
+            if (n < 0) throw new EOFException();
+            off += n;
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException();
+        return b;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link YuvPlanes} backed by direct buffers in the layouts camera HALs hand out: planar I420 and
+ * semi-planar NV12/NV21, optionally with padded rows. Used to drive the converters off-device.
+ */
+public final class YuvBuffers implements YuvPlanes {
+    public enum Layout { I420, NV12, NV21 }
+
+    private final int width, height;
+    private final ByteBuffer[] planes = new ByteBuffer[3];
+    private final int yRowStride, uvRowStride, uvPixelStride;
+
+    /** Allocates a frame with each row padded by {@code rowPadding} bytes; planes are zero-filled. */
+    public YuvBuffers(Layout layout, int width, int height, int rowPadding) {
+        this.width = width;
+        this.height = height;
+        int cw = (width + 1) / 2, ch = (height + 1) / 2;
+        yRowStride = width + rowPadding;
+        planes[0] = ByteBuffer.allocateDirect(yRowStride * height);
+        if (layout == Layout.I420) {
+            uvRowStride = cw + rowPadding;
+            uvPixelStride = 1;
+            planes[1] = ByteBuffer.allocateDirect(uvRowStride * ch);
+            planes[2] = ByteBuffer.allocateDirect(uvRowStride * ch);
+        } else {
+            // One interleaved plane; U and V are views offset by one byte, as Image returns them
+            uvRowStride = cw * 2 + rowPadding;
+            uvPixelStride = 2;
+            ByteBuffer uv = ByteBuffer.allocateDirect(uvRowStride * ch);
+            int uOffset = layout == Layout.NV12 ? 0 : 1;
+            planes[1] = view(uv, uOffset, uvRowStride * ch - 1);
+            planes[2] = view(uv, 1 - uOffset, uvRowStride * ch - 1);
+        }
+    }
+
+    private static ByteBuffer view(ByteBuffer buf, int offset, int length) {
+        ByteBuffer d = buf.duplicate();
+        d.position(offset).limit(offset + length);
+        return d.slice();
+    }
+
+    /** Fills the planes with a deterministic pseudo-random pattern. */
+    public YuvBuffers fillRandom(long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        for (int p = 0; p < 3; p++) {
+            ByteBuffer b = planes[p];
+            for (int i = 0; i < b.capacity(); i++) b.put(i, (byte) random.nextInt(256));
+        }
+        return this;
+    }
+
+    @Override public int getWidth() { return width; }
+
+    @Override public int getHeight() { return height; }
+
+    @Override public ByteBuffer getBuffer(int plane) { return planes[plane]; }
+
+    @Override public int getRowStride(int plane) { return plane == 0 ? yRowStride : uvRowStride; }
+
+    @Override public int getPixelStride(int plane) { return plane == 0 ? 1 : uvPixelStride; }
+}
@@ -0,0 +1,177 @@
+package com.example.edgedetection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Raw YUV_420_888 frames exactly as the camera handed them out, strides and padding included, so the
+ * converters can be replayed off-device on real footage.
+ *
+ * <p>Layout (big-endian): a 64-byte header followed by fixed-size frames.
+ * <pre>
+ *   header  u32 magic "YUVD"   u32 version (1)   u32 width   u32 height   u32 rotation
+ *           u32 Y row stride   u32 UV row stride   u32 UV pixel stride
+ *           u32 Y bytes   u32 U bytes   u32 V bytes   (20 bytes reserved)
+ *   frame   u64 timestamp ns   Y bytes   U bytes   V bytes
+ * </pre>
+ * Each plane is stored whole, so for semi-planar frames the interleaved chroma is written twice (once per
+ * view, one byte apart) and reads back with the same pixel stride.
+ */
+public final class YuvDump implements Closeable {
+    static final int MAGIC = 0x59555644;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int width, height, rotation;
+    private final int yRowStride, uvRowStride, uvPixelStride;
+    private final int[] planeBytes = new int[3];
+    private final int frameBytes;
+    private final int frameCount;
+
+    private YuvDump(RandomAccessFile file, MappedByteBuffer map) {
+        this.file = file;
+        this.map = map;
+        width = map.getInt(8);
+        height = map.getInt(12);
+        rotation = map.getInt(16);
+        yRowStride = map.getInt(20);
+        uvRowStride = map.getInt(24);
+        uvPixelStride = map.getInt(28);
+        for (int p = 0; p < 3; p++) planeBytes[p] = map.getInt(32 + p * 4);
+        frameBytes = 8 + planeBytes[0] + planeBytes[1] + planeBytes[2];
+        // A frame cut short by an interrupted dump is ignored
+        frameCount = (map.capacity() - HEADER_BYTES) / frameBytes;
+    }
+
+    /** Maps {@code path} read-only; frames are served straight from the mapping. */
+    public static YuvDump open(File path) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(path, "r");
+        try {
+            long size = raf.length();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) throw new IOException("not a YUV dump: " + path);
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) throw new IOException("not a YUV dump: " + path);
+            YuvDump dump = new YuvDump(raf, map);
+            if (dump.width <= 0 || dump.height <= 0 || dump.planeBytes[0] < dump.yRowStride * (dump.height - 1) + dump.width) {
+                throw new IOException("corrupt YUV dump header: " + path);
+            }
+            return dump;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public int width() { return width; }
+
+    public int height() { return height; }
+
+    /** Clockwise rotation the device applied to these frames. */
+    public int rotation() { return rotation; }
+
+    public int frameCount() { return frameCount; }
+
+    public long timestampNs(int frame) {
+        return map.getLong(HEADER_BYTES + frame * frameBytes);
+    }
+
+    /** Points {@code out} at frame {@code frame}; the views share the mapping, nothing is copied. */
+    public Frame frame(int frame, Frame out) {
+        int at = HEADER_BYTES + frame * frameBytes + 8;
+        for (int p = 0; p < 3; p++) {
+            ByteBuffer d = map.duplicate();
+            d.position(at).limit(at + planeBytes[p]);
+            out.planes[p] = d.slice();
+            at += planeBytes[p];
+        }
+        return out;
+    }
+
+    /** Unmapping is left to the GC, as with every MappedByteBuffer. */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /** One dumped frame as {@link YuvPlanes}; reusable across {@link #frame} calls. */
+    public final class Frame implements YuvPlanes {
+        private final ByteBuffer[] planes = new ByteBuffer[3];
+
+        @Override public int getWidth() { return width; }
+
+        @Override public int getHeight() { return height; }
+
+        @Override public ByteBuffer getBuffer(int plane) { return planes[plane]; }
+
+        @Override public int getRowStride(int plane) { return plane == 0 ? yRowStride : uvRowStride; }
+
+        @Override public int getPixelStride(int plane) { return plane == 0 ? 1 : uvPixelStride; }
+    }
+
+    /**
+     * Appends frames to a dump. The first frame fixes the geometry; later frames must match it. Writes go
+     * through a FileChannel from the caller's thread.
+     */
+    public static final class Writer implements Closeable {
+        private final FileOutputStream out;
+        private final FileChannel channel;
+        private final int rotation;
+        private final ByteBuffer timestamp = ByteBuffer.allocate(8);
+        private int width, height;
+        private final int[] planeBytes = new int[3];
+
+        public Writer(File path, int rotation) throws IOException {
+            out = new FileOutputStream(path);
+            channel = out.getChannel();
+            this.rotation = rotation;
+        }
+
+        public void append(YuvPlanes frame, long timestampNs) throws IOException {
+            if (width == 0) {
+                writeHeader(frame);
+            } else if (frame.getWidth() != width || frame.getHeight() != height) {
+                throw new IllegalArgumentException("frame size changed within a dump");
+            }
+            timestamp.clear();
+            timestamp.putLong(timestampNs).flip();
+            writeFully(timestamp);
+            for (int p = 0; p < 3; p++) {
+                ByteBuffer plane = frame.getBuffer(p).duplicate();
+                plane.clear();
+                if (plane.capacity() != planeBytes[p]) throw new IllegalArgumentException("plane size changed within a dump");
+                writeFully(plane);
+            }
+        }
+
+        private void writeHeader(YuvPlanes frame) throws IOException {
+            width = frame.getWidth();
+            height = frame.getHeight();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(rotation)
+                    .putInt(frame.getRowStride(0)).putInt(frame.getRowStride(1)).putInt(frame.getPixelStride(1));
+            for (int p = 0; p < 3; p++) {
+                planeBytes[p] = frame.getBuffer(p).capacity();
+                header.putInt(planeBytes[p]);
+            }
+            header.clear();
+            writeFully(header);
+        }
+
+        private void writeFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) channel.write(b);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The three planes of a YUV_420_888 frame, shaped like {@code android.media.Image}'s planes
+ * (0 = Y, 1 = U, 2 = V) so the frame math can run without Android classes.
+ */
+public interface YuvPlanes {
+    int getWidth();
+
+    int getHeight();
+
+    ByteBuffer getBuffer(int plane);
+
+    int getRowStride(int plane);
+
+    int getPixelStride(int plane);
+}
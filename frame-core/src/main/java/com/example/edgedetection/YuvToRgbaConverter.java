@@ -0,0 +1,91 @@
+package com.example.edgedetection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Java reference for the YUV_420_888 to RGBA conversion. The per-frame path uses the native
+ * converter, which produces bit-identical output with rotation fused in.
+ */
+public class YuvToRgbaConverter {
+    // Row scratch reused across frames so steady-state conversion does not allocate
+    private byte[] row = new byte[0];
+    private byte[] rgbaRow = new byte[0];
+
+    /**
+     * Converts a YUV_420_888 image into tightly packed RGBA rows written to {@code out}
+     * (row stride = width * 4). {@code out} is typically a direct buffer handed straight to native code.
+     */
+    public void yuv420ToRgba(YuvPlanes image, int width, int height, ByteBuffer out) {
+        ByteBuffer yBuf = image.getBuffer(0);
+        ByteBuffer uBuf = image.getBuffer(1);
+        ByteBuffer vBuf = image.getBuffer(2);
+
+        int yRowStride = image.getRowStride(0);
+        int uvRowStride = image.getRowStride(1);
+        int uvPixelStride = image.getPixelStride(1);
+
+        if (row.length < yRowStride) row = new byte[yRowStride];
+        if (rgbaRow.length != width * 4) rgbaRow = new byte[width * 4];
+
+        for (int j = 0; j < height; j++) {
+            yBuf.position(j * yRowStride);
+            yBuf.get(row, 0, Math.min(yRowStride, width));
+            for (int i = 0; i < width; i++) {
+                int y = row[i] & 0xff;
+                int uvIndex = (j / 2) * uvRowStride + (i / 2) * uvPixelStride;
+                int u = uBuf.get(uvIndex) & 0xff;
+                int v = vBuf.get(uvIndex) & 0xff;
+
+                int c = y - 16;
+                int d = u - 128;
+                int e = v - 128;
+
+                int r = clamp((298 * c + 409 * e + 128) >> 8);
+                int g = clamp((298 * c - 100 * d - 208 * e + 128) >> 8);
+                int b = clamp((298 * c + 516 * d + 128) >> 8);
+
+                int base = i * 4;
+                rgbaRow[base] = (byte) r;
+                rgbaRow[base + 1] = (byte) g;
+                rgbaRow[base + 2] = (byte) b;
+                rgbaRow[base + 3] = (byte) 0xFF;
+            }
+            out.position(j * width * 4);
+            out.put(rgbaRow);
+        }
+        out.position(0);
+    }
+
+    /** Reference rotation of a tightly packed RGBA frame, clockwise by {@code rotation} degrees. */
+    public static void rotateRgba(ByteBuffer input, ByteBuffer output, int width, int height, int rotation) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int destIndex;
+                
+                switch (rotation) {
+                    case 90: // 90 degrees clockwise
+                        destIndex = x * height + (height - 1 - y);
+                        break;
+                    case 180: // 180 degrees
+                        destIndex = (height - 1 - y) * width + (width - 1 - x);
+                        break;
+                    case 270: // 270 degrees clockwise (or 90 counter-clockwise)
+                        destIndex = (width - 1 - x) * height + y;
+                        break;
+                    default: // No rotation
+                        destIndex = y * width + x;
+                        break;
+                }
+                
+                // Copy the RGBA pixel as one 32-bit word
+                output.putInt(destIndex * 4, input.getInt((y * width + x) * 4));
+            }
+        }
+    }
+
+    private static int clamp(int v) {
+        if (v < 0) return 0;
+        if (v > 255) return 255;
+        return v;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/** Checks that every EdgeCodec encoding gives back exactly the bits it was given. */
+public class EdgeCodecTest {
+    private final Random random = new Random(12);
+
+    // A bitmap of nbits with runs of random length up to maxRun, starting with a 1 bit when firstSet
+    private byte[] bitmap(int nbits, int maxRun, boolean firstSet) {
+        byte[] bits = new byte[(nbits + 7) / 8];
+        boolean set = firstSet;
+        for (int i = 0; i < nbits; ) {
+            int run = 1 + random.nextInt(maxRun);
+            for (int end = Math.min(nbits, i + run); i < end; i++) {
+                if (set) bits[i >> 3] |= (byte) (0x80 >>> (i & 7));
+            }
+            set = !set;
+        }
+        return bits;
+    }
+
+    private byte[] roundTrip(byte[] bits, int nbits) {
+        // Every varint byte covers at least one bit, besides an empty first run
+        byte[] encoded = new byte[3 + nbits + 1];
+        int end = EdgeCodec.encodeRuns(bits, nbits, encoded, 3, encoded.length);
+        if (end < 0) fail("runs of " + nbits + " bits did not fit in " + (nbits + 1) + " bytes");
+        byte[] decoded = new byte[bits.length];
+        Arrays.fill(decoded, (byte) 0x5A);
+        EdgeCodec.decodeRuns(encoded, 3, end, decoded, nbits);
+        return decoded;
+    }
+
+    @Test
+    public void packBitsPadsTheLastPartialByte() {
+        // 5x3 RGBA with padded rows: 15 bits, so the second byte has one unused low bit
+        int width = 5, height = 3, stride = width * 4 + 8;
+        int[] set = {1, 0, 0, 1, 1, 0, 1, 0, 1, 0, 1, 1, 1, 0, 1};
+        ByteBuffer src = ByteBuffer.allocate(stride * height);
+        for (int i = 0; i < set.length; i++) {
+            int at = i / width * stride + i % width * 4;
+            // Only the first channel decides, and only its top bit
+            src.put(at, (byte) (set[i] == 1 ? 128 : 127));
+            src.put(at + 1, (byte) (set[i] == 1 ? 0 : 255));
+        }
+        byte[] bits = new byte[EdgeCodec.bitmapBytes(width, height)];
+        assertEquals(2, bits.length);
+        EdgeCodec.packBits(src, stride, 4, width, height, new byte[width * 4], bits);
+        assertEquals((byte) 0b10011010, bits[0]);
+        assertEquals((byte) 0b10111010, bits[1]);
+
+        byte[] pixels = new byte[set.length];
+        EdgeCodec.unpackBits(bits, 0, set.length, pixels);
+        for (int i = 0; i < set.length; i++) assertEquals((byte) (set[i] == 1 ? 255 : 0), pixels[i]);
+    }
+
+    @Test
+    public void runsRoundTrip() {
+        int[] sizes = {1, 7, 8, 9, 63, 640 * 480 + 3};
+        for (int nbits : sizes) {
+            for (int maxRun : new int[] {1, 5, 40, 300, 5000}) {
+                for (boolean firstSet : new boolean[] {false, true}) {
+                    byte[] bits = bitmap(nbits, maxRun, firstSet);
+                    assertArrayEquals(nbits + " bits, runs up to " + maxRun, bits, roundTrip(bits, nbits));
+                }
+            }
+        }
+        // A single run longer than one varint byte holds, either colour
+        byte[] ones = new byte[1000];
+        Arrays.fill(ones, (byte) 0xFF);
+        assertArrayEquals(ones, roundTrip(ones, 8000));
+        assertArrayEquals(new byte[1000], roundTrip(new byte[1000], 8000));
+    }
+
+    @Test
+    public void firstRunIsEmptyWhenTheBitmapStartsSet() {
+        byte[] bits = {(byte) 0xF0};
+        byte[] encoded = new byte[8];
+        int end = EdgeCodec.encodeRuns(bits, 8, encoded, 0, encoded.length);
+        assertArrayEquals(new byte[] {0, 4, 4}, Arrays.copyOf(encoded, end));
+        assertArrayEquals(bits, roundTrip(bits, 8));
+    }
+
+    @Test
+    public void encodeRunsBailsOutAtTheLimit() {
+        byte[] bits = bitmap(4096, 3, false);
+        byte[] encoded = new byte[bits.length * 4];
+        int end = EdgeCodec.encodeRuns(bits, 4096, encoded, 10, encoded.length);
+        int size = end - 10;
+        // The exact size fits; one byte less does not, whichever run crosses the limit
+        assertEquals(end, EdgeCodec.encodeRuns(bits, 4096, encoded, 10, 10 + size));
+        assertEquals(-1, EdgeCodec.encodeRuns(bits, 4096, encoded, 10, 10 + size - 1));
+        assertEquals(-1, EdgeCodec.encodeRuns(bits, 4096, encoded, 10, 10 + bits.length));
+        assertEquals(-1, EdgeCodec.encodeRuns(bits, 4096, encoded, 10, 10));
+    }
+
+    @Test
+    public void xorDeltaRoundTrip() {
+        int nbits = 320 * 240 + 5;
+        byte[] previous = bitmap(nbits, 200, false);
+        byte[] current = previous.clone();
+        // A few changed spans, including the padded last byte
+        for (int i : new int[] {0, 9000, 40000, nbits - 1}) current[i >> 3] ^= (byte) (0x80 >>> (i & 7));
+        for (int i = 20000; i < 20300; i++) current[i >> 3] ^= (byte) (0x80 >>> (i & 7));
+
+        byte[] delta = new byte[previous.length];
+        EdgeCodec.xor(current, previous, delta, delta.length);
+        byte[] encoded = new byte[delta.length];
+        int end = EdgeCodec.encodeRuns(delta, nbits, encoded, 0, encoded.length);
+        if (end < 0 || end > 32) fail("a small change should code in a few bytes, took " + end);
+
+        byte[] received = new byte[delta.length];
+        EdgeCodec.decodeRuns(encoded, 0, end, received, nbits);
+        EdgeCodec.xor(previous, received, received, received.length);
+        assertArrayEquals(current, received);
+    }
+
+    @Test
+    public void decodeRunsRejectsRunsThatDoNotCoverTheBitmap() {
+        byte[] bits = new byte[2];
+        for (byte[] runs : new byte[][] {{5}, {10, 7}, {(byte) 0x80}}) {
+            try {
+                EdgeCodec.decodeRuns(runs, 0, runs.length, bits, 16);
+                fail("decoded " + Arrays.toString(runs));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/** Drives FrameGovernor with a simulated camera and per-scale stage costs, no clock involved. */
+public class FrameGovernorTest {
+    private static final double FPS = 30;
+
+    /**
+     * Convert and filter cost of a frame at each scale divisor (1, 2, 4), with deterministic noise of up
+     * to +-noise of the cost. The costs need not follow pixel count, so a model can make the governor's
+     * prediction wrong on purpose.
+     */
+    static final class CostModel {
+        final double[] convertMs = new double[5], filterMs = new double[5];
+        double noise;
+        private long seed = 12345;
+
+        CostModel scale(int divisor, double convertMs, double filterMs) {
+            this.convertMs[divisor] = convertMs;
+            this.filterMs[divisor] = filterMs;
+            return this;
+        }
+
+        /** Costs that follow the pixel count from the given full-resolution ones. */
+        static CostModel perPixel(double convertMs, double filterMs) {
+            return new CostModel().scale(1, convertMs, filterMs).scale(2, convertMs / 4, filterMs / 4)
+                    .scale(4, convertMs / 16, filterMs / 16);
+        }
+
+        long[] frame(int divisor) {
+            long convert = (long) (convertMs[divisor] * 1e6 * (1 + noise * nextSigned()));
+            long filter = (long) (filterMs[divisor] * 1e6 * (1 + noise * nextSigned()));
+            return new long[]{Math.max(convert, filter), convert + filter};
+        }
+
+        private double nextSigned() {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return ((seed >>> 11) / (double) (1L << 53)) * 2 - 1;
+        }
+    }
+
+    /** Camera frames at FPS through the governor; returns the level after each camera frame. */
+    private static int[] run(FrameGovernor governor, CostModel model, int cameraFrames) {
+        int[] levels = new int[cameraFrames];
+        for (int i = 0; i < cameraFrames; i++) {
+            if (governor.shouldProcess()) {
+                long[] cost = model.frame(governor.scaleDivisor());
+                governor.onFrameCost(cost[0], cost[1]);
+            }
+            levels[i] = governor.level();
+        }
+        return levels;
+    }
+
+    private static int changes(int[] levels, int initial) {
+        int n = 0;
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] != (i == 0 ? initial : levels[i - 1])) n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void holdsLevelWithinBudget() {
+        FrameGovernor governor = new FrameGovernor(FPS, 0);
+        int[] levels = run(governor, CostModel.perPixel(12, 15), 2000);
+        assertEquals(0, changes(levels, 0));
+    }
+
+    @Test
+    public void stepsDownAfterSustainedOverload() {
+        FrameGovernor governor = new FrameGovernor(FPS, 0);
+        // A short spike is smoothed over and does not step down
+        run(governor, CostModel.perPixel(8, 12), 100);
+        run(governor, CostModel.perPixel(8, 40), 3);
+        int[] levels = run(governor, CostModel.perPixel(8, 12), 100);
+        assertEquals(0, governor.level());
+        assertEquals(0, changes(levels, 0));
+
+        // Twice the budget: steps down once the smoothed load has been over for five frames, and settles
+        // where the load fits instead of dropping further
+        levels = run(governor, CostModel.perPixel(20, 50), 300);
+        int firstDown = -1;
+        for (int i = 0; i < levels.length && firstDown < 0; i++) if (levels[i] > 0) firstDown = i;
+        assertTrue("stepped down at frame " + firstDown, firstDown >= 4 && firstDown < 10);
+        assertEquals(1, governor.level());
+        assertEquals(1, changes(levels, 0));
+    }
+
+    @Test
+    public void stepsDownThroughScalesToFrameSkipping() {
+        FrameGovernor governor = new FrameGovernor(FPS, 0);
+        // Even 1/4 scale costs more than a frame period: only skipping frames meets the throughput budget,
+        // with a latency budget wide enough for one such frame
+        CostModel model = new CostModel().scale(1, 200, 600).scale(2, 50, 150).scale(4, 15, 45);
+        governor = new FrameGovernor(FPS, 80);
+        run(governor, model, 600);
+        assertEquals(4, governor.scaleDivisor());
+        assertTrue("skip ratio " + governor.skipRatio(), governor.skipRatio() >= 2);
+    }
+
+    @Test
+    public void stepsUpOnlyWithHeadroom() {
+        // Overload to get to half scale, then a load that would fit at full scale but without margin
+        FrameGovernor governor = new FrameGovernor(FPS, 0);
+        run(governor, CostModel.perPixel(20, 50), 100);
+        assertEquals(1, governor.level());
+        int[] levels = run(governor, CostModel.perPixel(8, 17), 3000);
+        assertEquals(1, governor.level());
+        assertEquals(0, changes(levels, 1));
+
+        // Plenty of headroom: steps up, but not before it has been predicted to fit for a while
+        levels = run(governor, CostModel.perPixel(6, 12), 200);
+        assertEquals(0, governor.level());
+        int up = -1;
+        for (int i = 0; i < levels.length && up < 0; i++) if (levels[i] == 0) up = i;
+        assertTrue("stepped up at frame " + up, up >= 29);
+        assertEquals(1, changes(levels, 1));
+    }
+
+    @Test
+    public void revertedStepUpDoublesTheWait() {
+        FrameGovernor governor = new FrameGovernor(FPS, 60);
+        // Full scale looks cheap from half scale (predicted 4 x 5 ms) but really costs 40 ms, e.g. once the
+        // frame no longer fits in cache: every step up fails and has to be undone
+        CostModel model = new CostModel().scale(1, 10, 40).scale(2, 2, 5).scale(4, 1, 2);
+        run(governor, CostModel.perPixel(20, 50), 100);
+        assertEquals(1, governor.level());
+        int[] levels = run(governor, model, 12000);
+
+        // Frames spent at half scale before each attempt
+        List<Integer> waits = new ArrayList<>();
+        int since = 0;
+        for (int i = 0; i < levels.length; i++) {
+            int previous = i == 0 ? 1 : levels[i - 1];
+            if (levels[i] == 0 && previous == 1) {
+                waits.add(since);
+            } else if (levels[i] == 1 && previous == 0) {
+                since = 0;
+            }
+            if (levels[i] == 1) since++;
+        }
+        // Each wait is the time for the smoothed cost to settle after a step down plus 30 frames under the
+        // margin times the backoff, which doubles up to 16; attempts keep coming at that cap
+        assertTrue("attempts " + waits, waits.size() >= 8);
+        int settle = waits.get(1) - 2 * 30;
+        assertTrue("waits " + waits, settle >= 0 && settle < 15);
+        for (int i = 1; i < waits.size(); i++) {
+            int backoff = Math.min(1 << i, 16);
+            assertTrue("waits " + waits, Math.abs(waits.get(i) - settle - 30 * backoff) <= 1);
+        }
+    }
+
+    @Test
+    public void noOscillationNearTheBoundary() {
+        // Full scale right at the frame budget with 10% noise either way
+        CostModel model = CostModel.perPixel(10, 33);
+        model.noise = 0.1;
+        FrameGovernor governor = new FrameGovernor(FPS, 45);
+        int[] levels = run(governor, model, 20000);
+        assertTrue("level changes " + changes(levels, 0), changes(levels, 0) <= 1);
+
+        // Half scale right at the step-up margin: the prediction for full scale wanders across it
+        model = CostModel.perPixel(10, 23.3);
+        model.noise = 0.1;
+        governor = new FrameGovernor(FPS, 0);
+        run(governor, CostModel.perPixel(20, 50), 100);
+        levels = run(governor, model, 20000);
+        assertTrue("level changes " + changes(levels, 1), changes(levels, 1) <= 2);
+    }
+}
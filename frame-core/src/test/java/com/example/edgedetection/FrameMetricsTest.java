@@ -0,0 +1,55 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** FrameMetrics' overlay reports the interval since its previous call. */
+public class FrameMetricsTest {
+    private final FrameMetrics metrics = new FrameMetrics();
+
+    private String overlay() {
+        StringBuilder out = new StringBuilder();
+        metrics.formatOverlay(out);
+        return out.toString();
+    }
+
+    private void record(int stage, int frames, long ns) {
+        for (int i = 0; i < frames; i++) metrics.record(stage, ns);
+    }
+
+    @Test
+    public void overlayShowsOnlyTheNewestInterval() {
+        long[] dropped = {0};
+        metrics.addDropCounter("queue", () -> dropped[0]);
+
+        record(FrameMetrics.PROCESS, 98, 1_000_000);
+        record(FrameMetrics.PROCESS, 2, 4_000_000);
+        record(FrameMetrics.DRAW, 10, 200_000);
+        metrics.recordTiles(10, 100);
+        dropped[0] = 3;
+        // Values are the top of their bucket: 1 ms reads 1.05, 4 ms 4.19, 0.2 ms 0.21
+        assertEquals("process 1.05 / 4.19 ms\ndraw 0.21 / 0.21 ms\ntiles recomputed 10%\ndropped 3", overlay());
+
+        record(FrameMetrics.PROCESS, 100, 20_000_000);
+        metrics.recordTiles(50, 100);
+        dropped[0] = 5;
+        // Nothing of the first interval is left, and the idle draw stage drops out
+        assertEquals("process 20.97 / 20.97 ms\ntiles recomputed 50%\ndropped 5", overlay());
+
+        assertEquals("dropped 5", overlay());
+        // The cumulative histograms keep everything
+        assertEquals(200, metrics.stage(FrameMetrics.PROCESS).count());
+    }
+
+    @Test
+    public void appendMsRoundsToHundredths() {
+        StringBuilder out = new StringBuilder();
+        FrameMetrics.appendMs(out, 1_234_999);
+        out.append(' ');
+        FrameMetrics.appendMs(out, 1_235_000);
+        out.append(' ');
+        FrameMetrics.appendMs(out, 60_000);
+        assertEquals("1.23 1.24 0.06", out.toString());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Test;
+
+/**
+ * Drives SyntheticFrameSource -> FramePipeline -> FrameSlot -> a render thread latching frames, the same
+ * hand-offs as camera -> GL in the app, and checks that no thread on the path allocates once warmed up.
+ */
+public class FramePipelineAllocationTest {
+    private static final int WIDTH = 64, HEIGHT = 48;
+    private static final int WARM_UP_FRAMES = 300;
+    private static final int MEASURED_FRAMES = 500;
+
+    private volatile boolean running = true;
+
+    @Test
+    public void steadyStateAllocatesNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue("thread allocation accounting unavailable", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        FrameBufferPool pool = new FrameBufferPool(8, WIDTH * HEIGHT * 4);
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT);
+        FrameSlot slot = new FrameSlot();
+        FrameMetrics metrics = new FrameMetrics();
+        FramePipeline<SyntheticFrameSource.Frame> pipeline =
+                new FramePipeline<>(pool, source, FramePipelineAllocationTest::invert, slot::put, 1);
+        pipeline.setMetrics(metrics);
+
+        // Stand-ins for the camera callback thread and the GL thread
+        Thread camera = new Thread(() -> {
+            while (running) {
+                pipeline.submit(source.nextFrame());
+                LockSupport.parkNanos(500_000L);
+            }
+        }, "TestCamera");
+        Thread render = new Thread(() -> {
+            while (running) {
+                FrameBuffer frame = slot.latch();
+                if (frame != null) metrics.record(FrameMetrics.END_TO_END, System.nanoTime() - frame.startNs);
+                LockSupport.parkNanos(200_000L);
+            }
+        }, "TestRender");
+
+        pipeline.start();
+        camera.start();
+        render.start();
+        try {
+            awaitCompleted(pipeline, WARM_UP_FRAMES);
+            List<Thread> path = new ArrayList<>();
+            path.add(camera);
+            path.add(render);
+            for (Thread t : Thread.getAllStackTraces().keySet()) {
+                String name = t.getName();
+                if (name.equals("FrameConvert") || name.equals("FrameFilter") || name.equals("FrameHandoff")) path.add(t);
+            }
+            assertEquals("pipeline threads", 5, path.size());
+            long[] before = new long[path.size()];
+            for (int i = 0; i < before.length; i++) before[i] = threads.getThreadAllocatedBytes(path.get(i).getId());
+
+            long completed = pipeline.completedFrames();
+            awaitCompleted(pipeline, completed + MEASURED_FRAMES);
+
+            StringBuilder allocated = new StringBuilder();
+            for (int i = 0; i < before.length; i++) {
+                long bytes = threads.getThreadAllocatedBytes(path.get(i).getId()) - before[i];
+                if (bytes != 0) allocated.append(path.get(i).getName()).append(' ').append(bytes).append(" bytes; ");
+            }
+            assertEquals("allocated over " + MEASURED_FRAMES + " frames", "", allocated.toString());
+        } finally {
+            running = false;
+            camera.join();
+            render.join();
+            pipeline.stop();
+            slot.clear();
+        }
+        assertEquals("frames leaked from the pool", 0, pool.inUse());
+    }
+
+    private static void invert(FrameBuffer frame) {
+        ByteBuffer bb = frame.buffer();
+        int end = frame.stride * frame.height;
+        for (int i = 0; i < end; i++) bb.put(i, (byte) ~bb.get(i));
+    }
+
+    private static void awaitCompleted(FramePipeline<?> pipeline, long frames) throws InterruptedException {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (pipeline.completedFrames() < frames) {
+            assertTrue("pipeline stalled at " + pipeline.completedFrames() + " frames", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/** Reads back a recording file as it would be left by a writer that died in the middle of an append. */
+public class FrameRecordingTest {
+    private static final int DATA_BYTES = 1000, INDEX_ENTRIES = 8;
+
+    @Test
+    public void interruptedAppendReadsBackOnlyIntactFrames() throws Exception {
+        File file = File.createTempFile("frames", ".rec");
+        File crashed = File.createTempFile("crashed", ".rec");
+        try {
+            FrameRecording recording = FrameRecording.create(file, DATA_BYTES, INDEX_ENTRIES);
+            ByteBuffer view = recording.newView();
+            // Varying lengths so appends wrap the data ring and give up a varying number of frames, and enough
+            // of them to wrap the index too
+            for (int i = 0; i < 60; i++) {
+                int length = 40 + (i * 37) % 260;
+                byte[] before = Files.readAllBytes(file.toPath());
+                recording.append(view, 1000L * i, length, 1, FrameBuffer.FORMAT_LUMA, 0,
+                        FrameRecording.ENCODING_RAW, payload(i, length), length);
+                byte[] after = Files.readAllBytes(file.toPath());
+
+                // Died after the watermark but with the payload and entry half written and no counters:
+                // the header's watermark is new, every other byte the append changed is garbage
+                byte[] image = before.clone();
+                System.arraycopy(after, FrameRecording.FIRST_AT, image, FrameRecording.FIRST_AT, 8);
+                for (int b = FrameRecording.HEADER_BYTES; b < after.length; b++) {
+                    if (after[b] != before[b]) image[b] = (byte) 0xEE;
+                }
+                Files.write(crashed.toPath(), image);
+                FrameRecording reopened = FrameRecording.open(crashed);
+                List<RecordedFrame> frames = reopened.readSince(Long.MIN_VALUE);
+                int count = reopened.frameCount();
+                reopened.close();
+
+                assertEquals(frames.size(), count);
+                assertTrue("append " + i + " lost every frame", i < 2 || !frames.isEmpty());
+                long previous = -1;
+                for (RecordedFrame f : frames) {
+                    int n = (int) (f.timestampNs / 1000);
+                    assertTrue("append " + i + " read back frame " + n, n < i && f.timestampNs > previous);
+                    assertTrue("append " + i + " frame " + n + " corrupt",
+                            Arrays.equals(payload(n, 40 + (n * 37) % 260), f.pixels()));
+                    previous = f.timestampNs;
+                }
+            }
+            recording.close();
+        } finally {
+            file.delete();
+            crashed.delete();
+        }
+    }
+
+    private static byte[] payload(int frame, int length) {
+        byte[] p = new byte[length];
+        for (int i = 0; i < length; i++) p[i] = (byte) (frame * 31 + i);
+        return p;
+    }
+}
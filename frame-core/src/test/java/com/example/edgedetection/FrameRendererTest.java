@@ -0,0 +1,105 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Checks the GL calls FrameRenderer issues, through a recording GlApi. */
+public class FrameRendererTest {
+    private final FrameBufferPool pool = new FrameBufferPool(1, 64 * 48 * 4);
+    private final RecordingGl gl = new RecordingGl();
+    private final FrameRenderer renderer = new FrameRenderer(gl);
+
+    private void uploadAndDraw(int format, int width, int height, int frames) {
+        FrameBuffer frame = pool.acquire();
+        frame.setFrame(format, width, height, width * (format == FrameBuffer.FORMAT_LUMA ? 1 : 4));
+        for (int i = 0; i < frames; i++) {
+            renderer.upload(frame);
+            renderer.draw();
+        }
+        frame.release();
+    }
+
+    @Test
+    public void allocatesStorageOncePerSizeAndFormat() {
+        renderer.onSurfaceCreated();
+        uploadAndDraw(FrameBuffer.FORMAT_RGBA, 64, 48, 20);
+        // One allocation in each of the two textures, then only streaming
+        List<RecordingGl.Call> images = gl.calls("glTexImage2D");
+        assertEquals(images.toString(), 2, images.size());
+        assertNotEquals(images.get(0).texture, images.get(1).texture);
+        assertEquals(20, gl.calls("glTexSubImage2D").size());
+
+        gl.calls.clear();
+        uploadAndDraw(FrameBuffer.FORMAT_RGBA, 32, 24, 10);
+        uploadAndDraw(FrameBuffer.FORMAT_LUMA, 32, 24, 10);
+        uploadAndDraw(FrameBuffer.FORMAT_LUMA, 32, 24, 10);
+        images = gl.calls("glTexImage2D");
+        assertEquals(images.toString(), 4, images.size());
+        assertEquals(GlApi.GL_RGBA, images.get(0).format);
+        assertEquals(GlApi.GL_LUMINANCE, images.get(2).format);
+        for (RecordingGl.Call c : images) assertEquals(32, c.width);
+    }
+
+    @Test
+    public void reservedStorageIsNotReallocated() {
+        renderer.onSurfaceCreated();
+        renderer.reserve(64, 48, FrameBuffer.FORMAT_LUMA);
+        assertEquals(2, gl.calls("glTexImage2D").size());
+        gl.calls.clear();
+        uploadAndDraw(FrameBuffer.FORMAT_LUMA, 64, 48, 10);
+        assertEquals(0, gl.calls("glTexImage2D").size());
+        renderer.reserve(64, 48, FrameBuffer.FORMAT_LUMA);
+        assertEquals(0, gl.calls("glTexImage2D").size());
+    }
+
+    @Test
+    public void uploadsAlternateAndDrawTheNewest() {
+        renderer.onSurfaceCreated();
+        uploadAndDraw(FrameBuffer.FORMAT_RGBA, 64, 48, 12);
+        List<RecordingGl.Call> uploads = gl.calls("glTexSubImage2D");
+        assertEquals(12, uploads.size());
+        for (int i = 2; i < uploads.size(); i++) {
+            assertEquals(uploads.get(i - 2).texture, uploads.get(i).texture);
+            assertNotEquals(uploads.get(i - 1).texture, uploads.get(i).texture);
+        }
+        // Each draw samples the texture just uploaded, never the one the next upload goes to
+        int draws = 0, uploaded = -1;
+        for (RecordingGl.Call c : gl.calls) {
+            if (c.name.equals("glTexSubImage2D")) uploaded = c.texture;
+            if (c.name.equals("glDrawArrays")) {
+                assertEquals(uploaded, c.texture);
+                draws++;
+            }
+        }
+        assertEquals(12, draws);
+    }
+
+    @Test
+    public void drawLooksUpNoLocations() {
+        renderer.onSurfaceCreated();
+        int lookups = gl.calls("glGetAttribLocation").size() + gl.calls("glGetUniformLocation").size();
+        assertEquals(3, lookups);
+        gl.calls.clear();
+        uploadAndDraw(FrameBuffer.FORMAT_RGBA, 64, 48, 50);
+        assertEquals(0, gl.calls("glGetAttribLocation").size() + gl.calls("glGetUniformLocation").size());
+        assertEquals(0, gl.calls("glCreateProgram").size());
+        assertEquals(0, gl.calls("glGenTexture").size());
+    }
+
+    @Test
+    public void shaderErrorCarriesTheDriverLog() {
+        gl.compileError = "0:3: syntax error";
+        try {
+            renderer.onSurfaceCreated();
+            fail("compiled");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("vertex shader did not compile: 0:3: syntax error"));
+        }
+        assertEquals(1, gl.calls("glDeleteShader").size());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/** Bucket layout, error bound and percentile ranks of LatencyHistogram. */
+public class LatencyHistogramTest {
+    private static final long TOP = (1L << 40) - 1;
+
+    @Test
+    public void valuesBelowEightHaveABucketEach() {
+        for (int v = 0; v < 8; v++) {
+            assertEquals(v, LatencyHistogram.bucketOf(v));
+            assertEquals(v, LatencyHistogram.highestValueIn(v));
+        }
+    }
+
+    @Test
+    public void bucketEdgesAroundTheFirstPowersOfTwo() {
+        // 8..15 still have one value per bucket; from 16 on each bucket holds two
+        assertEquals(7, LatencyHistogram.bucketOf(7));
+        assertEquals(8, LatencyHistogram.bucketOf(8));
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.bucketOf(17));
+        assertEquals(17, LatencyHistogram.bucketOf(18));
+        assertEquals(8, LatencyHistogram.highestValueIn(8));
+        assertEquals(15, LatencyHistogram.highestValueIn(15));
+        assertEquals(17, LatencyHistogram.highestValueIn(16));
+        assertEquals(31, LatencyHistogram.highestValueIn(23));
+        assertEquals(24, LatencyHistogram.bucketOf(32));
+    }
+
+    @Test
+    public void valuesPastTheTopBucketClamp() {
+        int last = LatencyHistogram.BUCKETS - 1;
+        assertEquals(last - 7, LatencyHistogram.bucketOf(1L << 39));
+        assertEquals(last, LatencyHistogram.bucketOf(TOP));
+        assertEquals(last, LatencyHistogram.bucketOf(TOP + 1));
+        assertEquals(last, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(TOP, LatencyHistogram.highestValueIn(last));
+    }
+
+    @Test
+    public void everyBucketIsContiguousAndReportsWithinAnEighth() {
+        // Each bucket starts right after the previous one ends
+        for (int b = 1; b < LatencyHistogram.BUCKETS; b++) {
+            long first = LatencyHistogram.highestValueIn(b - 1) + 1;
+            assertEquals(b, LatencyHistogram.bucketOf(first));
+            assertEquals(b, LatencyHistogram.bucketOf(LatencyHistogram.highestValueIn(b)));
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            long v = random.nextLong() >>> (24 + random.nextInt(40));
+            long reported = LatencyHistogram.highestValueIn(LatencyHistogram.bucketOf(v));
+            assertTrue(v + " reported as " + reported, reported >= v && reported - v <= v / 8);
+        }
+    }
+
+    @Test
+    public void percentilesPickTheRankedValue() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.valueAtPercentile(50));
+        for (int i = 0; i < 50; i++) h.record(1);
+        for (int i = 0; i < 49; i++) h.record(5);
+        h.record(7);
+        assertEquals(100, h.count());
+        // Rank ceil(p * n), so p50 is the 50th value and p99.9 the 100th
+        assertEquals(1, h.valueAtPercentile(50));
+        assertEquals(5, h.valueAtPercentile(50.5));
+        assertEquals(5, h.valueAtPercentile(99));
+        assertEquals(7, h.valueAtPercentile(99.9));
+        assertEquals(1, h.valueAtPercentile(0));
+    }
+
+    @Test
+    public void percentilesNeverExceedTheMaximum() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 999; i++) h.record(1_000_000);
+        h.record(50_000_000);
+        assertEquals(1_048_575, h.valueAtPercentile(50));
+        // 99.9% of 1000 values is the 999th, not the slow 1000th
+        assertEquals(1_048_575, h.valueAtPercentile(99.9));
+        assertEquals(50_000_000, h.valueAtPercentile(99.95));
+        // The top bucket ends past the one slow value, which is reported exactly
+        assertEquals(50_000_000, h.valueAtPercentile(100));
+        assertEquals(50_000_000, h.max());
+        h.record(-3);
+        assertEquals(0, h.valueAtPercentile(0));
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.valueAtPercentile(99));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class LatestWinsQueueTest {
+    @Test
+    public void pollReturnsNewestAndDiscardsTheRest() {
+        AtomicLong discarded = new AtomicLong();
+        LatestWinsQueue<Integer> queue = new LatestWinsQueue<>(2, item -> discarded.incrementAndGet());
+        assertNull(queue.pollLatest());
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        assertEquals(Integer.valueOf(3), queue.pollLatest());
+        assertEquals(2, discarded.get());
+        assertEquals(2, queue.dropped());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void contendedCapacityOne() throws Exception {
+        contended(1);
+    }
+
+    @Test
+    public void contendedCapacityTwo() throws Exception {
+        contended(2);
+    }
+
+    // One producer offering as fast as it can against one consumer polling as fast as it can: every item is
+    // either polled or discarded exactly once, polled items only ever get newer, and nothing throws
+    private static void contended(int capacity) throws Exception {
+        final int items = 2_000_000;
+        AtomicLong discarded = new AtomicLong();
+        AtomicLong discardedSum = new AtomicLong();
+        LatestWinsQueue<Integer> queue = new LatestWinsQueue<>(capacity, item -> {
+            discarded.incrementAndGet();
+            discardedSum.addAndGet(item);
+        });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 1; i <= items; i++) queue.offer(i);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, "producer");
+        long polled = 0, polledSum = 0;
+        int last = 0;
+        producer.start();
+        try {
+            while (producer.isAlive() || !queue.isEmpty()) {
+                Integer item = queue.pollLatest();
+                if (item == null) continue;
+                assertTrue("polled " + item + " after " + last, item > last);
+                last = item;
+                polled++;
+                polledSum += item;
+            }
+        } finally {
+            producer.join();
+        }
+        if (failure.get() != null) throw new AssertionError("producer failed", failure.get());
+        assertEquals(items, polled + discarded.get());
+        assertEquals((long) items * (items + 1) / 2, polledSum + discardedSum.get());
+        assertEquals(discarded.get(), queue.dropped());
+        assertEquals(items, last);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.edgedetection;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A GlApi that hands out increasing object names and records each call, for checking what the renderer issues. */
+final class RecordingGl implements GlApi {
+    /** One GL call: its name, the texture bound at the time, and the size and format it passed if any. */
+    static final class Call {
+        final String name;
+        final int texture, width, height, format;
+
+        Call(String name, int texture, int width, int height, int format) {
+            this.name = name;
+            this.texture = texture;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        @Override
+        public String toString() {
+            return name + "(texture " + texture + ", " + width + "x" + height + ", format 0x"
+                    + Integer.toHexString(format) + ")";
+        }
+    }
+
+    final List<Call> calls = new ArrayList<>();
+    /** Makes every shader fail to compile with this log when set. */
+    String compileError;
+    private int nextName = 1;
+    private int bound;
+
+    List<Call> calls(String name) {
+        List<Call> matching = new ArrayList<>();
+        for (Call c : calls) if (c.name.equals(name)) matching.add(c);
+        return matching;
+    }
+
+    private void record(String name) {
+        calls.add(new Call(name, bound, 0, 0, 0));
+    }
+
+    @Override public int glCreateShader(int type) { record("glCreateShader"); return nextName++; }
+    @Override public void glShaderSource(int shader, String source) { record("glShaderSource"); }
+    @Override public void glCompileShader(int shader) { record("glCompileShader"); }
+
+    @Override
+    public int glGetShaderi(int shader, int name) {
+        record("glGetShaderi");
+        return name == GL_COMPILE_STATUS && compileError != null ? 0 : 1;
+    }
+
+    @Override public String glGetShaderInfoLog(int shader) { record("glGetShaderInfoLog"); return compileError; }
+    @Override public void glDeleteShader(int shader) { record("glDeleteShader"); }
+    @Override public int glCreateProgram() { record("glCreateProgram"); return nextName++; }
+    @Override public void glAttachShader(int program, int shader) { record("glAttachShader"); }
+    @Override public void glLinkProgram(int program) { record("glLinkProgram"); }
+    @Override public int glGetProgrami(int program, int name) { record("glGetProgrami"); return 1; }
+    @Override public String glGetProgramInfoLog(int program) { record("glGetProgramInfoLog"); return ""; }
+    @Override public void glUseProgram(int program) { record("glUseProgram"); }
+    @Override public int glGetAttribLocation(int program, String name) { record("glGetAttribLocation"); return nextName++; }
+    @Override public int glGetUniformLocation(int program, String name) { record("glGetUniformLocation"); return nextName++; }
+    @Override public int glGenTexture() { record("glGenTexture"); return nextName++; }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        bound = texture;
+        record("glBindTexture");
+    }
+
+    @Override public void glTexParameteri(int target, int name, int value) { record("glTexParameteri"); }
+    @Override public void glPixelStorei(int name, int value) { record("glPixelStorei"); }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                             int format, int type, Buffer pixels) {
+        calls.add(new Call("glTexImage2D", bound, width, height, format));
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int x, int y, int width, int height,
+                                int format, int type, Buffer pixels) {
+        calls.add(new Call("glTexSubImage2D", bound, width, height, format));
+    }
+
+    @Override public void glActiveTexture(int texture) { record("glActiveTexture"); }
+    @Override public void glUniform1i(int location, int value) { record("glUniform1i"); }
+    @Override public void glEnableVertexAttribArray(int index) { record("glEnableVertexAttribArray"); }
+    @Override public void glDisableVertexAttribArray(int index) { record("glDisableVertexAttribArray"); }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+        record("glVertexAttribPointer");
+    }
+
+    @Override public void glViewport(int x, int y, int width, int height) { record("glViewport"); }
+    @Override public void glClear(int mask) { record("glClear"); }
+    @Override public void glDrawArrays(int mode, int first, int count) { record("glDrawArrays"); }
+}
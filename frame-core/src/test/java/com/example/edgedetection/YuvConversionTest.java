@@ -0,0 +1,66 @@
+package com.example.edgedetection;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The native YUV to RGBA conversion against the Java reference, YuvToRgbaConverter plus rotateRgba. */
+public class YuvConversionTest {
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+    private static final byte PAD = (byte) 0xA5;
+
+    @BeforeClass
+    public static void nativeLib() {
+        try {
+            NativeLib.scratchBytesAllocated();
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("needs the host build of native-lib", e);
+        }
+    }
+
+    private static void check(YuvBuffers.Layout layout, int width, int height, int rowPadding) {
+        YuvBuffers image = new YuvBuffers(layout, width, height, rowPadding).fillRandom(width * 31 + height);
+        ByteBuffer upright = ByteBuffer.allocateDirect(width * height * 4);
+        new YuvToRgbaConverter().yuv420ToRgba(image, width, height, upright);
+        ByteBuffer expected = ByteBuffer.allocateDirect(width * height * 4);
+        for (int rotation : ROTATIONS) {
+            String name = layout + " " + width + "x" + height + " rotated " + rotation;
+            YuvToRgbaConverter.rotateRgba(upright, expected, width, height, rotation);
+            int outWidth = rotation % 180 == 0 ? width : height, outHeight = width * height / outWidth;
+            int rowBytes = outWidth * 4, stride = rowBytes + 12;
+            ByteBuffer out = ByteBuffer.allocateDirect(stride * outHeight);
+            for (int i = 0; i < out.capacity(); i++) out.put(i, PAD);
+            NativeLib.yuv420ToRgba(image, rotation, out, stride);
+            for (int y = 0; y < outHeight; y++) {
+                for (int x = 0; x < rowBytes; x++) {
+                    if (out.get(y * stride + x) != expected.get(y * rowBytes + x)) {
+                        assertEquals(name + ": byte " + x + " of row " + y, expected.get(y * rowBytes + x),
+                                out.get(y * stride + x));
+                    }
+                }
+                for (int x = rowBytes; x < stride; x++) assertEquals(name + ": row padding", PAD, out.get(y * stride + x));
+            }
+        }
+    }
+
+    @Test
+    public void matchesTheJavaReferenceForEveryLayoutAndRotation() {
+        for (YuvBuffers.Layout layout : YuvBuffers.Layout.values()) {
+            check(layout, 64, 48, 0);
+            check(layout, 320, 240, 16);
+        }
+    }
+
+    @Test
+    public void matchesTheJavaReferenceOnOddSizes() {
+        // Odd sizes leave a half chroma sample at the right and bottom, and a tail past the SIMD widths
+        for (YuvBuffers.Layout layout : YuvBuffers.Layout.values()) {
+            check(layout, 37, 23, 3);
+            check(layout, 1, 1, 0);
+            check(layout, 71, 2, 5);
+        }
+    }
+}